@@ -11,8 +11,6 @@ import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Player;
-import org.getspout.spoutapi.SpoutManager;
-import org.getspout.spoutapi.player.SpoutPlayer;
 
 
 import com.tommytony.war.config.InventoryBag;
@@ -40,6 +38,8 @@ public class Team {
 	private int remainingLives;
 	private int points = 0;
 	private Volume spawnVolume;
+	private Block spawnSign = null;
+	private byte spawnSignData = 0;
 	private Volume flagVolume;
 	private final Warzone warzone;
 	private TeamKind kind;
@@ -59,13 +59,11 @@ public class Team {
 	}
 
 	public static Team getTeamByPlayerName(String playerName) {
-		for (Warzone warzone : War.war.getWarzones()) {
-			Team team = warzone.getPlayerTeam(playerName);
-			if (team != null) {
-				return team;
-			}
-		}
-		return null;
+		return War.war.getPlayerTeam(playerName);
+	}
+
+	public Warzone getZone() {
+		return this.warzone;
 	}
 
 	public TeamKind getKind() {
@@ -335,18 +333,10 @@ public class Team {
 			}
 		}
 
+		this.spawnSign = signBlock;
+		this.spawnSignData = (byte) signData;
 		if (signBlock != null) {
-			String[] lines = new String[4];
-			lines[0] = "Team " + this.name;
-			lines[1] = this.players.size() + "/" + this.getTeamConfig().resolveInt(TeamConfig.TEAMSIZE) + " players";
-			lines[2] = this.points + "/" + this.getTeamConfig().resolveInt(TeamConfig.MAXSCORE)+ " pts";
-			if (this.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL) == -1) {
-				lines[3] = "unlimited lives";
-			} else {
-				lines[3] = this.remainingLives + "/" + this.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL) + " lives left";
-			}
-
-			SignHelper.setToSign(War.war, signBlock, (byte) signData, lines);
+			SignHelper.setToSign(War.war, signBlock, (byte) signData, this.getSignLines());
 		}
 		
 		if (War.war.isSpoutServer()) {
@@ -376,6 +366,17 @@ public class Team {
 
 	public void addPlayer(Player player) {
 		this.players.add(player);
+		War.war.putPlayerTeam(player.getName(), this);
+	}
+
+	/**
+	 * Empties the team, without any of the leaving business of removePlayer
+	 */
+	public void clearPlayers() {
+		for (Player player : this.players) {
+			War.war.removePlayerTeam(player.getName(), this);
+		}
+		this.players.clear();
 	}
 
 	public List<Player> getPlayers() {
@@ -388,19 +389,7 @@ public class Team {
 	}
 
 	public void teamcast(String message, boolean isNotification) {
-		for (Player player : this.players) {
-			if (War.war.isSpoutServer()) {
-				SpoutPlayer sp = SpoutManager.getPlayer(player);
-				if (sp.isSpoutCraftEnabled() && isNotification) {
-					// team notifications go to the top left for Spout players to lessen War spam in chat box
-					War.war.getSpoutDisplayer().msg(sp, message);
-				} else {
-					War.war.msg(player, message);
-				}
-			} else {
-				War.war.msg(player, message);
-			}
-		}
+		War.war.getBroadcaster().send(this.players, message, isNotification);
 	}
 
 	public void setName(String name) {
@@ -420,15 +409,14 @@ public class Team {
 		}
 		if (thePlayer != null) {
 			this.players.remove(thePlayer);
+			War.war.removePlayerTeam(thePlayer.getName(), this);
 			
 			if (this.warzone.isFlagThief(thePlayer.getName())) {
 				Team victim = this.warzone.getVictimTeamForFlagThief(thePlayer.getName());
 				victim.getFlagVolume().resetBlocks();
 				victim.initializeTeamFlag();
 				this.warzone.removeFlagThief(thePlayer.getName());
-				for (Team t : this.warzone.getTeams()) {
-					t.teamcast("Team " + ChatColor.GREEN + victim.getName() + ChatColor.WHITE + " flag was returned.");
-				}
+				this.warzone.broadcast("Team " + ChatColor.GREEN + victim.getName() + ChatColor.WHITE + " flag was returned.");
 			}
 			
 			if (this.warzone.isBombThief(thePlayer.getName())) {
@@ -436,9 +424,7 @@ public class Team {
 				bomb.getVolume().resetBlocks();
 				bomb.addBombBlocks();
 				this.warzone.removeBombThief(thePlayer.getName());
-				for (Team t : this.warzone.getTeams()) {
-					t.teamcast("Bomb " + ChatColor.GREEN + bomb.getName() + ChatColor.WHITE  + " was returned.");
-				}
+				this.warzone.broadcast("Bomb " + ChatColor.GREEN + bomb.getName() + ChatColor.WHITE  + " was returned.");
 			}
 			
 			if (this.warzone.isCakeThief(thePlayer.getName())) {
@@ -446,9 +432,7 @@ public class Team {
 				cake.getVolume().resetBlocks();
 				cake.addCakeBlocks();
 				this.warzone.removeCakeThief(thePlayer.getName());
-				for (Team t : this.warzone.getTeams()) {
-					t.teamcast("Cake " + ChatColor.GREEN + cake.getName() + ChatColor.WHITE  + " was returned.");
-				}
+				this.warzone.broadcast("Cake " + ChatColor.GREEN + cake.getName() + ChatColor.WHITE  + " was returned.");
 			}
 						
 			return true;
@@ -489,17 +473,51 @@ public class Team {
 		return this.spawnVolume;
 	}
 
+	/**
+	 * Refreshes the spawn and lobby gate signs of the team in a few ticks, along with other signs that changed
+	 */
 	public void resetSign() {
-		this.getSpawnVolume().resetBlocks();
-		this.initializeTeamSpawn(); // reset everything instead of just sign
+		War.war.getSignRefresher().refreshTeamSigns(this);
+	}
+
+	/**
+	 * Rewrites the spawn and lobby gate signs of the team right away
+	 */
+	public void updateSigns() {
+		if (this.spawnSign != null) {
+			SignHelper.setToSign(War.war, this.spawnSign, this.spawnSignData, this.getSignLines());
+			if (War.war.isSpoutServer()) {
+				War.war.getSpoutDisplayer().updateStats(this.warzone);
+			}
+		} else if (this.teamSpawn != null) {
+			this.getSpawnVolume().resetBlocks();
+			this.initializeTeamSpawn(); // reset everything instead of just sign
+		}
 
 		if (this.warzone.getLobby() != null) {
 			this.warzone.getLobby().resetTeamGateSign(this);
 		}
 	}
 
+	/**
+	 * @return what the team signs show: name, players, points and lives
+	 */
+	public String[] getSignLines() {
+		String[] lines = new String[4];
+		lines[0] = "Team " + this.name;
+		lines[1] = this.players.size() + "/" + this.getTeamConfig().resolveInt(TeamConfig.TEAMSIZE) + " players";
+		lines[2] = this.points + "/" + this.getTeamConfig().resolveInt(TeamConfig.MAXSCORE)+ " pts";
+		if (this.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL) == -1) {
+			lines[3] = "unlimited lives";
+		} else {
+			lines[3] = this.remainingLives + "/" + this.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL) + " lives left";
+		}
+		return lines;
+	}
+
 	public void setSpawnVolume(Volume volume) {
 		this.spawnVolume = volume;
+		this.warzone.invalidateStructureIndex();
 	}
 
 	public void resetPoints() {
@@ -508,6 +526,7 @@ public class Team {
 
 	public void setFlagVolume(Volume flagVolume) {
 		this.flagVolume = flagVolume;
+		this.warzone.invalidateStructureIndex();
 	}
 
 	public Volume getFlagVolume() {
@@ -517,6 +536,7 @@ public class Team {
 	private void setFlagVolume() {
 		if (this.flagVolume == null) {
 			this.flagVolume = new Volume(this.getName() + "flag", this.warzone.getWorld());
+			this.warzone.invalidateStructureIndex();
 		}
 		if (this.flagVolume.isSaved()) {
 			this.flagVolume.resetBlocks();
@@ -641,6 +661,7 @@ public class Team {
 
 	public void setTeamFlag(Location teamFlag) {
 		this.teamFlag = teamFlag;
+		this.warzone.invalidateStructureIndex();
 
 		// this resets the block to old state
 		this.setFlagVolume();
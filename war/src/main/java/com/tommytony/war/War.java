@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.FileHandler;
@@ -40,6 +41,9 @@ import com.tommytony.war.event.WarEntityListener;
 import com.tommytony.war.event.WarPlayerListener;
 import com.tommytony.war.event.WarServerListener;
 import com.tommytony.war.job.HelmetProtectionTask;
+import com.tommytony.war.job.HibernateIdleZonesJob;
+import com.tommytony.war.job.SaveDataSizeLedgerJob;
+import com.tommytony.war.job.SpillPlayerStatesJob;
 import com.tommytony.war.job.SpoutFadeOutMessageJob;
 import com.tommytony.war.mapper.WarYmlMapper;
 import com.tommytony.war.mapper.WarzoneYmlMapper;
@@ -50,9 +54,14 @@ import com.tommytony.war.structure.HubLobbyMaterials;
 import com.tommytony.war.structure.Monument;
 import com.tommytony.war.structure.WarHub;
 import com.tommytony.war.structure.ZoneLobby;
-import com.tommytony.war.utility.PlayerState;
-import com.tommytony.war.utility.SizeCounter;
+import com.tommytony.war.utility.Broadcaster;
+import com.tommytony.war.utility.ExplosionRollback;
+import com.tommytony.war.utility.DataSizeLedger;
+import com.tommytony.war.utility.PlayerStateJournal;
+import com.tommytony.war.utility.PlayerStateStash;
+import com.tommytony.war.utility.SignRefresher;
 import com.tommytony.war.utility.WarLogFormatter;
+import com.tommytony.war.volume.VolumeIndex;
 
 /**
  * Main class of War
@@ -77,13 +86,19 @@ public class War extends JavaPlugin {
 	// Zones and hub
 	private List<Warzone> warzones = new ArrayList<Warzone>();
 	private WarHub warHub;
+	private final VolumeIndex<Warzone> zoneIndex = new VolumeIndex<Warzone>();
+	private final VolumeIndex<ZoneLobby> lobbyIndex = new VolumeIndex<ZoneLobby>();
+	private final HashMap<String, Team> playerTeams = new HashMap<String, Team>();
 	
 	private final List<String> zoneMakerNames = new ArrayList<String>();
 	private final List<String> commandWhitelist = new ArrayList<String>();
 	
 	private final List<Warzone> incompleteZones = new ArrayList<Warzone>();
 	private final List<String> zoneMakersImpersonatingPlayers = new ArrayList<String>();
-	private HashMap<String, PlayerState> disconnected = new HashMap<String, PlayerState>();
+	private final PlayerStateStash disconnected = new PlayerStateStash("disconnected");
+	private PlayerStateJournal playerStateJournal = null;
+	private final DataSizeLedger dataSizeLedger = new DataSizeLedger();
+	private final Map<String, Map<String, byte[]>> journaledPlayerStates = new LinkedHashMap<String, Map<String, byte[]>>();
 	private final HashMap<String, String> wandBearers = new HashMap<String, String>(); // playername to zonename
 
 	private final List<String> deadlyAdjectives = new ArrayList<String>();
@@ -95,6 +110,10 @@ public class War extends JavaPlugin {
 	private final WarzoneConfigBag warzoneDefaultConfig = new WarzoneConfigBag();
 	private final TeamConfigBag teamDefaultConfig = new TeamConfigBag();
 	private SpoutDisplayer spoutMessenger = null;
+	private final Broadcaster broadcaster = new Broadcaster();
+	private final ExplosionRollback explosionRollback = new ExplosionRollback();
+	private HelmetProtectionTask helmetProtection = null;
+	private final SignRefresher signRefresher = new SignRefresher();
 
 	private Logger warLogger;
 
@@ -151,6 +170,12 @@ public class War extends JavaPlugin {
 		warConfig.put(WarConfig.KEEPOLDZONEVERSIONS, true);
 		warConfig.put(WarConfig.MAXZONES, 12);
 		warConfig.put(WarConfig.PVPINZONESONLY, false);
+		warConfig.put(WarConfig.RESETBLOCKSPERTICK, 50000);
+		warConfig.put(WarConfig.RESETMILLISPERTICK, 20);
+		warConfig.put(WarConfig.RESETJOURNALSIZE, 100000);
+		warConfig.put(WarConfig.SAVECHUNKSPERTICK, 16);
+		warConfig.put(WarConfig.SIGNREFRESHTICKS, 10);
+		warConfig.put(WarConfig.HIBERNATEMINUTES, 0);	// zones never hibernate
 		warConfig.put(WarConfig.TNTINZONESONLY, false);
 		
 		warzoneDefaultConfig.put(WarzoneConfig.AUTOASSIGN, false);
@@ -238,11 +263,17 @@ public class War extends JavaPlugin {
 		this.getKillerVerbs().add("exterminated");
 		
 		// Load files
+		PlayerStateStash.deleteStale();
+		this.readPlayerStateJournal();
 		WarYmlMapper.load();
 		
 		// Start tasks
-		HelmetProtectionTask helmetProtectionTask = new HelmetProtectionTask();
-		this.getServer().getScheduler().scheduleSyncRepeatingTask(this, helmetProtectionTask, 250, 100);
+		// inventories are checked as they change, this is only the safety net
+		this.helmetProtection = new HelmetProtectionTask();
+		this.getServer().getScheduler().scheduleSyncRepeatingTask(this, this.helmetProtection, 250, 1200);
+		this.getServer().getScheduler().scheduleSyncRepeatingTask(this, new SpillPlayerStatesJob(), 1200, 1200);
+		this.getServer().getScheduler().scheduleSyncRepeatingTask(this, new HibernateIdleZonesJob(), 1200, 1200);
+		this.getServer().getScheduler().scheduleSyncRepeatingTask(this, new SaveDataSizeLedgerJob(), 1200, 1200);
 		
 		if (this.isSpoutServer) {
 			SpoutFadeOutMessageJob fadeOutMessagesTask = new SpoutFadeOutMessageJob();
@@ -265,17 +296,60 @@ public class War extends JavaPlugin {
 			this.getLogger().log(Level.WARNING, "Failed to create War log file");
 		}
 		
-		// Size check
-		long datSize = SizeCounter.getFileOrDirectorySize(new File(this.getDataFolder() + "/dat/")) / 1024 / 1024;
-		long tempSize = SizeCounter.getFileOrDirectorySize(new File(this.getDataFolder() + "/temp/")) / 1024 / 1024;
-		
-		if (datSize + tempSize > 100) {
-			this.log("War data files are taking " + datSize + "MB and its temp files " + tempSize + "MB. Consider permanently deleting old warzone versions and backups in /plugins/War/temp/.", Level.WARNING);
-		}
+		// Size check, counted again in the background
+		this.dataSizeLedger.load();
 				
 		this.log("War v" + this.desc.getVersion() + " is on.", Level.INFO);
 	}
 
+	/**
+	 * Reads back the player states that were stashed when War last stopped, crashes
+	 * included, and starts journaling the stashes. Zone states go back into their zone's
+	 * stash as the zone gets loaded.
+	 */
+	private void readPlayerStateJournal() {
+		File journalFile = new File(this.getDataFolder().getPath() + "/temp/playerstates.journal");
+		this.journaledPlayerStates.clear();
+		for (Map.Entry<String, Map<String, byte[]>> journaled : PlayerStateJournal.read(journalFile).entrySet()) {
+			if (!journaled.getValue().isEmpty()) {
+				this.journaledPlayerStates.put(journaled.getKey(), journaled.getValue());
+			}
+		}
+
+		this.playerStateJournal = new PlayerStateJournal(journalFile);
+		this.playerStateJournal.start(this.journaledPlayerStates);
+		this.restorePlayerStates(this.disconnected);
+	}
+
+	/**
+	 * Puts back the journaled states of a stash that was just loaded
+	 *
+	 * @param PlayerStateStash stash The stash, still empty
+	 */
+	public void restorePlayerStates(PlayerStateStash stash) {
+		Map<String, byte[]> states = this.journaledPlayerStates.remove(stash.getName());
+		if (states != null) {
+			for (String playerName : states.keySet()) {
+				stash.restore(playerName, states.get(playerName));
+			}
+			this.log("Restored " + states.size() + " stashed player inventories in " + stash.getName() + ".", Level.INFO);
+		}
+	}
+
+	/**
+	 * Forgets the journaled states no stash claimed once every zone is loaded
+	 */
+	public void dropUnclaimedPlayerStates() {
+		for (String stashName : this.journaledPlayerStates.keySet()) {
+			Map<String, byte[]> states = this.journaledPlayerStates.get(stashName);
+			this.log("Dropping " + states.size() + " stashed player inventories of " + stashName + ", which doesn't exist anymore.", Level.WARNING);
+			for (String playerName : states.keySet()) {
+				this.playerStateJournal.remove(stashName, playerName);
+			}
+		}
+		this.journaledPlayerStates.clear();
+	}
+
 	/**
 	 * Cleans up war
 	 */
@@ -284,11 +358,22 @@ public class War extends JavaPlugin {
 			warzone.unload();
 		}
 		this.warzones.clear();
+		this.invalidateLocationIndexes();
 
 		if (this.warHub != null) {
 			this.warHub.getVolume().resetBlocks();
 		}
 
+		this.broadcaster.deliver();
+		this.explosionRollback.rollBack();
+		this.explosionRollback.resetBombs();
+		this.signRefresher.clear();
+		this.disconnected.clear();
+		if (this.playerStateJournal != null) {
+			this.playerStateJournal.close();
+			this.playerStateJournal = null;
+		}
+		this.dataSizeLedger.flush();
 		this.getServer().getScheduler().cancelTasks(this);
 		this.playerListener.purgeLatestPositions();
 
@@ -587,8 +672,8 @@ public class War extends JavaPlugin {
 							updatedMaterials = true;
 						}
 						
-						if (updatedMaterials) {
-							// reset all structures
+						if (updatedMaterials && !warzone.isHibernating()) {
+							// reset all structures, a hibernating zone builds them with the new materials when it wakes up
 							for (Monument monument : warzone.getMonuments()) {
 								monument.getVolume().resetBlocks();
 								monument.addMonumentBlocks();
@@ -855,21 +940,102 @@ public class War extends JavaPlugin {
 
 	public void addWarzone(Warzone zone) {
 		this.warzones.add(zone);
+		this.invalidateLocationIndexes();
+		// states journaled before a restart or crash go back as soon as their zone is there
+		this.restorePlayerStates(zone.getPlayerStates());
+		this.restorePlayerStates(zone.getDeadMenInventories());
+	}
+
+	public void removeWarzone(Warzone zone) {
+		this.warzones.remove(zone);
+		this.invalidateLocationIndexes();
+		for (Team team : zone.getTeams()) {
+			for (Player player : team.getPlayers()) {
+				this.removePlayerTeam(player.getName(), team);
+			}
+		}
+	}
+
+	/**
+	 * @return the team the player is on, in any warzone, or null
+	 */
+	public Team getPlayerTeam(String playerName) {
+		return this.playerTeams.get(playerName);
+	}
+
+	/**
+	 * Notes that the player joined the team. Only Team should call this.
+	 */
+	public void putPlayerTeam(String playerName, Team team) {
+		this.playerTeams.put(playerName, team);
+	}
+
+	/**
+	 * Notes that the player left the team. Only Team should call this.
+	 */
+	public void removePlayerTeam(String playerName, Team team) {
+		if (this.playerTeams.get(playerName) == team) {
+			this.playerTeams.remove(playerName);
+		}
 	}
 
 	public List<Warzone> getWarzones() {
 		return this.warzones;
 	}
 
+	/**
+	 * @return the warzones, filed by the chunks they span
+	 */
+	public VolumeIndex<Warzone> getZoneIndex() {
+		this.refreshLocationIndexes();
+		return this.zoneIndex;
+	}
+
+	/**
+	 * @return the warzone lobbies, filed by the chunks they span
+	 */
+	public VolumeIndex<ZoneLobby> getLobbyIndex() {
+		this.refreshLocationIndexes();
+		return this.lobbyIndex;
+	}
+
+	/**
+	 * Warzones or lobbies were added, removed or replaced, so the location indexes must be rebuilt
+	 */
+	public void invalidateLocationIndexes() {
+		this.zoneIndex.invalidate();
+		this.lobbyIndex.invalidate();
+	}
+
+	private void refreshLocationIndexes() {
+		if (this.zoneIndex.isStale() || this.lobbyIndex.isStale()) {
+			this.zoneIndex.clear();
+			this.lobbyIndex.clear();
+			for (Warzone warzone : this.warzones) {
+				this.zoneIndex.add(warzone.getVolume(), warzone);
+				if (warzone.getLobby() != null) {
+					this.lobbyIndex.add(warzone.getLobby().getVolume(), warzone.getLobby());
+				}
+			}
+		}
+	}
+
 	public void msg(CommandSender sender, String str) {
 		if (sender instanceof Player) {
-			String out = ChatColor.GRAY + "War> " + ChatColor.WHITE + this.colorKnownTokens(str, ChatColor.WHITE) + " ";
-			sender.sendMessage(out);
+			sender.sendMessage(this.formatMsg(str));
 		} else {
 			sender.sendMessage("War> " + str);
 		}
 	}
 
+	/**
+	 * @param String str message-string
+	 * @return the message as players see it in chat
+	 */
+	public String formatMsg(String str) {
+		return ChatColor.GRAY + "War> " + ChatColor.WHITE + this.colorKnownTokens(str, ChatColor.WHITE) + " ";
+	}
+
 	public void badMsg(CommandSender sender, String str) {
 		if (sender instanceof Player) {
 			String out = ChatColor.GRAY + "War> " + ChatColor.RED + this.colorKnownTokens(str, ChatColor.RED) + " ";
@@ -1125,12 +1291,16 @@ public class War extends JavaPlugin {
 		this.loaded = loaded;
 	}
 
-	public HashMap<String, PlayerState> getDisconnected() {
-		return this.disconnected;
+	public DataSizeLedger getDataSizeLedger() {
+		return this.dataSizeLedger;
+	}
+
+	public PlayerStateJournal getPlayerStateJournal() {
+		return this.playerStateJournal;
 	}
 
-	public void setDisconnected(HashMap<String, PlayerState> disconnected) {
-		this.disconnected = disconnected;
+	public PlayerStateStash getDisconnected() {
+		return this.disconnected;
 	}
 
 	public InventoryBag getDefaultInventories() {
@@ -1157,6 +1327,22 @@ public class War extends JavaPlugin {
 		return this.warConfig;
 	}
 
+	public HelmetProtectionTask getHelmetProtection() {
+		return this.helmetProtection;
+	}
+
+	public SignRefresher getSignRefresher() {
+		return this.signRefresher;
+	}
+
+	public Broadcaster getBroadcaster() {
+		return this.broadcaster;
+	}
+
+	public ExplosionRollback getExplosionRollback() {
+		return this.explosionRollback;
+	}
+
 	public SpoutDisplayer getSpoutDisplayer() {
 		return this.spoutMessenger ;
 	}
@@ -1,9 +1,12 @@
 package com.tommytony.war;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 
 import org.bukkit.ChatColor;
@@ -32,6 +35,7 @@ import com.tommytony.war.config.WarzoneConfigBag;
 import com.tommytony.war.job.InitZoneJob;
 import com.tommytony.war.job.LoadoutResetJob;
 import com.tommytony.war.job.ScoreCapReachedJob;
+import com.tommytony.war.job.WakeZoneJob;
 import com.tommytony.war.mapper.LoadoutYmlMapper;
 import com.tommytony.war.spout.SpoutDisplayer;
 import com.tommytony.war.structure.Bomb;
@@ -41,12 +45,15 @@ import com.tommytony.war.structure.HubLobbyMaterials;
 import com.tommytony.war.structure.WarzoneMaterials;
 import com.tommytony.war.structure.ZoneLobby;
 import com.tommytony.war.structure.ZoneWallGuard;
+import com.tommytony.war.structure.ZoneWallOverlay;
 import com.tommytony.war.utility.Direction;
 import com.tommytony.war.utility.LoadoutSelection;
 import com.tommytony.war.utility.PlayerState;
+import com.tommytony.war.utility.PlayerStateStash;
 import com.tommytony.war.utility.PotionEffectHelper;
 import com.tommytony.war.volume.BlockInfo;
 import com.tommytony.war.volume.Volume;
+import com.tommytony.war.volume.VolumeIndex;
 import com.tommytony.war.volume.ZoneVolume;
 
 /**
@@ -55,6 +62,8 @@ import com.tommytony.war.volume.ZoneVolume;
  * @package com.tommytony.war
  */
 public class Warzone {
+	private static final BlockFace[] NEIGHBOUR_FACES = { BlockFace.NORTH, BlockFace.SOUTH, BlockFace.EAST, BlockFace.WEST, BlockFace.UP, BlockFace.DOWN };
+
 	private String name;
 	private ZoneVolume volume;
 	private World world;
@@ -62,6 +71,11 @@ public class Warzone {
 	private final List<Monument> monuments = new ArrayList<Monument>();
 	private final List<Bomb> bombs = new ArrayList<Bomb>();
 	private final List<Cake> cakes = new ArrayList<Cake>();
+	private final VolumeIndex<Object> structureIndex = new VolumeIndex<Object>();	// monument, bomb, cake, spawn and flag volumes
+	private final HashMap<Long, Monument> monumentCenters = new HashMap<Long, Monument>();
+	private final HashMap<Long, Bomb> bombBlocks = new HashMap<Long, Bomb>();
+	private final HashMap<Long, Cake> cakeBlocks = new HashMap<Long, Cake>();
+	private final HashMap<Long, Team> flagBlocks = new HashMap<Long, Team>();
 	private Location teleport;
 	private ZoneLobby lobby;
 	private Location rallyPoint;
@@ -70,12 +84,13 @@ public class Warzone {
 	
 	private final int minSafeDistanceFromWall = 6;
 	private List<ZoneWallGuard> zoneWallGuards = new ArrayList<ZoneWallGuard>();
-	private HashMap<String, PlayerState> playerStates = new HashMap<String, PlayerState>();
+	private final ZoneWallOverlay zoneWallOverlay = new ZoneWallOverlay(this);
+	private final PlayerStateStash playerStates;
 	private HashMap<String, Team> flagThieves = new HashMap<String, Team>();
 	private HashMap<String, Bomb> bombThieves = new HashMap<String, Bomb>();
 	private HashMap<String, Cake> cakeThieves = new HashMap<String, Cake>();
 	private HashMap<String, LoadoutSelection> loadoutSelections = new HashMap<String, LoadoutSelection>();
-	private HashMap<String, PlayerState> deadMenInventories = new HashMap<String, PlayerState>();
+	private final PlayerStateStash deadMenInventories;
 	private final List<Player> respawn = new ArrayList<Player>();
 	private final List<String> reallyDeadFighters = new ArrayList<String>();
 	
@@ -88,11 +103,15 @@ public class Warzone {
 	
 	private boolean isEndOfGame = false;
 	private boolean isReinitializing = false;
+	private boolean isHibernating = false;
+	private long lastActive = System.currentTimeMillis();
 	//private final Object gameEndLock = new Object();
 
 	public Warzone(World world, String name) {
 		this.world = world;
 		this.name = name;
+		this.playerStates = new PlayerStateStash("warzone-" + name);
+		this.deadMenInventories = new PlayerStateStash("warzone-" + name + "-deadmen");
 		this.warzoneConfig = new WarzoneConfigBag(this);
 		this.teamDefaultConfig = new TeamConfigBag();	// don't use ctor with Warzone, as this changes config resolution
 		this.volume = new ZoneVolume(name, this.getWorld(), this);
@@ -123,25 +142,45 @@ public class Warzone {
 	}
 
 	public static Warzone getZoneByLocation(Location location) {
-		for (Warzone warzone : War.war.getWarzones()) {
-			if (location.getWorld().getName().equals(warzone.getWorld().getName()) && warzone.getVolume() != null && warzone.getVolume().contains(location)) {
-				return warzone;
-			}
-		}
-		return null;
+		return War.war.getZoneIndex().get(location);
 	}
 
 	public static Warzone getZoneByLocation(Player player) {
 		return Warzone.getZoneByLocation(player.getLocation());
 	}
 
-	public static Warzone getZoneByPlayerName(String playerName) {
-		for (Warzone warzone : War.war.getWarzones()) {
-			Team team = warzone.getPlayerTeam(playerName);
-			if (team != null) {
-				return warzone;
+	/**
+	 * Notes a changed block in the dirty block journal of the warzone it's in, if any
+	 *
+	 * @param Block block The block that changed
+	 * @param boolean andNeighbours Whether the blocks around it may have dropped or flowed too
+	 */
+	public static void markDirty(Block block, boolean andNeighbours) {
+		VolumeIndex<Warzone> zoneIndex = War.war.getZoneIndex();
+		Warzone warzone = zoneIndex.get(block);
+		if (warzone != null) {
+			if (andNeighbours) {
+				warzone.getVolume().markDirtyAround(block);
+			} else {
+				warzone.getVolume().markDirty(block);
+			}
+		} else if (andNeighbours) {
+			// outside every zone, but it may be up against a zone wall
+			for (BlockFace face : Warzone.NEIGHBOUR_FACES) {
+				Block neighbour = block.getRelative(face);
+				Warzone neighbourZone = zoneIndex.get(neighbour);
+				if (neighbourZone != null) {
+					neighbourZone.getVolume().markDirty(neighbour);
+				}
 			}
 		}
+	}
+
+	public static Warzone getZoneByPlayerName(String playerName) {
+		Team team = War.war.getPlayerTeam(playerName);
+		if (team != null) {
+			return team.getZone();
+		}
 		return null;
 	}
 
@@ -169,12 +208,9 @@ public class Warzone {
 	}
 
 	public Team getPlayerTeam(String playerName) {
-		for (Team team : this.teams) {
-			for (Player player : team.getPlayers()) {
-				if (player.getName().equals(playerName)) {
-					return team;
-				}
-			}
+		Team team = War.war.getPlayerTeam(playerName);
+		if (team != null && team.getZone() == this) {
+			return team;
 		}
 		return null;
 	}
@@ -217,10 +253,8 @@ public class Warzone {
 		if (this.ready()) {
 			if (clearArtifacts) {
 				// removed everything to keep save clean
-				for (ZoneWallGuard guard : this.zoneWallGuards) {
-					guard.deactivate();
-				}
 				this.zoneWallGuards.clear();
+				this.zoneWallOverlay.clear();
 
 				for (Team team : this.teams) {
 					team.getSpawnVolume().resetBlocks();
@@ -277,13 +311,15 @@ public class Warzone {
 			this.initZone();
 			
 			if (War.war.getWarHub() != null) {
-				War.war.getWarHub().resetZoneSign(this);
+				War.war.getSignRefresher().refreshZoneSign(this);
 			}
 		}
 		
 		// Don't forget to reset these to false, or we won't be able to score or empty lifepools anymore
 		this.isReinitializing = false;
 		this.isEndOfGame = false;
+		this.isHibernating = false;
+		this.lastActive = System.currentTimeMillis();
 	}
 
 	public void initializeZoneAsJob(Player respawnExempted) {
@@ -371,7 +407,7 @@ public class Warzone {
 		player.setRemainingAir(300);
 		player.setHealth(20);
 		player.setFoodLevel(20);
-		player.setSaturation(team.getTeamConfig().resolveInt(TeamConfig.SATURATION));
+		player.setSaturation(team.getTeamConfig().getResolved().getInt(TeamConfig.SATURATION));
 		player.setExhaustion(0);
 		player.setFireTicks(0);		//this works fine here, why put it in LoudoutResetJob...? I'll keep it over there though
 		
@@ -399,7 +435,7 @@ public class Warzone {
 		}
 		
 		final LoadoutResetJob job = new LoadoutResetJob(this, team, player, isFirstRespawn, false);
-		if (team.getTeamConfig().resolveInt(TeamConfig.RESPAWNTIMER) == 0 || isFirstRespawn) {
+		if (team.getTeamConfig().getResolved().getInt(TeamConfig.RESPAWNTIMER) == 0 || isFirstRespawn) {
 			job.run();
 		}			
 		else {
@@ -411,7 +447,7 @@ public class Warzone {
 				    respawn.remove(player);
 					War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, job);
 				}
-			}, team.getTeamConfig().resolveInt(TeamConfig.RESPAWNTIMER) * 20L); // 20 ticks = 1 second
+			}, team.getTeamConfig().getResolved().getInt(TeamConfig.RESPAWNTIMER) * 20L); // 20 ticks = 1 second
 		}
 	}
 
@@ -459,27 +495,12 @@ public class Warzone {
 	}
 
 	public boolean isMonumentCenterBlock(Block block) {
-		for (Monument monument : this.monuments) {
-			int x = monument.getLocation().getBlockX();
-			int y = monument.getLocation().getBlockY() + 1;
-			int z = monument.getLocation().getBlockZ();
-			if (x == block.getX() && y == block.getY() && z == block.getZ()) {
-				return true;
-			}
-		}
-		return false;
+		return this.getMonumentFromCenterBlock(block) != null;
 	}
 
 	public Monument getMonumentFromCenterBlock(Block block) {
-		for (Monument monument : this.monuments) {
-			int x = monument.getLocation().getBlockX();
-			int y = monument.getLocation().getBlockY() + 1;
-			int z = monument.getLocation().getBlockZ();
-			if (x == block.getX() && y == block.getY() && z == block.getZ()) {
-				return monument;
-			}
-		}
-		return null;
+		this.refreshStructureIndex();
+		return this.monumentCenters.get(Warzone.blockKey(block));
 	}
 
 	public boolean nearAnyOwnedMonument(Location to, Team team) {
@@ -496,7 +517,7 @@ public class Warzone {
 	}
 
 	public boolean hasPlayerState(String playerName) {
-		return this.playerStates.containsKey(playerName);
+		return this.playerStates.contains(playerName);
 	}
 
 	public void keepPlayerState(Player player) {
@@ -630,27 +651,9 @@ public class Warzone {
 
 	public boolean isImportantBlock(Block block) {
 		if (this.ready()) {
-			for (Monument m : this.monuments) {
-				if (m.getVolume().contains(block)) {
-					return true;
-				}
-			}
-			for (Bomb b : this.bombs) {
-				if (b.getVolume().contains(block)) {
-					return true;
-				}
-			}
-			for (Cake c : this.cakes) {
-				if (c.getVolume().contains(block)) {
-					return true;
-				}
-			}
-			for (Team t : this.teams) {
-				if (t.getSpawnVolume().contains(block)) {
-					return true;
-				} else if (t.getFlagVolume() != null && t.getFlagVolume().contains(block)) {
-					return true;
-				}
+			this.refreshStructureIndex();
+			if (this.structureIndex.get(block) != null) {
+				return true;
 			}
 			if (this.volume.isWallBlock(block)) {
 				return true;
@@ -659,6 +662,60 @@ public class Warzone {
 		return false;
 	}
 
+	/**
+	 * Marks the structure index as out of date. Moving a structure volume does this by
+	 * itself; adding or removing monuments, bombs, cakes or teams, or replacing a team's
+	 * spawn or flag, must call this.
+	 */
+	public void invalidateStructureIndex() {
+		this.structureIndex.invalidate();
+	}
+
+	/**
+	 * Files the structures of the zone by the blocks they take, if anything changed since
+	 * the last lookup
+	 */
+	private void refreshStructureIndex() {
+		if (!this.structureIndex.isStale()) {
+			return;
+		}
+		this.structureIndex.clear();
+		this.monumentCenters.clear();
+		this.bombBlocks.clear();
+		this.cakeBlocks.clear();
+		this.flagBlocks.clear();
+		for (Monument monument : this.monuments) {
+			this.structureIndex.add(monument.getVolume(), monument);
+			this.monumentCenters.put(Warzone.blockKeyAbove(monument.getLocation()), monument);
+		}
+		for (Bomb bomb : this.bombs) {
+			this.structureIndex.add(bomb.getVolume(), bomb);
+			this.bombBlocks.put(Warzone.blockKeyAbove(bomb.getLocation()), bomb);
+		}
+		for (Cake cake : this.cakes) {
+			this.structureIndex.add(cake.getVolume(), cake);
+			this.cakeBlocks.put(Warzone.blockKeyAbove(cake.getLocation()), cake);
+		}
+		for (Team team : this.teams) {
+			this.structureIndex.add(team.getSpawnVolume(), team);
+			this.structureIndex.add(team.getFlagVolume(), team);
+			if (team.getTeamFlag() != null) {
+				this.flagBlocks.put(Warzone.blockKeyAbove(team.getTeamFlag()), team);
+			}
+		}
+	}
+
+	private static Long blockKey(Block block) {
+		return ZoneVolume.packBlock(block.getX(), block.getY(), block.getZ());
+	}
+
+	/**
+	 * @return the key of the block right above the location, where flags, bombs, cakes and monument centers sit
+	 */
+	private static Long blockKeyAbove(Location location) {
+		return ZoneVolume.packBlock(location.getBlockX(), location.getBlockY() + 1, location.getBlockZ());
+	}
+
 	public World getWorld() {
 
 		return this.world;
@@ -674,6 +731,7 @@ public class Warzone {
 
 	public void setVolume(ZoneVolume zoneVolume) {
 		this.volume = zoneVolume;
+		War.war.invalidateLocationIndexes();
 	}
 
 	public Team getTeamByKind(TeamKind kind) {
@@ -686,57 +744,50 @@ public class Warzone {
 	}
 
 	public boolean isNearWall(Location latestPlayerLocation) {
-		if (this.volume.hasTwoCorners()) {
-			if (Math.abs(this.volume.getSoutheastZ() - latestPlayerLocation.getBlockZ()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getSoutheastX() && latestPlayerLocation.getBlockX() >= this.volume.getNorthwestX() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
-				return true; // near east wall
-			} else if (Math.abs(this.volume.getSoutheastX() - latestPlayerLocation.getBlockX()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockZ() <= this.volume.getNorthwestZ() && latestPlayerLocation.getBlockZ() >= this.volume.getSoutheastZ() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
-				return true; // near south wall
-			} else if (Math.abs(this.volume.getNorthwestX() - latestPlayerLocation.getBlockX()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockZ() <= this.volume.getNorthwestZ() && latestPlayerLocation.getBlockZ() >= this.volume.getSoutheastZ() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
-				return true; // near north wall
-			} else if (Math.abs(this.volume.getNorthwestZ() - latestPlayerLocation.getBlockZ()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getSoutheastX() && latestPlayerLocation.getBlockX() >= this.volume.getNorthwestX() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
-				return true; // near west wall
-			} else if (Math.abs(this.volume.getMaxY() - latestPlayerLocation.getBlockY()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getMaxX() && latestPlayerLocation.getBlockX() >= this.volume.getMinX() && latestPlayerLocation.getBlockZ() <= this.volume.getMaxZ() && latestPlayerLocation.getBlockZ() >= this.volume.getMinZ()) {
-				return true; // near up wall
-			} else if (Math.abs(this.volume.getMinY() - latestPlayerLocation.getBlockY()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getMaxX() && latestPlayerLocation.getBlockX() >= this.volume.getMinX() && latestPlayerLocation.getBlockZ() <= this.volume.getMaxZ() && latestPlayerLocation.getBlockZ() >= this.volume.getMinZ()) {
-				return true; // near down wall
-			}
-		}
-		return false;
+		return this.getNearWalls(latestPlayerLocation) != 0;
+	}
+
+	private int getNearWalls(Location latestPlayerLocation) {
+		return this.volume.getNearWalls(latestPlayerLocation.getBlockX(), latestPlayerLocation.getBlockY(), latestPlayerLocation.getBlockZ(), this.minSafeDistanceFromWall);
 	}
 
 	public List<Block> getNearestWallBlocks(Location latestPlayerLocation) {
+		int walls = this.getNearWalls(latestPlayerLocation);
+		if (walls == 0) {
+			return Collections.emptyList();
+		}
 		List<Block> nearestWallBlocks = new ArrayList<Block>();
-		if (Math.abs(this.volume.getSoutheastZ() - latestPlayerLocation.getBlockZ()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getSoutheastX() && latestPlayerLocation.getBlockX() >= this.volume.getNorthwestX() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
+		if ((walls & ZoneVolume.WALL_EAST) != 0) {
 			// near east wall
 			Block eastWallBlock = this.world.getBlockAt(latestPlayerLocation.getBlockX() + 1, latestPlayerLocation.getBlockY() + 1, this.volume.getSoutheastZ());
 			nearestWallBlocks.add(eastWallBlock);
 		}
 
-		if (Math.abs(this.volume.getSoutheastX() - latestPlayerLocation.getBlockX()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockZ() <= this.volume.getNorthwestZ() && latestPlayerLocation.getBlockZ() >= this.volume.getSoutheastZ() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
+		if ((walls & ZoneVolume.WALL_SOUTH) != 0) {
 			// near south wall
 			Block southWallBlock = this.world.getBlockAt(this.volume.getSoutheastX(), latestPlayerLocation.getBlockY() + 1, latestPlayerLocation.getBlockZ());
 			nearestWallBlocks.add(southWallBlock);
 		}
 
-		if (Math.abs(this.volume.getNorthwestX() - latestPlayerLocation.getBlockX()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockZ() <= this.volume.getNorthwestZ() && latestPlayerLocation.getBlockZ() >= this.volume.getSoutheastZ() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
+		if ((walls & ZoneVolume.WALL_NORTH) != 0) {
 			// near north wall
 			Block northWallBlock = this.world.getBlockAt(this.volume.getNorthwestX(), latestPlayerLocation.getBlockY() + 1, latestPlayerLocation.getBlockZ());
 			nearestWallBlocks.add(northWallBlock);
 		}
 
-		if (Math.abs(this.volume.getNorthwestZ() - latestPlayerLocation.getBlockZ()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getSoutheastX() && latestPlayerLocation.getBlockX() >= this.volume.getNorthwestX() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
+		if ((walls & ZoneVolume.WALL_WEST) != 0) {
 			// near west wall
 			Block westWallBlock = this.world.getBlockAt(latestPlayerLocation.getBlockX(), latestPlayerLocation.getBlockY() + 1, this.volume.getNorthwestZ());
 			nearestWallBlocks.add(westWallBlock);
 		}
 
-		if (Math.abs(this.volume.getMaxY() - latestPlayerLocation.getBlockY()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getMaxX() && latestPlayerLocation.getBlockX() >= this.volume.getMinX() && latestPlayerLocation.getBlockZ() <= this.volume.getMaxZ() && latestPlayerLocation.getBlockZ() >= this.volume.getMinZ()) {
+		if ((walls & ZoneVolume.WALL_UP) != 0) {
 			// near up wall
 			Block upWallBlock = this.world.getBlockAt(latestPlayerLocation.getBlockX(), this.volume.getMaxY(), latestPlayerLocation.getBlockZ());
 			nearestWallBlocks.add(upWallBlock);
 		}
 
-		if (Math.abs(this.volume.getMinY() - latestPlayerLocation.getBlockY()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getMaxX() && latestPlayerLocation.getBlockX() >= this.volume.getMinX() && latestPlayerLocation.getBlockZ() <= this.volume.getMaxZ() && latestPlayerLocation.getBlockZ() >= this.volume.getMinZ()) {
+		if ((walls & ZoneVolume.WALL_DOWN) != 0) {
 			// near down wall
 			Block downWallBlock = this.world.getBlockAt(latestPlayerLocation.getBlockX(), this.volume.getMinY(), latestPlayerLocation.getBlockZ());
 			nearestWallBlocks.add(downWallBlock);
@@ -746,37 +797,53 @@ public class Warzone {
 	}
 
 	public List<BlockFace> getNearestWalls(Location latestPlayerLocation) {
-		List<BlockFace> walls = new ArrayList<BlockFace>();
-		if (Math.abs(this.volume.getSoutheastZ() - latestPlayerLocation.getBlockZ()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getSoutheastX() && latestPlayerLocation.getBlockX() >= this.volume.getNorthwestX() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
-			// near east wall
-			walls.add(Direction.EAST());
+		int walls = this.getNearWalls(latestPlayerLocation);
+		if (walls == 0) {
+			return Collections.emptyList();
 		}
-
-		if (Math.abs(this.volume.getSoutheastX() - latestPlayerLocation.getBlockX()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockZ() <= this.volume.getNorthwestZ() && latestPlayerLocation.getBlockZ() >= this.volume.getSoutheastZ() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
-			// near south wall
-			walls.add(Direction.SOUTH());
+		List<BlockFace> nearestWalls = new ArrayList<BlockFace>();
+		if ((walls & ZoneVolume.WALL_EAST) != 0) {
+			nearestWalls.add(Direction.EAST());
 		}
-
-		if (Math.abs(this.volume.getNorthwestX() - latestPlayerLocation.getBlockX()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockZ() <= this.volume.getNorthwestZ() && latestPlayerLocation.getBlockZ() >= this.volume.getSoutheastZ() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
-			// near north wall
-			walls.add(Direction.NORTH());
+		if ((walls & ZoneVolume.WALL_SOUTH) != 0) {
+			nearestWalls.add(Direction.SOUTH());
 		}
-
-		if (Math.abs(this.volume.getNorthwestZ() - latestPlayerLocation.getBlockZ()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getSoutheastX() && latestPlayerLocation.getBlockX() >= this.volume.getNorthwestX() && latestPlayerLocation.getBlockY() >= this.volume.getMinY() && latestPlayerLocation.getBlockY() <= this.volume.getMaxY()) {
-			// near west wall
-			walls.add(Direction.WEST());
+		if ((walls & ZoneVolume.WALL_NORTH) != 0) {
+			nearestWalls.add(Direction.NORTH());
 		}
-
-		if (Math.abs(this.volume.getMaxY() - latestPlayerLocation.getBlockY()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getMaxX() && latestPlayerLocation.getBlockX() >= this.volume.getMinX() && latestPlayerLocation.getBlockZ() <= this.volume.getMaxZ() && latestPlayerLocation.getBlockZ() >= this.volume.getMinZ()) {
-			// near up wall
-			walls.add(BlockFace.UP);
+		if ((walls & ZoneVolume.WALL_WEST) != 0) {
+			nearestWalls.add(Direction.WEST());
+		}
+		if ((walls & ZoneVolume.WALL_UP) != 0) {
+			nearestWalls.add(BlockFace.UP);
 		}
+		if ((walls & ZoneVolume.WALL_DOWN) != 0) {
+			nearestWalls.add(BlockFace.DOWN);
+		}
+		return nearestWalls;
+	}
 
-		if (Math.abs(this.volume.getMinY() - latestPlayerLocation.getBlockY()) < this.minSafeDistanceFromWall && latestPlayerLocation.getBlockX() <= this.volume.getMaxX() && latestPlayerLocation.getBlockX() >= this.volume.getMinX() && latestPlayerLocation.getBlockZ() <= this.volume.getMaxZ() && latestPlayerLocation.getBlockZ() >= this.volume.getMinZ()) {
-			// near down wall
-			walls.add(BlockFace.DOWN);
+	/**
+	 * Notifies the players of all teams, delivered with the other news of this tick
+	 *
+	 * @param String message The message, uncolored
+	 */
+	public void broadcast(String message) {
+		List<Player> players = new ArrayList<Player>();
+		Set<String> recipients = new HashSet<String>();
+		for (Team team : this.teams) {
+			for (Player player : team.getPlayers()) {
+				// each player gets the message once, whatever team lists they show up in
+				if (recipients.add(player.getName())) {
+					players.add(player);
+				}
+			}
 		}
-		return walls;
+		War.war.getBroadcaster().send(players, message, true);
+	}
+
+	public ZoneWallOverlay getZoneWallOverlay() {
+		return this.zoneWallOverlay;
 	}
 
 	public ZoneWallGuard getPlayerZoneWallGuard(String name, BlockFace wall) {
@@ -823,6 +890,7 @@ public class Warzone {
 
 	public void setLobby(ZoneLobby lobby) {
 		this.lobby = lobby;
+		War.war.invalidateLocationIndexes();
 	}
 
 	public ZoneLobby getLobby() {
@@ -844,9 +912,7 @@ public class Warzone {
 			}
 			War.war.msg(player, "Your inventory is in storage until you use '/war leave'.");
 			this.respawnPlayer(lowestNoOfPlayers, player);
-			for (Team team : this.teams) {
-				team.teamcast("" + player.getName() + " joined team " + lowestNoOfPlayers.getName() + ".");
-			}
+			this.broadcast("" + player.getName() + " joined team " + lowestNoOfPlayers.getName() + ".");
 		}
 		return lowestNoOfPlayers;
 	}
@@ -912,9 +978,7 @@ public class Warzone {
 					}
 					
 					if (!scores.equals("")) {
-						for (Team t : teams) {
-							t.teamcast("New scores - " + scores);
-						}
+						this.broadcast("New scores - " + scores);
 					}
 					
 					// detect score cap
@@ -935,9 +999,7 @@ public class Warzone {
 						this.handleScoreCapReached(winnersStr);
 					} else {
 						// A new battle starts. Reset the zone but not the teams.
-						for (Team t : teams) {
-							t.teamcast("A new battle begins. Resetting warzone...");
-						}
+						this.broadcast("A new battle begins. Resetting warzone...");
 						
 						this.reinitialize();
 					}
@@ -965,9 +1027,7 @@ public class Warzone {
 						}
 					}
 					
-					for (Team t : this.getTeams()) {
-						t.teamcast(player.getName() + " died and dropped team " + victim.getName() + "'s flag.");
-					}
+					this.broadcast(player.getName() + " died and dropped team " + victim.getName() + "'s flag.");
 				}
 				
 				// Bomb thieves
@@ -1026,19 +1086,115 @@ public class Warzone {
 				
 				// Lifepool empty warning
 				if (remaining - 1 == 0) {
-					for (Team t : this.getTeams()) {
-						t.teamcast("Team " + playerTeam.getName() + "'s life pool is empty. One more death and they lose the battle!");
-					}
+					this.broadcast("Team " + playerTeam.getName() + "'s life pool is empty. One more death and they lose the battle!");
 				}
 			}
 			playerTeam.resetSign();
 		}
 	}
 
+	/**
+	 * Puts the zone to sleep if nobody played in it for the given time. A hibernating
+	 * zone lets go of the saved blocks of its structures and of its last save. The
+	 * structure blocks are read back from disk, off the main thread, when the zone wakes up.
+	 *
+	 * @param long idleMillis How long the zone must have been empty
+	 * @return whether the zone went to sleep
+	 */
+	public boolean hibernateIfIdle(long idleMillis) {
+		if (this.isHibernating) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		boolean hasPlayers = false;
+		for (Team team : this.teams) {
+			if (!team.getPlayers().isEmpty()) {
+				hasPlayers = true;
+				break;
+			}
+		}
+		if (hasPlayers || this.isReinitializing || this.volume == null || this.volume.isResetting()) {
+			this.lastActive = now;
+			return false;
+		}
+		if (now - this.lastActive < idleMillis) {
+			return false;
+		}
+
+		this.volume.releaseBlocks(this.name);
+		for (Volume structureVolume : this.getStructureVolumes()) {
+			structureVolume.releaseBlocks(this.name);
+		}
+		this.zoneWallGuards.clear();
+		this.zoneWallOverlay.clear();
+		this.isHibernating = true;
+		War.war.log("Warzone " + this.name + " is hibernating.", Level.INFO);
+		if (War.war.getWarHub() != null) {
+			War.war.getSignRefresher().refreshZoneSign(this);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the volumes of the monuments, bombs, cakes, spawns and flags of the zone
+	 */
+	public List<Volume> getStructureVolumes() {
+		List<Volume> volumes = new ArrayList<Volume>();
+		for (Monument monument : this.monuments) {
+			volumes.add(monument.getVolume());
+		}
+		for (Bomb bomb : this.bombs) {
+			volumes.add(bomb.getVolume());
+		}
+		for (Cake cake : this.cakes) {
+			volumes.add(cake.getVolume());
+		}
+		for (Team team : this.teams) {
+			if (team.getSpawnVolume() != null) {
+				volumes.add(team.getSpawnVolume());
+			}
+			if (team.getFlagVolume() != null) {
+				volumes.add(team.getFlagVolume());
+			}
+		}
+		return volumes;
+	}
+
+	/**
+	 * Reads back the blocks of a hibernating zone in the background, then resets and
+	 * initializes it, for the players about to join it. Players can't join until then.
+	 */
+	public void wake() {
+		if (this.isHibernating && !this.isReinitializing) {
+			War.war.log("Waking up warzone " + this.name + "...", Level.INFO);
+			// isReinitializing stays on until the zone is reset and initialized
+			this.isReinitializing = true;
+			new WakeZoneJob(this).start();
+		}
+	}
+
+	public boolean isHibernating() {
+		return this.isHibernating;
+	}
+
+	private boolean hasReleasedBlocks() {
+		for (Volume structureVolume : this.getStructureVolumes()) {
+			if (structureVolume.getReleasedFrom() != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public void reinitialize() {
+		if (this.hasReleasedBlocks()) {
+			// the structures are reset along with the zone once their blocks are read back
+			this.wake();
+			return;
+		}
 		this.isReinitializing = true;
-		this.getVolume().resetBlocksAsJob();
-		this.initializeZoneAsJob();
+		// isReinitializing stays on until the last slice of the reset is done and the zone gets initialized
+		this.getVolume().resetBlocksAsJob(new InitZoneJob(this));
 	}
 
 	public void handlePlayerLeave(Player player, Location destination, PlayerMoveEvent event, boolean removeFromTeam) {
@@ -1057,9 +1213,7 @@ public class Warzone {
 			if (removeFromTeam) {
 				playerTeam.removePlayer(player.getName());
 			}
-			for (Team t : this.getTeams()) {
-				t.teamcast(playerTeam.getKind().getColor() + player.getName() + ChatColor.WHITE + " left the zone.");
-			}
+			this.broadcast(playerTeam.getKind().getColor() + player.getName() + ChatColor.WHITE + " left the zone.");
 			playerTeam.resetSign();
 			
 			if (this.getLobby() != null) {
@@ -1082,7 +1236,7 @@ public class Warzone {
 			
 			War.war.msg(player, "Your inventory is being restored.");
 			if (War.war.getWarHub() != null) {
-				War.war.getWarHub().resetZoneSign(this);
+				War.war.getSignRefresher().refreshZoneSign(this);
 			}
 
 			boolean zoneEmpty = true;
@@ -1098,74 +1252,43 @@ public class Warzone {
 					team.resetPoints();
 					team.setRemainingLives(team.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL));
 				}
-				this.getVolume().resetBlocksAsJob();
-				this.initializeZoneAsJob();
+				this.isReinitializing = true;
+				this.getVolume().resetBlocksAsJob(new InitZoneJob(this));
 				War.war.log("Last player left warzone " + this.getName() + ". Warzone blocks resetting automatically...", Level.INFO);
 			}
 		}
 	}
 
 	public boolean isEnemyTeamFlagBlock(Team playerTeam, Block block) {
-		for (Team team : this.teams) {
-			if (!team.getName().equals(playerTeam.getName()) && team.isTeamFlagBlock(block)) {
-				return true;
-			}
-		}
-		return false;
+		Team team = this.getTeamForFlagBlock(block);
+		return team != null && !team.getName().equals(playerTeam.getName());
 	}
 	
 	public boolean isFlagBlock(Block block) {
-		for (Team team : this.teams) {
-			if (team.isTeamFlagBlock(block)) {
-				return true;
-			}
-		}
-		return false;
+		return this.getTeamForFlagBlock(block) != null;
 	}
 
 	public Team getTeamForFlagBlock(Block block) {
-		for (Team team : this.teams) {
-			if (team.isTeamFlagBlock(block)) {
-				return team;
-			}
-		}
-		return null;
+		this.refreshStructureIndex();
+		return this.flagBlocks.get(Warzone.blockKey(block));
 	}
 	
 	public boolean isBombBlock(Block block) {
-		for (Bomb bomb : this.bombs) {
-			if (bomb.isBombBlock(block.getLocation())) {
-				return true;
-			}
-		}
-		return false;
+		return this.getBombForBlock(block) != null;
 	}
 
 	public Bomb getBombForBlock(Block block) {
-		for (Bomb bomb : this.bombs) {
-			if (bomb.isBombBlock(block.getLocation())) {
-				return bomb;
-			}
-		}
-		return null;
+		this.refreshStructureIndex();
+		return this.bombBlocks.get(Warzone.blockKey(block));
 	}
 	
 	public boolean isCakeBlock(Block block) {
-		for (Cake cake : this.cakes) {
-			if (cake.isCakeBlock(block.getLocation())) {
-				return true;
-			}
-		}
-		return false;
+		return this.getCakeForBlock(block) != null;
 	}
 
 	public Cake getCakeForBlock(Block block) {
-		for (Cake cake : this.cakes) {
-			if (cake.isCakeBlock(block.getLocation())) {
-				return cake;
-			}
-		}
-		return null;
+		this.refreshStructureIndex();
+		return this.cakeBlocks.get(Warzone.blockKey(block));
 	}
 
 	// Flags
@@ -1252,7 +1375,7 @@ public class Warzone {
 	}
 
 	public boolean isDeadMan(String playerName) {
-		if (this.deadMenInventories.containsKey(playerName)) {
+		if (this.deadMenInventories.contains(playerName)) {
 			return true;
 		}
 		return false;
@@ -1260,8 +1383,10 @@ public class Warzone {
 
 	public void restoreDeadmanInventory(Player player) {
 		if (this.isDeadMan(player.getName())) {
-			this.playerInvFromInventoryStash(player.getInventory(), this.deadMenInventories.get(player.getName()));
-			this.deadMenInventories.remove(player.getName());
+			PlayerState deadManState = this.deadMenInventories.remove(player.getName());
+			if (deadManState != null) {
+				this.playerInvFromInventoryStash(player.getInventory(), deadManState);
+			}
 		}
 	}
 
@@ -1279,14 +1404,19 @@ public class Warzone {
 			for (Player player : team.getPlayers()) {
 				this.handlePlayerLeave(player, this.getTeleport(), false);
 			}
-			team.getPlayers().clear();
+			team.clearPlayers();
 		}
+		this.playerStates.clear();
+		this.deadMenInventories.clear();
+		this.zoneWallGuards.clear();
+		this.zoneWallOverlay.clear();
 		if (this.getLobby() != null) {
 			this.getLobby().getVolume().resetBlocks();
 		}
 		if (this.getWarzoneConfig().getBoolean(WarzoneConfig.RESETONUNLOAD)) {
 			this.getVolume().resetBlocks();
 		}
+		this.getVolume().finishSave();
 	}
 
 	public boolean isEnoughPlayers() {
@@ -1381,6 +1511,14 @@ public class Warzone {
 		return playerItems;
 	}
 
+	public PlayerStateStash getPlayerStates() {
+		return this.playerStates;
+	}
+
+	public PlayerStateStash getDeadMenInventories() {
+		return this.deadMenInventories;
+	}
+
 	public WarzoneConfigBag getWarzoneConfig() {
 		return this.warzoneConfig;
 	}
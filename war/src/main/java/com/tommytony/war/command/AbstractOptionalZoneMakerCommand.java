@@ -57,4 +57,19 @@ public abstract class AbstractOptionalZoneMakerCommand extends AbstractWarComman
 			return true;
 		}
 	}
+
+	/**
+	 * Wakes the zone if it is hibernating, its structures can't be changed until then
+	 *
+	 * @param Warzone zone Zone about to be changed
+	 * @return whether the zone is awake
+	 */
+	public boolean isZoneAwake(Warzone zone) {
+		if (zone.isHibernating()) {
+			zone.wake();
+			this.badMsg("Warzone " + zone.getName() + " is waking up. Try again in a moment.");
+			return false;
+		}
+		return true;
+	}
 }
@@ -0,0 +1,62 @@
+package com.tommytony.war.command;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import com.tommytony.war.Warzone;
+import com.tommytony.war.structure.ZoneLobby;
+
+/**
+ * Represents a command working on the old versions of a warzone. The zone name is
+ * optional when standing in the warzone or its lobby.
+ *
+ * @author tommytony
+ */
+public abstract class AbstractZoneVersionCommand extends AbstractZoneMakerCommand {
+
+	public AbstractZoneVersionCommand(WarCommandHandler handler, CommandSender sender, String[] args) throws NotZoneMakerException {
+		super(handler, sender, args);
+	}
+
+	/**
+	 * Finds the zone named in the first argument, which is then dropped from the
+	 * arguments, or else the zone the player is standing in
+	 *
+	 * @return the zone, or null
+	 */
+	protected Warzone findZone() {
+		if (this.args.length > 0) {
+			Warzone zoneByName = Warzone.getZoneByName(this.args[0]);
+			if (zoneByName != null) {
+				String[] newargs = new String[this.args.length - 1];
+				for (int i = 1; i < this.args.length; i++) {
+					newargs[i - 1] = this.args[i];
+				}
+				this.args = newargs;
+				return zoneByName;
+			}
+		}
+		if (!(this.getSender() instanceof Player)) {
+			return null;
+		}
+		Warzone zone = Warzone.getZoneByLocation((Player) this.getSender());
+		if (zone == null) {
+			ZoneLobby lobby = ZoneLobby.getLobbyByLocation((Player) this.getSender());
+			if (lobby != null) {
+				zone = lobby.getZone();
+			}
+		}
+		return zone;
+	}
+
+	/**
+	 * @return the argument as a number, or -1 if it isn't one
+	 */
+	protected int parseNumber(String arg) {
+		try {
+			return Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -51,12 +51,15 @@ public class DeleteBombCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 
 		Bomb bomb = zone.getBomb(this.args[0]);
 		if (bomb != null) {
 			bomb.getVolume().resetBlocks();
 			zone.getBombs().remove(bomb);
+			zone.invalidateStructureIndex();
 			WarzoneYmlMapper.save(zone);
 			this.msg("Bomb " + bomb.getName() + " removed.");
 			War.war.log(this.getSender().getName() + " deleted bomb " + bomb.getName() + " in warzone " + zone.getName(), Level.INFO);
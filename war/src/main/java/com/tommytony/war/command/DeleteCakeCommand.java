@@ -51,12 +51,15 @@ public class DeleteCakeCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 
 		Cake cake = zone.getCake(this.args[0]);
 		if (cake != null) {
 			cake.getVolume().resetBlocks();
 			zone.getCakes().remove(cake);
+			zone.invalidateStructureIndex();
 			WarzoneYmlMapper.save(zone);
 			this.msg("Cake " + cake.getName() + " removed.");
 			War.war.log(this.getSender().getName() + " deleted cake " + cake.getName() + " in warzone " + zone.getName(), Level.INFO);
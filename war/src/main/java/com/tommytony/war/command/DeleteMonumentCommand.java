@@ -51,12 +51,15 @@ public class DeleteMonumentCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 
 		Monument monument = zone.getMonument(this.args[0]);
 		if (monument != null) {
 			monument.getVolume().resetBlocks();
 			zone.getMonuments().remove(monument);
+			zone.invalidateStructureIndex();
 			WarzoneYmlMapper.save(zone);
 			this.msg("Monument " + monument.getName() + " removed.");
 			War.war.log(this.getSender().getName() + " deleted monument " + monument.getName() + " in warzone " + zone.getName(), Level.INFO);
@@ -52,6 +52,8 @@ public class DeleteTeamCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 
 		Team team = zone.getTeamByKind(TeamKind.teamKindFromString(this.args[0]));
@@ -60,7 +62,9 @@ public class DeleteTeamCommand extends AbstractZoneMakerCommand {
 				team.getFlagVolume().resetBlocks();
 			}
 			team.getSpawnVolume().resetBlocks();
+			team.clearPlayers();
 			zone.getTeams().remove(team);
+			zone.invalidateStructureIndex();
 			if (zone.getLobby() != null) {
 				zone.getLobby().setLocation(zone.getTeleport());
 				zone.getLobby().initialize();
@@ -51,6 +51,8 @@ public class DeleteTeamFlagCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 
 		Team teamFlagTeam = null;
@@ -49,7 +49,7 @@ public class DeleteZoneCommand extends AbstractZoneMakerCommand {
 			return true;
 		}
 
-		War.war.getWarzones().remove(zone);
+		War.war.removeWarzone(zone);
 		WarYmlMapper.save();
 		
 		WarzoneYmlMapper.delete(zone);
@@ -0,0 +1,70 @@
+package com.tommytony.war.command;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+
+import com.tommytony.war.Warzone;
+import com.tommytony.war.utility.ZoneVersionStore;
+import com.tommytony.war.utility.ZoneVersionStore.Version;
+
+/**
+ * Tells which files of a warzone changed between two old versions, or between an old
+ * version and the zone as it is saved now.
+ *
+ * @author tommytony
+ */
+public class DiffZoneVersionCommand extends AbstractZoneVersionCommand {
+	public DiffZoneVersionCommand(WarCommandHandler handler, CommandSender sender, String[] args) throws NotZoneMakerException {
+		super(handler, sender, args);
+	}
+
+	@Override
+	public boolean handle() {
+		Warzone zone = this.findZone();
+		if (zone == null || this.args.length < 1 || this.args.length > 2) {
+			return false;
+		} else if (!this.isSenderAuthorOfZone(zone)) {
+			return true;
+		}
+
+		ZoneVersionStore store = new ZoneVersionStore(zone.getName());
+		Version from = store.get(this.parseNumber(this.args[0]));
+		if (from == null) {
+			this.badMsg("No such version: " + this.args[0] + ".");
+			return true;
+		}
+		Version to;
+		String toName;
+		if (this.args.length == 2) {
+			to = store.get(this.parseNumber(this.args[1]));
+			if (to == null) {
+				this.badMsg("No such version: " + this.args[1] + ".");
+				return true;
+			}
+			toName = "version " + to.getNumber();
+		} else {
+			zone.getVolume().finishSave();
+			try {
+				to = store.current();
+			} catch (IOException e) {
+				this.badMsg("Failed to read the files of warzone " + zone.getName() + ": " + e.getMessage());
+				return true;
+			}
+			toName = "the current version";
+		}
+
+		List<String> changes = ZoneVersionStore.diff(from, to);
+		if (changes.isEmpty()) {
+			this.msg("Version " + from.getNumber() + " and " + toName + " of warzone " + zone.getName() + " are the same.");
+		} else {
+			StringBuilder message = new StringBuilder("From version " + from.getNumber() + " to " + toName + " of warzone " + zone.getName() + ":");
+			for (String change : changes) {
+				message.append(" " + change + ".");
+			}
+			this.msg(message.toString());
+		}
+		return true;
+	}
+}
@@ -80,8 +80,11 @@ public class JoinCommand extends AbstractWarCommand {
 		}
 
 		// join new team
+		zone.wake();
 		if (zone.getWarzoneConfig().getBoolean(WarzoneConfig.DISABLED)) {
 			this.msg("This warzone is disabled.");
+		} else if (zone.isReinitializing()) {
+			this.msg("Warzone " + zone.getName() + " is being reset (" + zone.getVolume().getResetProgress() + "%). Try again in a moment.");
 		} else {
 			List<Team> teams = zone.getTeams();
 			boolean foundTeam = false;
@@ -96,7 +99,7 @@ public class JoinCommand extends AbstractWarCommand {
 						team.resetSign();
 						zone.respawnPlayer(team, player);
 						if (War.war.getWarHub() != null) {
-							War.war.getWarHub().resetZoneSign(zone);
+							War.war.getSignRefresher().refreshZoneSign(zone);
 						}
 						foundTeam = true;
 					} else {
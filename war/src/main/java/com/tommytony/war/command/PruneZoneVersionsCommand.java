@@ -0,0 +1,41 @@
+package com.tommytony.war.command;
+
+import java.util.logging.Level;
+
+import org.bukkit.command.CommandSender;
+
+import com.tommytony.war.War;
+import com.tommytony.war.Warzone;
+import com.tommytony.war.utility.ZoneVersionStore;
+
+/**
+ * Deletes the oldest versions of a warzone, keeping the given number of newer ones.
+ *
+ * @author tommytony
+ */
+public class PruneZoneVersionsCommand extends AbstractZoneVersionCommand {
+	public PruneZoneVersionsCommand(WarCommandHandler handler, CommandSender sender, String[] args) throws NotZoneMakerException {
+		super(handler, sender, args);
+	}
+
+	@Override
+	public boolean handle() {
+		Warzone zone = this.findZone();
+		if (zone == null || this.args.length != 1) {
+			return false;
+		} else if (!this.isSenderAuthorOfZone(zone)) {
+			return true;
+		}
+
+		int keep = this.parseNumber(this.args[0]);
+		if (keep < 0) {
+			return false;
+		}
+		int deleted = new ZoneVersionStore(zone.getName()).prune(keep);
+		this.msg("Deleted " + deleted + " old versions of warzone " + zone.getName() + ".");
+		if (deleted > 0) {
+			War.war.log(this.getSender().getName() + " deleted " + deleted + " old versions of warzone " + zone.getName(), Level.INFO);
+		}
+		return true;
+	}
+}
@@ -12,6 +12,7 @@ import com.tommytony.war.config.WarzoneConfig;
 import com.tommytony.war.mapper.WarYmlMapper;
 import com.tommytony.war.mapper.WarzoneYmlMapper;
 import com.tommytony.war.structure.ZoneLobby;
+import com.tommytony.war.utility.DataSizeLedger;
 
 public class RenameZoneCommand extends AbstractZoneMakerCommand {
 	public RenameZoneCommand(WarCommandHandler handler, CommandSender sender, String[] args) throws NotZoneMakerException {
@@ -45,6 +46,8 @@ public class RenameZoneCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 		
 		// Kill old warzone, but use it to create the renamed copy
@@ -57,10 +60,11 @@ public class RenameZoneCommand extends AbstractZoneMakerCommand {
 		// Update the name
 		zone.setName(newName);
 		zone.saveState(false); // Save new volume files. Don't clear anything, we already unloaded.
+		zone.getVolume().finishSave(); // the files get moved around below
 		WarzoneYmlMapper.save(zone);	// Save new config files for warzone.
 				
 		// Get rid of old unloaded zone instance
-		War.war.getWarzones().remove(zone);
+		War.war.removeWarzone(zone);
 				
 		// Move old files
 		(new File(War.war.getDataFolder().getPath() + "/temp/renamed/")).mkdir();
@@ -70,15 +74,20 @@ public class RenameZoneCommand extends AbstractZoneMakerCommand {
 		String oldPath = War.war.getDataFolder().getPath() + "/dat/warzone-" + oldName + "/";
 		File oldZoneFolder = new File(oldPath);
 		File[] oldZoneFiles = oldZoneFolder.listFiles();
+		long movedBytes = 0;
 		for (File file : oldZoneFiles) {
-			file.renameTo(new File(War.war.getDataFolder().getPath() + "/temp/renamed/dat/warzone-" + oldName + "/" + file.getName()));
+			long length = file.length();
+			if (file.renameTo(new File(War.war.getDataFolder().getPath() + "/temp/renamed/dat/warzone-" + oldName + "/" + file.getName()))) {
+				movedBytes += length;
+			}
 		}
 		oldZoneFolder.delete();
+		War.war.getDataSizeLedger().moved(DataSizeLedger.DAT, DataSizeLedger.TEMP, movedBytes);
 
 		// Load new warzone
 		War.war.log("Loading zone " + newName + "...", Level.INFO);
 		Warzone newZone = WarzoneYmlMapper.load(newName, false);
-		War.war.getWarzones().add(newZone);
+		War.war.addWarzone(newZone);
 		newZone.getVolume().loadCorners();
 		
 		zone.getVolume().loadCorners();
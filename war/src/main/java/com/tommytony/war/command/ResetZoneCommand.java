@@ -52,7 +52,7 @@ public class ResetZoneCommand extends AbstractZoneMakerCommand {
 				War.war.msg(p, "You have left the warzone. Your inventory is being restored.");
 			}
 			team.resetPoints();
-			team.getPlayers().clear();
+			team.clearPlayers();
 		}
 
 		this.msg("Reloading warzone " + zone.getName() + ".");
@@ -0,0 +1,99 @@
+package com.tommytony.war.command;
+
+import java.io.IOException;
+import java.util.logging.Level;
+
+import org.bukkit.command.CommandSender;
+
+import com.tommytony.war.War;
+import com.tommytony.war.Warzone;
+import com.tommytony.war.config.WarConfig;
+import com.tommytony.war.mapper.WarzoneYmlMapper;
+import com.tommytony.war.utility.ZoneVersionStore;
+import com.tommytony.war.utility.ZoneVersionStore.Version;
+
+/**
+ * Brings a warzone back to one of its old versions. Everyone is sent out of the zone,
+ * which is then loaded again from the restored files and reset.
+ *
+ * @author tommytony
+ */
+public class RestoreZoneVersionCommand extends AbstractZoneVersionCommand {
+	public RestoreZoneVersionCommand(WarCommandHandler handler, CommandSender sender, String[] args) throws NotZoneMakerException {
+		super(handler, sender, args);
+	}
+
+	@Override
+	public boolean handle() {
+		Warzone zone = this.findZone();
+		if (zone == null || this.args.length != 1) {
+			return false;
+		} else if (!this.isSenderAuthorOfZone(zone)) {
+			return true;
+		}
+
+		ZoneVersionStore store = new ZoneVersionStore(zone.getName());
+		Version version = store.get(this.parseNumber(this.args[0]));
+		if (version == null) {
+			this.badMsg("No such version: " + this.args[0] + ".");
+			return true;
+		}
+
+		zone.getVolume().finishSave();
+		if (War.war.getWarConfig().getBoolean(WarConfig.KEEPOLDZONEVERSIONS)) {
+			// the version being replaced can be brought back too
+			try {
+				Version kept = store.save(this.getSender().getName());
+				this.msg("Kept the current files of warzone " + zone.getName() + " as version " + kept.getNumber() + ".");
+			} catch (IOException e) {
+				this.badMsg("Failed to keep the current files of warzone " + zone.getName() + ", not restoring: " + e.getMessage());
+				return true;
+			}
+		}
+
+		String name = zone.getName();
+		zone.unload();
+		War.war.removeWarzone(zone);
+		try {
+			store.restore(version);
+		} catch (IOException e) {
+			War.war.log("Failed to restore version " + version.getNumber() + " of warzone " + name + ": " + e.getMessage(), Level.WARNING);
+			this.badMsg("Failed to restore version " + version.getNumber() + " of warzone " + name + ", loading it back as it was: " + e.getMessage());
+			this.load(name);
+			return true;
+		}
+		if (!this.load(name)) {
+			this.badMsg("Failed to load warzone " + name + " after restoring it.");
+			return true;
+		}
+
+		this.msg("Restoring version " + version.getNumber() + " of warzone " + name + ".");
+		War.war.log(this.getSender().getName() + " restored version " + version.getNumber() + " of warzone " + name, Level.INFO);
+		return true;
+	}
+
+	/**
+	 * Loads the zone from its files and resets it, along with the warhub
+	 *
+	 * @param String name Zone to load
+	 * @return whether the zone could be loaded
+	 */
+	private boolean load(String name) {
+		Warzone zone = WarzoneYmlMapper.load(name, true);
+		if (zone == null) {
+			return false;
+		}
+		War.war.addWarzone(zone);
+		zone.getVolume().loadCorners();
+		if (zone.getLobby() != null) {
+			zone.getLobby().getVolume().resetBlocks();
+		}
+		zone.reinitialize();
+
+		if (War.war.getWarHub() != null) { // the zone may have moved or been disabled
+			War.war.getWarHub().getVolume().resetBlocks();
+			War.war.getWarHub().initialize();
+		}
+		return true;
+	}
+}
@@ -1,12 +1,6 @@
 package com.tommytony.war.command;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.logging.Level;
 
 import org.bukkit.command.CommandSender;
@@ -17,6 +11,7 @@ import com.tommytony.war.Warzone;
 import com.tommytony.war.config.WarConfig;
 import com.tommytony.war.mapper.WarzoneYmlMapper;
 import com.tommytony.war.structure.ZoneLobby;
+import com.tommytony.war.utility.ZoneVersionStore;
 
 public class SaveZoneCommand extends AbstractZoneMakerCommand {
 
@@ -57,6 +52,8 @@ public class SaveZoneCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 
 		if (isFirstParamWarzone) {
@@ -72,35 +69,15 @@ public class SaveZoneCommand extends AbstractZoneMakerCommand {
 
 		// We have a warzone and indexed-from-0 arguments
 		if (War.war.getWarConfig().getBoolean(WarConfig.KEEPOLDZONEVERSIONS)) {
-			// Keep a copy of the old version, just in case. First, find the version number
-			File oldVersionsFolder = new File(War.war.getDataFolder().getPath() + "/temp/oldversions/warzone-" + zone.getName());
-			oldVersionsFolder.mkdirs();
-			
-			File[] versionFolders = oldVersionsFolder.listFiles();
-			int newVersion = versionFolders.length + 1;
-						
-			SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss"); 
-			String newVersionString = format.format(new Date()) + "-" + newVersion;
-			String newVersionPath = War.war.getDataFolder().getPath() + "/temp/oldversions/warzone-" + zone.getName() + "/" + newVersionString;
-			File newVersionFolder = new File(newVersionPath);
-			newVersionFolder.mkdir();
-			
-			// Copy all warzone files to new version folder before they get overwritten
+			// Keep a copy of the old version, just in case
+			zone.getVolume().finishSave();
+			int currentVersion = 1;
 			try {
-				copyFile(new File(War.war.getDataFolder().getPath() + "/warzone-" + zone.getName() + ".yml"), new File(newVersionPath + "/warzone-" + zone.getName() + ".yml"));
-				(new File(newVersionPath + "/dat/warzone-" + zone.getName())).mkdirs();
-				String oldPath = War.war.getDataFolder().getPath() + "/dat/warzone-" + zone.getName() + "/";
-				File currentZoneFolder = new File(oldPath);
-				
-				File[] currentZoneFiles = currentZoneFolder.listFiles();
-				for (File file : currentZoneFiles) {
-					copyFile(file, new File(newVersionPath + "/dat/warzone-" + zone.getName() + "/" + file.getName()));
-				}
-		    } catch (IOException badCopy) {
-		    	War.war.log("Failed to make backup copy version " + newVersion + " of warzone " + zone.getName(), Level.WARNING);
-		    }
+				currentVersion = new ZoneVersionStore(zone.getName()).save(this.getSender().getName()).getNumber() + 1;
+			} catch (IOException badCopy) {
+				War.war.log("Failed to keep the old version of warzone " + zone.getName() + ": " + badCopy.getMessage(), Level.WARNING);
+			}
 			
-			int currentVersion = newVersion + 1;
 			this.msg("Saving version " + currentVersion + " of warzone " + zone.getName());
 			War.war.log(this.getSender().getName() + " is saving version " + currentVersion + " of warzone " + zone.getName(), Level.INFO);
 		} else {
@@ -135,27 +112,4 @@ public class SaveZoneCommand extends AbstractZoneMakerCommand {
 
 		return true;
 	}
-	
-	public static void copyFile(File sourceFile, File destFile) throws IOException {
-	    if(!destFile.exists()) {
-	        destFile.createNewFile();
-	    }
-
-	    FileChannel source = null;
-	    FileChannel destination = null;
-
-	    try {
-	        source = new FileInputStream(sourceFile).getChannel();
-	        destination = new FileOutputStream(destFile).getChannel();
-	        destination.transferFrom(source, 0, source.size());
-	    }
-	    finally {
-	        if(source != null) {
-	            source.close();
-	        }
-	        if(destination != null) {
-	            destination.close();
-	        }
-	    }
-	}
 }
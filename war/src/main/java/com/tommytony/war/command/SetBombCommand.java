@@ -40,6 +40,8 @@ public class SetBombCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 		
 		if (this.args[0].equals(zone.getName())) {
@@ -57,6 +59,7 @@ public class SetBombCommand extends AbstractZoneMakerCommand {
 			// create a new bomb
 			Bomb bomb = new Bomb(this.args[0], zone, player.getLocation());
 			zone.getBombs().add(bomb);
+			zone.invalidateStructureIndex();
 			this.msg("Bomb " + bomb.getName() + " created.");
 			War.war.log(this.getSender().getName() + " created bomb " + bomb.getName() + " in warzone " + zone.getName(), Level.INFO);
 		}
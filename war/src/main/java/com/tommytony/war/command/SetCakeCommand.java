@@ -40,6 +40,8 @@ public class SetCakeCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 		
 		if (this.args[0].equals(zone.getName())) {
@@ -57,6 +59,7 @@ public class SetCakeCommand extends AbstractZoneMakerCommand {
 			// create a new cake
 			Cake cake = new Cake(this.args[0], zone, player.getLocation());
 			zone.getCakes().add(cake);
+			zone.invalidateStructureIndex();
 			this.msg("Cake " + cake.getName() + " created.");
 			War.war.log(this.getSender().getName() + " created cake " + cake.getName() + " in warzone " + zone.getName(), Level.INFO);
 		}
@@ -40,6 +40,8 @@ public class SetMonumentCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 		
 		if (this.args[0].equals(zone.getName())) {
@@ -57,6 +59,7 @@ public class SetMonumentCommand extends AbstractZoneMakerCommand {
 			// create a new monument
 			Monument monument = new Monument(this.args[0], zone, player.getLocation());
 			zone.getMonuments().add(monument);
+			zone.invalidateStructureIndex();
 			War.war.log(this.getSender().getName() + " created monument " + monument.getName() + " in warzone " + zone.getName(), Level.INFO);
 		}
 
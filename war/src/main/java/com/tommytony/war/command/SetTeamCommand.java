@@ -41,6 +41,8 @@ public class SetTeamCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 
 		TeamKind teamKind = TeamKind.teamKindFromString(this.args[0]);
@@ -59,6 +61,7 @@ public class SetTeamCommand extends AbstractZoneMakerCommand {
 				Team newTeam = new Team(teamKind.toString(), teamKind, player.getLocation(), zone);
 				newTeam.setRemainingLives(newTeam.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL));
 				zone.getTeams().add(newTeam);
+				zone.invalidateStructureIndex();
 				if (zone.getLobby() != null) {
 					zone.getLobby().setLocation(zone.getTeleport());
 					zone.getLobby().initialize();
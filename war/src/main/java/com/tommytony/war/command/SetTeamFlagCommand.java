@@ -41,6 +41,8 @@ public class SetTeamFlagCommand extends AbstractZoneMakerCommand {
 			return false;
 		} else if (!this.isSenderAuthorOfZone(zone)) {
 			return true;
+		} else if (!this.isZoneAwake(zone)) {
+			return true;
 		}
 
 		TeamKind kind = TeamKind.teamKindFromString(this.args[0]);
@@ -76,6 +76,14 @@ public class WarCommandHandler {
 				commandObj = new SetZoneLobbyCommand(this, sender, arguments);
 			} else if (command.equals("savezone")) {
 				commandObj = new SaveZoneCommand(this, sender, arguments);
+			} else if (command.equals("zoneversions")) {
+				commandObj = new ZoneVersionsCommand(this, sender, arguments);
+			} else if (command.equals("diffzoneversion")) {
+				commandObj = new DiffZoneVersionCommand(this, sender, arguments);
+			} else if (command.equals("restorezoneversion")) {
+				commandObj = new RestoreZoneVersionCommand(this, sender, arguments);
+			} else if (command.equals("prunezoneversions")) {
+				commandObj = new PruneZoneVersionsCommand(this, sender, arguments);
 			} else if (command.equals("resetzone")) {
 				commandObj = new ResetZoneCommand(this, sender, arguments);
 			} else if (command.equals("nextbattle")) {
@@ -48,6 +48,8 @@ public class ZoneSetter {
 				War.war.log(player.getName() + " created warzone " + zoneName + " by setting its nw corner", Level.INFO);
 			} else if (!this.isPlayerAuthorOfZoneOrAdmin(warzone)) {
 				return;
+			} else if (!this.isZoneAwake(warzone)) {
+				return;
 			} else {
 				// change existing warzone
 				this.resetWarzone(warzone, msgString);
@@ -93,6 +95,8 @@ public class ZoneSetter {
 				War.war.log(player.getName() + " created warzone " + zoneName + " by setting its se corner", Level.INFO);
 			} else if (!this.isPlayerAuthorOfZoneOrAdmin(warzone)) {
 				return;
+			} else if (!this.isZoneAwake(warzone)) {
+				return;
 			} else {
 				// change existing warzone
 				this.resetWarzone(warzone, msgString);
@@ -142,6 +146,8 @@ public class ZoneSetter {
 				War.war.log(player.getName() + " created warzone " + zoneName + " by setting its corner 1", Level.INFO);
 			} else if (!this.isPlayerAuthorOfZoneOrAdmin(warzone)) {
 				return;
+			} else if (!this.isZoneAwake(warzone)) {
+				return;
 			} else {
 				// change existing warzone
 				this.resetWarzone(warzone, msgString);
@@ -186,6 +192,8 @@ public class ZoneSetter {
 				War.war.log(player.getName() + " created warzone " + zoneName + " by setting its corner 2", Level.INFO);
 			} else if (!this.isPlayerAuthorOfZoneOrAdmin(warzone)) {
 				return;
+			} else if (!this.isZoneAwake(warzone)) {
+				return;
 			} else {
 				// change existing warzone
 				this.resetWarzone(warzone, msgString);
@@ -207,6 +215,16 @@ public class ZoneSetter {
 		}
 	}
 
+	private boolean isZoneAwake(Warzone warzone) {
+		if (warzone.isHibernating()) {
+			// its structures can't be reset until then
+			warzone.wake();
+			War.war.badMsg(player, "Warzone " + warzone.getName() + " is waking up. Try again in a moment.");
+			return false;
+		}
+		return true;
+	}
+
 	private boolean isPlayerAuthorOfZoneOrAdmin(Warzone warzone) {
 		boolean isAuthor = warzone.isAuthor(player);
 		boolean isAdmin = !War.war.isWarAdmin(player);
@@ -0,0 +1,48 @@
+package com.tommytony.war.command;
+
+import java.text.SimpleDateFormat;
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+
+import com.tommytony.war.Warzone;
+import com.tommytony.war.utility.ZoneVersionStore;
+import com.tommytony.war.utility.ZoneVersionStore.Version;
+
+/**
+ * Lists the old versions of a warzone.
+ *
+ * @author tommytony
+ */
+public class ZoneVersionsCommand extends AbstractZoneVersionCommand {
+	public ZoneVersionsCommand(WarCommandHandler handler, CommandSender sender, String[] args) throws NotZoneMakerException {
+		super(handler, sender, args);
+	}
+
+	@Override
+	public boolean handle() {
+		Warzone zone = this.findZone();
+		if (zone == null || this.args.length > 0) {
+			return false;
+		} else if (!this.isSenderAuthorOfZone(zone)) {
+			return true;
+		}
+
+		List<Version> versions = new ZoneVersionStore(zone.getName()).list();
+		if (versions.isEmpty()) {
+			this.msg("No old versions of warzone " + zone.getName() + ".");
+			return true;
+		}
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		StringBuilder list = new StringBuilder("Old versions of warzone " + zone.getName() + ":");
+		for (Version version : versions) {
+			list.append(" " + version.getNumber() + ") ");
+			if (version.getDate() != null) {
+				list.append(format.format(version.getDate()) + " ");
+			}
+			list.append("by " + version.getSavedBy() + ", " + version.getTotalSize() / 1024 + "KB.");
+		}
+		this.msg(list.toString());
+		return true;
+	}
+}
@@ -0,0 +1,54 @@
+package com.tommytony.war.config;
+
+/**
+ * The settings of a team as they end up after inheritance (team, then warzone team defaults,
+ * then War team defaults). Built by TeamConfigBag when its settings change, never modified after.
+ *
+ * @author tommytony
+ *
+ */
+public class ResolvedTeamConfig {
+
+	private final Object[] values;
+	private final int[] ints;
+	private final boolean[] booleans;
+
+	ResolvedTeamConfig(Object[] values) {
+		this.values = values;
+		this.ints = new int[values.length];
+		this.booleans = new boolean[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] instanceof Integer) {
+				this.ints[i] = (Integer) values[i];
+			} else if (values[i] instanceof Boolean) {
+				this.booleans[i] = (Boolean) values[i];
+			}
+		}
+	}
+
+	public Object getValue(TeamConfig config) {
+		return this.values[config.ordinal()];
+	}
+
+	/**
+	 * @return the setting, or 0 if it isn't set anywhere
+	 */
+	public int getInt(TeamConfig config) {
+		return this.ints[config.ordinal()];
+	}
+
+	/**
+	 * @return the setting, or false if it isn't set anywhere
+	 */
+	public boolean getBoolean(TeamConfig config) {
+		return this.booleans[config.ordinal()];
+	}
+
+	public FlagReturn getFlagReturn() {
+		return (FlagReturn) this.values[TeamConfig.FLAGRETURN.ordinal()];
+	}
+
+	public TeamSpawnStyle getSpawnStyle() {
+		return (TeamSpawnStyle) this.values[TeamConfig.SPAWNSTYLE.ordinal()];
+	}
+}
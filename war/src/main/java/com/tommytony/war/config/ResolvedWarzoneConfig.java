@@ -0,0 +1,46 @@
+package com.tommytony.war.config;
+
+/**
+ * The settings of a warzone as they end up after inheritance (warzone, then War defaults).
+ * Built by WarzoneConfigBag when its settings change, never modified after.
+ *
+ * @author tommytony
+ *
+ */
+public class ResolvedWarzoneConfig {
+
+	private final Object[] values;
+	private final int[] ints;
+	private final boolean[] booleans;
+
+	ResolvedWarzoneConfig(Object[] values) {
+		this.values = values;
+		this.ints = new int[values.length];
+		this.booleans = new boolean[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] instanceof Integer) {
+				this.ints[i] = (Integer) values[i];
+			} else if (values[i] instanceof Boolean) {
+				this.booleans[i] = (Boolean) values[i];
+			}
+		}
+	}
+
+	public Object getValue(WarzoneConfig config) {
+		return this.values[config.ordinal()];
+	}
+
+	/**
+	 * @return the setting, or 0 if it isn't set anywhere
+	 */
+	public int getInt(WarzoneConfig config) {
+		return this.ints[config.ordinal()];
+	}
+
+	/**
+	 * @return the setting, or false if it isn't set anywhere
+	 */
+	public boolean getBoolean(WarzoneConfig config) {
+		return this.booleans[config.ordinal()];
+	}
+}
@@ -13,6 +13,9 @@ public class TeamConfigBag {
 
 	private EnumMap<TeamConfig, Object> bag = new EnumMap<TeamConfig, Object>(TeamConfig.class);
 	private Warzone warzone;
+	private ResolvedTeamConfig resolved = null;
+	private int resolvedAt = -1;
+	private static int changes = 0;
 		
 	public TeamConfigBag(Warzone warzone) {
 		this.warzone = warzone;
@@ -32,6 +35,7 @@ public class TeamConfigBag {
 	
 	public void put(TeamConfig config, Object value) {
 		this.bag.put(config, value);
+		TeamConfigBag.changed();
 	}
 
 	public Object getValue(TeamConfig config) {
@@ -42,16 +46,43 @@ public class TeamConfigBag {
 		}
 	}
 	
-	public Object resolveValue(TeamConfig config) {
+	/**
+	 * @return the settings of the team after inheritance, rebuilt only when some team settings changed
+	 */
+	public ResolvedTeamConfig getResolved() {
+		if (this.resolved == null || this.resolvedAt != TeamConfigBag.changes) {
+			Object[] values = new Object[TeamConfig.values().length];
+			for (TeamConfig config : TeamConfig.values()) {
+				values[config.ordinal()] = this.lookUp(config);
+			}
+			this.resolved = new ResolvedTeamConfig(values);
+			this.resolvedAt = TeamConfigBag.changes;
+		}
+		return this.resolved;
+	}
+
+	private Object lookUp(TeamConfig config) {
 		if (this.contains(config)) {
 			return this.bag.get(config); 
 		} else if (this.warzone != null && this.warzone.getTeamDefaultConfig().contains(config)){
 			// use Warzone default config
-			return this.warzone.getTeamDefaultConfig().resolveValue(config);
-		} else {
+			return this.warzone.getTeamDefaultConfig().lookUp(config);
+		} else if (this != War.war.getTeamDefaultConfig()) {
 			// use War default config
-			return War.war.getTeamDefaultConfig().resolveValue(config);
+			return War.war.getTeamDefaultConfig().lookUp(config);
 		}
+		return null;
+	}
+
+	/**
+	 * Any team settings changing can change how every team resolves its settings
+	 */
+	private static void changed() {
+		TeamConfigBag.changes++;
+	}
+
+	public Object resolveValue(TeamConfig config) {
+		return this.getResolved().getValue(config);
 	}
 	
 	public Integer getInt(TeamConfig config) {
@@ -62,15 +93,7 @@ public class TeamConfigBag {
 	}
 	
 	public Integer resolveInt(TeamConfig config) {
-		if (this.contains(config)) {
-			return (Integer)this.bag.get(config); 
-		} else if (this.warzone != null && this.warzone.getTeamDefaultConfig().contains(config)){
-			// use Warzone default config
-			return this.warzone.getTeamDefaultConfig().resolveInt(config);
-		} else {
-			// use War default config
-			return War.war.getTeamDefaultConfig().resolveInt(config);
-		}
+		return (Integer)this.getResolved().getValue(config);
 	}
 	
 	public Boolean getBoolean(TeamConfig config) {
@@ -81,27 +104,11 @@ public class TeamConfigBag {
 	}
 	
 	public Boolean resolveBoolean(TeamConfig config) {
-		if (this.contains(config)) {
-			return (Boolean)this.bag.get(config); 
-		} else if (this.warzone != null && this.warzone.getTeamDefaultConfig().contains(config)){
-			// use Warzone default config
-			return this.warzone.getTeamDefaultConfig().resolveBoolean(config);
-		} else {
-			// use War default config
-			return War.war.getTeamDefaultConfig().resolveBoolean(config);
-		}
+		return (Boolean)this.getResolved().getValue(config);
 	}
 	
 	public FlagReturn resolveFlagReturn() {
-		if (this.contains(TeamConfig.FLAGRETURN)) {
-			return (FlagReturn)this.bag.get(TeamConfig.FLAGRETURN); 
-		} else if (this.warzone != null && this.warzone.getTeamDefaultConfig().contains(TeamConfig.FLAGRETURN)){
-			// use Warzone default config
-			return this.warzone.getTeamDefaultConfig().resolveFlagReturn();
-		} else {
-			// use War default config
-			return War.war.getTeamDefaultConfig().resolveFlagReturn();
-		}
+		return this.getResolved().getFlagReturn();
 	}
 	
 	public FlagReturn getFlagReturn() {
@@ -112,14 +119,7 @@ public class TeamConfigBag {
 	}
 	
 	public TeamSpawnStyle resolveSpawnStyle() {
-		if (this.contains(TeamConfig.SPAWNSTYLE)) {
-			return (TeamSpawnStyle)this.bag.get(TeamConfig.SPAWNSTYLE); 
-		} else if (this.warzone != null && this.warzone.getTeamDefaultConfig().contains(TeamConfig.SPAWNSTYLE)){
-			// use War default config
-			return this.warzone.getTeamDefaultConfig().resolveSpawnStyle();
-		} else {
-			return War.war.getTeamDefaultConfig().resolveSpawnStyle();
-		}
+		return this.getResolved().getSpawnStyle();
 	}
 	
 	public TeamSpawnStyle getSpawnStyle() {
@@ -173,16 +173,16 @@ public class TeamConfigBag {
 			if (teamConfig != null) {
 				if (teamConfig.getConfigType().equals(Integer.class)) {
 					int intValue = Integer.parseInt(namedParams.get(namedParam));
-					this.bag.put(teamConfig, intValue);
+					this.put(teamConfig, intValue);
 				} else if (teamConfig.getConfigType().equals(Boolean.class)) {
 					String onOff = namedParams.get(namedParam);
-					this.bag.put(teamConfig, onOff.equals("on") || onOff.equals("true"));
+					this.put(teamConfig, onOff.equals("on") || onOff.equals("true"));
 				} else if (teamConfig.getConfigType().equals(FlagReturn.class)) {
 					FlagReturn flagValue = FlagReturn.getFromString(namedParams.get(namedParam));
-					this.bag.put(teamConfig, flagValue);
+					this.put(teamConfig, flagValue);
 				} else if (teamConfig.getConfigType().equals(TeamSpawnStyle.class)) {
 					TeamSpawnStyle spawnValue = TeamSpawnStyle.getStyleFromString(namedParams.get(namedParam));
-					this.bag.put(teamConfig, spawnValue);
+					this.put(teamConfig, spawnValue);
 				}
 				returnMessage += " " + teamConfig.toString() + " set to " + namedParams.get(namedParam); 
 			} else if (namedParam.equals("delete")) {
@@ -192,6 +192,7 @@ public class TeamConfigBag {
 				// param delete (to restore inheritance)
 				if (teamConfig != null) {
 					this.bag.remove(teamConfig);
+					TeamConfigBag.changed();
 					returnMessage += " " + teamConfig.toString() + " removed";
 				}
 			}
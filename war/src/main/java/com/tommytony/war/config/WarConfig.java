@@ -5,9 +5,15 @@ public enum WarConfig {
 	BUILDINZONESONLY (Boolean.class),
 	DISABLEBUILDMESSAGE (Boolean.class),
 	DISABLEPVPMESSAGE (Boolean.class),
+	HIBERNATEMINUTES (Integer.class),
 	KEEPOLDZONEVERSIONS (Boolean.class),
 	MAXZONES (Integer.class),
 	PVPINZONESONLY (Boolean.class),
+	RESETBLOCKSPERTICK (Integer.class),
+	RESETMILLISPERTICK (Integer.class),
+	RESETJOURNALSIZE (Integer.class),
+	SAVECHUNKSPERTICK (Integer.class),
+	SIGNREFRESHTICKS (Integer.class),
 	TNTINZONESONLY (Boolean.class);
 	
 	private final Class<?> configType;
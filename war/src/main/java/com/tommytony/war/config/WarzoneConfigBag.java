@@ -13,6 +13,9 @@ public class WarzoneConfigBag {
 
 	EnumMap<WarzoneConfig, Object> bag = new EnumMap<WarzoneConfig, Object>(WarzoneConfig.class);
 	private final Warzone warzone;
+	private ResolvedWarzoneConfig resolved = null;
+	private int resolvedAt = -1;
+	private static int changes = 0;
 		
 	public WarzoneConfigBag(Warzone warzone) {
 		this.warzone = warzone;
@@ -25,37 +28,55 @@ public class WarzoneConfigBag {
 
 	public void put(WarzoneConfig config, Object value) {
 		bag.put(config, value);
+		WarzoneConfigBag.changed();
 	}
 	
 	public boolean isEmpty() {
 		return bag.keySet().size() == 0;
 	}
 	
-	public Object getValue(WarzoneConfig config) {
+	/**
+	 * @return the settings of the warzone after inheritance, rebuilt only when some warzone settings changed
+	 */
+	public ResolvedWarzoneConfig getResolved() {
+		if (this.resolved == null || this.resolvedAt != WarzoneConfigBag.changes) {
+			Object[] values = new Object[WarzoneConfig.values().length];
+			for (WarzoneConfig config : WarzoneConfig.values()) {
+				values[config.ordinal()] = this.lookUp(config);
+			}
+			this.resolved = new ResolvedWarzoneConfig(values);
+			this.resolvedAt = WarzoneConfigBag.changes;
+		}
+		return this.resolved;
+	}
+
+	private Object lookUp(WarzoneConfig config) {
 		if (bag.containsKey(config)) {
 			return bag.get(config); 
-		} else {
+		} else if (this != War.war.getWarzoneDefaultConfig()) {
 			// use War default config
-			return War.war.getWarzoneDefaultConfig().getValue(config);
+			return War.war.getWarzoneDefaultConfig().lookUp(config);
 		}
+		return null;
+	}
+
+	/**
+	 * The War defaults changing can change how every warzone resolves its settings
+	 */
+	private static void changed() {
+		WarzoneConfigBag.changes++;
+	}
+
+	public Object getValue(WarzoneConfig config) {
+		return this.getResolved().getValue(config);
 	}
 	
 	public Integer getInt(WarzoneConfig config) {
-		if (bag.containsKey(config)) {
-			return (Integer)bag.get(config); 
-		} else {
-			// use War default config
-			return War.war.getWarzoneDefaultConfig().getInt(config);
-		}
+		return (Integer)this.getResolved().getValue(config);
 	}
 	
 	public Boolean getBoolean(WarzoneConfig config) {
-		if (bag.containsKey(config)) {
-			return (Boolean)bag.get(config); 
-		} else {
-			// use War default config
-			return War.war.getWarzoneDefaultConfig().getBoolean(config);
-		}
+		return (Boolean)this.getResolved().getValue(config);
 	}
 
 	public void loadFrom(ConfigurationSection warzoneConfigSection) {
@@ -87,10 +108,10 @@ public class WarzoneConfigBag {
 			if (warzoneConfig != null) {
 				if (warzoneConfig.getConfigType().equals(Integer.class)) {
 					int intValue = Integer.parseInt(namedParams.get(namedParam));
-					this.bag.put(warzoneConfig, intValue);
+					this.put(warzoneConfig, intValue);
 				} else if (warzoneConfig.getConfigType().equals(Boolean.class)) {
 					String onOff = namedParams.get(namedParam);
-					this.bag.put(warzoneConfig, onOff.equals("on") || onOff.equals("true"));
+					this.put(warzoneConfig, onOff.equals("on") || onOff.equals("true"));
 					if (this.warzone != null && namedParam.equals(WarzoneConfig.AUTOASSIGN.toString())) {
 						this.warzone.getLobby().setLocation(this.warzone.getTeleport());
 						this.warzone.getLobby().initialize();
@@ -104,6 +125,7 @@ public class WarzoneConfigBag {
 				// param delete (to restore inheritance)
 				if (warzoneConfig != null) {
 					this.bag.remove(warzoneConfig);
+					WarzoneConfigBag.changed();
 					returnMessage += " " + warzoneConfig.toString() + " removed";
 				}
 			}
@@ -1,20 +1,31 @@
 package com.tommytony.war.event;
 
-import java.util.List;
-
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Cancellable;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
 import org.bukkit.event.block.BlockDamageEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockIgniteEvent;
 import org.bukkit.event.block.BlockPistonExtendEvent;
 import org.bukkit.event.block.BlockPistonRetractEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.world.StructureGrowEvent;
 import org.bukkit.inventory.ItemStack;
 import org.getspout.spoutapi.SpoutManager;
 import org.getspout.spoutapi.player.SpoutPlayer;
@@ -59,7 +70,6 @@ public class WarBlockListener implements Listener {
 			Monument monument = zone.getMonumentFromCenterBlock(block);
 			if (monument != null && !monument.hasOwner()) {
 				monument.capture(team);
-				List<Team> teams = zone.getTeams();
 				
 				if (War.war.isSpoutServer()) {
 					for (Player p : team.getPlayers()) {
@@ -74,9 +84,7 @@ public class WarBlockListener implements Listener {
 						}
 					}
 				}
-				for (Team t : teams) {
-					t.teamcast("Monument " + monument.getName() + " has been captured by team " + team.getName() + ".");
-				}
+				zone.broadcast("Monument " + monument.getName() + " has been captured by team " + team.getName() + ".");
 				event.setCancelled(false);
 				return; // important otherwise cancelled down a few line by isImportantblock
 			} else {
@@ -251,7 +259,6 @@ public class WarBlockListener implements Listener {
 		if (team != null && block != null && warzone != null && warzone.isMonumentCenterBlock(block)) {
 			Monument monument = warzone.getMonumentFromCenterBlock(block);
 			if (monument.hasOwner()) {
-				List<Team> teams = warzone.getTeams();
 				Team ownerTeam = monument.getOwnerTeam();
 				if (War.war.isSpoutServer()) {
 					for (Player p : team.getPlayers()) {
@@ -266,9 +273,7 @@ public class WarBlockListener implements Listener {
 						}
 					}
 				}
-				for (Team t : teams) {
-					t.teamcast("Team " + ownerTeam.getName() + " loses control of monument " + monument.getName());
-				}
+				warzone.broadcast("Team " + ownerTeam.getName() + " loses control of monument " + monument.getName());
 				monument.uncapture();
 			}
 			event.setCancelled(false);
@@ -470,4 +475,98 @@ public class WarBlockListener implements Listener {
 			return;
 		}
 	}
+
+	/**
+	 * Feeds the dirty block journal of the warzones once the other handlers had their say
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockPlace(final BlockPlaceEvent event) {
+		// doors and beds take up two blocks
+		Warzone.markDirty(event.getBlock(), true);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockBreak(final BlockBreakEvent event) {
+		Block block = event.getBlock();
+		Warzone.markDirty(block, true);
+		// sand and gravel on top will fall down
+		Block above = block.getRelative(BlockFace.UP);
+		while (above.getY() < block.getWorld().getMaxHeight() - 1 && isFallingBlock(above.getType())) {
+			Warzone.markDirty(above, true);
+			above = above.getRelative(BlockFace.UP);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockPistonExtend(final BlockPistonExtendEvent event) {
+		Warzone.markDirty(event.getBlock(), true);
+		Warzone.markDirty(event.getBlock().getRelative(event.getDirection()), true);
+		for (Block b : event.getBlocks()) {
+			Warzone.markDirty(b.getRelative(event.getDirection()), true);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockPistonRetract(final BlockPistonRetractEvent event) {
+		Warzone.markDirty(event.getBlock(), true);
+		Warzone.markDirty(event.getBlock().getRelative(event.getDirection(), 2), true);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockBurn(final BlockBurnEvent event) {
+		Warzone.markDirty(event.getBlock(), true);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockFromTo(final BlockFromToEvent event) {
+		// flowing water and lava
+		Warzone.markDirty(event.getToBlock(), true);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockIgnite(final BlockIgniteEvent event) {
+		Warzone.markDirty(event.getBlock(), false);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockSpread(final BlockSpreadEvent event) {
+		Warzone.markDirty(event.getBlock(), false);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockForm(final BlockFormEvent event) {
+		Warzone.markDirty(event.getBlock(), false);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockFade(final BlockFadeEvent event) {
+		Warzone.markDirty(event.getBlock(), true);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalLeavesDecay(final LeavesDecayEvent event) {
+		Warzone.markDirty(event.getBlock(), true);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalBlockGrow(final BlockGrowEvent event) {
+		Warzone.markDirty(event.getBlock(), false);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalStructureGrow(final StructureGrowEvent event) {
+		for (BlockState state : event.getBlocks()) {
+			Warzone.markDirty(state.getBlock(), false);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void journalBlockRedstone(final BlockRedstoneEvent event) {
+		// powered doors open and lamps turn on
+		Warzone.markDirty(event.getBlock(), true);
+	}
+
+	private static boolean isFallingBlock(Material type) {
+		return type == Material.SAND || type == Material.GRAVEL || type == Material.ANVIL || type == Material.DRAGON_EGG;
+	}
 }
@@ -7,7 +7,9 @@ import java.util.Random;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
 import org.bukkit.block.NoteBlock;
 import org.bukkit.block.Sign;
 import org.bukkit.entity.Arrow;
@@ -22,12 +24,14 @@ import org.bukkit.event.entity.CreatureSpawnEvent;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.EntityDamageEvent;
 import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
 import org.bukkit.event.entity.EntityDeathEvent;
 import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.entity.EntityRegainHealthEvent;
 import org.bukkit.event.entity.EntityRegainHealthEvent.RegainReason;
 import org.bukkit.event.entity.ExplosionPrimeEvent;
 import org.bukkit.event.entity.FoodLevelChangeEvent;
+import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 import org.getspout.spoutapi.SpoutManager;
@@ -39,10 +43,10 @@ import com.tommytony.war.Warzone;
 import com.tommytony.war.config.TeamConfig;
 import com.tommytony.war.config.WarConfig;
 import com.tommytony.war.config.WarzoneConfig;
-import com.tommytony.war.job.DeferredBlockResetsJob;
 import com.tommytony.war.spout.SpoutDisplayer;
 import com.tommytony.war.structure.Bomb;
 import com.tommytony.war.utility.DeferredBlockReset;
+import com.tommytony.war.utility.ExplosionRollback;
 import com.tommytony.war.utility.LoadoutSelection;
 
 /**
@@ -160,9 +164,7 @@ public class WarEntityListener implements Listener {
 							killMessage = defenderString + ChatColor.WHITE + " committed accidental suicide";
 						}
 						
-						for (Team team : defenderWarzone.getTeams()) {
-							team.teamcast(killMessage);
-						}
+						defenderWarzone.broadcast(killMessage);
 					}
 					
 					defenderWarzone.handleDeath(d);
@@ -269,9 +271,7 @@ public class WarEntityListener implements Listener {
 					} else {
 						deathMessage = defenderString + ChatColor.WHITE + " died";
 					}
-					for (Team team : defenderWarzone.getTeams()) {
-						team.teamcast(deathMessage);
-					}
+					defenderWarzone.broadcast(deathMessage);
 				}
 				
 				defenderWarzone.handleDeath(d);
@@ -297,7 +297,6 @@ public class WarEntityListener implements Listener {
 		}
 		// protect zones elements, lobbies and warhub from creepers and tnt
 		List<Block> explodedBlocks = event.blockList();
-		List<Block> dontExplode = new ArrayList<Block>();
 		
 		boolean explosionInAWarzone = event.getEntity() != null && Warzone.getZoneByLocation(event.getEntity().getLocation()) != null;
 		
@@ -306,26 +305,55 @@ public class WarEntityListener implements Listener {
 			event.setCancelled(true);
 			return;
 		}
+		if (explodedBlocks.isEmpty()) {
+			return;
+		}
 		
+		// find what the blast can reach once, from the box around the exploded blocks
+		World world = explodedBlocks.get(0).getWorld();
+		Block first = explodedBlocks.get(0);
+		int minX = first.getX(), minY = first.getY(), minZ = first.getZ();
+		int maxX = minX, maxY = minY, maxZ = minZ;
 		for (Block block : explodedBlocks) {
-			if (War.war.getWarHub() != null && War.war.getWarHub().getVolume().contains(block)) {
-				dontExplode.add(block);
+			minX = Math.min(minX, block.getX());
+			minY = Math.min(minY, block.getY());
+			minZ = Math.min(minZ, block.getZ());
+			maxX = Math.max(maxX, block.getX());
+			maxY = Math.max(maxY, block.getY());
+			maxZ = Math.max(maxZ, block.getZ());
+		}
+		boolean warhubInReach = War.war.getWarHub() != null && War.war.getWarHub().getVolume().overlaps(world, minX, minY, minZ, maxX, maxY, maxZ);
+		List<Warzone> zonesInReach = new ArrayList<Warzone>();
+		for (Warzone zone : War.war.getWarzones()) {
+			if (zone.getVolume().overlaps(world, minX, minY, minZ, maxX, maxY, maxZ)
+					|| (zone.getLobby() != null && zone.getLobby().getVolume().overlaps(world, minX, minY, minZ, maxX, maxY, maxZ))) {
+				zonesInReach.add(zone);
+			}
+		}
+		if (!warhubInReach && zonesInReach.isEmpty() && !explosionInAWarzone) {
+			// nothing of War's is in the way
+			return;
+		}
+		
+		ExplosionRollback rollback = War.war.getExplosionRollback();
+		int dontExplodeSize = 0;
+		for (Block block : explodedBlocks) {
+			boolean dontExplode = false;
+			if (warhubInReach && War.war.getWarHub().getVolume().contains(block)) {
+				dontExplode = true;
 			} else {
 				boolean inOneZone = false;
-				for (Warzone zone : War.war.getWarzones()) {
+				for (Warzone zone : zonesInReach) {
 					if (zone.isImportantBlock(block)) {
-						dontExplode.add(block);
+						dontExplode = true;
 						if (zone.isBombBlock(block)) {
-							// tnt doesn't get reset like normal blocks, gotta schedule a later reset just for the Bomb
-							// structure's tnt block
-							DeferredBlockResetsJob job = new DeferredBlockResetsJob(block.getWorld());
-							job.add(new DeferredBlockReset(block.getX(), block.getY(), block.getZ(), Material.TNT.getId(), (byte)0));
-							War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, job, 10);
+							// tnt doesn't get reset like normal blocks, the Bomb structure's tnt block is put back later
+							rollback.addBomb(block);
 						}
 						inOneZone = true;
 						break;
 					} else if (zone.getLobby() != null && zone.getLobby().getVolume().contains(block)) {
-						dontExplode.add(block);
+						dontExplode = true;
 						inOneZone = true;
 						break;
 					} else if (zone.getVolume().contains(block)) {
@@ -335,48 +363,20 @@ public class WarEntityListener implements Listener {
 				
 				if (!inOneZone && explosionInAWarzone) {
 					// if the explosion originated in warzone, always rollback
-					dontExplode.add(block);
+					dontExplode = true;
 				}
 			}
-		}
-		
-		int dontExplodeSize = dontExplode.size();
-		if (dontExplode.size() > 0) {
-			// Reset the exploded blocks that shouldn't have exploded (some of these are zone artifacts, if rollbackexplosion some may be outside-of-zone blocks 
-			DeferredBlockResetsJob job = new DeferredBlockResetsJob(dontExplode.get(0).getWorld());
-			List<Block> doors = new ArrayList<Block>(); 
-			for (Block dont : dontExplode) {
-				DeferredBlockReset deferred = null;
-				if (dont.getState() instanceof Sign) {
-					String[] lines = ((Sign)dont.getState()).getLines();
-					deferred = new DeferredBlockReset(dont.getX(), dont.getY(), dont.getZ(), dont.getTypeId(), dont.getData(), lines);
-				} else if (dont.getState() instanceof InventoryHolder) {
-					ItemStack[] contents = ((InventoryHolder)dont.getState()).getInventory().getContents();
-					Block worldBlock = dont.getWorld().getBlockAt(dont.getLocation());
-					if (worldBlock.getState() instanceof InventoryHolder) {
-						((InventoryHolder)worldBlock.getState()).getInventory().clear();
-					}
-					deferred = new DeferredBlockReset(dont.getX(), dont.getY(), dont.getZ(), dont.getTypeId(), dont.getData(), copyItems(contents));
-				} else if (dont.getTypeId() == Material.NOTE_BLOCK.getId()) {
-					Block worldBlock = dont.getWorld().getBlockAt(dont.getLocation());
-					if (worldBlock.getState() instanceof NoteBlock) {
-						NoteBlock noteBlock = ((NoteBlock)worldBlock.getState());
-						if (noteBlock != null) {
-							deferred = new DeferredBlockReset(dont.getX(), dont.getY(), dont.getZ(), dont.getTypeId(), dont.getData(), noteBlock.getRawNote());
-						}
-					}
-				} else if (dont.getTypeId() != Material.TNT.getId()) {				
-					deferred = new DeferredBlockReset(dont.getX(), dont.getY(), dont.getZ(), dont.getTypeId(), dont.getData());
-					if (dont.getTypeId() == Material.WOODEN_DOOR.getId() || dont.getTypeId() == Material.IRON_DOOR_BLOCK.getId()) {
-						doors.add(dont);
-					}
-				}
+			if (dontExplode) {
+				// Reset the exploded blocks that shouldn't have exploded (some of these are zone artifacts, if rollbackexplosion some may be outside-of-zone blocks 
+				DeferredBlockReset deferred = this.captureReset(block);
 				if (deferred != null) {
-					job.add(deferred);
+					rollback.add(world, deferred);
 				}
+				dontExplodeSize++;
 			}
-			War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, job);
-			
+		}
+		
+		if (dontExplodeSize > 0) {
 			// Changed explosion yield following proportion of explosion prevention (makes drops less buggy too) 
 			int explodedSize = explodedBlocks.size();
 			float middleYeild = (float)(explodedSize - dontExplodeSize) / (float)explodedSize;
@@ -386,6 +386,43 @@ public class WarEntityListener implements Listener {
 		}
 	}
 
+	/**
+	 * Remembers what a block was before the blast. Only signs, containers and note blocks
+	 * have their tile state read.
+	 *
+	 * @param Block block The exploded block
+	 * @return the reset, or null for tnt which blows up anyway
+	 */
+	private DeferredBlockReset captureReset(Block block) {
+		int typeId = block.getTypeId();
+		if (typeId == Material.TNT.getId()) {
+			return null;
+		} else if (typeId == Material.WALL_SIGN.getId() || typeId == Material.SIGN_POST.getId()) {
+			BlockState state = block.getState();
+			if (state instanceof Sign) {
+				return new DeferredBlockReset(block.getX(), block.getY(), block.getZ(), typeId, block.getData(), ((Sign) state).getLines());
+			}
+		} else if (typeId == Material.CHEST.getId()
+				|| typeId == Material.DISPENSER.getId()
+				|| typeId == Material.FURNACE.getId()
+				|| typeId == Material.BURNING_FURNACE.getId()
+				|| typeId == Material.BREWING_STAND.getId()) {
+			BlockState state = block.getState();
+			if (state instanceof InventoryHolder) {
+				Inventory inventory = ((InventoryHolder) state).getInventory();
+				List<ItemStack> items = this.copyItems(inventory.getContents());
+				inventory.clear();	// so that nothing drops
+				return new DeferredBlockReset(block.getX(), block.getY(), block.getZ(), typeId, block.getData(), items);
+			}
+		} else if (typeId == Material.NOTE_BLOCK.getId()) {
+			BlockState state = block.getState();
+			if (state instanceof NoteBlock) {
+				return new DeferredBlockReset(block.getX(), block.getY(), block.getZ(), typeId, block.getData(), ((NoteBlock) state).getRawNote());
+			}
+		}
+		return new DeferredBlockReset(block.getX(), block.getY(), block.getZ(), typeId, block.getData());
+	}
+
 	private List<ItemStack> copyItems(ItemStack[] contents) {
 		List<ItemStack> list = new ArrayList<ItemStack>();
 		for (ItemStack stack : contents) {
@@ -458,9 +495,7 @@ public class WarEntityListener implements Listener {
 							cause = " fell to an untimely death";
 						}
 						deathMessage = Team.getTeamByPlayerName(player.getName()).getKind().getColor() + player.getName() + ChatColor.WHITE + cause;
-						for (Team teamToMsg : zone.getTeams()) {
-							teamToMsg.teamcast(deathMessage);
-						}
+						zone.broadcast(deathMessage);
 					}
 					
 					zone.handleDeath(player);
@@ -574,9 +609,7 @@ public class WarEntityListener implements Listener {
 				zone.handleDeath(player);
 				
 				if (zone.getWarzoneConfig().getBoolean(WarzoneConfig.DEATHMESSAGES)) {
-					for (Team team : zone.getTeams()) {
-						team.teamcast(player.getName() + " died");
-					}
+					zone.broadcast(player.getName() + " died");
 				}
 			}
 		}
@@ -599,4 +632,21 @@ public class WarEntityListener implements Listener {
 		}
 	}
 
+	/**
+	 * Feeds the dirty block journal of the warzones with what actually blew up
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalEntityExplode(final EntityExplodeEvent event) {
+		for (Block block : event.blockList()) {
+			Warzone.markDirty(block, true);
+		}
+	}
+
+	/**
+	 * Falling sand and gravel landing, endermen picking up blocks
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalEntityChangeBlock(final EntityChangeBlockEvent event) {
+		Warzone.markDirty(event.getBlock(), true);
+	}
 }
@@ -7,16 +7,23 @@ import org.bukkit.ChatColor;
 import org.bukkit.Effect;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Item;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Event.Result;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.player.PlayerBucketEmptyEvent;
+import org.bukkit.event.player.PlayerBucketFillEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerDropItemEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerItemHeldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerKickEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerPickupItemEvent;
@@ -71,10 +78,30 @@ public class WarPlayerListener implements Listener {
 		}
 	}
 
+	@EventHandler
+	public void onPlayerJoin(final PlayerJoinEvent event) {
+		if (War.war.isLoaded()) {
+			Player player = event.getPlayer();
+			if (Team.getTeamByPlayerName(player.getName()) == null) {
+				// inventory stashed before the server went down, give it back
+				for (Warzone zone : War.war.getWarzones()) {
+					if (zone.hasPlayerState(player.getName())) {
+						zone.restorePlayerState(player);
+						if (zone.getVolume().contains(player.getLocation())) {
+							player.teleport(zone.getTeleport());
+						}
+						War.war.msg(player, "Your inventory is being restored.");
+					}
+				}
+			}
+		}
+	}
+
 	@EventHandler
 	public void onPlayerDropItem(final PlayerDropItemEvent event) {
 		if (War.war.isLoaded()) {
 			Player player = event.getPlayer();
+			War.war.getHelmetProtection().checkLater(player);
 			Team team = Team.getTeamByPlayerName(player.getName());
 			if (team != null) {
 				Warzone zone = Warzone.getZoneByPlayerName(player.getName());
@@ -137,6 +164,7 @@ public class WarPlayerListener implements Listener {
 	public void onPlayerPickupItem(final PlayerPickupItemEvent event) {
 		if (War.war.isLoaded()) {
 			Player player = event.getPlayer();
+			War.war.getHelmetProtection().checkLater(player);
 			Team team = Team.getTeamByPlayerName(player.getName());
 			if (team != null) {
 				Warzone zone = Warzone.getZoneByPlayerName(player.getName());
@@ -159,6 +187,22 @@ public class WarPlayerListener implements Listener {
 		}
 	}
 
+	@EventHandler
+	public void onPlayerItemHeld(final PlayerItemHeldEvent event) {
+		if (War.war.isLoaded()) {
+			// thieves must keep their treasure in hand
+			War.war.getHelmetProtection().checkLater(event.getPlayer());
+		}
+	}
+
+	@EventHandler
+	public void onInventoryClick(final InventoryClickEvent event) {
+		if (War.war.isLoaded() && event.getWhoClicked() instanceof Player) {
+			// block heads and team blocks may have been moved around
+			War.war.getHelmetProtection().checkLater((Player) event.getWhoClicked());
+		}
+	}
+
 	@EventHandler
 	public void onPlayerCommandPreprocess(final PlayerCommandPreprocessEvent event) {
 		if (War.war.isLoaded()) {
@@ -286,6 +330,7 @@ public class WarPlayerListener implements Listener {
 		// Warzone lobby gates
 		if (locLobby != null) {
 			Warzone zone = locLobby.getZone();
+			zone.wake();
 			Team oldTeam = Team.getTeamByPlayerName(player.getName());
 			boolean isAutoAssignGate = false;
 			if (oldTeam == null && canPlay) { // trying to counter spammy player move
@@ -293,20 +338,22 @@ public class WarPlayerListener implements Listener {
 				if (isAutoAssignGate) {
 					if (zone.getWarzoneConfig().getBoolean(WarzoneConfig.DISABLED)) {
 						this.handleDisabledZone(event, player, zone);
+					} else if (zone.isReinitializing()) {
+						this.handleReinitializingZone(event, player, zone);
 					} else {
 						this.dropFromOldTeamIfAny(player);
 						int noOfPlayers = 0;
 						int totalCap = 0;
 						for (Team t : zone.getTeams()) {
 							noOfPlayers += t.getPlayers().size();
-							totalCap += t.getTeamConfig().resolveInt(TeamConfig.TEAMSIZE);
+							totalCap += t.getTeamConfig().getResolved().getInt(TeamConfig.TEAMSIZE);
 						}
 						
 						if (noOfPlayers < totalCap) {
 							zone.autoAssign(player);
 
 							if (War.war.getWarHub() != null) {
-								War.war.getWarHub().resetZoneSign(zone);
+								War.war.getSignRefresher().refreshZoneSign(zone);
 							}
 						} else {
 							event.setTo(zone.getTeleport());
@@ -323,18 +370,18 @@ public class WarPlayerListener implements Listener {
 						this.dropFromOldTeamIfAny(player);
 						if (zone.getWarzoneConfig().getBoolean(WarzoneConfig.DISABLED)) {
 							this.handleDisabledZone(event, player, zone);
-						} else if (team.getPlayers().size() < team.getTeamConfig().resolveInt(TeamConfig.TEAMSIZE)) {
+						} else if (zone.isReinitializing()) {
+							this.handleReinitializingZone(event, player, zone);
+						} else if (team.getPlayers().size() < team.getTeamConfig().getResolved().getInt(TeamConfig.TEAMSIZE)) {
 							team.addPlayer(player);
 							team.resetSign();
 							if (War.war.getWarHub() != null) {
-								War.war.getWarHub().resetZoneSign(zone);
+								War.war.getSignRefresher().refreshZoneSign(zone);
 							}
 							zone.keepPlayerState(player);
 							War.war.msg(player, "Your inventory is in storage until you exit with '/war leave'.");
 							zone.respawnPlayer(event, team, player);
-							for (Team t : zone.getTeams()) {
-								t.teamcast("" + player.getName() + " joined team " + team.getName() + ".");
-							}
+							zone.broadcast("" + player.getName() + " joined team " + team.getName() + ".");
 						} else {
 							event.setTo(zone.getTeleport());
 							War.war.badMsg(player, "Team " + team.getName() + " is full.");
@@ -359,6 +406,7 @@ public class WarPlayerListener implements Listener {
 		if (hub != null && hub.getVolume().contains(player.getLocation())) {
 			Warzone zone = hub.getDestinationWarzoneForLocation(playerLoc);
 			if (zone != null && zone.getTeleport() != null) {
+				zone.wake();
 				event.setTo(zone.getTeleport());
 				War.war.msg(player, "Welcome to warzone " + zone.getName() + ".");
 				return;
@@ -864,6 +912,13 @@ public class WarPlayerListener implements Listener {
 		}
 	}
 
+	private void handleReinitializingZone(PlayerMoveEvent event, Player player, Warzone zone) {
+		if (zone.getLobby() != null) {
+			War.war.badMsg(player, "Warzone " + zone.getName() + " is being reset (" + zone.getVolume().getResetProgress() + "%). Try again in a moment.");
+			event.setTo(zone.getTeleport());
+		}
+	}
+
 	private void dropFromOldTeamIfAny(Player player) {
 		// drop from old team if any
 		Team previousTeam = Team.getTeamByPlayerName(player.getName());
@@ -875,4 +930,30 @@ public class WarPlayerListener implements Listener {
 	}
 	
 	
+
+	/**
+	 * Feeds the dirty block journal of the warzones with doors, levers, trampled soil and the like
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void journalPlayerInteract(final PlayerInteractEvent event) {
+		Block clicked = event.getClickedBlock();
+		if (clicked != null) {
+			Warzone.markDirty(clicked, true);
+			if (event.getBlockFace() != null) {
+				// punched out fire
+				Warzone.markDirty(clicked.getRelative(event.getBlockFace()), false);
+			}
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalPlayerBucketEmpty(final PlayerBucketEmptyEvent event) {
+		Warzone.markDirty(event.getBlockClicked().getRelative(event.getBlockFace()), true);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void journalPlayerBucketFill(final PlayerBucketFillEvent event) {
+		Warzone.markDirty(event.getBlockClicked(), true);
+		Warzone.markDirty(event.getBlockClicked().getRelative(event.getBlockFace()), true);
+	}
 }
@@ -0,0 +1,14 @@
+package com.tommytony.war.job;
+
+public class CheckInventoriesJob implements Runnable {
+
+	private final HelmetProtectionTask helmetProtection;
+
+	public CheckInventoriesJob(HelmetProtectionTask helmetProtection) {
+		this.helmetProtection = helmetProtection;
+	}
+
+	public void run() {
+		this.helmetProtection.checkPlayers();
+	}
+}
@@ -70,7 +70,8 @@ public class DeferredBlockResetsJob implements Runnable {
 				} else if (reset.getBlockType() == Material.CHEST.getId()
 						|| reset.getBlockType() == Material.DISPENSER.getId()
 						|| reset.getBlockType() == Material.FURNACE.getId() 
-						|| reset.getBlockType() == Material.BURNING_FURNACE.getId()) {
+						|| reset.getBlockType() == Material.BURNING_FURNACE.getId()
+						|| reset.getBlockType() == Material.BREWING_STAND.getId()) {
 					List<ItemStack> items = reset.getItems();
 	
 					worldBlock.setType(Material.getMaterial(reset.getBlockType()));
@@ -0,0 +1,16 @@
+package com.tommytony.war.job;
+
+import com.tommytony.war.utility.Broadcaster;
+
+public class DeliverBroadcastsJob implements Runnable {
+
+	private final Broadcaster broadcaster;
+
+	public DeliverBroadcastsJob(Broadcaster broadcaster) {
+		this.broadcaster = broadcaster;
+	}
+
+	public void run() {
+		this.broadcaster.deliver();
+	}
+}
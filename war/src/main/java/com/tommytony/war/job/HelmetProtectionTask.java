@@ -1,6 +1,7 @@
 package com.tommytony.war.job;
 
-import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
@@ -16,10 +17,17 @@ import com.tommytony.war.config.WarzoneConfig;
 /**
  * Sets the helmet again onto the players heads. Also limits the number of blocks being held.
  *
+ * Players are checked when their inventory changes (clicks, switching items, drops and
+ * pickups), on the tick after the change. Running the task itself goes over every player
+ * in every zone, which is only a safety net for changes that come without an event.
+ *
  * @author Tim Düsterhus
  */
 public class HelmetProtectionTask implements Runnable {
 
+	private final Set<String> playersToCheck = new LinkedHashSet<String>();
+	private int checkTaskId = -1;
+
 	/**
 	 * @see Runnable.run()
 	 */
@@ -30,54 +38,105 @@ public class HelmetProtectionTask implements Runnable {
 		for (Warzone zone : War.war.getWarzones()) {
 			for (Team team : zone.getTeams()) {
 				for (Player player : team.getPlayers()) {
-					PlayerInventory playerInv = player.getInventory();
-					Material teamBlockMaterial;
-					
-					if (zone.getWarzoneConfig().getBoolean(WarzoneConfig.BLOCKHEADS)) {
-						teamBlockMaterial = team.getKind().getMaterial();
-						// 1) Replace missing block head
-						if (playerInv.getHelmet() == null || playerInv.getHelmet().getType() != teamBlockMaterial) {
-							playerInv.setHelmet(this.createBlockHead(team));
-						}
-						
-						// 2) Get rid of extra blocks in inventory: only keep one
-						HashMap<Integer, ? extends ItemStack> blocks = playerInv.all(teamBlockMaterial);
-						if (blocks.size() > 1 || (blocks.size() == 1 && blocks.get(blocks.keySet().iterator().next()).getAmount() > 1)) {
-							int i = 0;
-							int removed = 0;
-							for (ItemStack item : playerInv.getContents()) {
-								// remove only same colored wool
-								if (item != null && item.getType() == teamBlockMaterial && item.getData().getData() == team.getKind().getData()) {
-									playerInv.clear(i);
-									removed++;
-								}
-								i++;
-							}
-							
-							int firstEmpty = playerInv.firstEmpty();
-							if (firstEmpty > 0) {
-								playerInv.setItem(firstEmpty, this.createBlockHead(team));	
-							}
-							
-							if (removed > 1) {
-								War.war.badMsg(player, "All that " + team.getName() + " wool must have been heavy!");
-							}
-						}
-					}
-					
-					// check for thieves without their treasure in their hands
-					if (zone.isFlagThief(player.getName())) {
-						Team victim = zone.getVictimTeamForFlagThief(player.getName());
-						player.setItemInHand(null);
-						player.getInventory().addItem(new ItemStack(victim.getKind().getMaterial(), 2240, victim.getKind().getData(), victim.getKind().getData()));
-					} else if (zone.isBombThief(player.getName())) {
-						player.setItemInHand(null);
-						player.getInventory().addItem(new ItemStack(Material.TNT, 2240));
-					} else if (zone.isCakeThief(player.getName())) {
-						player.setItemInHand(null);
-						player.getInventory().addItem(new ItemStack(Material.CAKE_BLOCK, 2240));
+					this.check(player, team, zone);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the inventory of the player on the next tick, once the change that
+	 * triggered the check went through
+	 *
+	 * @param Player player Player whose inventory is about to change
+	 */
+	public void checkLater(Player player) {
+		if (Team.getTeamByPlayerName(player.getName()) == null) {
+			return;
+		}
+		if (this.playersToCheck.add(player.getName()) && this.checkTaskId == -1) {
+			this.checkTaskId = War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, new CheckInventoriesJob(this));
+			if (this.checkTaskId == -1) {
+				// couldn't schedule, check right away
+				this.checkPlayers();
+			}
+		}
+	}
+
+	/**
+	 * Checks the players whose inventory changed
+	 */
+	public void checkPlayers() {
+		this.checkTaskId = -1;
+		String[] playerNames = this.playersToCheck.toArray(new String[0]);
+		this.playersToCheck.clear();
+		if (!War.war.isLoaded()) {
+			return;
+		}
+		for (String playerName : playerNames) {
+			Player player = War.war.getServer().getPlayerExact(playerName);
+			Team team = Team.getTeamByPlayerName(playerName);
+			if (player != null && team != null) {
+				this.check(player, team, team.getZone());
+			}
+		}
+	}
+
+	private void check(Player player, Team team, Warzone zone) {
+		PlayerInventory playerInv = player.getInventory();
+		Material teamBlockMaterial;
+
+		if (zone.getWarzoneConfig().getBoolean(WarzoneConfig.BLOCKHEADS)) {
+			teamBlockMaterial = team.getKind().getMaterial();
+			// 1) Replace missing block head
+			if (playerInv.getHelmet() == null || playerInv.getHelmet().getType() != teamBlockMaterial) {
+				playerInv.setHelmet(this.createBlockHead(team));
+			}
+
+			// 2) Get rid of extra blocks in inventory: only keep one
+			ItemStack[] contents = playerInv.getContents();
+			int teamBlocks = 0;
+			for (ItemStack item : contents) {
+				if (item != null && item.getType() == teamBlockMaterial && item.getData().getData() == team.getKind().getData()) {
+					teamBlocks += item.getAmount();
+				}
+			}
+			if (teamBlocks > 1) {
+				int removed = 0;
+				for (int i = 0; i < contents.length; i++) {
+					ItemStack item = contents[i];
+					// remove only same colored wool
+					if (item != null && item.getType() == teamBlockMaterial && item.getData().getData() == team.getKind().getData()) {
+						playerInv.clear(i);
+						removed++;
 					}
 				}
+
+				int firstEmpty = playerInv.firstEmpty();
+				if (firstEmpty > 0) {
+					playerInv.setItem(firstEmpty, this.createBlockHead(team));
+				}
+
+				if (removed > 1) {
+					War.war.badMsg(player, "All that " + team.getName() + " wool must have been heavy!");
+				}
+			}
+		}
+
+		// check for thieves without their treasure in their hands
+		ItemStack inHand = player.getItemInHand();
+		if (zone.isFlagThief(player.getName())) {
+			Team victim = zone.getVictimTeamForFlagThief(player.getName());
+			if (inHand == null || inHand.getType() != victim.getKind().getMaterial()) {
+				player.setItemInHand(new ItemStack(victim.getKind().getMaterial(), 2240, victim.getKind().getData(), victim.getKind().getData()));
+			}
+		} else if (zone.isBombThief(player.getName())) {
+			if (inHand == null || inHand.getType() != Material.TNT) {
+				player.setItemInHand(new ItemStack(Material.TNT, 2240));
+			}
+		} else if (zone.isCakeThief(player.getName())) {
+			if (inHand == null || inHand.getType() != Material.CAKE_BLOCK) {
+				player.setItemInHand(new ItemStack(Material.CAKE_BLOCK, 2240));
 			}
 		}
 	}
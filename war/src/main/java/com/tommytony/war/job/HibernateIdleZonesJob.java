@@ -0,0 +1,24 @@
+package com.tommytony.war.job;
+
+import com.tommytony.war.War;
+import com.tommytony.war.Warzone;
+import com.tommytony.war.config.WarConfig;
+
+/**
+ * Puts the warzones nobody played in for HIBERNATEMINUTES to sleep.
+ *
+ * @author tommytony
+ *
+ */
+public class HibernateIdleZonesJob implements Runnable {
+
+	public void run() {
+		Integer minutes = War.war.getWarConfig().getInt(WarConfig.HIBERNATEMINUTES);
+		if (!War.war.isLoaded() || minutes == null || minutes <= 0) {
+			return;
+		}
+		for (Warzone zone : War.war.getWarzones()) {
+			zone.hibernateIfIdle(minutes * 60L * 1000L);
+		}
+	}
+}
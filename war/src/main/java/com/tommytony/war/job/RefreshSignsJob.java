@@ -0,0 +1,16 @@
+package com.tommytony.war.job;
+
+import com.tommytony.war.utility.SignRefresher;
+
+public class RefreshSignsJob implements Runnable {
+
+	private final SignRefresher refresher;
+
+	public RefreshSignsJob(SignRefresher refresher) {
+		this.refresher = refresher;
+	}
+
+	public void run() {
+		this.refresher.refresh();
+	}
+}
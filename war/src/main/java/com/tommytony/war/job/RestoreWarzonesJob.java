@@ -25,13 +25,14 @@ public class RestoreWarzonesJob implements Runnable {
 	public void run() {
 		String[] warzoneSplit = this.warzonesStr.split(",");
 		War.war.getWarzones().clear();
+		War.war.invalidateLocationIndexes();
 		
 		for (String warzoneName : warzoneSplit) {
 			if (warzoneName != null && !warzoneName.equals("")) {
 				War.war.log("Loading zone " + warzoneName + "...", Level.INFO);
 				Warzone zone = WarzoneTxtMapper.load(warzoneName, !this.newWarInstall);
 				if (zone != null) { // could have failed, would've been logged already
-					War.war.getWarzones().add(zone);
+					War.war.addWarzone(zone);
 					zone.getVolume().loadCorners();
 					
 					if (zone.getLobby() != null) {
@@ -45,6 +46,7 @@ public class RestoreWarzonesJob implements Runnable {
 			}
 		}
 		
+		War.war.dropUnclaimedPlayerStates();
 		if (War.war.getWarzones().size() > 0) {
 			War.war.log("Warzones ready.", Level.INFO);
 		}
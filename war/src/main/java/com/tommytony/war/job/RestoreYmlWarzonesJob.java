@@ -1,49 +1,196 @@
 package com.tommytony.war.job;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 
+import org.bukkit.configuration.file.YamlConfiguration;
 
 import com.tommytony.war.War;
 import com.tommytony.war.Warzone;
+import com.tommytony.war.config.WarConfig;
 import com.tommytony.war.config.WarzoneConfig;
 import com.tommytony.war.mapper.WarzoneYmlMapper;
 
+/**
+ * Loads the warzones listed in war.yml. Only the zone files are parsed in parallel on
+ * worker threads. Everything that touches the world happens back on the main thread, in
+ * the order of war.yml: building each zone and loading its structures, loading its
+ * corners, resetting its lobby and initializing it are separate steps, and the tick's
+ * time budget is checked between steps. Each zone becomes joinable once its last step is
+ * done. A zone that resets on load is reset a slice at a time, and players can't join it
+ * until the reset is done. The warhub is restored after the last zone, so that every
+ * zone gets its gate.
+ */
 public class RestoreYmlWarzonesJob implements Runnable {
 
 	private final List<String> warzones;
 	private final boolean newWarInstall;
+	private final List<String> pendingNames = new ArrayList<String>();
+	private final List<Future<YamlConfiguration>> pendingConfigs = new ArrayList<Future<YamlConfiguration>>();
+	private Warzone building = null;
+	private int buildStep = 0;
+	private Runnable restoreWarhub = null;
+	private int taskId = -1;
 
 	public RestoreYmlWarzonesJob(List<String> warzones, boolean newWarInstall) {
 		this.warzones = warzones;
 		this.newWarInstall = newWarInstall;
 	}
 
+	/**
+	 * @param Runnable restoreWarhub Job restoring the warhub, run once every zone is loaded
+	 */
+	public void setRestoreWarhub(Runnable restoreWarhub) {
+		this.restoreWarhub = restoreWarhub;
+	}
+
 	public void run() {
+		if (this.taskId != -1) {
+			this.finishReadyZones();
+			return;
+		}
+
 		War.war.getWarzones().clear();
-		if (this.warzones != null) {
-			for (String warzoneName : this.warzones) {
-				if (warzoneName != null && !warzoneName.equals("")) {
-					War.war.log("Loading zone " + warzoneName + "...", Level.INFO);
-					Warzone zone = WarzoneYmlMapper.load(warzoneName, !this.newWarInstall);
-					if (zone != null) { // could have failed, would've been logged already
-						War.war.getWarzones().add(zone);
-	
-						zone.getVolume().loadCorners();
-						if (zone.getLobby() != null) {
-							zone.getLobby().getVolume().resetBlocks();
-						}
-						if (zone.getWarzoneConfig().getBoolean(WarzoneConfig.RESETONLOAD)) {
-							zone.getVolume().resetBlocks();
-						}
-						zone.initializeZone();
+		War.war.invalidateLocationIndexes();
+		if (this.warzones == null) {
+			this.done();
+			return;
+		}
+
+		List<String> names = new ArrayList<String>();
+		for (String warzoneName : this.warzones) {
+			if (warzoneName != null && !warzoneName.equals("")) {
+				names.add(warzoneName);
+			}
+		}
+		if (names.isEmpty()) {
+			this.done();
+			return;
+		}
+
+		int noOfThreads = Math.min(names.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(noOfThreads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "War zone loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (final String warzoneName : names) {
+			this.pendingNames.add(warzoneName);
+			if (WarzoneYmlMapper.needsConversion(warzoneName)) {
+				// the old text format gets converted on the main thread
+				this.pendingConfigs.add(null);
+			} else {
+				this.pendingConfigs.add(pool.submit(new Callable<YamlConfiguration>() {
+					public YamlConfiguration call() {
+						return WarzoneYmlMapper.read(warzoneName);
 					}
-				}
+				}));
+			}
+		}
+		pool.shutdown();	// the threads go away once the files are parsed
+
+		this.taskId = War.war.getServer().getScheduler().scheduleSyncRepeatingTask(War.war, this, 1, 1);
+		if (this.taskId == -1) {
+			// couldn't schedule, wait for every zone here
+			while (this.building != null || !this.pendingNames.isEmpty()) {
+				this.nextStep();
 			}
-			if (War.war.getWarzones().size() > 0) {
-				War.war.log("Warzones ready.", Level.INFO);
+			this.done();
+		}
+	}
+
+	/**
+	 * Goes through the steps of the zones that are parsed, until this tick's time is spent
+	 */
+	private void finishReadyZones() {
+		long deadline = System.currentTimeMillis() + War.war.getWarConfig().getInt(WarConfig.RESETMILLISPERTICK);
+		do {
+			if (this.building == null) {
+				Future<YamlConfiguration> next = this.pendingConfigs.get(0);
+				if (next != null && !next.isDone()) {
+					return;
+				}
 			}
+			this.nextStep();
+		} while ((this.building != null || !this.pendingNames.isEmpty()) && System.currentTimeMillis() < deadline);
+
+		if (this.building == null && this.pendingNames.isEmpty()) {
+			War.war.getServer().getScheduler().cancelTask(this.taskId);
+			this.taskId = -1;
+			this.done();
+		}
+	}
+
+	private void nextStep() {
+		if (this.building == null) {
+			this.building = this.buildZone();
+			this.buildStep = 0;
+			return;
+		}
+		Warzone zone = this.building;
+		switch (this.buildStep++) {
+			case 0:
+				zone.getVolume().loadCorners();
+				break;
+			case 1:
+				if (zone.getLobby() != null) {
+					zone.getLobby().getVolume().resetBlocks();
+				}
+				break;
+			default:
+				War.war.addWarzone(zone);
+				if (zone.getWarzoneConfig().getBoolean(WarzoneConfig.RESETONLOAD)) {
+					// initialized by the last slice of the reset
+					zone.reinitialize();
+				} else {
+					zone.initializeZone();
+				}
+				this.building = null;
+				break;
 		}
 	}
 
+	/**
+	 * Builds the next zone from its parsed file, structures included
+	 *
+	 * @return the zone, or null if it couldn't be loaded
+	 */
+	private Warzone buildZone() {
+		String warzoneName = this.pendingNames.remove(0);
+		Future<YamlConfiguration> config = this.pendingConfigs.remove(0);
+
+		War.war.log("Loading zone " + warzoneName + "...", Level.INFO);
+		if (config == null) {
+			return WarzoneYmlMapper.load(warzoneName, !this.newWarInstall);
+		}
+		try {
+			// could have failed, would've been logged already
+			return WarzoneYmlMapper.load(warzoneName, config.get(), !this.newWarInstall);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			War.war.log("Interrupted while loading warzone " + warzoneName + ".", Level.WARNING);
+		} catch (ExecutionException e) {
+			War.war.log("Failed to read warzone-" + warzoneName + ".yml: " + e.getCause(), Level.WARNING);
+		}
+		return null;
+	}
+
+	private void done() {
+		War.war.dropUnclaimedPlayerStates();
+		if (War.war.getWarzones().size() > 0) {
+			War.war.log("Warzones ready.", Level.INFO);
+		}
+		if (this.restoreWarhub != null) {
+			this.restoreWarhub.run();
+		}
+	}
 }
@@ -0,0 +1,22 @@
+package com.tommytony.war.job;
+
+import com.tommytony.war.utility.ExplosionRollback;
+
+public class RollBackExplosionsJob implements Runnable {
+
+	private final ExplosionRollback rollback;
+	private final boolean bombs;
+
+	public RollBackExplosionsJob(ExplosionRollback rollback, boolean bombs) {
+		this.rollback = rollback;
+		this.bombs = bombs;
+	}
+
+	public void run() {
+		if (this.bombs) {
+			this.rollback.resetBombs();
+		} else {
+			this.rollback.rollBack();
+		}
+	}
+}
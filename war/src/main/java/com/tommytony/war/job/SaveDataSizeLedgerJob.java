@@ -0,0 +1,16 @@
+package com.tommytony.war.job;
+
+import com.tommytony.war.War;
+
+/**
+ * Writes the data size ledger to disk if it changed since it was last written.
+ *
+ * @author tommytony
+ *
+ */
+public class SaveDataSizeLedgerJob implements Runnable {
+
+	public void run() {
+		War.war.getDataSizeLedger().flush();
+	}
+}
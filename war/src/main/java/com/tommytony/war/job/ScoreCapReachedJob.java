@@ -56,7 +56,7 @@ public class ScoreCapReachedJob implements Runnable {
 				}
 			}
 			t.resetPoints();
-			t.getPlayers().clear(); // empty the team
+			t.clearPlayers(); // empty the team
 		}
 	}
 }
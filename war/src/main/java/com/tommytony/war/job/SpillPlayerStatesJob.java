@@ -0,0 +1,23 @@
+package com.tommytony.war.job;
+
+import com.tommytony.war.War;
+import com.tommytony.war.Warzone;
+
+/**
+ * Moves the stashed states of offline and idle players out of memory.
+ *
+ * @author tommytony
+ *
+ */
+public class SpillPlayerStatesJob implements Runnable {
+
+	public void run() {
+		if (!War.war.isLoaded()) {
+			return;
+		}
+		for (Warzone zone : War.war.getWarzones()) {
+			zone.getPlayerStates().spill();
+		}
+		War.war.getDisconnected().spill();
+	}
+}
@@ -0,0 +1,14 @@
+package com.tommytony.war.job;
+
+import com.tommytony.war.War;
+
+public class SpoutUpdateHudJob implements Runnable {
+
+	public SpoutUpdateHudJob() {
+	}
+
+	public void run() {
+		War.war.getSpoutDisplayer().updateHuds();
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.tommytony.war.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import com.tommytony.war.War;
+import com.tommytony.war.Warzone;
+import com.tommytony.war.mapper.VolumeMapper;
+import com.tommytony.war.volume.Volume;
+
+/**
+ * Wakes a hibernating warzone. The structure blocks it let go of are read from their
+ * volume files on a background thread, into copies of the volumes that nothing else
+ * touches. Back on the main thread, the volumes take the blocks and the zone is reset
+ * and initialized.
+ *
+ * @author tommytony
+ *
+ */
+public class WakeZoneJob implements Runnable {
+
+	private final Warzone zone;
+	private final List<Volume> released = new ArrayList<Volume>();
+	private final List<Volume> copies = new ArrayList<Volume>();
+	private final List<String> zoneNames = new ArrayList<String>();
+
+	public WakeZoneJob(Warzone zone) {
+		this.zone = zone;
+	}
+
+	/**
+	 * Starts reading the released blocks on another thread
+	 */
+	public void start() {
+		for (Volume volume : this.zone.getStructureVolumes()) {
+			if (volume.getReleasedFrom() != null) {
+				this.released.add(volume);
+				this.copies.add(volume.copyCorners());
+				this.zoneNames.add(volume.getReleasedFrom());
+			}
+		}
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				WakeZoneJob.this.readBlocks();
+			}
+		}, "War zone wake " + this.zone.getName());
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void readBlocks() {
+		for (int i = 0; i < this.copies.size(); i++) {
+			VolumeMapper.loadBlocks(this.copies.get(i), this.zoneNames.get(i));
+		}
+		if (War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, this) == -1) {
+			War.war.log("Failed to schedule the wake up of warzone " + this.zone.getName() + ".", Level.WARNING);
+		}
+	}
+
+	public void run() {
+		for (int i = 0; i < this.released.size(); i++) {
+			Volume volume = this.released.get(i);
+			// volumes saved again in the meantime keep their new blocks
+			volume.adoptReleasedBlocks(this.copies.get(i));
+			if (volume.getReleasedFrom() != null) {
+				War.war.log("Failed to read back the blocks of volume " + volume.getName() + " in warzone " + this.zone.getName() + ", it won't be reset.", Level.WARNING);
+				volume.dropReleasedBlocks();
+			}
+		}
+		if (War.war.getWarzones().contains(this.zone)) {
+			this.zone.reinitialize();
+		}
+	}
+}
@@ -0,0 +1,525 @@
+package com.tommytony.war.job;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Chest;
+import org.bukkit.block.Dispenser;
+import org.bukkit.block.Sign;
+import org.bukkit.inventory.ItemStack;
+
+import com.tommytony.war.War;
+import com.tommytony.war.config.WarConfig;
+import com.tommytony.war.utility.DeferredBlockReset;
+import com.tommytony.war.volume.SectionGrid;
+import com.tommytony.war.volume.Volume;
+import com.tommytony.war.volume.ZoneVolume;
+import com.tommytony.war.volume.ZoneVolumeSnapshot;
+
+/**
+ * Resets a zone volume to its saved snapshot a slice at a time, so that big warzones
+ * don't freeze the server. Every tick, at most RESETBLOCKSPERTICK blocks are visited
+ * and the slice stops early once RESETMILLISPERTICK is spent.
+ *
+ * The volume is walked one chunk at a time, 16x16x16 section by section. A section
+ * whose live content still has the checksum of its saved blocks is skipped without
+ * touching the world block by block, and without decoding its saved blocks when the
+ * checksums were saved in the volume file. Sections holding signs, chests or dispensers
+ * are always reset, because their contents aren't part of the checksum.
+ *
+ * When the zone's dirty block journal is complete, only the journaled blocks (and the
+ * signs, chests and dispensers) are looked at instead of whole sections.
+ *
+ * The first pass clears the blocks that don't float (like Volume.clearBlocksThatDontFloat),
+ * the second pass puts back the saved blocks.
+ *
+ * @author tommytony
+ *
+ */
+public class ZoneVolumeResetJob implements Runnable {
+
+	private static final byte SECTION_UNKNOWN = 0;
+
+	private final ZoneVolume volume;
+	private final String zoneName;
+	private final World world;
+	private final ZoneVolumeSnapshot snapshot;
+	private final Runnable onCompletion;
+	private final DeferredBlockResetsJob deferred;
+	private final boolean[] doesntFloat;
+
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int maxX;
+	private final int maxY;
+	private final int maxZ;
+	private final SectionGrid grid;
+	private final int noOfSections;
+	private final long[] savedChecksums;
+	private final byte[] savedSections;
+	private final int[] dirtyIndexes;
+	private final int noOfUnits;
+
+	private ChunkSnapshot liveChunk = null;
+	private int liveChunkColumn = -1;
+
+	private boolean clearing = true;
+	private int cursor = 0;
+	private int noOfResetBlocks = 0;
+	private int noOfSkippedSections = 0;
+	private int lastReportedQuarter = 0;
+	private boolean failed = false;
+	private boolean done = false;
+	private int taskId = -1;
+
+	public ZoneVolumeResetJob(ZoneVolume volume, String zoneName, World world, ZoneVolumeSnapshot snapshot, Runnable onCompletion) {
+		this(volume, zoneName, world, snapshot, null, onCompletion);
+	}
+
+	/**
+	 * @param long[] dirtyBlocks Packed positions of the blocks that changed since the last reset, or null to diff the whole volume
+	 */
+	public ZoneVolumeResetJob(ZoneVolume volume, String zoneName, World world, ZoneVolumeSnapshot snapshot, long[] dirtyBlocks, Runnable onCompletion) {
+		this.volume = volume;
+		this.zoneName = zoneName;
+		this.world = world;
+		this.snapshot = snapshot;
+		this.onCompletion = onCompletion;
+		this.deferred = new DeferredBlockResetsJob(world);
+		this.minX = volume.getMinX();
+		this.minY = volume.getMinY();
+		this.minZ = volume.getMinZ();
+		this.maxX = this.minX + snapshot.getSizeX() - 1;
+		this.maxY = this.minY + snapshot.getSizeY() - 1;
+		this.maxZ = this.minZ + snapshot.getSizeZ() - 1;
+		this.grid = new SectionGrid(this.minX, this.minY, this.minZ, snapshot.getSizeX(), snapshot.getSizeY(), snapshot.getSizeZ());
+		this.noOfSections = this.grid.getNoOfSections();
+		this.savedChecksums = new long[this.noOfSections];
+		this.savedSections = new byte[this.noOfSections];
+		if (snapshot.hasSectionChecksums()) {
+			// saved along with the blocks, so unchanged sections never get decoded
+			for (int section = 0; section < this.noOfSections; section++) {
+				this.savedChecksums[section] = snapshot.getSectionChecksum(section);
+				this.savedSections[section] = snapshot.getSectionKind(section);
+			}
+		}
+		if (dirtyBlocks == null) {
+			this.dirtyIndexes = null;
+			this.noOfUnits = this.noOfSections;
+		} else {
+			this.dirtyIndexes = this.toDirtyIndexes(dirtyBlocks);
+			this.noOfUnits = this.dirtyIndexes.length;
+		}
+
+		int maxTypeId = 0;
+		Material[] blocksThatDontFloat = Volume.getBlocksThatDontFloat();
+		for (Material dontFloat : blocksThatDontFloat) {
+			maxTypeId = Math.max(maxTypeId, dontFloat.getId());
+		}
+		this.doesntFloat = new boolean[maxTypeId + 1];
+		for (Material dontFloat : blocksThatDontFloat) {
+			this.doesntFloat[dontFloat.getId()] = true;
+		}
+	}
+
+	/**
+	 * Turns the journaled positions into sorted block indexes, so blocks get reset in the
+	 * same x, y, z order as a full reset. Positions outside of the volume are dropped.
+	 */
+	private int[] toDirtyIndexes(long[] dirtyBlocks) {
+		int[] tileEntityIndexes = this.snapshot.getTileEntityIndexes();
+		int[] indexes = new int[dirtyBlocks.length + tileEntityIndexes.length];
+		int count = 0;
+		for (long packed : dirtyBlocks) {
+			int x = ZoneVolume.unpackX(packed);
+			int y = ZoneVolume.unpackY(packed);
+			int z = ZoneVolume.unpackZ(packed);
+			if (x >= this.minX && x <= this.maxX && y >= this.minY && y <= this.maxY && z >= this.minZ && z <= this.maxZ) {
+				indexes[count++] = this.snapshot.getIndex(x - this.minX, y - this.minY, z - this.minZ);
+			}
+		}
+		// sign lines and inventories aren't journaled, so those always get put back
+		for (int index : tileEntityIndexes) {
+			indexes[count++] = index;
+		}
+		Arrays.sort(indexes, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || indexes[unique - 1] != indexes[i]) {
+				indexes[unique++] = indexes[i];
+			}
+		}
+		int[] dirtyIndexes = new int[unique];
+		System.arraycopy(indexes, 0, dirtyIndexes, 0, unique);
+		return dirtyIndexes;
+	}
+
+	/**
+	 * Starts resetting a slice of the volume every tick
+	 */
+	public void start() {
+		this.taskId = War.war.getServer().getScheduler().scheduleSyncRepeatingTask(War.war, this, 1, 1);
+		if (this.taskId == -1) {
+			// couldn't schedule, do it the old way
+			this.runToCompletion();
+		}
+	}
+
+	/**
+	 * Stops the reset where it is. The blocks reset so far stay reset.
+	 */
+	public void cancel() {
+		if (this.taskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.taskId);
+			this.taskId = -1;
+		}
+		this.done = true;
+	}
+
+	public void run() {
+		if (this.done) {
+			this.cancel();
+			return;
+		}
+		Integer blocksPerTick = War.war.getWarConfig().getInt(WarConfig.RESETBLOCKSPERTICK);
+		Integer millisPerTick = War.war.getWarConfig().getInt(WarConfig.RESETMILLISPERTICK);
+		this.step(blocksPerTick == null || blocksPerTick <= 0 ? Integer.MAX_VALUE : blocksPerTick,
+				millisPerTick == null || millisPerTick <= 0 ? Long.MAX_VALUE : millisPerTick * 1000000L);
+	}
+
+	/**
+	 * Resets the whole volume right away
+	 *
+	 * @return number of reset blocks
+	 */
+	public int runToCompletion() {
+		while (!this.done) {
+			this.step(Integer.MAX_VALUE, Long.MAX_VALUE);
+		}
+		return this.noOfResetBlocks;
+	}
+
+	private void step(int blockBudget, long nanoBudget) {
+		long start = System.nanoTime();
+		int visited = 0;
+		while (!this.done && visited < blockBudget) {
+			if (this.cursor >= this.noOfUnits) {
+				if (this.clearing) {
+					// the first pass changed the world, so the chunks must be looked at again
+					this.clearing = false;
+					this.cursor = 0;
+					this.liveChunk = null;
+					this.liveChunkColumn = -1;
+					continue;
+				}
+				this.finish();
+				break;
+			}
+
+			if (this.dirtyIndexes != null) {
+				visited += this.processBlock(this.dirtyIndexes[this.cursor]);
+			} else {
+				visited += this.processSection(this.cursor);
+			}
+			this.cursor++;
+
+			if (System.nanoTime() - start > nanoBudget) {
+				break;
+			}
+		}
+
+		int quarter = this.getProgress() / 25;
+		if (!this.done && quarter > this.lastReportedQuarter && this.taskId != -1) {
+			this.lastReportedQuarter = quarter;
+			War.war.log("Warzone " + this.zoneName + " reset " + (quarter * 25) + "% done.", Level.INFO);
+		}
+	}
+
+	private void finish() {
+		this.done = true;
+		if (this.taskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.taskId);
+			if (this.dirtyIndexes != null) {
+				War.war.log("Reset " + this.noOfResetBlocks + " of " + this.dirtyIndexes.length + " changed blocks in warzone " + this.zoneName + ".", Level.INFO);
+			} else {
+				War.war.log("Reset " + this.noOfResetBlocks + " blocks in warzone " + this.zoneName + ", " + this.noOfSkippedSections + " of " + this.noOfSections + " sections were unchanged.", Level.INFO);
+			}
+		}
+		this.liveChunk = null;
+		if (!this.deferred.isEmpty()) {
+			War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, this.deferred, 2);
+		}
+		this.volume.resetJobDone(this);
+		if (this.onCompletion != null) {
+			// after the deferred blocks, which were scheduled first
+			War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, this.onCompletion, 2);
+		}
+	}
+
+	/**
+	 * Clears or resets the part of the volume inside one chunk section
+	 *
+	 * @param int section Section number, sections of the same chunk come one after the other
+	 * @return number of blocks that were visited in the world
+	 */
+	private int processSection(int section) {
+		int sectionY = this.grid.getSectionY(section);
+		int column = this.grid.getColumn(section);
+		int fromX = this.grid.getFromX(section);
+		int toX = this.grid.getToX(section);
+		int fromY = this.grid.getFromY(section);
+		int toY = this.grid.getToY(section);
+		int fromZ = this.grid.getFromZ(section);
+		int toZ = this.grid.getToZ(section);
+		int visited = 0;
+		try {
+			if (column != this.liveChunkColumn) {
+				this.liveChunk = this.world.getChunkAt(this.grid.getChunkX(section), this.grid.getChunkZ(section)).getChunkSnapshot(false, false, false);
+				this.liveChunkColumn = column;
+			}
+			if (this.isUnchanged(section, sectionY, fromX, toX, fromY, toY, fromZ, toZ)) {
+				if (!this.clearing) {
+					this.noOfSkippedSections++;
+				}
+				return 0;
+			}
+
+			for (int x = fromX; x <= toX; x++) {
+				for (int y = fromY; y <= toY; y++) {
+					for (int z = fromZ; z <= toZ; z++) {
+						int liveBlockType = this.liveChunk.getBlockTypeId(x & 15, y, z & 15);
+						if (this.clearing) {
+							if (liveBlockType < this.doesntFloat.length && this.doesntFloat[liveBlockType]) {
+								this.world.getBlockAt(x, y, z).setType(Material.AIR);
+							}
+						} else {
+							int index = this.snapshot.getIndex(x - this.minX, y - this.minY, z - this.minZ);
+							int diskBlockType = this.snapshot.getTypeId(index);
+							if (liveBlockType != diskBlockType || (byte) this.liveChunk.getBlockData(x & 15, y, z & 15) != this.snapshot.getData(index) || ZoneVolumeSnapshot.isTileEntity(diskBlockType)) {
+								this.resetBlock(index);
+							}
+						}
+						visited++;
+					}
+				}
+			}
+		} catch (Exception e) {
+			this.logFailure(this.snapshot.getIndex(fromX - this.minX, fromY - this.minY, fromZ - this.minZ), e);
+		}
+		return visited;
+	}
+
+	/**
+	 * Clears or resets a single journaled block
+	 *
+	 * @param int index Index of the block in the snapshot
+	 * @return number of blocks that were visited in the world
+	 */
+	private int processBlock(int index) {
+		if (this.clearing) {
+			int k = index % this.snapshot.getSizeZ();
+			int j = (index / this.snapshot.getSizeZ()) % this.snapshot.getSizeY();
+			int i = index / (this.snapshot.getSizeZ() * this.snapshot.getSizeY());
+			try {
+				Block block = this.world.getBlockAt(this.minX + i, this.minY + j, this.minZ + k);
+				int typeId = block.getTypeId();
+				if (typeId < this.doesntFloat.length && this.doesntFloat[typeId]) {
+					block.setType(Material.AIR);
+				}
+			} catch (Exception e) {
+				this.logFailure(index, e);
+			}
+		} else {
+			this.resetBlock(index);
+		}
+		return 1;
+	}
+
+	/**
+	 * Compares the live blocks of a section with the saved ones, using the live chunk snapshot only
+	 */
+	private boolean isUnchanged(int section, int sectionY, int fromX, int toX, int fromY, int toY, int fromZ, int toZ) {
+		if (this.savedSections[section] == SECTION_UNKNOWN) {
+			this.checksumSavedSection(section, fromX, toX, fromY, toY, fromZ, toZ);
+		}
+		if (this.savedSections[section] == ZoneVolumeSnapshot.SECTION_TILE_ENTITIES) {
+			return false;
+		}
+		if (this.savedSections[section] == ZoneVolumeSnapshot.SECTION_AIR && this.liveChunk.isSectionEmpty(sectionY)) {
+			return true;
+		}
+		long liveChecksum = ZoneVolumeSnapshot.CHECKSUM_START;
+		for (int x = fromX; x <= toX; x++) {
+			for (int y = fromY; y <= toY; y++) {
+				for (int z = fromZ; z <= toZ; z++) {
+					liveChecksum = ZoneVolumeSnapshot.checksum(liveChecksum, this.liveChunk.getBlockTypeId(x & 15, y, z & 15), this.liveChunk.getBlockData(x & 15, y, z & 15));
+				}
+			}
+		}
+		return liveChecksum == this.savedChecksums[section];
+	}
+
+	private void checksumSavedSection(int section, int fromX, int toX, int fromY, int toY, int fromZ, int toZ) {
+		long savedChecksum = ZoneVolumeSnapshot.CHECKSUM_START;
+		boolean air = true;
+		boolean tileEntities = false;
+		for (int x = fromX; x <= toX; x++) {
+			for (int y = fromY; y <= toY; y++) {
+				for (int z = fromZ; z <= toZ; z++) {
+					int index = this.snapshot.getIndex(x - this.minX, y - this.minY, z - this.minZ);
+					int diskBlockType = this.snapshot.getTypeId(index);
+					savedChecksum = ZoneVolumeSnapshot.checksum(savedChecksum, diskBlockType, this.snapshot.getData(index));
+					air = air && diskBlockType == Material.AIR.getId();
+					tileEntities = tileEntities || ZoneVolumeSnapshot.isTileEntity(diskBlockType);
+				}
+			}
+		}
+		this.savedChecksums[section] = savedChecksum;
+		this.savedSections[section] = tileEntities ? ZoneVolumeSnapshot.SECTION_TILE_ENTITIES : (air ? ZoneVolumeSnapshot.SECTION_AIR : ZoneVolumeSnapshot.SECTION_BLOCKS);
+	}
+
+	private void resetBlock(int index) {
+		int k = index % this.snapshot.getSizeZ();
+		int j = (index / this.snapshot.getSizeZ()) % this.snapshot.getSizeY();
+		int i = index / (this.snapshot.getSizeZ() * this.snapshot.getSizeY());
+		int x = this.minX + i;
+		int y = this.minY + j;
+		int z = this.minZ + k;
+		try {
+			int diskBlockType = this.snapshot.getTypeId(index);
+			byte diskBlockData = this.snapshot.getData(index);
+
+			Block worldBlock = this.world.getBlockAt(x, y, z);
+			int worldBlockId = worldBlock.getTypeId();
+			if (worldBlockId != diskBlockType || worldBlock.getData() != diskBlockData || diskBlockType == Material.WALL_SIGN.getId() || diskBlockType == Material.SIGN_POST.getId() || diskBlockType == Material.CHEST.getId() || diskBlockType == Material.DISPENSER.getId()) {
+				if (diskBlockType == Material.WALL_SIGN.getId() || diskBlockType == Material.SIGN_POST.getId()) {
+					String[] lines = this.snapshot.getSignLines(index);
+					if (diskBlockType == Material.WALL_SIGN.getId() && ((diskBlockData & 0x04) == 0x04) && i + 1 != this.snapshot.getSizeX()) {
+						// A sign post hanging on a wall south of here needs that block to be set first
+						this.deferred.add(new DeferredBlockReset(x, y, z, diskBlockType, diskBlockData, lines));
+					} else {
+						worldBlock.setType(Material.getMaterial(diskBlockType));
+						BlockState state = worldBlock.getState();
+						state.setData(new org.bukkit.material.Sign(diskBlockType, diskBlockData));
+						if (state instanceof Sign) {
+							Sign sign = (Sign) state;
+							if (lines != null && sign.getLines() != null) {
+								if (lines.length > 0) {
+									sign.setLine(0, lines[0]);
+								}
+								if (lines.length > 1) {
+									sign.setLine(1, lines[1]);
+								}
+								if (lines.length > 2) {
+									sign.setLine(2, lines[2]);
+								}
+								if (lines.length > 3) {
+									sign.setLine(3, lines[3]);
+								}
+								sign.update(true);
+							}
+						}
+					}
+				} else if (diskBlockType == Material.CHEST.getId()) {
+					List<ItemStack> items = this.snapshot.getInvBlockContents(index);
+					worldBlock.setType(Material.getMaterial(diskBlockType));
+					worldBlock.setData(diskBlockData);
+					BlockState state = worldBlock.getState();
+					if (state instanceof Chest) {
+						Chest chest = (Chest) state;
+						if (items != null) {
+							int ii = 0;
+							chest.getInventory().clear();
+							for (ItemStack item : items) {
+								if (item != null) {
+									chest.getInventory().setItem(ii, item);
+									ii++;
+								}
+							}
+							chest.update(true);
+						}
+					}
+				} else if (diskBlockType == Material.DISPENSER.getId()) {
+					List<ItemStack> items = this.snapshot.getInvBlockContents(index);
+					worldBlock.setType(Material.getMaterial(diskBlockType));
+					worldBlock.setData(diskBlockData);
+					BlockState state = worldBlock.getState();
+					if (state instanceof Dispenser) {
+						Dispenser dispenser = (Dispenser) state;
+						if (items != null) {
+							int ii = 0;
+							dispenser.getInventory().clear();
+							for (ItemStack item : items) {
+								if (item != null) {
+									dispenser.getInventory().setItem(ii, item);
+									ii++;
+								}
+							}
+							dispenser.update(true);
+						}
+					}
+				} else if (diskBlockType == Material.WOODEN_DOOR.getId() || diskBlockType == Material.IRON_DOOR_BLOCK.getId()) {
+					// Door blocks
+					this.deferred.add(new DeferredBlockReset(x, y, z, diskBlockType, diskBlockData));
+				} else if (((diskBlockType == Material.TORCH.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.REDSTONE_TORCH_OFF.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.REDSTONE_TORCH_ON.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.LEVER.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.STONE_BUTTON.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.LADDER.getId() && ((diskBlockData & 0x04) == 0x04)) || (diskBlockType == Material.RAILS.getId() && ((diskBlockData & 0x02) == 0x02))) && i + 1 != this.snapshot.getSizeX()) {
+					// Blocks that hang on a block south of themselves need to make sure that block is there before placing themselves... lol
+					// Change the block itself later on:
+					this.deferred.add(new DeferredBlockReset(x, y, z, diskBlockType, diskBlockData));
+				} else {
+					// regular block
+					worldBlock.setType(Material.getMaterial(diskBlockType));
+					worldBlock.setData(diskBlockData);
+				}
+				this.noOfResetBlocks++;
+			}
+		} catch (Exception e) {
+			this.logFailure(index, e);
+		}
+	}
+
+	private void logFailure(int index, Exception e) {
+		if (!this.failed) {
+			// Don't spam the console
+			War.war.getLogger().warning("Failed to reset block in zone volume " + this.volume.getName() + ". Visited blocks so far:" + index + ". Blocks reset: " + this.noOfResetBlocks + ". Exception:" + e.getClass().toString() + " " + e.getMessage());
+			e.printStackTrace();
+			this.failed = true;
+		}
+	}
+
+	/**
+	 * @return how far along the reset is, in percent
+	 */
+	public int getProgress() {
+		if (this.done || this.noOfUnits == 0) {
+			return 100;
+		}
+		long work = this.clearing ? this.cursor : this.noOfUnits + this.cursor;
+		return (int) (work * 100 / (2L * this.noOfUnits));
+	}
+
+	public boolean isDone() {
+		return this.done;
+	}
+
+	public int getNoOfResetBlocks() {
+		return this.noOfResetBlocks;
+	}
+
+	/**
+	 * @return whether the whole volume gets diffed, instead of only the journaled blocks
+	 */
+	public boolean isFullReset() {
+		return this.dirtyIndexes == null;
+	}
+
+	public int getNoOfSkippedSections() {
+		return this.noOfSkippedSections;
+	}
+}
@@ -1,19 +1,144 @@
 package com.tommytony.war.job;
 
+import java.util.logging.Level;
+
+import org.bukkit.World;
+
+import com.tommytony.war.War;
+import com.tommytony.war.config.WarConfig;
 import com.tommytony.war.mapper.ZoneVolumeMapper;
 import com.tommytony.war.volume.Volume;
+import com.tommytony.war.volume.ZoneVolumeCapture;
 
-public class ZoneVolumeSaveJob extends Thread {
+/**
+ * Saves a zone volume in two stages. On the main thread, the chunks of the volume are
+ * captured as chunk snapshots, either all at once or a few every tick (at most
+ * SAVECHUNKSPERTICK). Once every chunk is captured, a background thread encodes the
+ * blocks and writes the volume file next to the old one before renaming it into place,
+ * so that saving a big warzone doesn't freeze the server.
+ *
+ * @author tommytony
+ *
+ */
+public class ZoneVolumeSaveJob implements Runnable {
 	private final Volume volume;
 	private final String zoneName;
+	private final World world;
+	private final ZoneVolumeCapture capture;
+
+	private int cursor = 0;
+	private int taskId = -1;
+	private Thread writer = null;
+	private boolean written = false;
 
 	public ZoneVolumeSaveJob(Volume volume, String zoneName) {
 		this.volume = volume;
 		this.zoneName = zoneName;
+		this.world = volume.getWorld();
+		this.capture = new ZoneVolumeCapture(volume);
+	}
+
+	/**
+	 * Starts capturing a slice of the volume every tick
+	 *
+	 * @param long tickDelay delay before the first slice
+	 */
+	public void start(long tickDelay) {
+		this.taskId = War.war.getServer().getScheduler().scheduleSyncRepeatingTask(War.war, this, tickDelay, 1);
+		if (this.taskId == -1) {
+			// couldn't schedule, do it the old way
+			this.runToCompletion();
+		}
 	}
 
-	@Override
 	public void run() {
-		ZoneVolumeMapper.save(this.volume, this.zoneName);
+		if (this.writer != null) {
+			return;
+		}
+		Integer chunksPerTick = War.war.getWarConfig().getInt(WarConfig.SAVECHUNKSPERTICK);
+		int budget = chunksPerTick == null || chunksPerTick <= 0 ? Integer.MAX_VALUE : chunksPerTick;
+		for (int i = 0; i < budget && this.cursor < this.capture.getNoOfColumns(); i++) {
+			this.capture.captureColumn(this.world, this.cursor++);
+		}
+		if (this.cursor >= this.capture.getNoOfColumns()) {
+			this.startWriting();
+		}
+	}
+
+	/**
+	 * Captures the chunks that are left right away and hands them to the background writer.
+	 * Chunk snapshots are cheap, so this is what callers that are about to change the zone use.
+	 */
+	public void startWriting() {
+		if (this.writer != null) {
+			return;
+		}
+		this.stopCapturing();
+		while (this.cursor < this.capture.getNoOfColumns()) {
+			this.capture.captureColumn(this.world, this.cursor++);
+		}
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				ZoneVolumeSaveJob.this.write();
+			}
+		}, "War zone save " + this.zoneName);
+		this.writer.start();
+	}
+
+	/**
+	 * Captures and writes the whole volume right away, on this thread
+	 *
+	 * @return number of saved blocks
+	 */
+	public int runToCompletion() {
+		if (this.written) {
+			return this.capture.getNoOfBlocks();
+		}
+		this.stopCapturing();
+		while (this.cursor < this.capture.getNoOfColumns()) {
+			this.capture.captureColumn(this.world, this.cursor++);
+		}
+		this.write();
+		return this.capture.getNoOfBlocks();
+	}
+
+	/**
+	 * Finishes capturing on the main thread if needed and waits for the file to be written
+	 *
+	 * @return whether the volume file was written
+	 */
+	public boolean waitUntilWritten() {
+		if (this.writer == null) {
+			this.runToCompletion();
+			return this.written;
+		}
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			War.war.log("Interrupted while saving warzone " + this.zoneName + ".", Level.WARNING);
+			Thread.currentThread().interrupt();
+		}
+		return this.written;
+	}
+
+	private void stopCapturing() {
+		if (this.taskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.taskId);
+			this.taskId = -1;
+		}
+	}
+
+	private void write() {
+		long start = System.currentTimeMillis();
+		this.written = ZoneVolumeMapper.writeCapture(this.volume, this.zoneName, this.capture);
+		if (this.written) {
+			War.war.log("Saved " + this.capture.getNoOfBlocks() + " blocks in warzone " + this.zoneName + " (" + (System.currentTimeMillis() - start) + "ms).", Level.INFO);
+			// the volume keeps this job until the next save, the blocks are on disk now
+			this.capture.release();
+		}
+	}
+
+	public int getNoOfBlocks() {
+		return this.capture.getNoOfBlocks();
 	}
 }
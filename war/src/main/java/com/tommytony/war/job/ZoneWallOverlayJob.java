@@ -0,0 +1,16 @@
+package com.tommytony.war.job;
+
+import com.tommytony.war.structure.ZoneWallOverlay;
+
+public class ZoneWallOverlayJob implements Runnable {
+
+	private final ZoneWallOverlay overlay;
+
+	public ZoneWallOverlayJob(ZoneWallOverlay overlay) {
+		this.overlay = overlay;
+	}
+
+	public void run() {
+		this.overlay.applyChanges();
+	}
+}
@@ -0,0 +1,179 @@
+package com.tommytony.war.mapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.logging.Level;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import com.tommytony.war.War;
+import com.tommytony.war.volume.Volume;
+import com.tommytony.war.volume.ZoneVolume;
+import com.tommytony.war.volume.ZoneVolumeSnapshot;
+
+/**
+ * Reads the 1.6 zone volume files (.corners, .blocks, .signs and .invs), so they can be
+ * converted to the single random access file the ZoneVolumeMapper uses now.
+ *
+ * @author tommytony, Tim Düsterhus
+ *
+ */
+public class DeGaulleZoneVolumeMapper {
+
+	private static final String[] EXTENSIONS = { ".corners", ".blocks", ".signs", ".invs" };
+
+	private static String getPath(Volume volume, String zoneName) {
+		return War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName();
+	}
+
+	/**
+	 * @return boolean Whether the volume was saved in the 1.6 format
+	 */
+	public static boolean exists(Volume volume, String zoneName) {
+		return new File(DeGaulleZoneVolumeMapper.getPath(volume, zoneName) + ".blocks").exists();
+	}
+
+	/**
+	 * Rewrites the 1.6 files of the volume in the current format and deletes them
+	 *
+	 * @param ZoneVolume
+	 *                volume Volume to convert
+	 * @param String
+	 *                zoneName Zone the volume belongs to
+	 * @param World
+	 *                world The world the zone is located
+	 * @return boolean Whether the volume could be converted
+	 */
+	public static boolean convert(ZoneVolume volume, String zoneName, World world) {
+		if (!DeGaulleZoneVolumeMapper.loadCorners(volume, zoneName, world)) {
+			return false;
+		}
+		ZoneVolumeSnapshot snapshot = DeGaulleZoneVolumeMapper.readSnapshot(volume, zoneName);
+		if (snapshot == null || !ZoneVolumeMapper.writeSnapshot(volume, zoneName, snapshot)) {
+			return false;
+		}
+		DeGaulleZoneVolumeMapper.delete(volume, zoneName);
+		War.war.log("Warzone " + zoneName + " file converted!", Level.INFO);
+		return true;
+	}
+
+	/**
+	 * Deletes the 1.6 files of the volume, if there are any left
+	 */
+	public static void delete(Volume volume, String zoneName) {
+		String path = DeGaulleZoneVolumeMapper.getPath(volume, zoneName);
+		for (String extension : EXTENSIONS) {
+			File file = new File(path + extension);
+			if (file.exists() && !file.delete()) {
+				War.war.log("Failed to delete file " + file.getName(), Level.WARNING);
+			}
+		}
+	}
+
+	private static boolean loadCorners(ZoneVolume volume, String zoneName, World world) {
+		File cornersFile = new File(DeGaulleZoneVolumeMapper.getPath(volume, zoneName) + ".corners");
+		BufferedReader cornersReader = null;
+		try {
+			cornersReader = new BufferedReader(new FileReader(cornersFile));
+
+			// Get the corners
+			cornersReader.readLine();
+			int x1 = Integer.parseInt(cornersReader.readLine());
+			int y1 = Integer.parseInt(cornersReader.readLine());
+			int z1 = Integer.parseInt(cornersReader.readLine());
+			cornersReader.readLine();
+			int x2 = Integer.parseInt(cornersReader.readLine());
+			int y2 = Integer.parseInt(cornersReader.readLine());
+			int z2 = Integer.parseInt(cornersReader.readLine());
+
+			volume.setCornerOne(world.getBlockAt(x1, y1, z1));
+			volume.setCornerTwo(world.getBlockAt(x2, y2, z2));
+			return true;
+		} catch (FileNotFoundException e) {
+			War.war.log("Failed to find volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} catch (IOException e) {
+			War.war.log("Failed to read volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} finally {
+			try {
+				if (cornersReader != null) {
+					cornersReader.close();
+				}
+			} catch (IOException e) {
+				War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+				e.printStackTrace();
+			}
+		}
+		return false;
+	}
+
+	private static ZoneVolumeSnapshot readSnapshot(ZoneVolume volume, String zoneName) {
+		String path = DeGaulleZoneVolumeMapper.getPath(volume, zoneName);
+		FileInputStream blocksStream = null;
+		BufferedReader signsReader = null;
+		BufferedReader invsReader = null;
+		try {
+			blocksStream = new FileInputStream(new File(path + ".blocks"));
+			signsReader = new BufferedReader(new FileReader(new File(path + ".signs")));
+			invsReader = new BufferedReader(new FileReader(new File(path + ".invs")));
+
+			// Allocate block byte arrays
+			int noOfBlocks = volume.getSizeX() * volume.getSizeY() * volume.getSizeZ();
+			byte[] blockBytes = new byte[noOfBlocks * 2]; // one byte for type, one for data
+			int read = 0;
+			while (read < blockBytes.length) { // read it all
+				int justRead = blocksStream.read(blockBytes, read, blockBytes.length - read);
+				if (justRead == -1) {
+					break;
+				}
+				read += justRead;
+			}
+			ZoneVolumeSnapshot snapshot = new ZoneVolumeSnapshot(volume.getSizeX(), volume.getSizeY(), volume.getSizeZ(), blockBytes);
+
+			// Sign lines and inventories were written in block order, so tie them to their block index
+			for (int index = 0; index < noOfBlocks; index++) {
+				int diskBlockType = snapshot.getTypeId(index);
+				if (diskBlockType == Material.WALL_SIGN.getId() || diskBlockType == Material.SIGN_POST.getId()) {
+					String linesStr = signsReader.readLine();
+					if (linesStr != null) {
+						snapshot.putSignLines(index, linesStr.split(";;"));
+					}
+				} else if (diskBlockType == Material.CHEST.getId() || diskBlockType == Material.DISPENSER.getId()) {
+					String invStr = invsReader.readLine();
+					if (invStr != null) {
+						snapshot.putInvBlockContents(index, VolumeMapper.readInventoryString(invStr));
+					}
+				}
+			}
+			return snapshot;
+		} catch (FileNotFoundException e) {
+			War.war.log("Failed to find volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} catch (IOException e) {
+			War.war.log("Failed to read volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} finally {
+			try {
+				if (blocksStream != null) {
+					blocksStream.close();
+				}
+				if (signsReader != null) {
+					signsReader.close();
+				}
+				if (invsReader != null) {
+					invsReader.close();
+				}
+			} catch (IOException e) {
+				War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+}
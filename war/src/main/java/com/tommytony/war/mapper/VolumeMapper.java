@@ -34,6 +34,16 @@ public class VolumeMapper {
 		return volume;
 	}
 
+	/**
+	 * @return whether the volume was saved with the given zone
+	 */
+	public static boolean exists(Volume volume, String zoneName) {
+		if (zoneName.equals("")) {
+			return new File(War.war.getDataFolder().getPath() + "/dat/volume-" + volume.getName() + ".dat").exists();
+		}
+		return new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".dat").exists();
+	}
+
 	public static void load(Volume volume, String zoneName, World world) {
 		BufferedReader in = null;
 		try {
@@ -64,63 +74,8 @@ public class VolumeMapper {
 				volume.setCornerOne(world.getBlockAt(x1, y1, z1));
 				volume.setCornerTwo(world.getBlockAt(x2, y2, z2));
 
-				volume.setBlockTypes(new int[volume.getSizeX()][volume.getSizeY()][volume.getSizeZ()]);
-				volume.setBlockDatas(new byte[volume.getSizeX()][volume.getSizeY()][volume.getSizeZ()]);
-				int blockReads = 0;
-				for (int i = 0; i < volume.getSizeX(); i++) {
-					for (int j = 0; j < volume.getSizeY(); j++) {
-						for (int k = 0; k < volume.getSizeZ(); k++) {
-							try {
-								String blockLine = in.readLine();
-								if (blockLine != null && !blockLine.equals("")) {
-									String[] blockSplit = blockLine.split(",");
-									if (blockLine != null && !blockLine.equals("") && blockSplit.length > 1) {
-										int typeID = Integer.parseInt(blockSplit[0]);
-										byte data = Byte.parseByte(blockSplit[1]);
-
-										volume.getBlockTypes()[i][j][k] = typeID;
-										volume.getBlockDatas()[i][j][k] = data;
-
-										if (typeID == Material.WALL_SIGN.getId() || typeID == Material.SIGN_POST.getId()) {
-											// Signs
-											String linesStr = "";
-											if (blockSplit.length > 2) {
-												for (int o = 2; o < blockSplit.length; o++) {
-													linesStr += blockSplit[o];
-												}
-												String[] lines = linesStr.split(";;");
-												volume.getSignLines().put("sign-" + i + "-" + j + "-" + k, lines);
-											}
-										} else if (typeID == Material.CHEST.getId()) {
-											// Chests
-											List<ItemStack> items = new ArrayList<ItemStack>();
-											if (blockSplit.length > 2) {
-												items = readInventoryString(blockSplit[2]);
-											}
-											volume.getInvBlockContents().put("chest-" + i + "-" + j + "-" + k, items);
-										} else if (typeID == Material.DISPENSER.getId()) {
-											// Dispensers
-											List<ItemStack> items = new ArrayList<ItemStack>();
-											if (blockSplit.length > 2) {
-												items = readInventoryString(blockSplit[2]);
-											}
-											volume.getInvBlockContents().put("dispenser-" + i + "-" + j + "-" + k, items);
-										}
-									}
-									blockReads++;
-								}
-							} catch (Exception e) {
-								War.war.log("Unexpected error while reading block from volume " + volume.getName() + " file for zone " + zoneName + ". Blocks read so far: " + blockReads + "Position: x:" + i + " y:" + j + " z:" + k + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
-								e.printStackTrace();
-							}
-						}
-						if (height129Fix && j == volume.getSizeY() - 1) {
-							for (int skip = 0; skip < volume.getSizeZ(); skip++) {
-								in.readLine(); // throw away the extra vertical block I used to save pre 0.8
-							}
-						}
-					}
-				}
+				VolumeMapper.readBlocks(in, volume, zoneName, height129Fix);
+				volume.setBlocksOnDisk(true);
 			}
 		} catch (IOException e) {
 			War.war.log("Failed to read volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
@@ -140,15 +95,132 @@ public class VolumeMapper {
 		}
 	}
 
+	/**
+	 * Reads the saved blocks of a volume whose corners are already set. The world isn't
+	 * touched, so this can run off the main thread on a volume nothing else uses yet.
+	 *
+	 * @return whether the blocks were read
+	 */
+	public static boolean loadBlocks(Volume volume, String zoneName) {
+		BufferedReader in = null;
+		try {
+			if (zoneName.equals("")) {
+				in = new BufferedReader(new FileReader(new File(War.war.getDataFolder().getPath() + "/dat/volume-" + volume.getName() + ".dat")));
+			} else {
+				in = new BufferedReader(new FileReader(new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".dat")));
+			}
+			String firstLine = in.readLine();
+			if (firstLine == null || firstLine.equals("")) {
+				return false;
+			}
+			boolean height129Fix = false;
+			for (int line = 0; line < 8; line++) {
+				// corner coordinates, the y of each corner tells about the pre 0.8 extra block
+				String corner = in.readLine();
+				if ((line == 1 || line == 5) && "128".equals(corner)) {
+					height129Fix = true;
+				}
+			}
+			VolumeMapper.readBlocks(in, volume, zoneName, height129Fix);
+			volume.setBlocksOnDisk(true);
+			return true;
+		} catch (IOException e) {
+			War.war.log("Failed to read volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					War.war.log("Failed to close file reader for volume " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+				}
+			}
+		}
+	}
+
+	private static void readBlocks(BufferedReader in, Volume volume, String zoneName, boolean height129Fix) throws IOException {
+		volume.allocateBlocks();
+		int blockReads = 0;
+		for (int i = 0; i < volume.getSizeX(); i++) {
+			for (int j = 0; j < volume.getSizeY(); j++) {
+				for (int k = 0; k < volume.getSizeZ(); k++) {
+					try {
+						String blockLine = in.readLine();
+						if (blockLine != null && !blockLine.equals("")) {
+							String[] blockSplit = blockLine.split(",");
+							if (blockLine != null && !blockLine.equals("") && blockSplit.length > 1) {
+								int typeID = Integer.parseInt(blockSplit[0]);
+								byte data = Byte.parseByte(blockSplit[1]);
+
+								int index = volume.getBlockIndex(i, j, k);
+								volume.setBlock(index, typeID, data);
+
+								if (typeID == Material.WALL_SIGN.getId() || typeID == Material.SIGN_POST.getId()) {
+									// Signs
+									String linesStr = "";
+									if (blockSplit.length > 2) {
+										for (int o = 2; o < blockSplit.length; o++) {
+											linesStr += blockSplit[o];
+										}
+										String[] lines = linesStr.split(";;");
+										volume.getSignLines().put(index, lines);
+									}
+								} else if (typeID == Material.CHEST.getId()) {
+									// Chests
+									List<ItemStack> items = new ArrayList<ItemStack>();
+									if (blockSplit.length > 2) {
+										items = readInventoryString(blockSplit[2]);
+									}
+									volume.getInvBlockContents().put(index, items);
+								} else if (typeID == Material.DISPENSER.getId()) {
+									// Dispensers
+									List<ItemStack> items = new ArrayList<ItemStack>();
+									if (blockSplit.length > 2) {
+										items = readInventoryString(blockSplit[2]);
+									}
+									volume.getInvBlockContents().put(index, items);
+								}
+							}
+							blockReads++;
+						}
+					} catch (Exception e) {
+						War.war.log("Unexpected error while reading block from volume " + volume.getName() + " file for zone " + zoneName + ". Blocks read so far: " + blockReads + "Position: x:" + i + " y:" + j + " z:" + k + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+						e.printStackTrace();
+					}
+				}
+				if (height129Fix && j == volume.getSizeY() - 1) {
+					for (int skip = 0; skip < volume.getSizeZ(); skip++) {
+						in.readLine(); // throw away the extra vertical block I used to save pre 0.8
+					}
+				}
+			}
+		}
+	}
+
 	public static void save(Volume volume, String zoneName) {
+		if (volume.getReleasedFrom() != null) {
+			// released blocks are the ones in the file already
+			if (!volume.getReleasedFrom().equals(zoneName)) {
+				War.war.log("Volume " + volume.getName() + " of hibernating warzone " + volume.getReleasedFrom() + " can't be saved for warzone " + zoneName + ".", Level.WARNING);
+			}
+			return;
+		}
 		if (volume.hasTwoCorners()) {
+			if (volume.isSaved() && (volume.getSavedSizeX() != volume.getSizeX() || volume.getSavedSizeY() != volume.getSizeY() || volume.getSavedSizeZ() != volume.getSizeZ())) {
+				// the file is read back at the size of its corners
+				War.war.log("Volume " + volume.getName() + " for warzone " + zoneName + " was resized since its blocks were saved. Not writing its volume file.", Level.WARNING);
+				return;
+			}
 			BufferedWriter out = null;
+			File volumeFile;
+			if (zoneName.equals("")) {
+				volumeFile = new File(War.war.getDataFolder().getPath() + "/dat/volume-" + volume.getName() + ".dat");
+			} else {
+				volumeFile = new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".dat");
+			}
+			long oldLength = volumeFile.length();
 			try {
-				if (zoneName.equals("")) {
-					out = new BufferedWriter(new FileWriter(new File(War.war.getDataFolder().getPath() + "/dat/volume-" + volume.getName() + ".dat")));
-				} else {
-					out = new BufferedWriter(new FileWriter(new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".dat")));
-				}
+				out = new BufferedWriter(new FileWriter(volumeFile));
 
 				out.write("corner1");
 				out.newLine();
@@ -167,17 +239,18 @@ public class VolumeMapper {
 				out.write(Integer.toString(volume.getCornerTwo().getZ()));
 				out.newLine();
 				int blockWrites = 0;
-				for (int i = 0; i < volume.getSizeX(); i++) {
-					for (int j = 0; j < volume.getSizeY(); j++) {
-						for (int k = 0; k < volume.getSizeZ(); k++) {
+				int index = 0;
+				for (int i = 0; i < volume.getSavedSizeX(); i++) {
+					for (int j = 0; j < volume.getSavedSizeY(); j++) {
+						for (int k = 0; k < volume.getSavedSizeZ(); k++, index++) {
 							try {
-								int typeId = volume.getBlockTypes()[i][j][k];
-								byte data = volume.getBlockDatas()[i][j][k];
+								int typeId = volume.getBlockType(index);
+								byte data = volume.getBlockData(index);
 								out.write(typeId + "," + data + ",");
 								if (typeId == Material.WALL_SIGN.getId() || typeId == Material.SIGN_POST.getId()) {
 									// Signs
 									String extra = "";
-									String[] lines = volume.getSignLines().get("sign-" + i + "-" + j + "-" + k);
+									String[] lines = volume.getSignLines().get(index);
 									if (lines != null) {
 										for (String line : lines) {
 											extra += line + ";;";
@@ -187,14 +260,14 @@ public class VolumeMapper {
 								} else if (typeId == Material.CHEST.getId()) {
 									// Chests
 									String extra = "";
-									List<ItemStack> contents = volume.getInvBlockContents().get("chest-" + i + "-" + j + "-" + k);
+									List<ItemStack> contents = volume.getInvBlockContents().get(index);
 									if (contents != null) {
 										out.write(buildInventoryStringFromItemList(contents));
 										out.write(extra);
 									}
 								} else if (typeId == Material.DISPENSER.getId()) {
 									// Dispensers
-									List<ItemStack> contents = volume.getInvBlockContents().get("dispenser-" + i + "-" + j + "-" + k);
+									List<ItemStack> contents = volume.getInvBlockContents().get(index);
 									if (contents != null) {
 										out.write(buildInventoryStringFromItemList(contents));
 									}
@@ -207,6 +280,7 @@ public class VolumeMapper {
 						}
 					}
 				}
+				volume.setBlocksOnDisk(true);
 			} catch (IOException e) {
 				War.war.log("Failed to write volume file " + zoneName + " for warzone " + volume.getName() + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
 				e.printStackTrace();
@@ -222,6 +296,7 @@ public class VolumeMapper {
 						e.printStackTrace();
 					}
 				}
+				War.war.getDataSizeLedger().fileChanged(volumeFile, oldLength);
 			}
 		}
 	}
@@ -46,7 +46,8 @@ public class WarYmlMapper {
 		// warzones
 		List<String> warzones = warRootSection.getStringList("war.info.warzones");
 		RestoreYmlWarzonesJob restoreWarzones = new RestoreYmlWarzonesJob(warzones, newWar);	// during conversion, this should execute just after the RestoreTxtWarzonesJob
-		if (War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, restoreWarzones) == -1) {
+		boolean restoringWarzones = War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, restoreWarzones) != -1;
+		if (!restoringWarzones) {
 			War.war.log("Failed to schedule warzone-restore job. No warzone was loaded.", Level.WARNING);
 		}
 
@@ -94,7 +95,10 @@ public class WarYmlMapper {
 		ConfigurationSection hubConfigSection = warRootSection.getConfigurationSection("war.info.warhub");
 		if (hubConfigSection != null) {
 			RestoreYmlWarhubJob restoreWarhub = new RestoreYmlWarhubJob(hubConfigSection);
-			if (War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, restoreWarhub, 20) == -1) {
+			if (restoringWarzones) {
+				// restored once the last zone is loaded, so that every zone gets its gate
+				restoreWarzones.setRestoreWarhub(restoreWarhub);
+			} else if (War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, restoreWarhub, 20) == -1) {
 				War.war.log("Failed to schedule warhub-restore job. War hub was not loaded.", Level.WARNING);
 			}
 		}
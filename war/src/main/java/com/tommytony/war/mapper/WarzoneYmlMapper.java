@@ -26,6 +26,7 @@ import com.tommytony.war.structure.HubLobbyMaterials;
 import com.tommytony.war.structure.Monument;
 import com.tommytony.war.structure.WarzoneMaterials;
 import com.tommytony.war.structure.ZoneLobby;
+import com.tommytony.war.utility.DataSizeLedger;
 import com.tommytony.war.utility.Direction;
 import com.tommytony.war.volume.Volume;
 import com.tommytony.war.volume.ZoneVolume;
@@ -33,11 +34,8 @@ import com.tommytony.war.volume.ZoneVolume;
 public class WarzoneYmlMapper {
 
 	public static Warzone load(String name, boolean createNewVolume) {
-		File warzoneTxtFile = new File(War.war.getDataFolder().getPath() + "/warzone-" + name + ".txt");
-		File warzoneYmlFile = new File(War.war.getDataFolder().getPath() + "/warzone-" + name + ".yml");
-		
 		// Convert from TXT to YML if needed
-		if (warzoneTxtFile.exists() && !warzoneYmlFile.exists()) {
+		if (WarzoneYmlMapper.needsConversion(name)) {
 			// Since we're converting, WarTxtMapper didn't load the warzones. 
 			// We need to load the old-text-format-Warzone into memory.
 			Warzone zoneToConvert = WarzoneTxtMapper.load(name, false);
@@ -45,10 +43,46 @@ public class WarzoneYmlMapper {
 			War.war.log("Converted warzone-" + name + ".txt to warzone-" + name + ".yml", Level.INFO);
 		}
 		
+		return WarzoneYmlMapper.load(name, WarzoneYmlMapper.read(name), createNewVolume);
+	}
+
+	/**
+	 * Tells whether the zone still has to be converted from the old text format, which
+	 * load(String, boolean) does on the main thread
+	 */
+	public static boolean needsConversion(String name) {
+		File warzoneTxtFile = new File(War.war.getDataFolder().getPath() + "/warzone-" + name + ".txt");
+		File warzoneYmlFile = new File(War.war.getDataFolder().getPath() + "/warzone-" + name + ".yml");
+		return warzoneTxtFile.exists() && !warzoneYmlFile.exists();
+	}
+
+	/**
+	 * Parses the settings file of the zone. Doesn't touch the world or War, so it may run
+	 * off the main thread.
+	 *
+	 * @param String name Name of the zone
+	 * @return the parsed settings, or null if the zone has no settings file
+	 */
+	public static YamlConfiguration read(String name) {
+		File warzoneYmlFile = new File(War.war.getDataFolder().getPath() + "/warzone-" + name + ".yml");
 		if (!warzoneYmlFile.exists()) {
+			return null;
+		}
+		return YamlConfiguration.loadConfiguration(warzoneYmlFile);
+	}
+
+	/**
+	 * Builds the zone from its parsed settings, and loads its structure volumes
+	 *
+	 * @param String name Name of the zone
+	 * @param YamlConfiguration warzoneYmlConfig The settings, from read()
+	 * @param boolean createNewVolume Whether to give the zone its volume (not when converting)
+	 * @return the zone, or null if it couldn't be loaded
+	 */
+	public static Warzone load(String name, YamlConfiguration warzoneYmlConfig, boolean createNewVolume) {
+		if (warzoneYmlConfig == null) {
 			War.war.log("File warzone-" + name + ".yml not found", Level.WARNING);
 		} else {
-			YamlConfiguration warzoneYmlConfig = YamlConfiguration.loadConfiguration(warzoneYmlFile);
 			ConfigurationSection warzoneRootSection = warzoneYmlConfig.getConfigurationSection("set");
 			
 			// Bukkit config API forces all Yml nodes to lowercase, now, it seems, sigh...
@@ -648,9 +682,14 @@ public class WarzoneYmlMapper {
 		String oldPath = War.war.getDataFolder().getPath() + "/dat/warzone-" + name + "/";
 		File oldZoneFolder = new File(oldPath);
 		File[] oldZoneFiles = oldZoneFolder.listFiles();
+		long movedBytes = 0;
 		for (File file : oldZoneFiles) {
-			file.renameTo(new File(War.war.getDataFolder().getPath() + "/temp/deleted/dat/warzone-" + name + "/" + file.getName()));
+			long length = file.length();
+			if (file.renameTo(new File(War.war.getDataFolder().getPath() + "/temp/deleted/dat/warzone-" + name + "/" + file.getName()))) {
+				movedBytes += length;
+			}
 		}
 		oldZoneFolder.delete();
+		War.war.getDataSizeLedger().moved(DataSizeLedger.DAT, DataSizeLedger.TEMP, movedBytes);
 	}
 }
@@ -1,34 +1,38 @@
 package com.tommytony.war.mapper;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
-import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockState;
-import org.bukkit.block.Chest;
-import org.bukkit.block.Dispenser;
-import org.bukkit.block.Sign;
-import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.ItemStack;
 
 
 import com.tommytony.war.War;
-import com.tommytony.war.job.DeferredBlockResetsJob;
+import com.tommytony.war.job.ZoneVolumeResetJob;
 import com.tommytony.war.job.ZoneVolumeSaveJob;
-import com.tommytony.war.utility.DeferredBlockReset;
+import com.tommytony.war.volume.SectionFile;
+import com.tommytony.war.volume.SectionGrid;
 import com.tommytony.war.volume.Volume;
 import com.tommytony.war.volume.ZoneVolume;
+import com.tommytony.war.volume.ZoneVolumeCapture;
+import com.tommytony.war.volume.ZoneVolumeSnapshot;
 
 /**
  * The ZoneVolumeMapper take the blocks from disk and sets them in the worlds, since the ZoneVolume doesn't hold its blocks in memory like regular Volumes.
@@ -38,6 +42,54 @@ import com.tommytony.war.volume.ZoneVolume;
  */
 public class ZoneVolumeMapper {
 
+	/*
+	 * Layout of a .vol file, all numbers big-endian:
+	 * - header: magic, version, corner one x/y/z, corner two x/y/z, size x/y/z
+	 * - sections: the blocks of each chunk section of the volume (see SectionGrid), encoded
+	 *   with a palette and runs by ZoneVolumeSnapshot.encodeSection
+	 * - section table: for each section its offset in the file, the checksum of its blocks and its kind
+	 * - tile entities: count, then for each one its block index, its kind and its sign lines or inventory as a UTF string
+	 * - trailer: offsets of the section table and of the tile entities (longs)
+	 * Any section can be found and decoded without reading the others.
+	 *
+	 * Version 1 had the offset of the tile entities at the end of the header, followed by
+	 * two bytes (type, data) per block in x, y, z order. It gets rewritten on first load.
+	 *
+	 * Saves that only change a few sections go to a .vol.delta file next to the .vol file,
+	 * which is left alone. Layout of a delta file:
+	 * - header: magic, version, then the length, section table offset and tile entities
+	 *   offset of the .vol file it was written over (a delta is ignored unless they match)
+	 * - sections: the sections whose blocks differ from the .vol file, encoded the same way
+	 * - section table: count, then for each section its number, its offset in the delta
+	 *   file, the checksum of its blocks and its kind
+	 * - tile entities: all of them, in place of the ones in the .vol file
+	 * - trailer: offsets of the section table and of the tile entities (longs)
+	 * Once the delta holds more than a fraction of the sections, the .vol file is written
+	 * whole again and the delta deleted.
+	 */
+	private static final int VOLUME_FILE_MAGIC = 0x57415256; // WARV
+	private static final int VOLUME_FILE_VERSION = 2;
+	private static final int VOLUME_FILE_VERSION_RAW = 1;
+	private static final int VOLUME_FILE_HEADER_SIZE = 44;
+	private static final int VOLUME_FILE_TRAILER_SIZE = 16;
+	private static final int SECTION_TABLE_ENTRY_SIZE = 13;
+	private static final int VOLUME_FILE_BUFFER_SIZE = 64 * 1024;
+	private static final int DELTA_FILE_MAGIC = 0x57415244; // WARD
+	private static final int DELTA_FILE_VERSION = 1;
+	private static final int DELTA_FILE_HEADER_SIZE = 32;
+	private static final int DELTA_SECTION_TABLE_ENTRY_SIZE = 17;
+	private static final int DELTA_COMPACTION_FRACTION = 4; // a delta holding more than a quarter of the sections gets folded into the .vol file
+	private static final byte TILE_ENTITY_SIGN = 0;
+	private static final byte TILE_ENTITY_INVENTORY = 1;
+
+	private static File getVolumeFile(Volume volume, String zoneName) {
+		return new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".vol");
+	}
+
+	private static File getDeltaFile(Volume volume, String zoneName) {
+		return new File(ZoneVolumeMapper.getVolumeFile(volume, zoneName).getPath() + ".delta");
+	}
+
 	/**
 	 * Loads the given volume
 	 *
@@ -51,230 +103,403 @@ public class ZoneVolumeMapper {
 	 * @return integer Changed blocks
 	 */
 	public static int load(ZoneVolume volume, String zoneName, World world, boolean onlyLoadCorners) {
-		File cornersFile = new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".corners");
-		File blocksFile = new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".blocks");
-		File signsFile = new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".signs");
-		File invsFile = new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName() + ".invs");
-		int noOfResetBlocks = 0;
-		boolean failed = false;
-		if (!blocksFile.exists()) {
+		if (!ZoneVolumeMapper.getVolumeFile(volume, zoneName).exists() && !DeGaulleZoneVolumeMapper.exists(volume, zoneName)) {
 			// The post 1.6 formatted files haven't been created yet so
 			// we need to use the old load.
-			noOfResetBlocks = PreDeGaulleZoneVolumeMapper.load(volume, zoneName, world, onlyLoadCorners);
+			int noOfResetBlocks = PreDeGaulleZoneVolumeMapper.load(volume, zoneName, world, onlyLoadCorners);
 
 			// The new 1.6 files aren't created yet. We just reset the zone (except deferred blocks which will soon execute on main thread ),
 			// so let's save to the new format as soon as the zone is fully reset.
-			ZoneVolumeMapper.saveAsJob(volume, zoneName, 2);
+			volume.saveBlocksAsJob(2);
 			War.war.log("Warzone " + zoneName + " file converted!", Level.INFO);
 
 			return noOfResetBlocks;
+		} else if (!ZoneVolumeMapper.prepareVolumeFile(volume, zoneName, world)) {
+			return 0;
+		} else if (onlyLoadCorners) {
+			ZoneVolumeMapper.loadCorners(volume, zoneName, world);
+			return 0;
 		} else {
-			// 1.6 file exist, so go ahead with reset
-			BufferedReader cornersReader = null;
-			FileInputStream blocksStream = null;
-			BufferedReader signsReader = null;
-			BufferedReader invsReader = null;
+			// volume file exists, so go ahead with reset
+			ZoneVolumeResetJob job = ZoneVolumeMapper.prepareReset(volume, zoneName, world, null, null);
+			if (job == null) {
+				return 0;
+			}
+			return job.runToCompletion();
+		}
+	}
+
+	/**
+	 * Puts back only the given blocks of the volume, the ones that changed since it was last reset
+	 *
+	 * @param ZoneVolume
+	 *                volume Volume to load
+	 * @param String
+	 *                zoneName Zone to load the volume from
+	 * @param World
+	 *                world The world the zone is located
+	 * @param long[]
+	 *                dirtyBlocks Packed positions of the changed blocks
+	 * @return integer Changed blocks
+	 */
+	public static int loadDirtyBlocks(ZoneVolume volume, String zoneName, World world, long[] dirtyBlocks) {
+		ZoneVolumeResetJob job = null;
+		if (ZoneVolumeMapper.prepareVolumeFile(volume, zoneName, world)) {
+			job = ZoneVolumeMapper.prepareReset(volume, zoneName, world, dirtyBlocks, null);
+		}
+		if (job == null) {
+			return ZoneVolumeMapper.load(volume, zoneName, world, false);
+		}
+		return job.runToCompletion();
+	}
+
+	/**
+	 * Loads the given volume a slice at a time, spread over as many ticks as needed
+	 *
+	 * @param ZoneVolume
+	 *                volume Volume to load
+	 * @param String
+	 *                zoneName Zone to load the volume from
+	 * @param World
+	 *                world The world the zone is located
+	 * @param Runnable
+	 *                onCompletion Runs once the last slice is reset, may be null
+	 * @return ZoneVolumeResetJob The started job, or null if the volume was reset right away
+	 */
+	public static ZoneVolumeResetJob loadAsJob(ZoneVolume volume, String zoneName, World world, Runnable onCompletion) {
+		return ZoneVolumeMapper.loadAsJob(volume, zoneName, world, null, onCompletion);
+	}
+
+	/**
+	 * Loads the given blocks of the volume a slice at a time, spread over as many ticks as needed
+	 *
+	 * @param ZoneVolume
+	 *                volume Volume to load
+	 * @param String
+	 *                zoneName Zone to load the volume from
+	 * @param World
+	 *                world The world the zone is located
+	 * @param long[]
+	 *                dirtyBlocks Packed positions of the blocks that changed, or null to go over the whole volume
+	 * @param Runnable
+	 *                onCompletion Runs once the last slice is reset, may be null
+	 * @return ZoneVolumeResetJob The started job, or null if the volume was reset right away
+	 */
+	public static ZoneVolumeResetJob loadAsJob(ZoneVolume volume, String zoneName, World world, long[] dirtyBlocks, Runnable onCompletion) {
+		ZoneVolumeResetJob job = null;
+		if (ZoneVolumeMapper.prepareVolumeFile(volume, zoneName, world)) {
+			job = ZoneVolumeMapper.prepareReset(volume, zoneName, world, dirtyBlocks, onCompletion);
+		}
+		if (job == null) {
+			// Old format (gets converted) or unreadable files: reset the old-fashioned way
+			ZoneVolumeMapper.load(volume, zoneName, world, false);
+			if (onCompletion != null) {
+				War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, onCompletion, 2);
+			}
+			return null;
+		}
+		job.start();
+		return job;
+	}
+
+	/**
+	 * Makes sure the volume file exists in the current format, converting older files on first load
+	 *
+	 * @return boolean Whether there is a volume file to read
+	 */
+	private static boolean prepareVolumeFile(ZoneVolume volume, String zoneName, World world) {
+		File volumeFile = ZoneVolumeMapper.getVolumeFile(volume, zoneName);
+		if (!volumeFile.exists()) {
+			return DeGaulleZoneVolumeMapper.exists(volume, zoneName) && DeGaulleZoneVolumeMapper.convert(volume, zoneName, world);
+		}
+		if (ZoneVolumeMapper.readVersion(volume, zoneName) == VOLUME_FILE_VERSION_RAW) {
+			// uncompressed blocks, rewrite them with sections
+			if (!ZoneVolumeMapper.loadCorners(volume, zoneName, world)) {
+				return false;
+			}
+			ZoneVolumeSnapshot snapshot = ZoneVolumeMapper.readSnapshot(volume, zoneName);
+			if (snapshot == null || !ZoneVolumeMapper.writeSnapshot(volume, zoneName, snapshot)) {
+				return false;
+			}
+			War.war.log("Warzone " + zoneName + " file converted!", Level.INFO);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the corners of the given volume from the header of its file
+	 *
+	 * @return boolean Whether the corners could be read
+	 */
+	private static boolean loadCorners(ZoneVolume volume, String zoneName, World world) {
+		DataInputStream headerStream = null;
+		try {
+			headerStream = new DataInputStream(new BufferedInputStream(new FileInputStream(ZoneVolumeMapper.getVolumeFile(volume, zoneName)), VOLUME_FILE_HEADER_SIZE));
+			if (ZoneVolumeMapper.readMagic(headerStream, volume, zoneName) == -1) {
+				return false;
+			}
+			int x1 = headerStream.readInt();
+			int y1 = headerStream.readInt();
+			int z1 = headerStream.readInt();
+			int x2 = headerStream.readInt();
+			int y2 = headerStream.readInt();
+			int z2 = headerStream.readInt();
+
+			volume.setCornerOne(world.getBlockAt(x1, y1, z1));
+			volume.setCornerTwo(world.getBlockAt(x2, y2, z2));
+			return true;
+		} catch (FileNotFoundException e) {
+			War.war.log("Failed to find volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} catch (IOException e) {
+			War.war.log("Failed to read volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} finally {
 			try {
-				cornersReader = new BufferedReader(new FileReader(cornersFile));
-				blocksStream = new FileInputStream(blocksFile);
-				signsReader = new BufferedReader(new FileReader(signsFile));
-				invsReader = new BufferedReader(new FileReader(invsFile));
-
-				// Get the corners
-				cornersReader.readLine();
-				int x1 = Integer.parseInt(cornersReader.readLine());
-				int y1 = Integer.parseInt(cornersReader.readLine());
-				int z1 = Integer.parseInt(cornersReader.readLine());
-				cornersReader.readLine();
-				int x2 = Integer.parseInt(cornersReader.readLine());
-				int y2 = Integer.parseInt(cornersReader.readLine());
-				int z2 = Integer.parseInt(cornersReader.readLine());
-
-				volume.setCornerOne(world.getBlockAt(x1, y1, z1));
-				volume.setCornerTwo(world.getBlockAt(x2, y2, z2));
-
-				// Allocate block byte arrays
-				int noOfBlocks = volume.getSizeX() * volume.getSizeY() * volume.getSizeZ();
-				byte[] blockBytes = new byte[noOfBlocks * 2]; // one byte for type, one for data
-
-				blocksStream.read(blockBytes); // read it all
-
-				// Now use the block bytes to reset the world blocks
-				if (!onlyLoadCorners) {
-					DeferredBlockResetsJob deferred = new DeferredBlockResetsJob(world);
-					int blockReads = 0, visitedBlocks = 0, x = 0, y = 0, z = 0, i = 0, j = 0, k = 0;
-					int diskBlockType;
-					byte diskBlockData;
-					Block worldBlock;
-					int worldBlockId;
-					volume.clearBlocksThatDontFloat();
-					x = volume.getMinX();
-					for (i = 0; i < volume.getSizeX(); i++) {
-						y = volume.getMinY();
-						for (j = 0; j < volume.getSizeY(); j++) {
-							z = volume.getMinZ();
-							for (k = 0; k < volume.getSizeZ(); k++) {
-								try {
-									diskBlockType = blockBytes[visitedBlocks * 2];
-									diskBlockData = blockBytes[visitedBlocks * 2 + 1];
-
-									worldBlock = volume.getWorld().getBlockAt(x, y, z);
-									worldBlockId = worldBlock.getTypeId();
-									if (worldBlockId != diskBlockType || (worldBlockId == diskBlockType && worldBlock.getData() != diskBlockData) || (worldBlockId == diskBlockType && worldBlock.getData() == diskBlockData && (diskBlockType == Material.WALL_SIGN.getId() || diskBlockType == Material.SIGN_POST.getId() || diskBlockType == Material.CHEST.getId() || diskBlockType == Material.DISPENSER.getId()))) {
-										if (diskBlockType == Material.WALL_SIGN.getId() || diskBlockType == Material.SIGN_POST.getId()) {
-											// Signs read
-											String linesStr = signsReader.readLine();
-											String[] lines = linesStr.split(";;");
-
-											// Signs set
-											if (diskBlockType == Material.WALL_SIGN.getId() && ((diskBlockData & 0x04) == 0x04) && i + 1 != volume.getSizeX()) {
-												// A sign post hanging on a wall south of here needs that block to be set first
-												deferred.add(new DeferredBlockReset(x, y, z, diskBlockType, diskBlockData, lines));
-											} else {
-												worldBlock.setType(Material.getMaterial(diskBlockType));
-												BlockState state = worldBlock.getState();
-												state.setData(new org.bukkit.material.Sign(diskBlockType, diskBlockData));
-												if (state instanceof Sign) {
-													Sign sign = (Sign) state;
-													if (lines != null && sign.getLines() != null) {
-														if (lines.length > 0) {
-															sign.setLine(0, lines[0]);
-														}
-														if (lines.length > 1) {
-															sign.setLine(1, lines[1]);
-														}
-														if (lines.length > 2) {
-															sign.setLine(2, lines[2]);
-														}
-														if (lines.length > 3) {
-															sign.setLine(3, lines[3]);
-														}
-														sign.update(true);
-													}
-												}
-											}
-										} else if (diskBlockType == Material.CHEST.getId()) {
-											// Chests read
-											List<ItemStack> items = VolumeMapper.readInventoryString(invsReader.readLine());
-
-											// Chests set
-											worldBlock.setType(Material.getMaterial(diskBlockType));
-											worldBlock.setData(diskBlockData);
-											BlockState state = worldBlock.getState();
-											if (state instanceof Chest) {
-												Chest chest = (Chest) state;
-												if (items != null) {
-													int ii = 0;
-													chest.getInventory().clear();
-													for (ItemStack item : items) {
-														if (item != null) {
-															chest.getInventory().setItem(ii, item);
-															ii++;
-														}
-													}
-													chest.update(true);
-												}
-											}
-										} else if (diskBlockType == Material.DISPENSER.getId()) {
-											// Dispensers read
-											List<ItemStack> items = VolumeMapper.readInventoryString(invsReader.readLine());
-
-											// Dispensers set
-											worldBlock.setType(Material.getMaterial(diskBlockType));
-											worldBlock.setData(diskBlockData);
-											BlockState state = worldBlock.getState();
-											if (state instanceof Dispenser) {
-												Dispenser dispenser = (Dispenser) state;
-												if (items != null) {
-													int ii = 0;
-													dispenser.getInventory().clear();
-													for (ItemStack item : items) {
-														if (item != null) {
-															dispenser.getInventory().setItem(ii, item);
-															ii++;
-														}
-													}
-													dispenser.update(true);
-												}
-											}
-										} else if (diskBlockType == Material.WOODEN_DOOR.getId() || diskBlockType == Material.IRON_DOOR_BLOCK.getId()) {
-											// Door blocks
-											deferred.add(new DeferredBlockReset(x, y, z, diskBlockType, diskBlockData));
-										} else if (((diskBlockType == Material.TORCH.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.REDSTONE_TORCH_OFF.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.REDSTONE_TORCH_ON.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.LEVER.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.STONE_BUTTON.getId() && ((diskBlockData & 0x02) == 0x02)) || (diskBlockType == Material.LADDER.getId() && ((diskBlockData & 0x04) == 0x04)) || (diskBlockType == Material.RAILS.getId() && ((diskBlockData & 0x02) == 0x02))) && i + 1 != volume.getSizeX()) {
-											// Blocks that hang on a block south of themselves need to make sure that block is there before placing themselves... lol
-											// Change the block itself later on:
-											deferred.add(new DeferredBlockReset(x, y, z, diskBlockType, diskBlockData));
-										} else {
-											// regular block
-											if (diskBlockType >= 0) {
-												worldBlock.setType(Material.getMaterial(diskBlockType));
-												worldBlock.setData(diskBlockData);
-											} else {
-												// The larger than 127 block types were stored as bytes, 
-												// but now -128 to -1 are the result of the bad cast from byte 
-												// to int array above. To make matters worse let's make this
-												// quick a dirty patch. Anyway everything will break horribly 
-												// once block ids get higher than 255.
-												worldBlock.setType(Material.getMaterial(256 + diskBlockType));
-												worldBlock.setData(diskBlockData);
-											}
-										}
-										noOfResetBlocks++;
-									}
-									visitedBlocks++;
-
-									blockReads++;
-
-								} catch (Exception e) {
-									if (!failed) {
-										// Don't spam the console
-										War.war.getLogger().warning("Failed to reset block in zone volume " + volume.getName() + ". " + "Blocks read: " + blockReads + ". Visited blocks so far:" + visitedBlocks + ". Blocks reset: " + noOfResetBlocks + ". Error at x:" + x + " y:" + y + " z:" + z + ". Exception:" + e.getClass().toString() + " " + e.getMessage());
-										e.printStackTrace();
-										failed = true;
-									}
-								} finally {
-									z++;
-								}
-							}
-							y++;
-						}
-						x++;
-					}
-					if (!deferred.isEmpty()) {
-						War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, deferred, 2);
-					}
+				if (headerStream != null) {
+					headerStream.close();
 				}
-			} catch (FileNotFoundException e) {
-				War.war.log("Failed to find volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			} catch (IOException e) {
+				War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
 				e.printStackTrace();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return int Version of the volume file, -1 if it can't be read
+	 */
+	private static int readVersion(Volume volume, String zoneName) {
+		DataInputStream headerStream = null;
+		try {
+			headerStream = new DataInputStream(new FileInputStream(ZoneVolumeMapper.getVolumeFile(volume, zoneName)));
+			return ZoneVolumeMapper.readMagic(headerStream, volume, zoneName);
+		} catch (IOException e) {
+			War.war.log("Failed to read volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} finally {
+			try {
+				if (headerStream != null) {
+					headerStream.close();
+				}
 			} catch (IOException e) {
-				War.war.log("Failed to read volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+				War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
 				e.printStackTrace();
-			} finally {
-				try {
-					if (cornersReader != null) {
-						cornersReader.close();
-					}
-					if (blocksStream != null) {
-						blocksStream.close();
-					}
-					if (signsReader != null) {
-						signsReader.close();
-					}
-					if (invsReader != null) {
-						invsReader.close();
-					}
-				} catch (IOException e) {
-					War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
-					e.printStackTrace();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return int Version of the volume file, -1 if it isn't one War can read
+	 */
+	private static int readMagic(DataInput in, Volume volume, String zoneName) throws IOException {
+		int magic = in.readInt();
+		int version = in.readInt();
+		if (magic != VOLUME_FILE_MAGIC || (version != VOLUME_FILE_VERSION && version != VOLUME_FILE_VERSION_RAW)) {
+			War.war.log("Volume file " + volume.getName() + " for warzone " + zoneName + " isn't in a format this version of War can read.", Level.WARNING);
+			return -1;
+		}
+		return version;
+	}
+
+	/**
+	 * Reads the corners and saved blocks of the volume and readies a job that puts them back in the world
+	 *
+	 * @return ZoneVolumeResetJob The job, not started yet, or null if the files couldn't be read
+	 */
+	private static ZoneVolumeResetJob prepareReset(ZoneVolume volume, String zoneName, World world, long[] dirtyBlocks, Runnable onCompletion) {
+		if (!ZoneVolumeMapper.loadCorners(volume, zoneName, world)) {
+			return null;
+		}
+		ZoneVolumeSnapshot snapshot = ZoneVolumeMapper.readSnapshot(volume, zoneName);
+		if (snapshot == null) {
+			return null;
+		}
+		return new ZoneVolumeResetJob(volume, zoneName, world, snapshot, dirtyBlocks, onCompletion);
+	}
+
+	/**
+	 * Reads the section table of the given volume along with its sign lines and inventories.
+	 * Sections are only read and decoded when one of their blocks is looked at. Nothing keeps
+	 * the file open afterwards, and replaceFile() copies the sections still in use onto the
+	 * heap, so saves can replace it while the snapshot is in use.
+	 *
+	 * @param ZoneVolume
+	 *                volume Volume to read
+	 * @param String
+	 *                zoneName Zone to load the volume from
+	 * @return ZoneVolumeSnapshot The saved blocks, or null if they couldn't be read
+	 */
+	public static ZoneVolumeSnapshot readSnapshot(ZoneVolume volume, String zoneName) {
+		RandomAccessFile volumeFile = null;
+		try {
+			File file = ZoneVolumeMapper.getVolumeFile(volume, zoneName);
+			volumeFile = new RandomAccessFile(file, "r");
+			int version = ZoneVolumeMapper.readMagic(volumeFile, volume, zoneName);
+			if (version == -1) {
+				return null;
+			}
+			int x1 = volumeFile.readInt();
+			int y1 = volumeFile.readInt();
+			int z1 = volumeFile.readInt();
+			int x2 = volumeFile.readInt();
+			int y2 = volumeFile.readInt();
+			int z2 = volumeFile.readInt();
+			int sizeX = volumeFile.readInt();
+			int sizeY = volumeFile.readInt();
+			int sizeZ = volumeFile.readInt();
+
+			ZoneVolumeSnapshot snapshot;
+			long tileEntitiesOffset;
+			long tileEntitiesEnd = volumeFile.length();
+			if (version == VOLUME_FILE_VERSION_RAW) {
+				// only read to be converted, so keep it off the file
+				tileEntitiesOffset = volumeFile.readLong();
+				byte[] blockBytes = new byte[2 * sizeX * sizeY * sizeZ];
+				int read = volumeFile.read(blockBytes);
+				if (read < blockBytes.length) {
+					// truncated file: missing blocks come back as air
+					War.war.log("Volume file " + volume.getName() + " for warzone " + zoneName + " is shorter than expected.", Level.WARNING);
+				}
+				snapshot = new ZoneVolumeSnapshot(sizeX, sizeY, sizeZ, blockBytes);
+			} else {
+				volumeFile.seek(tileEntitiesEnd - VOLUME_FILE_TRAILER_SIZE);
+				long sectionTableOffset = volumeFile.readLong();
+				tileEntitiesOffset = volumeFile.readLong();
+				tileEntitiesEnd -= VOLUME_FILE_TRAILER_SIZE;
+
+				SectionGrid grid = new SectionGrid(Math.min(x1, x2), Math.min(y1, y2), Math.min(z1, z2), sizeX, sizeY, sizeZ);
+				int noOfSections = grid.getNoOfSections();
+				byte[] sectionTableBytes = new byte[noOfSections * SECTION_TABLE_ENTRY_SIZE];
+				volumeFile.seek(sectionTableOffset);
+				volumeFile.readFully(sectionTableBytes);
+				ByteBuffer sectionTable = ByteBuffer.wrap(sectionTableBytes);
+				int[] sectionOffsets = new int[noOfSections];
+				long[] sectionChecksums = new long[noOfSections];
+				byte[] sectionKinds = new byte[noOfSections];
+				for (int section = 0; section < noOfSections; section++) {
+					sectionOffsets[section] = sectionTable.getInt();
+					sectionChecksums[section] = sectionTable.getLong();
+					sectionKinds[section] = sectionTable.get();
+				}
+
+				SectionFile sections = SectionFile.open(file, sectionTableOffset);
+				snapshot = new ZoneVolumeSnapshot(Math.min(x1, x2), Math.min(y1, y2), Math.min(z1, z2), sizeX, sizeY, sizeZ, sections, sectionOffsets, sectionChecksums, sectionKinds);
+				if (ZoneVolumeMapper.readDelta(volume, zoneName, volumeFile.length(), sectionTableOffset, tileEntitiesOffset, snapshot)) {
+					// the delta has the tile entities
+					return snapshot;
 				}
 			}
-			return noOfResetBlocks;
+
+			ZoneVolumeMapper.readTileEntities(volumeFile, tileEntitiesOffset, tileEntitiesEnd, snapshot);
+			return snapshot;
+		} catch (FileNotFoundException e) {
+			War.war.log("Failed to find volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} catch (IOException e) {
+			War.war.log("Failed to read volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} finally {
+			try {
+				if (volumeFile != null) {
+					volumeFile.close();
+				}
+			} catch (IOException e) {
+				War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	private static void readTileEntities(RandomAccessFile file, long tileEntitiesOffset, long tileEntitiesEnd, ZoneVolumeSnapshot snapshot) throws IOException {
+		if (tileEntitiesOffset >= tileEntitiesEnd) {
+			return;
+		}
+		byte[] tileEntityBytes = new byte[(int) (tileEntitiesEnd - tileEntitiesOffset)];
+		file.seek(tileEntitiesOffset);
+		file.readFully(tileEntityBytes);
+		DataInputStream tileEntities = new DataInputStream(new ByteArrayInputStream(tileEntityBytes));
+		int noOfTileEntities = tileEntities.readInt();
+		for (int i = 0; i < noOfTileEntities; i++) {
+			int index = tileEntities.readInt();
+			byte kind = tileEntities.readByte();
+			String value = tileEntities.readUTF();
+			if (kind == TILE_ENTITY_SIGN) {
+				snapshot.putSignLines(index, value.split(";;"));
+			} else if (kind == TILE_ENTITY_INVENTORY) {
+				snapshot.putInvBlockContents(index, VolumeMapper.readInventoryString(value));
+			}
 		}
 	}
 
 	/**
-	 * Saves the given volume
+	 * Lays the sections and tile entities of the delta file, if there is one written over
+	 * this volume file, over the snapshot
+	 *
+	 * @return boolean Whether a delta was laid over the snapshot
+	 */
+	private static boolean readDelta(Volume volume, String zoneName, long baseLength, long baseSectionTableOffset, long baseTileEntitiesOffset, ZoneVolumeSnapshot snapshot) {
+		File deltaFile = ZoneVolumeMapper.getDeltaFile(volume, zoneName);
+		if (!deltaFile.exists()) {
+			return false;
+		}
+		RandomAccessFile delta = null;
+		try {
+			delta = new RandomAccessFile(deltaFile, "r");
+			if (delta.length() < DELTA_FILE_HEADER_SIZE + VOLUME_FILE_TRAILER_SIZE || delta.readInt() != DELTA_FILE_MAGIC || delta.readInt() != DELTA_FILE_VERSION
+					|| delta.readLong() != baseLength || delta.readLong() != baseSectionTableOffset || delta.readLong() != baseTileEntitiesOffset) {
+				// left over from before the volume file was last written whole
+				War.war.log("Ignoring out of date delta file for volume " + volume.getName() + " of warzone " + zoneName + ".", Level.WARNING);
+				return false;
+			}
+			delta.seek(delta.length() - VOLUME_FILE_TRAILER_SIZE);
+			long sectionTableOffset = delta.readLong();
+			long tileEntitiesOffset = delta.readLong();
+
+			delta.seek(sectionTableOffset);
+			int noOfSections = delta.readInt();
+			byte[] sectionTableBytes = new byte[noOfSections * DELTA_SECTION_TABLE_ENTRY_SIZE];
+			delta.readFully(sectionTableBytes);
+			ByteBuffer sectionTable = ByteBuffer.wrap(sectionTableBytes);
+			// only the sections listed are read, and only once they are needed
+			SectionFile sections = SectionFile.open(deltaFile, sectionTableOffset);
+			int[] numbers = new int[noOfSections];
+			int[] offsets = new int[noOfSections + 1];
+			long[] checksums = new long[noOfSections];
+			byte[] kinds = new byte[noOfSections];
+			for (int i = 0; i < noOfSections; i++) {
+				numbers[i] = sectionTable.getInt();
+				offsets[i] = sectionTable.getInt();
+				checksums[i] = sectionTable.getLong();
+				kinds[i] = sectionTable.get();
+			}
+			offsets[noOfSections] = sections.getSectionsEnd();
+			for (int i = 0; i < noOfSections; i++) {
+				// written one after the other, in the order of the table
+				snapshot.layerSection(sections, numbers[i], offsets[i], offsets[i + 1], checksums[i], kinds[i]);
+			}
+			ZoneVolumeMapper.readTileEntities(delta, tileEntitiesOffset, delta.length() - VOLUME_FILE_TRAILER_SIZE, snapshot);
+			return true;
+		} catch (IOException e) {
+			// the volume file alone is still a saved state of the zone
+			War.war.log("Failed to read delta file " + volume.getName() + " for warzone " + zoneName + ", using the older volume file. " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			return false;
+		} finally {
+			try {
+				if (delta != null) {
+					delta.close();
+				}
+			} catch (IOException e) {
+				War.war.log("Failed to close delta file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			}
+		}
+	}
+
+	/**
+	 * Saves the given volume right away
 	 *
 	 * @param Volume
 	 *                volume Volume to save
@@ -283,143 +508,413 @@ public class ZoneVolumeMapper {
 	 * @return integer Number of written blocks
 	 */
 	public static int save(Volume volume, String zoneName) {
-		int noOfSavedBlocks = 0;
-		if (volume.hasTwoCorners()) {
-			BufferedWriter cornersWriter = null;
-			FileOutputStream blocksOutput = null;
-			BufferedWriter signsWriter = null;
-			BufferedWriter invsWriter = null;
+		if (!volume.hasTwoCorners()) {
+			return 0;
+		}
+		return new ZoneVolumeSaveJob(volume, zoneName).runToCompletion();
+	}
+
+	/**
+	 * Writes the blocks captured from the world to the volume file. Doesn't touch the world,
+	 * so it's safe to call off the main thread.
+	 *
+	 * @param Volume
+	 *                volume Volume the blocks belong to
+	 * @param String
+	 *                zoneName The warzone the volume is located
+	 * @param ZoneVolumeCapture
+	 *                capture The captured chunks of the volume
+	 * @return boolean Whether the file could be written
+	 */
+	public static boolean writeCapture(Volume volume, String zoneName, ZoneVolumeCapture capture) {
+		if (ZoneVolumeMapper.writeDelta(volume, zoneName, capture)) {
+			return true;
+		}
+		File volumeFile = ZoneVolumeMapper.getVolumeFile(volume, zoneName);
+		File tempFile = new File(volumeFile.getPath() + ".tmp");
+		DataOutputStream volumeOutput = null;
+		boolean written = false;
+		try {
+			(new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName)).mkdir();
+			volumeOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), VOLUME_FILE_BUFFER_SIZE));
+			ZoneVolumeMapper.writeHeader(volumeOutput, capture.getCorners(), capture.getSizeX(), capture.getSizeY(), capture.getSizeZ());
+
+			SectionGrid grid = capture.getGrid();
+			int[] sectionOffsets = new int[grid.getNoOfSections()];
+			long[] sectionChecksums = new long[grid.getNoOfSections()];
+			byte[] sectionKinds = new byte[grid.getNoOfSections()];
+			byte[] sectionBlocks = new byte[16 * 16 * 16 * 2];
+			for (int section = 0; section < grid.getNoOfSections(); section++) {
+				int noOfSectionBlocks = ZoneVolumeMapper.readSectionBlocks(capture, section, sectionBlocks);
+				ZoneVolumeMapper.writeSection(volumeOutput, section, sectionBlocks, noOfSectionBlocks, sectionOffsets, sectionChecksums, sectionKinds);
+			}
+
+			int noOfTileEntities = capture.getSignLines().size() + capture.getInvBlockContents().size();
+			ZoneVolumeMapper.writeFooter(volumeOutput, sectionOffsets, sectionChecksums, sectionKinds, noOfTileEntities, ZoneVolumeMapper.writeTileEntities(capture));
+			written = true;
+		} catch (IOException e) {
+			War.war.log("Failed to write volume file " + zoneName + " for warzone " + volume.getName() + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} catch (Exception e) {
+			War.war.log("Unexpected error caused failure to write volume file " + zoneName + " for warzone " + volume.getName() + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} finally {
 			try {
-				(new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName)).mkdir();
-				String path = War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName + "/volume-" + volume.getName();
-				cornersWriter = new BufferedWriter(new FileWriter(new File(path + ".corners")));
-				blocksOutput = new FileOutputStream(new File(path + ".blocks"));
-				signsWriter = new BufferedWriter(new FileWriter(new File(path + ".signs")));
-				invsWriter = new BufferedWriter(new FileWriter(new File(path + ".invs")));
-
-				cornersWriter.write("corner1");
-				cornersWriter.newLine();
-				cornersWriter.write(Integer.toString(volume.getCornerOne().getX()));
-				cornersWriter.newLine();
-				cornersWriter.write(Integer.toString(volume.getCornerOne().getY()));
-				cornersWriter.newLine();
-				cornersWriter.write(Integer.toString(volume.getCornerOne().getZ()));
-				cornersWriter.newLine();
-				cornersWriter.write("corner2");
-				cornersWriter.newLine();
-				cornersWriter.write(Integer.toString(volume.getCornerTwo().getX()));
-				cornersWriter.newLine();
-				cornersWriter.write(Integer.toString(volume.getCornerTwo().getY()));
-				cornersWriter.newLine();
-				cornersWriter.write(Integer.toString(volume.getCornerTwo().getZ()));
-				cornersWriter.newLine();
-
-				int x = 0;
-				int y = 0;
-				int z = 0;
-				Block block;
-				int typeId;
-				byte data;
-				BlockState state;
-
-				x = volume.getMinX();
-				for (int i = 0; i < volume.getSizeX(); i++) {
-					y = volume.getMinY();
-					for (int j = 0; j < volume.getSizeY(); j++) {
-						z = volume.getMinZ();
-						for (int k = 0; k < volume.getSizeZ(); k++) {
-							try {
-								block = volume.getWorld().getBlockAt(x, y, z);
-								typeId = block.getTypeId();
-								data = block.getData();
-								state = block.getState();
-
-								blocksOutput.write((byte) typeId);
-								blocksOutput.write(data);
-
-								if (state instanceof Sign) {
-									// Signs
-									String extra = "";
-									Sign sign = (Sign) state;
-									if (sign.getLines() != null) {
-										for (String line : sign.getLines()) {
-											extra += line + ";;";
-										}
-										signsWriter.write(extra);
-										signsWriter.newLine();
-									}
-								} else if (state instanceof Chest) {
-									// Chests
-									Chest chest = (Chest) state;
-									Inventory inv = chest.getInventory();
-									List<ItemStack> items = VolumeMapper.getItemListFromInv(inv);
-									invsWriter.write(VolumeMapper.buildInventoryStringFromItemList(items));
-									invsWriter.newLine();
-								} else if (state instanceof Dispenser) {
-									// Dispensers
-									Dispenser dispenser = (Dispenser) state;
-									Inventory inv = dispenser.getInventory();
-									List<ItemStack> items = VolumeMapper.getItemListFromInv(inv);
-									invsWriter.write(VolumeMapper.buildInventoryStringFromItemList(items));
-									invsWriter.newLine();
-								}
-								noOfSavedBlocks++;
-							} catch (Exception e) {
-								War.war.log("Unexpected error while saving a block to " + " file for zone " + zoneName + ". Blocks saved so far: " + noOfSavedBlocks + "Position: x:" + x + " y:" + y + " z:" + z + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
-								e.printStackTrace();
-							} finally {
-								z++;
-							}
-						}
-						y++;
-					}
-					x++;
+				if (volumeOutput != null) {
+					volumeOutput.close();
 				}
 			} catch (IOException e) {
-				War.war.log("Failed to write volume file " + zoneName + " for warzone " + volume.getName() + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+				War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
 				e.printStackTrace();
-			} catch (Exception e) {
-				War.war.log("Unexpected error caused failure to write volume file " + zoneName + " for warzone " + volume.getName() + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			}
+		}
+		if (written && ZoneVolumeMapper.replaceFile(tempFile, volumeFile)) {
+			// the 1.6 files and the delta would only be out of date now
+			DeGaulleZoneVolumeMapper.delete(volume, zoneName);
+			ZoneVolumeMapper.deleteDelta(volume, zoneName);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the sections whose blocks changed since the volume file was written to the
+	 * delta file. Doesn't touch the world, so it's safe to call off the main thread.
+	 *
+	 * @return boolean Whether the delta was written, false if the volume file should be written whole instead
+	 */
+	private static boolean writeDelta(Volume volume, String zoneName, ZoneVolumeCapture capture) {
+		SectionGrid grid = capture.getGrid();
+		long[] baseChecksums = new long[grid.getNoOfSections()];
+		long[] base = ZoneVolumeMapper.readBaseChecksums(volume, zoneName, capture, baseChecksums);
+		if (base == null) {
+			return false;
+		}
+
+		// checksums are cheap, so find out what changed before writing anything
+		byte[] sectionBlocks = new byte[16 * 16 * 16 * 2];
+		List<Integer> changedSections = new ArrayList<Integer>();
+		for (int section = 0; section < grid.getNoOfSections(); section++) {
+			int noOfSectionBlocks = ZoneVolumeMapper.readSectionBlocks(capture, section, sectionBlocks);
+			long checksum = ZoneVolumeSnapshot.CHECKSUM_START;
+			for (int i = 0; i < noOfSectionBlocks; i++) {
+				checksum = ZoneVolumeSnapshot.checksum(checksum, sectionBlocks[i * 2] & 0xFF, sectionBlocks[i * 2 + 1]);
+			}
+			if (checksum != baseChecksums[section]) {
+				changedSections.add(section);
+			}
+		}
+		if (changedSections.size() > grid.getNoOfSections() / DELTA_COMPACTION_FRACTION) {
+			return false;
+		}
+
+		File deltaFile = ZoneVolumeMapper.getDeltaFile(volume, zoneName);
+		File tempFile = new File(deltaFile.getPath() + ".tmp");
+		DataOutputStream deltaOutput = null;
+		boolean written = false;
+		try {
+			deltaOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), VOLUME_FILE_BUFFER_SIZE));
+			deltaOutput.writeInt(DELTA_FILE_MAGIC);
+			deltaOutput.writeInt(DELTA_FILE_VERSION);
+			for (long baseValue : base) {
+				deltaOutput.writeLong(baseValue);
+			}
+
+			int[] sectionOffsets = new int[changedSections.size()];
+			long[] sectionChecksums = new long[changedSections.size()];
+			byte[] sectionKinds = new byte[changedSections.size()];
+			for (int i = 0; i < changedSections.size(); i++) {
+				int noOfSectionBlocks = ZoneVolumeMapper.readSectionBlocks(capture, changedSections.get(i), sectionBlocks);
+				ZoneVolumeMapper.writeSection(deltaOutput, i, sectionBlocks, noOfSectionBlocks, sectionOffsets, sectionChecksums, sectionKinds);
+			}
+
+			long sectionTableOffset = deltaOutput.size();
+			deltaOutput.writeInt(changedSections.size());
+			for (int i = 0; i < changedSections.size(); i++) {
+				deltaOutput.writeInt(changedSections.get(i));
+				deltaOutput.writeInt(sectionOffsets[i]);
+				deltaOutput.writeLong(sectionChecksums[i]);
+				deltaOutput.writeByte(sectionKinds[i]);
+			}
+			long tileEntitiesOffset = deltaOutput.size();
+			deltaOutput.writeInt(capture.getSignLines().size() + capture.getInvBlockContents().size());
+			ZoneVolumeMapper.writeTileEntities(capture).writeTo(deltaOutput);
+			deltaOutput.writeLong(sectionTableOffset);
+			deltaOutput.writeLong(tileEntitiesOffset);
+			written = true;
+		} catch (IOException e) {
+			War.war.log("Failed to write delta file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} finally {
+			try {
+				if (deltaOutput != null) {
+					deltaOutput.close();
+				}
+			} catch (IOException e) {
+				War.war.log("Failed to close delta file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
 				e.printStackTrace();
-			} finally {
-				try {
-					if (cornersWriter != null) {
-						cornersWriter.close();
-					}
-					if (blocksOutput != null) {
-						blocksOutput.close();
-					}
-					if (signsWriter != null) {
-						signsWriter.close();
+			}
+		}
+		if (written && ZoneVolumeMapper.replaceFile(tempFile, deltaFile)) {
+			War.war.log("Saved " + changedSections.size() + " changed sections of volume " + volume.getName() + " in warzone " + zoneName + ".", Level.FINE);
+			return true;
+		}
+		tempFile.delete();
+		return false;
+	}
+
+	/**
+	 * Reads the checksums of the sections saved in the volume file, if it has the same
+	 * corners as the capture
+	 *
+	 * @param long[] checksums Filled with the checksum of each section
+	 * @return the length, section table offset and tile entities offset of the file, or null if a delta can't be written over it
+	 */
+	private static long[] readBaseChecksums(Volume volume, String zoneName, ZoneVolumeCapture capture, long[] checksums) {
+		File volumeFile = ZoneVolumeMapper.getVolumeFile(volume, zoneName);
+		if (!volumeFile.exists()) {
+			return null;
+		}
+		RandomAccessFile in = null;
+		try {
+			in = new RandomAccessFile(volumeFile, "r");
+			if (in.readInt() != VOLUME_FILE_MAGIC || in.readInt() != VOLUME_FILE_VERSION) {
+				return null;
+			}
+			for (int corner : capture.getCorners()) {
+				if (in.readInt() != corner) {
+					return null;
+				}
+			}
+			if (in.readInt() != capture.getSizeX() || in.readInt() != capture.getSizeY() || in.readInt() != capture.getSizeZ()) {
+				return null;
+			}
+			long length = in.length();
+			in.seek(length - VOLUME_FILE_TRAILER_SIZE);
+			long sectionTableOffset = in.readLong();
+			long tileEntitiesOffset = in.readLong();
+			byte[] sectionTableBytes = new byte[checksums.length * SECTION_TABLE_ENTRY_SIZE];
+			in.seek(sectionTableOffset);
+			in.readFully(sectionTableBytes);
+			ByteBuffer sectionTable = ByteBuffer.wrap(sectionTableBytes);
+			for (int section = 0; section < checksums.length; section++) {
+				sectionTable.getInt();
+				checksums[section] = sectionTable.getLong();
+				sectionTable.get();
+			}
+			return new long[] { length, sectionTableOffset, tileEntitiesOffset };
+		} catch (IOException e) {
+			// can't tell what changed, write it whole
+			return null;
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+			} catch (IOException e) {
+				War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			}
+		}
+	}
+
+	/**
+	 * Copies the captured blocks of a section, two bytes (type, data) each
+	 *
+	 * @return the number of blocks in the section
+	 */
+	private static int readSectionBlocks(ZoneVolumeCapture capture, int section, byte[] sectionBlocks) {
+		SectionGrid grid = capture.getGrid();
+		int noOfSectionBlocks = 0;
+		for (int x = grid.getFromX(section); x <= grid.getToX(section); x++) {
+			for (int y = grid.getFromY(section); y <= grid.getToY(section); y++) {
+				for (int z = grid.getFromZ(section); z <= grid.getToZ(section); z++) {
+					sectionBlocks[noOfSectionBlocks * 2] = (byte) capture.getTypeId(x, y, z);
+					sectionBlocks[noOfSectionBlocks * 2 + 1] = capture.getData(x, y, z);
+					noOfSectionBlocks++;
+				}
+			}
+		}
+		return noOfSectionBlocks;
+	}
+
+	private static ByteArrayOutputStream writeTileEntities(ZoneVolumeCapture capture) throws IOException {
+		ByteArrayOutputStream tileEntityBytes = new ByteArrayOutputStream();
+		DataOutputStream tileEntities = new DataOutputStream(tileEntityBytes);
+		for (Map.Entry<Integer, String> sign : capture.getSignLines().entrySet()) {
+			ZoneVolumeMapper.writeTileEntity(tileEntities, sign.getKey(), TILE_ENTITY_SIGN, sign.getValue());
+		}
+		for (Map.Entry<Integer, String> inv : capture.getInvBlockContents().entrySet()) {
+			ZoneVolumeMapper.writeTileEntity(tileEntities, inv.getKey(), TILE_ENTITY_INVENTORY, inv.getValue());
+		}
+		return tileEntityBytes;
+	}
+
+	/**
+	 * Writes already read blocks to the volume file, like when converting older files
+	 *
+	 * @param Volume
+	 *                volume Volume the blocks belong to, its corners must be set
+	 * @param String
+	 *                zoneName The warzone the volume is located
+	 * @param ZoneVolumeSnapshot
+	 *                snapshot The blocks to write
+	 * @return boolean Whether the file could be written
+	 */
+	public static boolean writeSnapshot(Volume volume, String zoneName, ZoneVolumeSnapshot snapshot) {
+		File volumeFile = ZoneVolumeMapper.getVolumeFile(volume, zoneName);
+		File tempFile = new File(volumeFile.getPath() + ".tmp");
+		DataOutputStream volumeOutput = null;
+		boolean written = false;
+		try {
+			(new File(War.war.getDataFolder().getPath() + "/dat/warzone-" + zoneName)).mkdir();
+			volumeOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), VOLUME_FILE_BUFFER_SIZE));
+			int[] corners = { volume.getCornerOne().getX(), volume.getCornerOne().getY(), volume.getCornerOne().getZ(), volume.getCornerTwo().getX(), volume.getCornerTwo().getY(), volume.getCornerTwo().getZ() };
+			ZoneVolumeMapper.writeHeader(volumeOutput, corners, volume.getSizeX(), volume.getSizeY(), volume.getSizeZ());
+
+			SectionGrid grid = new SectionGrid(volume.getMinX(), volume.getMinY(), volume.getMinZ(), volume.getSizeX(), volume.getSizeY(), volume.getSizeZ());
+			int[] sectionOffsets = new int[grid.getNoOfSections()];
+			long[] sectionChecksums = new long[grid.getNoOfSections()];
+			byte[] sectionKinds = new byte[grid.getNoOfSections()];
+			byte[] sectionBlocks = new byte[16 * 16 * 16 * 2];
+			for (int section = 0; section < grid.getNoOfSections(); section++) {
+				int noOfSectionBlocks = 0;
+				for (int x = grid.getFromX(section); x <= grid.getToX(section); x++) {
+					for (int y = grid.getFromY(section); y <= grid.getToY(section); y++) {
+						for (int z = grid.getFromZ(section); z <= grid.getToZ(section); z++) {
+							int index = snapshot.getIndex(x - volume.getMinX(), y - volume.getMinY(), z - volume.getMinZ());
+							sectionBlocks[noOfSectionBlocks * 2] = (byte) snapshot.getTypeId(index);
+							sectionBlocks[noOfSectionBlocks * 2 + 1] = snapshot.getData(index);
+							noOfSectionBlocks++;
+						}
 					}
-					if (invsWriter != null) {
-						invsWriter.close();
+				}
+				ZoneVolumeMapper.writeSection(volumeOutput, section, sectionBlocks, noOfSectionBlocks, sectionOffsets, sectionChecksums, sectionKinds);
+			}
+
+			int[] tileEntityIndexes = snapshot.getTileEntityIndexes();
+			Arrays.sort(tileEntityIndexes);
+			ByteArrayOutputStream tileEntityBytes = new ByteArrayOutputStream();
+			DataOutputStream tileEntities = new DataOutputStream(tileEntityBytes);
+			for (int index : tileEntityIndexes) {
+				String[] lines = snapshot.getSignLines(index);
+				if (lines != null) {
+					String extra = "";
+					for (String line : lines) {
+						extra += line + ";;";
 					}
-				} catch (IOException e) {
-					War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
-					e.printStackTrace();
+					ZoneVolumeMapper.writeTileEntity(tileEntities, index, TILE_ENTITY_SIGN, extra);
+				} else {
+					ZoneVolumeMapper.writeTileEntity(tileEntities, index, TILE_ENTITY_INVENTORY, VolumeMapper.buildInventoryStringFromItemList(snapshot.getInvBlockContents(index)));
+				}
+			}
+			ZoneVolumeMapper.writeFooter(volumeOutput, sectionOffsets, sectionChecksums, sectionKinds, tileEntityIndexes.length, tileEntityBytes);
+			written = true;
+		} catch (IOException e) {
+			War.war.log("Failed to write volume file " + zoneName + " for warzone " + volume.getName() + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+			e.printStackTrace();
+		} finally {
+			try {
+				if (volumeOutput != null) {
+					volumeOutput.close();
 				}
+			} catch (IOException e) {
+				War.war.log("Failed to close volume file " + volume.getName() + " for warzone " + zoneName + ". " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+				e.printStackTrace();
 			}
 		}
-		return noOfSavedBlocks;
+		if (written && ZoneVolumeMapper.replaceFile(tempFile, volumeFile)) {
+			ZoneVolumeMapper.deleteDelta(volume, zoneName);
+			return true;
+		}
+		return false;
 	}
-	
 
+	private static void writeHeader(DataOutput out, int[] corners, int sizeX, int sizeY, int sizeZ) throws IOException {
+		out.writeInt(VOLUME_FILE_MAGIC);
+		out.writeInt(VOLUME_FILE_VERSION);
+		for (int corner : corners) {
+			out.writeInt(corner);
+		}
+		out.writeInt(sizeX);
+		out.writeInt(sizeY);
+		out.writeInt(sizeZ);
+	}
 
 	/**
-	 * Saves the Volume as a background-job
+	 * Encodes one section and notes where it went, its checksum and what kind of blocks it has
+	 */
+	private static void writeSection(DataOutputStream out, int section, byte[] sectionBlocks, int noOfSectionBlocks, int[] sectionOffsets, long[] sectionChecksums, byte[] sectionKinds) throws IOException {
+		long checksum = ZoneVolumeSnapshot.CHECKSUM_START;
+		boolean air = true;
+		boolean tileEntities = false;
+		for (int i = 0; i < noOfSectionBlocks; i++) {
+			int typeId = sectionBlocks[i * 2] & 0xFF;
+			checksum = ZoneVolumeSnapshot.checksum(checksum, typeId, sectionBlocks[i * 2 + 1]);
+			air = air && typeId == 0;
+			tileEntities = tileEntities || ZoneVolumeSnapshot.isTileEntity(typeId);
+		}
+		sectionOffsets[section] = out.size();
+		sectionChecksums[section] = checksum;
+		sectionKinds[section] = tileEntities ? ZoneVolumeSnapshot.SECTION_TILE_ENTITIES : (air ? ZoneVolumeSnapshot.SECTION_AIR : ZoneVolumeSnapshot.SECTION_BLOCKS);
+		ZoneVolumeSnapshot.encodeSection(sectionBlocks, noOfSectionBlocks, out);
+	}
+
+	private static void writeFooter(DataOutputStream out, int[] sectionOffsets, long[] sectionChecksums, byte[] sectionKinds, int noOfTileEntities, ByteArrayOutputStream tileEntityBytes) throws IOException {
+		long sectionTableOffset = out.size();
+		for (int section = 0; section < sectionOffsets.length; section++) {
+			out.writeInt(sectionOffsets[section]);
+			out.writeLong(sectionChecksums[section]);
+			out.writeByte(sectionKinds[section]);
+		}
+		long tileEntitiesOffset = out.size();
+		out.writeInt(noOfTileEntities);
+		tileEntityBytes.writeTo(out);
+		out.writeLong(sectionTableOffset);
+		out.writeLong(tileEntitiesOffset);
+	}
+
+	private static void writeTileEntity(DataOutput out, int index, byte kind, String value) throws IOException {
+		out.writeInt(index);
+		out.writeByte(kind);
+		out.writeUTF(value);
+	}
+
+	/**
+	 * Puts a freshly written file in place of the old one
 	 *
-	 * @param ZoneVolme
-	 *                volume volume to save
-	 * @param String
-	 *                zoneName The zone the volume is located
-	 * @param War
-	 *                war Instance of war
-	 * @param long tickDelay delay before beginning the task
+	 * @return boolean Whether the file could be replaced
 	 */
-	private static void saveAsJob(ZoneVolume volume, String zoneName, long tickDelay) {
-		ZoneVolumeSaveJob job = new ZoneVolumeSaveJob(volume, zoneName);
-		War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, job, tickDelay);
+	private static boolean replaceFile(File tempFile, File file) {
+		long oldLength = file.length();
+		try {
+			SectionFile.detachAll(file);
+		} catch (IOException e) {
+			War.war.log("Failed to keep the sections of " + file.getName() + " that are being reset. " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+		}
+		if (!tempFile.renameTo(file)) {
+			// some platforms won't rename over an existing file
+			file.delete();
+			if (!tempFile.renameTo(file)) {
+				War.war.log("Failed to replace file " + file.getName(), Level.WARNING);
+				War.war.getDataSizeLedger().fileChanged(file, oldLength);
+				return false;
+			}
+		}
+		War.war.getDataSizeLedger().fileChanged(file, oldLength);
+		return true;
+	}
+
+	private static void deleteDelta(Volume volume, String zoneName) {
+		File deltaFile = ZoneVolumeMapper.getDeltaFile(volume, zoneName);
+		long oldLength = deltaFile.length();
+		try {
+			SectionFile.detachAll(deltaFile);
+		} catch (IOException e) {
+			War.war.log("Failed to keep the sections of " + deltaFile.getName() + " that are being reset. " + e.getClass().getName() + " " + e.getMessage(), Level.WARNING);
+		}
+		if (deltaFile.delete()) {
+			War.war.getDataSizeLedger().fileChanged(deltaFile, oldLength);
+		}
 	}
 
 	/**
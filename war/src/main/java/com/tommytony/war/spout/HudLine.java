@@ -0,0 +1,57 @@
+package com.tommytony.war.spout;
+
+import org.getspout.spoutapi.gui.Color;
+import org.getspout.spoutapi.gui.GenericLabel;
+import org.getspout.spoutapi.gui.WidgetAnchor;
+
+/**
+ * What one label of the War HUD should show and where. Comparing two lines tells whether
+ * a label already on a player's screen needs to be sent again.
+ *
+ * @author tommytony
+ *
+ */
+public class HudLine {
+
+	private final String text;
+	private final int x;
+	private final int y;
+	private final int width;
+	private final int height;
+	private final boolean greyedOut;
+
+	public HudLine(String text, int x, int y, int width, int height, boolean greyedOut) {
+		this.text = text;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.greyedOut = greyedOut;
+	}
+
+	public String getText() {
+		return this.text;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public boolean sameAs(HudLine other) {
+		return other != null && this.text.equals(other.text) && this.x == other.x && this.y == other.y && this.width == other.width && this.height == other.height && this.greyedOut == other.greyedOut;
+	}
+
+	public void applyTo(GenericLabel label) {
+		label.setText(this.text);
+		if (this.greyedOut) {
+			label.setTextColor(new Color(100, 100, 100));
+		} else {
+			label.setTextColor(new Color(255, 255, 255));
+		}
+		label.setAnchor(WidgetAnchor.TOP_LEFT)
+			.setX(this.x)
+			.setY(this.y)
+			.setWidth(this.width)
+			.setHeight(this.height);
+	}
+}
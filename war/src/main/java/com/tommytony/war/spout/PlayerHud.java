@@ -0,0 +1,118 @@
+package com.tommytony.war.spout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.getspout.spoutapi.gui.Color;
+import org.getspout.spoutapi.gui.GenericGradient;
+import org.getspout.spoutapi.gui.GenericLabel;
+import org.getspout.spoutapi.gui.WidgetAnchor;
+import org.getspout.spoutapi.player.SpoutPlayer;
+
+import com.tommytony.war.War;
+import com.tommytony.war.config.TeamKind;
+
+/**
+ * The War widgets on one player's screen. The widgets stay attached between updates,
+ * and only those whose content changed are sent to the player again.
+ *
+ * @author tommytony
+ *
+ */
+public class PlayerHud {
+
+	private final SpoutPlayer player;
+	private GenericGradient background = null;
+	private GenericGradient teamBorder = null;
+	private int shownWidth = -1;
+	private int shownHeight = -1;
+	private TeamKind shownKind = null;
+	private final List<HudLine> shownLines = new ArrayList<HudLine>();
+	private final List<GenericLabel> labels = new ArrayList<GenericLabel>();
+
+	public PlayerHud(SpoutPlayer player) {
+		this.player = player;
+	}
+
+	public SpoutPlayer getPlayer() {
+		return this.player;
+	}
+
+	/**
+	 * Brings the player's screen up to date
+	 *
+	 * @param int width Width of the stats panel
+	 * @param int height Height of the stats panel
+	 * @param TeamKind kind Team of the player, or null
+	 * @param List<HudLine> lines Stats lines, then message words
+	 */
+	public void show(int width, int height, TeamKind kind, List<HudLine> lines) {
+		boolean firstTime = this.background == null;
+		if (firstTime) {
+			// add bg
+			this.background = new GenericGradient();
+			this.background.setAnchor(WidgetAnchor.TOP_LEFT);
+			this.background.setTopColor(new Color(0.0F, 0.0F, 0.0F, 0.4F)); // (order is Red, Green, Blue, Alpha)
+			this.background.setBottomColor(new Color(0.0F, 0.0F, 0.0F, 0.0F));
+			this.player.getMainScreen().attachWidget(War.war, this.background);
+
+			// border in color of team
+			this.teamBorder = new GenericGradient();
+			this.teamBorder.setAnchor(WidgetAnchor.TOP_LEFT);
+			this.teamBorder.setY(2 + SpoutDisplayer.LINE_HEIGHT_WITH_MARGIN);
+			this.teamBorder.setBottomColor(new Color(256, 256, 256, 1.0F));
+			this.teamBorder.setHeight(2);
+			this.player.getMainScreen().attachWidget(War.war, this.teamBorder);
+		}
+
+		if (width != this.shownWidth || height != this.shownHeight) {
+			this.background.setHeight(height + 4).setWidth(width);
+			this.teamBorder.setWidth(width);
+			this.background.setDirty(true);
+			this.teamBorder.setDirty(true);
+			this.shownWidth = width;
+			this.shownHeight = height;
+		}
+
+		if (firstTime || kind != this.shownKind) {
+			Color spoutColor = new Color(250.0F, 250.0F, 250.0F, 1.0F);
+			if (kind != null) {
+				spoutColor = kind.getSpoutColor();
+			}
+			spoutColor.setAlpha(0.5F);
+			this.teamBorder.setTopColor(spoutColor);
+			this.teamBorder.setDirty(true);
+			this.shownKind = kind;
+		}
+
+		for (int i = 0; i < lines.size(); i++) {
+			HudLine line = lines.get(i);
+			if (i < this.labels.size()) {
+				if (!line.sameAs(this.shownLines.get(i))) {
+					GenericLabel label = this.labels.get(i);
+					line.applyTo(label);
+					label.setDirty(true);
+					this.shownLines.set(i, line);
+				}
+			} else {
+				GenericLabel label = new GenericLabel(line.getText());
+				line.applyTo(label);
+				this.player.getMainScreen().attachWidget(War.war, label);
+				this.labels.add(label);
+				this.shownLines.add(line);
+			}
+		}
+		while (this.labels.size() > lines.size()) {
+			GenericLabel extra = this.labels.remove(this.labels.size() - 1);
+			this.shownLines.remove(this.shownLines.size() - 1);
+			this.player.getMainScreen().removeWidget(extra);
+		}
+	}
+
+	/**
+	 * Takes all War widgets off the player's screen
+	 */
+	public void clear() {
+		this.player.getMainScreen().removeWidgets(War.war);
+	}
+}
@@ -2,16 +2,16 @@ package com.tommytony.war.spout;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 import org.getspout.spoutapi.SpoutManager;
-import org.getspout.spoutapi.gui.Color;
-import org.getspout.spoutapi.gui.GenericGradient;
 import org.getspout.spoutapi.gui.GenericLabel;
-import org.getspout.spoutapi.gui.WidgetAnchor;
 import org.getspout.spoutapi.player.SpoutPlayer;
 
 
@@ -20,14 +20,36 @@ import com.tommytony.war.War;
 import com.tommytony.war.Warzone;
 import com.tommytony.war.config.TeamConfig;
 import com.tommytony.war.config.TeamKind;
+import com.tommytony.war.job.SpoutUpdateHudJob;
 
 public class SpoutDisplayer {
 	
-	private static int LINE_HEIGHT = 5;
-	private static int LINE_HEIGHT_WITH_MARGIN = 8;
+	static final int LINE_HEIGHT = 5;
+	static final int LINE_HEIGHT_WITH_MARGIN = 8;
 	
 	Map<String, List<PlayerMessage>> playerMessages = new HashMap<String, List<PlayerMessage>>();
 	
+	// what's on the screen of each player, the stats of each zone, and what needs redrawing next tick
+	private final Map<String, PlayerHud> huds = new HashMap<String, PlayerHud>();
+	private final Map<String, ZoneStats> zoneStats = new HashMap<String, ZoneStats>();
+	private final Set<String> staleZones = new HashSet<String>();
+	private final Set<String> playersToUpdate = new LinkedHashSet<String>();
+	private int updateTaskId = -1;
+	
+	private static class ZoneStats {
+		private final List<HudLine> lines;
+		private final int width;
+		private final int height;
+		
+		private ZoneStats(List<HudLine> lines, int width, int height) {
+			this.lines = lines;
+			this.width = width;
+			this.height = height;
+		}
+	}
+	
+	private static final ZoneStats NO_STATS = new ZoneStats(new ArrayList<HudLine>(), 0, 0);
+	
 	public void msg(SpoutPlayer sp, String message) {
 		if (!playerMessages.containsKey(sp.getName())) {
 			playerMessages.put(sp.getName(), new ArrayList<PlayerMessage>());
@@ -41,10 +63,12 @@ public class SpoutDisplayer {
 			messages.remove(0);
 		}
 
-		List<Integer> statsOffset = new ArrayList<Integer>(); 
-		List<GenericLabel> lines = getStatsLines(Warzone.getZoneByPlayerName(sp.getName()), statsOffset);
-		
-		drawMessages(sp.getName(), lines, statsOffset);
+		// notifications usually come with a change to the zone stats
+		Warzone zone = Warzone.getZoneByPlayerName(sp.getName());
+		if (zone != null) {
+			this.staleZones.add(zone.getName());
+		}
+		this.updateLater(sp.getName());
 	}
 	 	
 	public void fadeOutOldMessages() {
@@ -64,19 +88,19 @@ public class SpoutDisplayer {
 			}
 			
 			if (toRemove.size() > 0) {
-				List<Integer> statsOffset = new ArrayList<Integer>(); 
-				List<GenericLabel> lines = getStatsLines(Warzone.getZoneByPlayerName(playerName), statsOffset);
-				drawMessages(playerName, lines, statsOffset);
+				this.updateLater(playerName);
 			}
 		}
 	}
 	
 	public void remove(String playerName) {
 		Player player = War.war.getServer().getPlayer(playerName);
-		if (player != null && playerMessages.containsKey(playerName)) {
+		PlayerHud hud = this.huds.remove(playerName);
+		if (player != null && (hud != null || playerMessages.containsKey(playerName))) {
 			clear(SpoutManager.getPlayer(player));
-			playerMessages.remove(playerName);			
 		}
+		playerMessages.remove(playerName);
+		this.playersToUpdate.remove(playerName);
 	}
 	
 	private void clear(SpoutPlayer player) {
@@ -84,18 +108,23 @@ public class SpoutDisplayer {
 	}
 
 	public void clearAll() {
-		List<String> namesToRemove = new ArrayList<String>();
-		for (String name : playerMessages.keySet()) {
+		Set<String> names = new HashSet<String>(playerMessages.keySet());
+		names.addAll(this.huds.keySet());
+		for (String name : names) {
 			Player player = War.war.getServer().getPlayer(name);
-			if (player != null && playerMessages.containsKey(name)) {
+			if (player != null) {
 				clear(SpoutManager.getPlayer(player));
 			}
-
-			namesToRemove.add(name);
 		}
 		
-		for (String toRemove : namesToRemove) {
-			playerMessages.remove(toRemove);
+		playerMessages.clear();
+		this.huds.clear();
+		this.zoneStats.clear();
+		this.staleZones.clear();
+		this.playersToUpdate.clear();
+		if (this.updateTaskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.updateTaskId);
+			this.updateTaskId = -1;
 		}
 	}
 	
@@ -108,248 +137,215 @@ public class SpoutDisplayer {
 	}
 	
 	public void updateStats(Warzone zone) {
-		List<Integer> statsOffset = new ArrayList<Integer>(); 
-		List<GenericLabel> statsLines = getStatsLines(zone, statsOffset);
+		this.staleZones.add(zone.getName());
 		for (Team t : zone.getTeams()) {
 			for (Player p : t.getPlayers()) {
-				SpoutPlayer sp = SpoutManager.getPlayer(p);
-				if (sp.isSpoutCraftEnabled()) {
-					drawMessages(sp.getName(), statsLines, statsOffset);
-				}
+				this.updateLater(p.getName());
 			}
 		}
 	}
 	
 
 	public void updateStats(Player player) {
-		SpoutPlayer sp = SpoutManager.getPlayer(player);
-		if (sp.isSpoutCraftEnabled()) {
-			List<Integer> statsOffset = new ArrayList<Integer>(); 
-			Warzone zone = Warzone.getZoneByPlayerName(player.getName());
-			List<GenericLabel> statsLines = getStatsLines(zone, statsOffset);
-			drawMessages(sp.getName(), statsLines, statsOffset);
+		Warzone zone = Warzone.getZoneByPlayerName(player.getName());
+		if (zone != null) {
+			this.staleZones.add(zone.getName());
 		}
+		this.updateLater(player.getName());
 	}
 	
-	private static List<GenericLabel> getStatsLines(Warzone zone, List<Integer> offset) {
-		List<GenericLabel> lines = new ArrayList<GenericLabel>();
-		offset.add(0);
-		offset.add(0);
-		
-		if (zone != null) {
-			offset.clear();
-
-			List<GenericLabel> teamlines = new ArrayList<GenericLabel>();
-			List<GenericLabel> playerlines = new ArrayList<GenericLabel>();
-			List<GenericLabel> scorelines = new ArrayList<GenericLabel>();
-			List<GenericLabel> lifelines = new ArrayList<GenericLabel>();
-			int teamMax = 0, scoreMax = 0, lifeMax = 0;
-			GenericLabel line;
-			
-			GenericLabel teamsHeader = new GenericLabel(ChatColor.GRAY + "War> " + ChatColor.WHITE + zone.getName());
-			int teamsHeaderWidth = GenericLabel.getStringWidth(teamsHeader.getText()) + 1;
-			teamsHeader.setAnchor(WidgetAnchor.TOP_LEFT)
-				.setX(3)
-				.setY(2)
-				.setWidth(teamsHeaderWidth)
-				.setHeight(LINE_HEIGHT);
-			lines.add(teamsHeader);
-	        
-			// First, we collect all the team names
-	        int lineCounter = 1;
-			for (Team t : zone.getTeams()) {
-				// team name
-				String teamStr = t.getName() + " (" + t.getPlayers().size() + "/" + t.getTeamConfig().resolveInt(TeamConfig.TEAMSIZE) + ")";
-				line = new GenericLabel(teamStr);
-				if (t.getPlayers().size() == 0) {
-					line.setTextColor(new Color(100,100,100));
-				}
-				else {
-					line.setText(t.getKind().getColor() + teamStr.replace("(", ChatColor.GRAY + "(" + ChatColor.WHITE).replace(")", ChatColor.GRAY + ")" + ChatColor.WHITE));
-				}
-		        line.setAnchor(WidgetAnchor.TOP_LEFT)
-		        	.setX(3)
-		        	.setY(4 + lineCounter * LINE_HEIGHT_WITH_MARGIN)
-		        	.setWidth(GenericLabel.getStringWidth(line.getText()))
-		        	.setHeight(LINE_HEIGHT);
-		        teamlines.add(line);
-		        lineCounter++;
+	/**
+	 * Redraws the player's HUD on the next tick, along with everybody else's that changed
+	 */
+	private void updateLater(String playerName) {
+		this.playersToUpdate.add(playerName);
+		if (this.updateTaskId == -1) {
+			this.updateTaskId = War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, new SpoutUpdateHudJob());
+			if (this.updateTaskId == -1) {
+				// couldn't schedule, draw right away
+				this.updateHuds();
 			}
-			
-			// We need to find the longest name
-			for (GenericLabel l : teamlines) {
-				if (GenericLabel.getStringWidth(l.getText()) > teamMax) {
-					teamMax = GenericLabel.getStringWidth(l.getText());
-				}
-				if (teamsHeaderWidth > teamMax) {
-					teamMax = teamsHeaderWidth;
-				}
-			}
-			
-			// points header
-			GenericLabel pointsHeader = new GenericLabel(ChatColor.GRAY + "score");
-			int pointsHeaderWidth = GenericLabel.getStringWidth(pointsHeader.getText());
-			pointsHeader.setAnchor(WidgetAnchor.TOP_LEFT)
-				.setX(3 + teamMax + 2)
-				.setY(2)
-				.setWidth(pointsHeaderWidth)
-				.setHeight(LINE_HEIGHT);
-			lines.add(pointsHeader);
-			
-			
-			lineCounter = 1;
-			for (Team t : zone.getTeams()) {
-				// scores
-				line = new GenericLabel(t.getPoints() + "/" + t.getTeamConfig().resolveInt(TeamConfig.MAXSCORE));
-				if (t.getPlayers().size() == 0) line.setTextColor(new Color(100, 100, 100));
-		        line.setAnchor(WidgetAnchor.TOP_LEFT)
-		        	.setX(3 + teamMax + 4)
-		        	.setY(4 + lineCounter * LINE_HEIGHT_WITH_MARGIN)
-		        	.setWidth(GenericLabel.getStringWidth(line.getText()))
-		        	.setHeight(LINE_HEIGHT);
-		        scorelines.add(line);
-		        lineCounter++;
+		}
+	}
+	
+	/**
+	 * Rebuilds the stats of the zones that changed, once per zone, and
+	 * brings the HUD of each player waiting for an update up to date
+	 */
+	public void updateHuds() {
+		this.updateTaskId = -1;
+		for (String zoneName : this.staleZones) {
+			this.zoneStats.remove(zoneName);
+		}
+		this.staleZones.clear();
+		
+		String[] playerNames = this.playersToUpdate.toArray(new String[0]);
+		this.playersToUpdate.clear();
+		for (String playerName : playerNames) {
+			Player bukkitPlayer = War.war.getServer().getPlayer(playerName);
+			if (bukkitPlayer == null) {
+				this.huds.remove(playerName);
+				continue;
 			}
-			
-			for (GenericLabel l : scorelines) {
-				if (GenericLabel.getStringWidth(l.getText()) > scoreMax) {
-					scoreMax = GenericLabel.getStringWidth(l.getText());
-				}
+			SpoutPlayer sp = SpoutManager.getPlayer(bukkitPlayer);
+			if (!sp.isSpoutCraftEnabled()) {
+				continue;
 			}
-			if (pointsHeaderWidth > scoreMax) {
-				scoreMax = pointsHeaderWidth;
+			PlayerHud hud = this.huds.get(playerName);
+			if (hud == null || hud.getPlayer() != sp) {
+				// new player, or the same one logged in again
+				clear(sp);
+				hud = new PlayerHud(sp);
+				this.huds.put(playerName, hud);
 			}
-			
-			// lifepool header
-			GenericLabel livesHeader = new GenericLabel(ChatColor.GRAY + "lives");
-			int livesHeaderWidth = GenericLabel.getStringWidth(livesHeader.getText());
-			livesHeader.setAnchor(WidgetAnchor.TOP_LEFT)
-				.setX(3 + teamMax + 4 + scoreMax + 2)
-				.setY(2)
-				.setWidth(livesHeaderWidth)
-				.setHeight(LINE_HEIGHT);
-			lines.add(livesHeader);
-			
-			
-			// and finally, lives.
-			lineCounter = 1;
-			for (Team t : zone.getTeams()) {
-				line = new GenericLabel(t.getRemainingLifes() + "/" + t.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL));
-				if (t.getPlayers().size() == 0) line.setTextColor(new Color(100, 100, 100));
-		        line.setAnchor(WidgetAnchor.TOP_LEFT)
-		        	.setX(3 + teamMax + 4 + scoreMax + 4)
-		        	.setY(4 + lineCounter * LINE_HEIGHT_WITH_MARGIN)
-		        	.setWidth(GenericLabel.getStringWidth(line.getText()))
-		        	.setHeight(LINE_HEIGHT);
-		        lifelines.add(line);
-		        lineCounter++;
+			this.drawMessages(playerName, hud);
+		}
+	}
+	
+	private ZoneStats getStats(Warzone zone) {
+		if (zone == null) {
+			return NO_STATS;
+		}
+		ZoneStats stats = this.zoneStats.get(zone.getName());
+		if (stats == null) {
+			stats = getStatsLines(zone);
+			this.zoneStats.put(zone.getName(), stats);
+		}
+		return stats;
+	}
+	
+	private static ZoneStats getStatsLines(Warzone zone) {
+		List<HudLine> lines = new ArrayList<HudLine>();
+
+		List<HudLine> teamlines = new ArrayList<HudLine>();
+		List<HudLine> scorelines = new ArrayList<HudLine>();
+		List<HudLine> lifelines = new ArrayList<HudLine>();
+		int teamMax = 0, scoreMax = 0, lifeMax = 0;
+		String text;
+		
+		String teamsHeader = ChatColor.GRAY + "War> " + ChatColor.WHITE + zone.getName();
+		int teamsHeaderWidth = GenericLabel.getStringWidth(teamsHeader) + 1;
+		lines.add(new HudLine(teamsHeader, 3, 2, teamsHeaderWidth, LINE_HEIGHT, false));
+        
+		// First, we collect all the team names
+        int lineCounter = 1;
+		for (Team t : zone.getTeams()) {
+			// team name
+			String teamStr = t.getName() + " (" + t.getPlayers().size() + "/" + t.getTeamConfig().getResolved().getInt(TeamConfig.TEAMSIZE) + ")";
+			boolean empty = t.getPlayers().size() == 0;
+			if (empty) {
+				text = teamStr;
+			} else {
+				text = t.getKind().getColor() + teamStr.replace("(", ChatColor.GRAY + "(" + ChatColor.WHITE).replace(")", ChatColor.GRAY + ")" + ChatColor.WHITE);
 			}
-			
-			for (GenericLabel l : lifelines) {
-				if (GenericLabel.getStringWidth(l.getText()) > lifeMax) {
-					lifeMax = GenericLabel.getStringWidth(l.getText());
-				}
+	        teamlines.add(new HudLine(text, 3, 4 + lineCounter * LINE_HEIGHT_WITH_MARGIN, GenericLabel.getStringWidth(text), LINE_HEIGHT, empty));
+	        lineCounter++;
+		}
+		
+		// We need to find the longest name
+		for (HudLine l : teamlines) {
+			if (l.getWidth() > teamMax) {
+				teamMax = l.getWidth();
 			}
-			if (livesHeaderWidth > lifeMax) {
-				lifeMax = livesHeaderWidth;
+		}
+		if (teamsHeaderWidth > teamMax) {
+			teamMax = teamsHeaderWidth;
+		}
+		
+		// points header
+		String pointsHeader = ChatColor.GRAY + "score";
+		int pointsHeaderWidth = GenericLabel.getStringWidth(pointsHeader);
+		lines.add(new HudLine(pointsHeader, 3 + teamMax + 2, 2, pointsHeaderWidth, LINE_HEIGHT, false));
+		
+		
+		lineCounter = 1;
+		for (Team t : zone.getTeams()) {
+			// scores
+			text = t.getPoints() + "/" + t.getTeamConfig().getResolved().getInt(TeamConfig.MAXSCORE);
+	        scorelines.add(new HudLine(text, 3 + teamMax + 4, 4 + lineCounter * LINE_HEIGHT_WITH_MARGIN, GenericLabel.getStringWidth(text), LINE_HEIGHT, t.getPlayers().size() == 0));
+	        lineCounter++;
+		}
+		
+		for (HudLine l : scorelines) {
+			if (l.getWidth() > scoreMax) {
+				scoreMax = l.getWidth();
 			}
-					
-			for (GenericLabel l : teamlines) { lines.add(l); }
-			for (GenericLabel l : playerlines) { lines.add(l); }
-			for (GenericLabel l : scorelines) { lines.add(l); }
-			for (GenericLabel l : lifelines) { lines.add(l); }
-			
-			offset.add(3 + teamMax + 1 + scoreMax + 1 + lifeMax + 5);
-			offset.add(4 + lineCounter * LINE_HEIGHT_WITH_MARGIN);
-			
 		}
-		return lines;
+		if (pointsHeaderWidth > scoreMax) {
+			scoreMax = pointsHeaderWidth;
+		}
 		
-	}
-	
-	private static void drawStats(SpoutPlayer sp, List<GenericLabel> lines) {
-		for (GenericLabel l : lines) {
-			sp.getMainScreen().attachWidget(War.war, l.copy());
+		// lifepool header
+		String livesHeader = ChatColor.GRAY + "lives";
+		int livesHeaderWidth = GenericLabel.getStringWidth(livesHeader);
+		lines.add(new HudLine(livesHeader, 3 + teamMax + 4 + scoreMax + 2, 2, livesHeaderWidth, LINE_HEIGHT, false));
+		
+		
+		// and finally, lives.
+		lineCounter = 1;
+		for (Team t : zone.getTeams()) {
+			text = t.getRemainingLifes() + "/" + t.getTeamConfig().getResolved().getInt(TeamConfig.LIFEPOOL);
+	        lifelines.add(new HudLine(text, 3 + teamMax + 4 + scoreMax + 4, 4 + lineCounter * LINE_HEIGHT_WITH_MARGIN, GenericLabel.getStringWidth(text), LINE_HEIGHT, t.getPlayers().size() == 0));
+	        lineCounter++;
 		}
+		
+		for (HudLine l : lifelines) {
+			if (l.getWidth() > lifeMax) {
+				lifeMax = l.getWidth();
+			}
+		}
+		if (livesHeaderWidth > lifeMax) {
+			lifeMax = livesHeaderWidth;
+		}
+				
+		lines.addAll(teamlines);
+		lines.addAll(scorelines);
+		lines.addAll(lifelines);
+		
+		return new ZoneStats(lines, 3 + teamMax + 1 + scoreMax + 1 + lifeMax + 5, 4 + lineCounter * LINE_HEIGHT_WITH_MARGIN);
 	}
 	
-	private void drawMessages(String playerName, List<GenericLabel> statsLines, List<Integer> statsOffset) {
-		Player bukkitPlayer = War.war.getServer().getPlayer(playerName);
-		if (bukkitPlayer != null) {
-			SpoutPlayer player = SpoutManager.getPlayer(bukkitPlayer);
-			List<PlayerMessage> messages = playerMessages.get(playerName);
-						
-			// remove old widgets
-			clear(player);
-			
-			// add bg
-			GenericGradient gradient = new GenericGradient();
-			gradient.setAnchor(WidgetAnchor.TOP_LEFT);
-			gradient.setTopColor(new Color(0.0F, 0.0F, 0.0F, 0.4F)); // (order is Red, Green, Blue, Alpha)
-			gradient.setBottomColor(new Color(0.0F, 0.0F, 0.0F, 0.0F));
-			gradient.setHeight(statsOffset.get(1) + 4).setWidth((int)(statsOffset.get(0)));
-			
-			player.getMainScreen().attachWidget(War.war, gradient);
-			
-			// border in color of team
-			GenericGradient teamGradient = new GenericGradient();
-			teamGradient.setAnchor(WidgetAnchor.TOP_LEFT);
-			
-			Team team = Team.getTeamByPlayerName(playerName);
-			
-			Color spoutColor = new Color(250.0F, 250.0F, 250.0F, 1.0F);
-			if (team != null) {
-				spoutColor = team.getKind().getSpoutColor();
-			}
-			spoutColor.setAlpha(0.5F);
-			
-			teamGradient.setY(2 + LINE_HEIGHT_WITH_MARGIN);
-			teamGradient.setTopColor(spoutColor);
-			teamGradient.setBottomColor(new Color(256, 256, 256, 1.0F));
-			teamGradient.setHeight(2).setWidth((int)(statsOffset.get(0)));
-			
-			player.getMainScreen().attachWidget(War.war, teamGradient);
-			
-			// update stats panel
-			drawStats(player, statsLines);
+	private void drawMessages(String playerName, PlayerHud hud) {
+		Warzone zone = Warzone.getZoneByPlayerName(playerName);
+		ZoneStats stats = this.getStats(zone);
+		List<PlayerMessage> messages = playerMessages.get(playerName);
+		
+		Team team = Team.getTeamByPlayerName(playerName);
+		TeamKind kind = team != null ? team.getKind() : null;
+		
+		// stats panel, shared by all players of the zone
+		List<HudLine> lines = new ArrayList<HudLine>(stats.lines);
+		
+		// finally messages
+		if (messages != null && messages.size() > 0) {
+			int verticalOffset = stats.height + 4; 
 			
-			// finally messages
-			if (messages != null && messages.size() > 0) {
-				Warzone zone = Warzone.getZoneByPlayerName(playerName);			
-				int verticalOffset = statsOffset.get(1) + 4; 
+			for (PlayerMessage message : messages) {
+				int horizontalOffset = 2;
 				
-				for (PlayerMessage message : messages) {
-					int horizontalOffset = 2;
-					
-					String messageStr = ChatColor.GRAY + ">" + ChatColor.WHITE + " " + message.getMessage();
-					String[] words = messageStr.split(" ");
+				String messageStr = ChatColor.GRAY + ">" + ChatColor.WHITE + " " + message.getMessage();
+				String[] words = messageStr.split(" ");
+				
+				for (String word : words) {
 					
-					for (String word : words) {
-						
-						if (horizontalOffset > 160) {	
-							horizontalOffset = 2;
-							verticalOffset += LINE_HEIGHT_WITH_MARGIN;
-						}
-	
-						word = addMissingColor(word, zone);
-						
-						GenericLabel label = new GenericLabel(word);
-						int width = GenericLabel.getStringWidth(word);
-						label.setAnchor(WidgetAnchor.TOP_LEFT);
-						label.setWidth(width);
-						label.setHeight(LINE_HEIGHT);
-						label.setX(horizontalOffset);
-						label.setY(verticalOffset);
-						
-						player.getMainScreen().attachWidget(War.war, label);
-	
-						horizontalOffset += width + 2;
+					if (horizontalOffset > 160) {	
+						horizontalOffset = 2;
+						verticalOffset += LINE_HEIGHT_WITH_MARGIN;
 					}
+
+					word = addMissingColor(word, zone);
 					
-					verticalOffset += LINE_HEIGHT_WITH_MARGIN + 1;
+					int width = GenericLabel.getStringWidth(word);
+					lines.add(new HudLine(word, horizontalOffset, verticalOffset, width, LINE_HEIGHT, false));
+
+					horizontalOffset += width + 2;
 				}
-			}		
+				
+				verticalOffset += LINE_HEIGHT_WITH_MARGIN + 1;
+			}
 		}
+		
+		hud.show(stats.width, stats.height, kind, lines);
 	}
 
 	public static String addMissingColor(String word, Warzone zone) {
@@ -282,22 +282,20 @@ public class WarHub {
 		Block zoneGate = this.zoneGateBlocks.get(zone.getName());
 		if (zoneGate != null) {
 			Block block = zoneGate.getRelative(left).getRelative(back, 1);
-			if (block.getType() != Material.SIGN_POST) {
-				block.setType(Material.SIGN_POST);
-			}
-			block.setData(data);
-	
 			int zoneCap = 0;
 			int zonePlayers = 0;
 			for (Team t : zone.getTeams()) {
 				zonePlayers += t.getPlayers().size();
-				zoneCap += t.getTeamConfig().resolveInt(TeamConfig.TEAMSIZE);
+				zoneCap += t.getTeamConfig().getResolved().getInt(TeamConfig.TEAMSIZE);
 			}
 			String[] lines = new String[4];
 			lines[0] = "Warzone";
 			lines[1] = zone.getName();
 			lines[2] = zonePlayers + "/" + zoneCap + " players";
 			lines[3] = zone.getTeams().size() + " teams";
+			if (zone.isHibernating()) {
+				lines[3] = "idle, step in";
+			}
 			SignHelper.setToSign(War.war, block, data, lines);
 		} else {
 			War.war.log("Failed to find warhub gate for " + zone.getName() + " warzone.", Level.WARNING);
@@ -108,12 +108,7 @@ public class ZoneLobby {
 	}
 
 	public static ZoneLobby getLobbyByLocation(Location location) {
-		for (Warzone warzone : War.war.getWarzones()) {
-			if (warzone.getLobby() != null && warzone.getLobby().getVolume() != null && warzone.getLobby().getVolume().contains(location)) {
-				return warzone.getLobby();
-			}
-		}
-		return null;
+		return War.war.getLobbyIndex().get(location);
 	}
 
 	public static ZoneLobby getLobbyByLocation(Player player) {
@@ -633,6 +628,7 @@ public class ZoneLobby {
 
 	public void setVolume(Volume volume) {
 		this.volume = volume;
+		War.war.invalidateLocationIndexes();
 	}
 
 	public BlockFace getWall() {
@@ -702,16 +698,7 @@ public class ZoneLobby {
 
 	private void resetTeamGateSign(Team team, Block gate) {
 		if (gate != null) {
-			String[] lines = new String[4];
-			lines[0] = "Team " + team.getName();
-			lines[1] = team.getPlayers().size() + "/" + team.getTeamConfig().resolveInt(TeamConfig.TEAMSIZE) + " players";
-			lines[2] = team.getPoints() + "/" + team.getTeamConfig().resolveInt(TeamConfig.MAXSCORE) + " pts";
-			if (team.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL) == -1) {
-				lines[3] = "unlimited lives";
-			} else {
-				lines[3] = team.getRemainingLifes() + "/" + team.getTeamConfig().resolveInt(TeamConfig.LIFEPOOL) + " lives left";
-			}
-			this.resetGateSign(gate, lines, true);
+			this.resetGateSign(gate, team.getSignLines(), true);
 		}
 	}
 
@@ -0,0 +1,136 @@
+package com.tommytony.war.structure;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+
+import com.tommytony.war.War;
+import com.tommytony.war.Warzone;
+import com.tommytony.war.job.ZoneWallOverlayJob;
+import com.tommytony.war.utility.LongHashSet;
+import com.tommytony.war.volume.BlockInfo;
+import com.tommytony.war.volume.ZoneVolume;
+
+/**
+ * The glass shown on the walls of a warzone to the players that get close to them.
+ * Wall guards ask for glass blocks and give them back, and the overlay counts how many
+ * guards want each block so that a block shared by several players stays glass until the
+ * last of them walks away. Changes are gathered and applied to the world once per tick.
+ *
+ * @author tommytony
+ *
+ */
+public class ZoneWallOverlay {
+	private final Warzone warzone;
+	private final Map<Long, Integer> wanted = new HashMap<Long, Integer>();
+	private final Map<Long, BlockFace> walls = new HashMap<Long, BlockFace>();
+	private final Map<Long, BlockInfo> glassified = new HashMap<Long, BlockInfo>();
+	private final LongHashSet changed = new LongHashSet();
+	private int taskId = -1;
+
+	public ZoneWallOverlay(Warzone warzone) {
+		this.warzone = warzone;
+	}
+
+	/**
+	 * One more guard wants the block to be glass
+	 *
+	 * @param long block Packed block coordinates (see ZoneVolume.packBlock)
+	 * @param BlockFace wall The wall the block is part of
+	 */
+	public void acquire(long block, BlockFace wall) {
+		Integer count = this.wanted.get(block);
+		if (count == null) {
+			this.wanted.put(block, 1);
+			this.walls.put(block, wall);
+			this.changed(block);
+		} else {
+			this.wanted.put(block, count + 1);
+		}
+	}
+
+	/**
+	 * One less guard wants the block to be glass
+	 *
+	 * @param long block Packed block coordinates (see ZoneVolume.packBlock)
+	 */
+	public void release(long block) {
+		Integer count = this.wanted.get(block);
+		if (count == null) {
+			return;
+		}
+		if (count == 1) {
+			this.wanted.remove(block);
+			this.walls.remove(block);
+			this.changed(block);
+		} else {
+			this.wanted.put(block, count - 1);
+		}
+	}
+
+	private void changed(long block) {
+		this.changed.add(block);
+		if (this.taskId == -1) {
+			this.taskId = War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, new ZoneWallOverlayJob(this));
+			if (this.taskId == -1) {
+				// couldn't schedule, apply right away
+				this.applyChanges();
+			}
+		}
+	}
+
+	/**
+	 * Turns the blocks that became wanted into glass and puts back the ones nobody wants anymore
+	 */
+	public void applyChanges() {
+		this.taskId = -1;
+		if (this.changed.isEmpty()) {
+			return;
+		}
+		long[] blocks = this.changed.toArray();
+		this.changed.clear();
+		for (long block : blocks) {
+			boolean isWanted = this.wanted.containsKey(block);
+			boolean isGlass = this.glassified.containsKey(block);
+			if (isWanted && !isGlass) {
+				this.glassify(block, this.walls.get(block));
+			} else if (!isWanted && isGlass) {
+				this.restore(block);
+			}
+		}
+	}
+
+	private void glassify(long packed, BlockFace wall) {
+		Block block = this.warzone.getWorld().getBlockAt(ZoneVolume.unpackX(packed), ZoneVolume.unpackY(packed), ZoneVolume.unpackZ(packed));
+		if ((block.getTypeId() == Material.AIR.getId() || block.getTypeId() == Material.WATER.getId()) && (this.warzone.getLobby() == null || !this.warzone.getLobby().blockIsAGateBlock(block, wall))) {
+			this.glassified.put(packed, new BlockInfo(block));
+			block.setType(Material.GLASS);
+		}
+	}
+
+	private void restore(long packed) {
+		BlockInfo oldBlock = this.glassified.remove(packed);
+		Block glassifiedBlock = this.warzone.getWorld().getBlockAt(oldBlock.getX(), oldBlock.getY(), oldBlock.getZ());
+		glassifiedBlock.setTypeId(oldBlock.getTypeId());
+		glassifiedBlock.setData(oldBlock.getData());
+	}
+
+	/**
+	 * Puts back every glass block right away and forgets all guards, like before saving the zone
+	 */
+	public void clear() {
+		if (this.taskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.taskId);
+			this.taskId = -1;
+		}
+		for (Long block : this.glassified.keySet().toArray(new Long[0])) {
+			this.restore(block);
+		}
+		this.wanted.clear();
+		this.walls.clear();
+		this.changed.clear();
+	}
+}
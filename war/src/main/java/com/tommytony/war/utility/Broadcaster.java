@@ -0,0 +1,116 @@
+package com.tommytony.war.utility;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.entity.Player;
+import org.getspout.spoutapi.SpoutManager;
+import org.getspout.spoutapi.player.SpoutPlayer;
+
+import com.tommytony.war.War;
+import com.tommytony.war.job.DeliverBroadcastsJob;
+
+/**
+ * Sends team and zone messages to their players. A message is colored once no matter how
+ * many players get it, and Spout players are told apart from chat players as the message
+ * comes in. Messages pile up until the next tick, so that each player gets everything
+ * that happened during a tick in a single delivery.
+ *
+ * @author tommytony
+ *
+ */
+public class Broadcaster {
+
+	private final Map<String, List<String>> pendingChat = new LinkedHashMap<String, List<String>>();
+	private final Map<String, List<String>> pendingSpout = new LinkedHashMap<String, List<String>>();
+	private String lastMessage = null;
+	private String lastFormatted = null;
+	private int taskId = -1;
+
+	/**
+	 * Queues a message for the players
+	 *
+	 * @param List<Player> players Who gets the message
+	 * @param String message The message, uncolored
+	 * @param boolean isNotification Whether Spout players see it on their HUD instead of in chat
+	 */
+	public void send(List<Player> players, String message, boolean isNotification) {
+		if (players.isEmpty()) {
+			return;
+		}
+		for (Player player : players) {
+			if (isNotification && War.war.isSpoutServer()) {
+				SpoutPlayer sp = SpoutManager.getPlayer(player);
+				if (sp.isSpoutCraftEnabled()) {
+					// team notifications go to the top left for Spout players to lessen War spam in chat box
+					Broadcaster.queue(this.pendingSpout, player.getName(), message);
+					continue;
+				}
+			}
+			Broadcaster.queue(this.pendingChat, player.getName(), this.format(message));
+		}
+		this.deliverLater();
+	}
+
+	/**
+	 * Colors the message, reusing the last result when the same message goes out to team after team
+	 */
+	private String format(String message) {
+		if (!message.equals(this.lastMessage)) {
+			this.lastMessage = message;
+			this.lastFormatted = War.war.formatMsg(message);
+		}
+		return this.lastFormatted;
+	}
+
+	private static void queue(Map<String, List<String>> pending, String playerName, String message) {
+		List<String> messages = pending.get(playerName);
+		if (messages == null) {
+			messages = new ArrayList<String>();
+			pending.put(playerName, messages);
+		}
+		messages.add(message);
+	}
+
+	private void deliverLater() {
+		if (this.taskId == -1) {
+			this.taskId = War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, new DeliverBroadcastsJob(this));
+			if (this.taskId == -1) {
+				// couldn't schedule, send right away
+				this.deliver();
+			}
+		}
+	}
+
+	/**
+	 * Sends every queued message, all at once for each player
+	 */
+	public void deliver() {
+		if (this.taskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.taskId);
+			this.taskId = -1;
+		}
+		for (String playerName : this.pendingChat.keySet()) {
+			Player player = War.war.getServer().getPlayerExact(playerName);
+			if (player != null) {
+				List<String> messages = this.pendingChat.get(playerName);
+				player.sendMessage(messages.toArray(new String[messages.size()]));
+			}
+		}
+		this.pendingChat.clear();
+		for (String playerName : this.pendingSpout.keySet()) {
+			Player player = War.war.getServer().getPlayerExact(playerName);
+			if (player != null) {
+				SpoutPlayer sp = SpoutManager.getPlayer(player);
+				for (String message : this.pendingSpout.get(playerName)) {
+					War.war.getSpoutDisplayer().msg(sp, message);
+				}
+			}
+		}
+		this.pendingSpout.clear();
+		this.lastMessage = null;
+		this.lastFormatted = null;
+	}
+}
@@ -0,0 +1,186 @@
+package com.tommytony.war.utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import com.tommytony.war.War;
+
+/**
+ * Keeps count of how much space the dat and temp folders take, so that War doesn't have
+ * to go over every file they hold each time it loads. The code that writes, moves and
+ * deletes warzone files tells the ledger how many bytes changed. Whatever else writes
+ * there (player states, logs) is caught by the verifier, which counts the folders again
+ * on a background thread after War loads. Changes are only counted in memory; the ledger
+ * file is written by flush(), from a periodic job and when War unloads.
+ *
+ * @author tommytony
+ *
+ */
+public class DataSizeLedger implements Runnable {
+
+	public static final String DAT = "dat";
+	public static final String TEMP = "temp";
+
+	private static final long WARNING_MB = 100;
+
+	private long datSize = 0;
+	private long tempSize = 0;
+	private boolean loaded = false;
+	private boolean dirty = false;
+	private Thread verifier = null;
+
+	private static File getFile() {
+		return new File(War.war.getDataFolder().getPath() + "/temp/datasizes.yml");
+	}
+
+	/**
+	 * Reads the sizes counted when War last ran and starts counting them again in the background
+	 */
+	public synchronized void load() {
+		File file = DataSizeLedger.getFile();
+		boolean known = file.exists();
+		if (known) {
+			YamlConfiguration ledger = YamlConfiguration.loadConfiguration(file);
+			known = ledger.contains(DAT) && ledger.contains(TEMP);
+			this.datSize = ledger.getLong(DAT);
+			this.tempSize = ledger.getLong(TEMP);
+		}
+		this.loaded = known;
+		if (known) {
+			this.warnIfLarge();
+		}
+		if (this.verifier != null) {
+			// still counting since the last load
+			return;
+		}
+		// the warning waits for the count when there is no ledger yet
+		this.verifier = new Thread(this, "War data size verifier");
+		this.verifier.setDaemon(true);
+		this.verifier.setPriority(Thread.MIN_PRIORITY);
+		this.verifier.start();
+	}
+
+	/**
+	 * @see Runnable.run()
+	 */
+	public void run() {
+		long dat = SizeCounter.getFileOrDirectorySize(new File(War.war.getDataFolder().getPath() + "/dat/"));
+		long temp = SizeCounter.getFileOrDirectorySize(new File(War.war.getDataFolder().getPath() + "/temp/"));
+		boolean wasLoaded;
+		synchronized (this) {
+			wasLoaded = this.loaded;
+			if (wasLoaded && (Math.abs(dat - this.datSize) > 1024 * 1024 || Math.abs(temp - this.tempSize) > 1024 * 1024)) {
+				War.war.log("Corrected War data size ledger: dat " + this.datSize / 1024 + "KB -> " + dat / 1024 + "KB, temp " + this.tempSize / 1024 + "KB -> " + temp / 1024 + "KB.", Level.FINE);
+			}
+			this.datSize = dat;
+			this.tempSize = temp;
+			this.loaded = true;
+			this.verifier = null;
+			this.dirty = true;
+		}
+		if (!wasLoaded) {
+			this.warnIfLarge();
+		}
+	}
+
+	private void warnIfLarge() {
+		long datMB = this.getSize(DAT) / 1024 / 1024;
+		long tempMB = this.getSize(TEMP) / 1024 / 1024;
+		if (datMB + tempMB > WARNING_MB) {
+			War.war.log("War data files are taking " + datMB + "MB and its temp files " + tempMB + "MB. Consider permanently deleting old warzone versions and backups in /plugins/War/temp/.", Level.WARNING);
+		}
+	}
+
+	/**
+	 * @param String area DAT or TEMP
+	 * @return the bytes taken by the folder
+	 */
+	public synchronized long getSize(String area) {
+		return DAT.equals(area) ? this.datSize : this.tempSize;
+	}
+
+	/**
+	 * Counts bytes written to or deleted from a folder
+	 *
+	 * @param String area DAT or TEMP
+	 * @param long bytes Bytes added, negative for bytes deleted
+	 */
+	public synchronized void add(String area, long bytes) {
+		if (!this.loaded || bytes == 0) {
+			// the verifier is counting from scratch
+			return;
+		}
+		if (DAT.equals(area)) {
+			this.datSize = Math.max(0, this.datSize + bytes);
+		} else {
+			this.tempSize = Math.max(0, this.tempSize + bytes);
+		}
+		this.dirty = true;
+	}
+
+	/**
+	 * Counts a file that was just written, replaced or deleted
+	 *
+	 * @param File file The file, inside the dat or temp folder
+	 * @param long oldLength Its length before, 0 if it didn't exist
+	 */
+	public void fileChanged(File file, long oldLength) {
+		String area = DataSizeLedger.getArea(file);
+		if (area != null) {
+			this.add(area, file.length() - oldLength);
+		}
+	}
+
+	/**
+	 * Counts files moved from one folder to the other
+	 *
+	 * @param String fromArea DAT or TEMP
+	 * @param String toArea DAT or TEMP
+	 * @param long bytes Size of the moved files
+	 */
+	public void moved(String fromArea, String toArea, long bytes) {
+		if (!fromArea.equals(toArea)) {
+			this.add(fromArea, -bytes);
+			this.add(toArea, bytes);
+		}
+	}
+
+	/**
+	 * @return DAT or TEMP, or null if the file is in neither folder
+	 */
+	private static String getArea(File file) {
+		String path = file.getAbsolutePath();
+		String dataFolder = War.war.getDataFolder().getAbsolutePath() + File.separator;
+		if (path.startsWith(dataFolder + DAT + File.separator)) {
+			return DAT;
+		} else if (path.startsWith(dataFolder + TEMP + File.separator)) {
+			return TEMP;
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the sizes to the ledger file, if they changed since it was last written
+	 */
+	public void flush() {
+		YamlConfiguration ledger = new YamlConfiguration();
+		synchronized (this) {
+			if (!this.dirty) {
+				return;
+			}
+			ledger.set(DAT, this.datSize);
+			ledger.set(TEMP, this.tempSize);
+			this.dirty = false;
+		}
+		try {
+			File file = DataSizeLedger.getFile();
+			file.getParentFile().mkdirs();
+			ledger.save(file);
+		} catch (IOException e) {
+			War.war.log("Failed to save War data size ledger: " + e.getMessage(), Level.WARNING);
+		}
+	}
+}
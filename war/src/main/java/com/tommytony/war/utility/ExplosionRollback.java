@@ -0,0 +1,104 @@
+package com.tommytony.war.utility;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import com.tommytony.war.War;
+import com.tommytony.war.job.DeferredBlockResetsJob;
+import com.tommytony.war.job.RollBackExplosionsJob;
+
+/**
+ * Puts back the blocks that explosions shouldn't have destroyed. Resets pile up until the
+ * next tick, so that every blast of a tick is rolled back by a single job per world.
+ * Bomb structures lose their tnt block to the blast like any tnt, so those are put back
+ * a little later, also in one go.
+ *
+ * @author tommytony
+ *
+ */
+public class ExplosionRollback {
+
+	private static final int BOMB_RESET_DELAY = 10;
+
+	private final Map<World, DeferredBlockResetsJob> pending = new LinkedHashMap<World, DeferredBlockResetsJob>();
+	private final Map<World, DeferredBlockResetsJob> pendingBombs = new LinkedHashMap<World, DeferredBlockResetsJob>();
+	private int taskId = -1;
+	private int bombTaskId = -1;
+
+	/**
+	 * Queues a block to be put back next tick
+	 *
+	 * @param World world Where the block is
+	 * @param DeferredBlockReset reset What the block was before the blast
+	 */
+	public void add(World world, DeferredBlockReset reset) {
+		ExplosionRollback.queue(this.pending, world, reset);
+		if (this.taskId == -1) {
+			this.taskId = War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, new RollBackExplosionsJob(this, false));
+			if (this.taskId == -1) {
+				// couldn't schedule, roll back right away
+				this.rollBack();
+			}
+		}
+	}
+
+	/**
+	 * Queues the tnt block of a bomb structure to be put back once the blast is over
+	 *
+	 * @param Block block The bomb's tnt block
+	 */
+	public void addBomb(Block block) {
+		ExplosionRollback.queue(this.pendingBombs, block.getWorld(), new DeferredBlockReset(block.getX(), block.getY(), block.getZ(), Material.TNT.getId(), (byte) 0));
+		if (this.bombTaskId == -1) {
+			this.bombTaskId = War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, new RollBackExplosionsJob(this, true), BOMB_RESET_DELAY);
+			if (this.bombTaskId == -1) {
+				this.resetBombs();
+			}
+		}
+	}
+
+	private static void queue(Map<World, DeferredBlockResetsJob> pending, World world, DeferredBlockReset reset) {
+		DeferredBlockResetsJob job = pending.get(world);
+		if (job == null) {
+			job = new DeferredBlockResetsJob(world);
+			pending.put(world, job);
+		}
+		job.add(reset);
+	}
+
+	/**
+	 * Puts back every queued block
+	 */
+	public void rollBack() {
+		if (this.taskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.taskId);
+			this.taskId = -1;
+		}
+		ExplosionRollback.runAll(this.pending);
+	}
+
+	/**
+	 * Puts back every queued bomb block
+	 */
+	public void resetBombs() {
+		if (this.bombTaskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.bombTaskId);
+			this.bombTaskId = -1;
+		}
+		ExplosionRollback.runAll(this.pendingBombs);
+	}
+
+	private static void runAll(Map<World, DeferredBlockResetsJob> pending) {
+		List<DeferredBlockResetsJob> jobs = new ArrayList<DeferredBlockResetsJob>(pending.values());
+		pending.clear();
+		for (DeferredBlockResetsJob job : jobs) {
+			job.run();
+		}
+	}
+}
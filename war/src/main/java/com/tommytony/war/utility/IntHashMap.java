@@ -0,0 +1,136 @@
+package com.tommytony.war.utility;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive ints, using open addressing so that no Integer objects get created.
+ *
+ * @author tommytony
+ *
+ */
+public class IntHashMap<V> {
+
+	private static final int FREE = Integer.MIN_VALUE;
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int size = 0;
+	private boolean hasFreeKey = false;
+	private Object freeKeyValue = null;
+
+	public IntHashMap() {
+		this.keys = IntHashMap.newKeys(MIN_CAPACITY);
+		this.values = new Object[MIN_CAPACITY];
+	}
+
+	/**
+	 * @param int key Key to map
+	 * @param V value Value to map it to
+	 * @return the value the key was mapped to before, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (key == FREE) {
+			// the marker for free slots can't go in the table itself
+			V replaced = (V) this.freeKeyValue;
+			if (!this.hasFreeKey) {
+				this.hasFreeKey = true;
+				this.size++;
+			}
+			this.freeKeyValue = value;
+			return replaced;
+		}
+		int slot = this.findSlot(key);
+		if (this.keys[slot] == key) {
+			V replaced = (V) this.values[slot];
+			this.values[slot] = value;
+			return replaced;
+		}
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		this.size++;
+		if (this.size * 2 > this.keys.length) {
+			this.rehash(this.keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value the key is mapped to, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		if (key == FREE) {
+			return (V) this.freeKeyValue;
+		}
+		int slot = this.findSlot(key);
+		return this.keys[slot] == key ? (V) this.values[slot] : null;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Empties the map and gives back the memory it grew to
+	 */
+	public void clear() {
+		this.keys = IntHashMap.newKeys(MIN_CAPACITY);
+		this.values = new Object[MIN_CAPACITY];
+		this.size = 0;
+		this.hasFreeKey = false;
+		this.freeKeyValue = null;
+	}
+
+	/**
+	 * @return the keys of the map, in no particular order
+	 */
+	public int[] keys() {
+		int[] keys = new int[this.size];
+		int i = 0;
+		if (this.hasFreeKey) {
+			keys[i++] = FREE;
+		}
+		for (int key : this.keys) {
+			if (key != FREE) {
+				keys[i++] = key;
+			}
+		}
+		return keys;
+	}
+
+	private int findSlot(int key) {
+		int mask = this.keys.length - 1;
+		int mixed = key * 0x9E3779B9;
+		int slot = (mixed ^ (mixed >>> 16)) & mask;
+		while (this.keys[slot] != FREE && this.keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.keys = IntHashMap.newKeys(capacity);
+		this.values = new Object[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = this.findSlot(oldKeys[i]);
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private static int[] newKeys(int capacity) {
+		int[] keys = new int[capacity];
+		Arrays.fill(keys, FREE);
+		return keys;
+	}
+}
@@ -0,0 +1,116 @@
+package com.tommytony.war.utility;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs, using open addressing so that no Long objects get created.
+ *
+ * @author tommytony
+ *
+ */
+public class LongHashSet {
+
+	private static final long FREE = Long.MIN_VALUE;
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] table;
+	private int size = 0;
+	private boolean hasFreeKey = false;
+
+	public LongHashSet() {
+		this.table = LongHashSet.newTable(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param long key Value to add
+	 * @return true if the value wasn't in the set yet
+	 */
+	public boolean add(long key) {
+		if (key == FREE) {
+			// the marker for free slots can't go in the table itself
+			if (this.hasFreeKey) {
+				return false;
+			}
+			this.hasFreeKey = true;
+			this.size++;
+			return true;
+		}
+		int slot = this.findSlot(key);
+		if (this.table[slot] == key) {
+			return false;
+		}
+		this.table[slot] = key;
+		this.size++;
+		if (this.size * 2 > this.table.length) {
+			this.rehash(this.table.length * 2);
+		}
+		return true;
+	}
+
+	public boolean contains(long key) {
+		if (key == FREE) {
+			return this.hasFreeKey;
+		}
+		return this.table[this.findSlot(key)] == key;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Empties the set and gives back the memory it grew to
+	 */
+	public void clear() {
+		this.table = LongHashSet.newTable(MIN_CAPACITY);
+		this.size = 0;
+		this.hasFreeKey = false;
+	}
+
+	/**
+	 * @return the values of the set, in no particular order
+	 */
+	public long[] toArray() {
+		long[] values = new long[this.size];
+		int i = 0;
+		if (this.hasFreeKey) {
+			values[i++] = FREE;
+		}
+		for (long key : this.table) {
+			if (key != FREE) {
+				values[i++] = key;
+			}
+		}
+		return values;
+	}
+
+	private int findSlot(long key) {
+		int mask = this.table.length - 1;
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (mixed ^ (mixed >>> 32)) & mask;
+		while (this.table[slot] != FREE && this.table[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		long[] old = this.table;
+		this.table = LongHashSet.newTable(capacity);
+		for (long key : old) {
+			if (key != FREE) {
+				this.table[this.findSlot(key)] = key;
+			}
+		}
+	}
+
+	private static long[] newTable(int capacity) {
+		long[] table = new long[capacity];
+		Arrays.fill(table, FREE);
+		return table;
+	}
+}
@@ -1,13 +1,28 @@
 package com.tommytony.war.utility;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.bukkit.GameMode;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
 
 
 public class PlayerState {
+	private static final int FORMAT_VERSION = 1;
+
 	private ItemStack[] contents;
 	private ItemStack helmet;
 	private ItemStack chest;
@@ -116,4 +131,140 @@ public class PlayerState {
 		return level;
 	}
 
+	/**
+	 * Writes the state in a compact, deflated form, for keeping it around without
+	 * holding on to all of its item stacks
+	 *
+	 * @return the bytes that fromBytes() reads back
+	 */
+	public byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+		try {
+			out.writeByte(FORMAT_VERSION);
+			out.writeByte(this.gamemode.getValue());
+			out.writeInt(this.health);
+			out.writeFloat(this.exhaustion);
+			out.writeFloat(this.saturation);
+			out.writeInt(this.foodLevel);
+			out.writeInt(this.level);
+			out.writeFloat(this.exp);
+			out.writeBoolean(this.playerTitle != null);
+			if (this.playerTitle != null) {
+				out.writeUTF(this.playerTitle);
+			}
+			out.writeShort(this.potionEffects.size());
+			for (PotionEffect effect : this.potionEffects) {
+				out.writeInt(effect.getType().getId());
+				out.writeInt(effect.getDuration());
+				out.writeInt(effect.getAmplifier());
+			}
+			out.writeShort(this.contents.length);
+			for (ItemStack item : this.contents) {
+				PlayerState.writeItem(out, item);
+			}
+			PlayerState.writeItem(out, this.helmet);
+			PlayerState.writeItem(out, this.chest);
+			PlayerState.writeItem(out, this.legs);
+			PlayerState.writeItem(out, this.feet);
+			out.close();
+		} catch (IOException e) {
+			// can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads back a state written by toBytes()
+	 *
+	 * @param byte[] bytes The compact state
+	 * @return the state
+	 * @throws IOException if the bytes aren't a player state
+	 */
+	public static PlayerState fromBytes(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+		try {
+			int version = in.readByte();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unknown player state format " + version);
+			}
+			GameMode gamemode = GameMode.getByValue(in.readByte());
+			int health = in.readInt();
+			float exhaustion = in.readFloat();
+			float saturation = in.readFloat();
+			int foodLevel = in.readInt();
+			int level = in.readInt();
+			float exp = in.readFloat();
+			String playerTitle = null;
+			if (in.readBoolean()) {
+				playerTitle = in.readUTF();
+			}
+			int effectCount = in.readShort();
+			List<PotionEffect> potionEffects = new ArrayList<PotionEffect>(effectCount);
+			for (int i = 0; i < effectCount; i++) {
+				PotionEffectType type = PotionEffectType.getById(in.readInt());
+				int duration = in.readInt();
+				int amplifier = in.readInt();
+				if (type != null) {
+					potionEffects.add(new PotionEffect(type, duration, amplifier));
+				}
+			}
+			ItemStack[] contents = new ItemStack[in.readShort()];
+			for (int i = 0; i < contents.length; i++) {
+				contents[i] = PlayerState.readItem(in);
+			}
+			ItemStack helmet = PlayerState.readItem(in);
+			ItemStack chest = PlayerState.readItem(in);
+			ItemStack legs = PlayerState.readItem(in);
+			ItemStack feet = PlayerState.readItem(in);
+			return new PlayerState(gamemode, contents, helmet, chest, legs, feet, health, exhaustion, saturation, foodLevel, potionEffects, playerTitle, level, exp);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeItem(DataOutputStream out, ItemStack item) throws IOException {
+		if (item == null || item.getTypeId() == 0) {
+			out.writeShort(0);
+			return;
+		}
+		out.writeShort(item.getTypeId());
+		out.writeByte(item.getData().getData());
+		out.writeInt(item.getAmount());
+		out.writeShort(item.getDurability());
+		out.writeBoolean(item.hasItemMeta());
+		if (item.hasItemMeta()) {
+			// names, lore, enchantments and the like: same as the loadouts, through the yml serialization
+			YamlConfiguration meta = new YamlConfiguration();
+			meta.set("meta", item.getItemMeta());
+			byte[] metaBytes = meta.saveToString().getBytes("UTF-8");
+			out.writeInt(metaBytes.length);
+			out.write(metaBytes);
+		}
+	}
+
+	private static ItemStack readItem(DataInputStream in) throws IOException {
+		int id = in.readShort();
+		if (id == 0) {
+			return null;
+		}
+		byte data = in.readByte();
+		int amount = in.readInt();
+		short durability = in.readShort();
+		ItemStack item = new ItemStack(id, amount, durability, data);
+		item.setDurability(durability);
+		if (in.readBoolean()) {
+			byte[] metaBytes = new byte[in.readInt()];
+			in.readFully(metaBytes);
+			YamlConfiguration meta = new YamlConfiguration();
+			try {
+				meta.loadFromString(new String(metaBytes, "UTF-8"));
+			} catch (InvalidConfigurationException e) {
+				throw new IOException("Bad item metadata: " + e.getMessage());
+			}
+			item.setItemMeta((ItemMeta) meta.get("meta"));
+		}
+		return item;
+	}
 }
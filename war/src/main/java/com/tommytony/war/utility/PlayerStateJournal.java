@@ -0,0 +1,277 @@
+package com.tommytony.war.utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+
+import com.tommytony.war.War;
+
+/**
+ * Append-only record of the stashed player states, so that inventories kept by War
+ * survive a crash. Records are encoded on the main thread and written by a background
+ * thread, which syncs the file to disk once per batch. When no state is left in any
+ * stash, the file is emptied. When most of the file is states that were replaced or
+ * given back since, the writer rewrites it with just the states still stashed.
+ *
+ * @author tommytony
+ *
+ */
+public class PlayerStateJournal implements Runnable {
+
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte STOP = 3;
+
+	private static final long COMPACT_MIN_BYTES = 1024 * 1024;
+
+	private final File file;
+	private final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<Record>();
+	private final Map<String, Integer> live = new HashMap<String, Integer>();	// writer thread only, record sizes
+	private long liveBytes = 0;
+	private long fileBytes = 0;
+	private Thread writer = null;
+
+	private static class Record {
+		private final byte op;
+		private final String key;
+		private final byte[] bytes;
+
+		private Record(byte op, String key, byte[] bytes) {
+			this.op = op;
+			this.key = key;
+			this.bytes = bytes;
+		}
+	}
+
+	public PlayerStateJournal(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Reads back the states that were stashed when the journal was last written
+	 *
+	 * @param File file The journal
+	 * @return stash name to player name to compact state
+	 */
+	public static Map<String, Map<String, byte[]>> read(File file) {
+		Map<String, Map<String, byte[]>> stashes = new LinkedHashMap<String, Map<String, byte[]>>();
+		if (!file.exists()) {
+			return stashes;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				while (true) {
+					byte op = in.readByte();
+					String stashName = in.readUTF();
+					String playerName = in.readUTF();
+					Map<String, byte[]> states = stashes.get(stashName);
+					if (states == null) {
+						states = new LinkedHashMap<String, byte[]>();
+						stashes.put(stashName, states);
+					}
+					if (op == PUT) {
+						byte[] state = new byte[in.readInt()];
+						in.readFully(state);
+						states.put(playerName, state);
+					} else if (op == REMOVE) {
+						states.remove(playerName);
+					} else {
+						throw new IOException("Unknown record " + op);
+					}
+				}
+			} catch (EOFException e) {
+				// end of the journal, or a record cut short by the crash
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			War.war.log("Failed to read player state journal, some stashed inventories may be lost: " + e.getMessage(), Level.WARNING);
+		}
+		return stashes;
+	}
+
+	/**
+	 * Rewrites the journal with just the states still stashed and starts writing changes
+	 *
+	 * @param Map<String, Map<String, byte[]>> stashes The restored states
+	 */
+	public void start(Map<String, Map<String, byte[]>> stashes) {
+		List<Record> records = new ArrayList<Record>();
+		for (String stashName : stashes.keySet()) {
+			Map<String, byte[]> states = stashes.get(stashName);
+			for (String playerName : states.keySet()) {
+				records.add(PlayerStateJournal.encode(PUT, stashName, playerName, states.get(playerName)));
+			}
+		}
+		this.file.getParentFile().mkdirs();
+		try {
+			this.write(records, false);
+		} catch (IOException e) {
+			War.war.log("Failed to write player state journal: " + e.getMessage(), Level.WARNING);
+		}
+		this.writer = new Thread(this, "War player state journal");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	public void put(String stashName, String playerName, byte[] state) {
+		this.queue.add(PlayerStateJournal.encode(PUT, stashName, playerName, state));
+	}
+
+	public void remove(String stashName, String playerName) {
+		this.queue.add(PlayerStateJournal.encode(REMOVE, stashName, playerName, null));
+	}
+
+	/**
+	 * Writes what is left to write and stops the writer
+	 */
+	public void close() {
+		if (this.writer == null) {
+			return;
+		}
+		this.queue.add(new Record(STOP, null, null));
+		try {
+			this.writer.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.writer = null;
+	}
+
+	private static Record encode(byte op, String stashName, String playerName, byte[] state) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(op);
+			out.writeUTF(stashName);
+			out.writeUTF(playerName);
+			if (op == PUT) {
+				out.writeInt(state.length);
+				out.write(state);
+			}
+		} catch (IOException e) {
+			// can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return new Record(op, stashName + "/" + playerName, bytes.toByteArray());
+	}
+
+	/**
+	 * @see Runnable.run()
+	 */
+	public void run() {
+		List<Record> batch = new ArrayList<Record>();
+		boolean stopping = false;
+		while (!stopping) {
+			try {
+				batch.add(this.queue.take());
+			} catch (InterruptedException e) {
+				stopping = true;
+			}
+			this.queue.drainTo(batch);
+			List<Record> records = new ArrayList<Record>(batch.size());
+			for (Record record : batch) {
+				if (record.op == STOP) {
+					stopping = true;
+				} else {
+					records.add(record);
+				}
+			}
+			batch.clear();
+			if (!records.isEmpty()) {
+				try {
+					this.write(records, true);
+				} catch (IOException e) {
+					War.war.log("Failed to write player state journal: " + e.getMessage(), Level.WARNING);
+				}
+			}
+		}
+	}
+
+	private void write(List<Record> records, boolean append) throws IOException {
+		long batchBytes = 0;
+		for (Record record : records) {
+			Integer replaced;
+			if (record.op == PUT) {
+				replaced = this.live.put(record.key, record.bytes.length);
+				this.liveBytes += record.bytes.length;
+			} else {
+				replaced = this.live.remove(record.key);
+			}
+			if (replaced != null) {
+				this.liveBytes -= replaced;
+			}
+			batchBytes += record.bytes.length;
+		}
+		FileOutputStream out = new FileOutputStream(this.file, append);
+		try {
+			if (this.live.isEmpty()) {
+				// nothing stashed anymore, no need to keep the history around
+				out.getChannel().truncate(0);
+				this.fileBytes = 0;
+			} else {
+				BufferedOutputStream buffered = new BufferedOutputStream(out);
+				for (Record record : records) {
+					buffered.write(record.bytes);
+				}
+				buffered.flush();
+				this.fileBytes = (append ? this.fileBytes : 0) + batchBytes;
+			}
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (this.fileBytes > COMPACT_MIN_BYTES && this.fileBytes > 2 * this.liveBytes) {
+			this.compact();
+		}
+	}
+
+	/**
+	 * Rewrites the journal with just the states still stashed, so that it doesn't grow
+	 * for as long as the server runs
+	 */
+	private void compact() throws IOException {
+		Map<String, Map<String, byte[]>> stashes = PlayerStateJournal.read(this.file);
+		File tempFile = new File(this.file.getPath() + ".tmp");
+		long written = 0;
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try {
+			BufferedOutputStream buffered = new BufferedOutputStream(out);
+			for (String stashName : stashes.keySet()) {
+				Map<String, byte[]> states = stashes.get(stashName);
+				for (String playerName : states.keySet()) {
+					Record record = PlayerStateJournal.encode(PUT, stashName, playerName, states.get(playerName));
+					buffered.write(record.bytes);
+					written += record.bytes.length;
+				}
+			}
+			buffered.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(this.file)) {
+			// some platforms won't rename over an existing file
+			this.file.delete();
+			if (!tempFile.renameTo(this.file)) {
+				throw new IOException("Failed to replace " + this.file.getName() + " with its compacted copy");
+			}
+		}
+		this.fileBytes = written;
+	}
+}
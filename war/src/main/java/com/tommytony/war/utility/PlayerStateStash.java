@@ -0,0 +1,224 @@
+package com.tommytony.war.utility;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import com.tommytony.war.War;
+
+/**
+ * Player states kept until players get their inventory back. States are held in their
+ * compact form (see PlayerState.toBytes()). The states of players who logged off, or who
+ * have been playing for a long while without their state being needed, are spilled to one
+ * file per player and only read back when asked for. Every change is also recorded in
+ * the player state journal, from which the stashes are refilled after a restart.
+ *
+ * @author tommytony
+ *
+ */
+public class PlayerStateStash {
+
+	private static final long IDLE_MILLIS = 10 * 60 * 1000;
+
+	private final String folderName;
+	private final Map<String, byte[]> states = new HashMap<String, byte[]>();
+	private final Map<String, Long> lastUsed = new HashMap<String, Long>();
+	private final Set<String> spilled = new HashSet<String>();
+
+	/**
+	 * @param String folderName Where spilled states go, under temp/playerstates/
+	 */
+	public PlayerStateStash(String folderName) {
+		this.folderName = folderName;
+	}
+
+	/**
+	 * @return the folder of every stash, to clean up stale spilled states
+	 */
+	public static File getRootFolder() {
+		return new File(War.war.getDataFolder().getPath() + "/temp/playerstates");
+	}
+
+	/**
+	 * Deletes spilled states left over from before a restart or crash. The journal has
+	 * them all, and they are stashed again from there.
+	 */
+	public static void deleteStale() {
+		File[] folders = PlayerStateStash.getRootFolder().listFiles();
+		if (folders == null) {
+			return;
+		}
+		for (File folder : folders) {
+			File[] files = folder.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			folder.delete();
+		}
+	}
+
+	public String getName() {
+		return this.folderName;
+	}
+
+	private File getFolder() {
+		return new File(PlayerStateStash.getRootFolder(), this.folderName);
+	}
+
+	private File getFile(String playerName) {
+		return new File(this.getFolder(), playerName + ".dat");
+	}
+
+	public boolean contains(String playerName) {
+		return this.states.containsKey(playerName) || this.spilled.contains(playerName);
+	}
+
+	public void put(String playerName, PlayerState state) {
+		byte[] bytes = state.toBytes();
+		this.restore(playerName, bytes);
+		if (War.war.getPlayerStateJournal() != null) {
+			War.war.getPlayerStateJournal().put(this.folderName, playerName, bytes);
+		}
+	}
+
+	/**
+	 * Stashes a state read back from the journal
+	 *
+	 * @param String playerName Whose state it is
+	 * @param byte[] bytes The state in its compact form
+	 */
+	public void restore(String playerName, byte[] bytes) {
+		this.states.put(playerName, bytes);
+		this.lastUsed.put(playerName, System.currentTimeMillis());
+		if (this.spilled.remove(playerName)) {
+			this.getFile(playerName).delete();
+		}
+	}
+
+	/**
+	 * @return the state, still kept in the stash, or null
+	 */
+	public PlayerState get(String playerName) {
+		return PlayerStateStash.decode(playerName, this.load(playerName));
+	}
+
+	/**
+	 * @return the state, no longer kept in the stash, or null
+	 */
+	public PlayerState remove(String playerName) {
+		byte[] bytes = this.load(playerName);
+		if (this.states.remove(playerName) != null && War.war.getPlayerStateJournal() != null) {
+			War.war.getPlayerStateJournal().remove(this.folderName, playerName);
+		}
+		this.lastUsed.remove(playerName);
+		return PlayerStateStash.decode(playerName, bytes);
+	}
+
+	private byte[] load(String playerName) {
+		byte[] bytes = this.states.get(playerName);
+		if (bytes == null && this.spilled.remove(playerName)) {
+			File file = this.getFile(playerName);
+			try {
+				bytes = new byte[(int) file.length()];
+				FileInputStream in = new FileInputStream(file);
+				try {
+					int read = 0;
+					while (read < bytes.length) {
+						int count = in.read(bytes, read, bytes.length - read);
+						if (count < 0) {
+							throw new IOException("File ended early");
+						}
+						read += count;
+					}
+				} finally {
+					in.close();
+				}
+				this.states.put(playerName, bytes);
+				file.delete();
+			} catch (IOException e) {
+				War.war.log("Failed to read stashed state of player " + playerName + ": " + e.getMessage(), Level.WARNING);
+				bytes = null;
+			}
+		}
+		if (bytes != null) {
+			this.lastUsed.put(playerName, System.currentTimeMillis());
+		}
+		return bytes;
+	}
+
+	private static PlayerState decode(String playerName, byte[] bytes) {
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			return PlayerState.fromBytes(bytes);
+		} catch (IOException e) {
+			War.war.log("Failed to read stashed state of player " + playerName + ": " + e.getMessage(), Level.WARNING);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the states of offline and idle players to disk and forgets them until asked for
+	 *
+	 * @return the number of states spilled
+	 */
+	public int spill() {
+		if (this.states.isEmpty()) {
+			return 0;
+		}
+		long idleSince = System.currentTimeMillis() - IDLE_MILLIS;
+		List<String> toSpill = new ArrayList<String>();
+		for (String playerName : this.states.keySet()) {
+			if (War.war.getServer().getPlayerExact(playerName) == null || this.lastUsed.get(playerName) < idleSince) {
+				toSpill.add(playerName);
+			}
+		}
+		if (toSpill.isEmpty()) {
+			return 0;
+		}
+		this.getFolder().mkdirs();
+		int spilledCount = 0;
+		for (String playerName : toSpill) {
+			try {
+				FileOutputStream out = new FileOutputStream(this.getFile(playerName));
+				try {
+					out.write(this.states.get(playerName));
+				} finally {
+					out.close();
+				}
+				this.states.remove(playerName);
+				this.lastUsed.remove(playerName);
+				this.spilled.add(playerName);
+				spilledCount++;
+			} catch (IOException e) {
+				// keep it in memory then
+				War.war.log("Failed to spill state of player " + playerName + ": " + e.getMessage(), Level.WARNING);
+			}
+		}
+		return spilledCount;
+	}
+
+	/**
+	 * Forgets every state, spilled ones included. The journal still has them, so they
+	 * come back the next time War loads.
+	 */
+	public void clear() {
+		this.states.clear();
+		this.lastUsed.clear();
+		for (String playerName : this.spilled) {
+			this.getFile(playerName).delete();
+		}
+		this.spilled.clear();
+	}
+}
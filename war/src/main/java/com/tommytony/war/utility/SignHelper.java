@@ -1,5 +1,7 @@
 package com.tommytony.war.utility;
 
+import java.util.Arrays;
+
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
@@ -11,6 +13,13 @@ import com.tommytony.war.War;
 public class SignHelper {
 
 	public static void setToSign(War war, Block block, byte data, String[] lines) {
+		if (block.getType() == Material.SIGN_POST && block.getData() == data) {
+			BlockState current = block.getState();
+			if (current instanceof Sign && Arrays.equals(((Sign) current).getLines(), lines)) {
+				// already showing this, no need for a block update
+				return;
+			}
+		}
 		if (block.getType() != Material.SIGN_POST) {
 			block.setType(Material.SIGN_POST);
 		}
@@ -0,0 +1,91 @@
+package com.tommytony.war.utility;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.tommytony.war.Team;
+import com.tommytony.war.War;
+import com.tommytony.war.Warzone;
+import com.tommytony.war.config.WarConfig;
+import com.tommytony.war.job.RefreshSignsJob;
+
+/**
+ * Keeps track of the team and warhub signs whose numbers changed, and rewrites them
+ * all together at most once every SIGNREFRESHTICKS ticks. A burst of joins at the
+ * start of a round ends up as a single rewrite of each sign.
+ *
+ * @author tommytony
+ *
+ */
+public class SignRefresher {
+
+	private final Set<Team> teams = new LinkedHashSet<Team>();
+	private final Set<Warzone> zones = new LinkedHashSet<Warzone>();
+	private int taskId = -1;
+	private long lastRefresh = 0;
+
+	/**
+	 * @param Team team Team whose spawn and lobby gate signs need refreshing
+	 */
+	public void refreshTeamSigns(Team team) {
+		this.teams.add(team);
+		this.refreshLater();
+	}
+
+	/**
+	 * @param Warzone zone Zone whose warhub sign needs refreshing
+	 */
+	public void refreshZoneSign(Warzone zone) {
+		this.zones.add(zone);
+		this.refreshLater();
+	}
+
+	private void refreshLater() {
+		if (this.taskId != -1) {
+			return;
+		}
+		Integer interval = War.war.getWarConfig().getInt(WarConfig.SIGNREFRESHTICKS);
+		long ticksSinceLast = (System.currentTimeMillis() - this.lastRefresh) / 50;
+		long delay = interval == null ? 1 : Math.max(1, interval - ticksSinceLast);
+		this.taskId = War.war.getServer().getScheduler().scheduleSyncDelayedTask(War.war, new RefreshSignsJob(this), delay);
+		if (this.taskId == -1) {
+			// couldn't schedule, refresh right away
+			this.refresh();
+		}
+	}
+
+	/**
+	 * Rewrites the signs that changed since the last refresh
+	 */
+	public void refresh() {
+		this.taskId = -1;
+		this.lastRefresh = System.currentTimeMillis();
+		Team[] changedTeams = this.teams.toArray(new Team[0]);
+		Warzone[] changedZones = this.zones.toArray(new Warzone[0]);
+		this.teams.clear();
+		this.zones.clear();
+		for (Team team : changedTeams) {
+			// the team or its zone may be gone by now
+			if (team.getZone().getTeams().contains(team) && War.war.getWarzones().contains(team.getZone())) {
+				team.updateSigns();
+			}
+		}
+		for (Warzone zone : changedZones) {
+			if (War.war.getWarHub() != null && War.war.getWarzones().contains(zone)) {
+				War.war.getWarHub().resetZoneSign(zone);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the signs waiting for a refresh
+	 */
+	public void clear() {
+		if (this.taskId != -1) {
+			War.war.getServer().getScheduler().cancelTask(this.taskId);
+			this.taskId = -1;
+		}
+		this.teams.clear();
+		this.zones.clear();
+	}
+}
@@ -0,0 +1,611 @@
+package com.tommytony.war.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.tommytony.war.War;
+import com.tommytony.war.volume.SectionFile;
+
+/**
+ * Old versions of a warzone's files, kept by /savezone when KEEPOLDZONEVERSIONS is on.
+ * Files are cut into blocks where their content says so (a rolling hash over the bytes),
+ * so an edit only changes the blocks around it even when it shifts the rest of the file.
+ * Each block is stored once, deflated, under its hash in temp/oldversions/blocks, and is
+ * shared by every version and zone that has it. A version is a manifest listing the
+ * blocks of each of its files.
+ *
+ * Versions kept as whole copies of the files by older War releases are moved into the
+ * store the first time the zone's versions are looked at.
+ *
+ * @author tommytony
+ *
+ */
+public class ZoneVersionStore {
+
+	private static final int MIN_BLOCK_SIZE = 4 * 1024;
+	private static final int MAX_BLOCK_SIZE = 64 * 1024;
+	private static final int BOUNDARY_MASK = 16 * 1024 - 1;	// blocks of about 16KB past the minimum
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int[] GEAR = new int[256];
+	private static final String MANIFEST_SUFFIX = ".manifest";
+	private static final String VERSION_DATE_FORMAT = "yyyyMMddHHmmss";
+
+	static {
+		// any fixed table will do, as long as it never changes
+		Random random = new Random(0x57415256L);
+		for (int i = 0; i < GEAR.length; i++) {
+			GEAR[i] = random.nextInt();
+		}
+	}
+
+	private final String zoneName;
+	private long storedBytes = 0;	// for the data size ledger
+
+	/**
+	 * A saved version of the zone's files
+	 */
+	public static class Version {
+		private final int number;
+		private final String id;
+		private final String savedBy;
+		private final Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+		private final Map<String, List<String>> blocks = new LinkedHashMap<String, List<String>>();
+
+		private Version(int number, String id, String savedBy) {
+			this.number = number;
+			this.id = id;
+			this.savedBy = savedBy;
+		}
+
+		public int getNumber() {
+			return this.number;
+		}
+
+		public String getSavedBy() {
+			return this.savedBy;
+		}
+
+		/**
+		 * @return when the version was saved, or null for versions with a mangled name
+		 */
+		public Date getDate() {
+			try {
+				return new SimpleDateFormat(VERSION_DATE_FORMAT).parse(this.id.substring(0, this.id.indexOf('-')));
+			} catch (ParseException e) {
+				return null;
+			} catch (IndexOutOfBoundsException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @return the files of the version, relative to the data folder
+		 */
+		public Set<String> getFiles() {
+			return this.blocks.keySet();
+		}
+
+		public long getSize(String file) {
+			return this.sizes.get(file);
+		}
+
+		public List<String> getBlocks(String file) {
+			return this.blocks.get(file);
+		}
+
+		public long getTotalSize() {
+			long total = 0;
+			for (long size : this.sizes.values()) {
+				total += size;
+			}
+			return total;
+		}
+	}
+
+	public ZoneVersionStore(String zoneName) {
+		this.zoneName = zoneName;
+	}
+
+	private static File getRootFolder() {
+		return new File(War.war.getDataFolder().getPath() + "/temp/oldversions");
+	}
+
+	private static File getBlocksFolder() {
+		return new File(ZoneVersionStore.getRootFolder(), "blocks");
+	}
+
+	private static File getBlockFile(String hash) {
+		return new File(ZoneVersionStore.getBlocksFolder(), hash.substring(0, 2) + "/" + hash.substring(2));
+	}
+
+	private File getZoneFolder() {
+		return new File(ZoneVersionStore.getRootFolder(), "warzone-" + this.zoneName);
+	}
+
+	/**
+	 * @return the files that make up the zone as it is now, relative to the data folder
+	 */
+	private List<String> getCurrentFiles() {
+		List<String> files = new ArrayList<String>();
+		files.add("warzone-" + this.zoneName + ".yml");
+		File[] datFiles = new File(War.war.getDataFolder(), "dat/warzone-" + this.zoneName).listFiles();
+		if (datFiles != null) {
+			for (File file : datFiles) {
+				if (file.isFile() && !file.getName().endsWith(".tmp")) {	// files still being written
+					files.add("dat/warzone-" + this.zoneName + "/" + file.getName());
+				}
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @return the versions of the zone, oldest first
+	 */
+	public List<Version> list() {
+		this.importCopiedVersions();
+		List<Version> versions = new ArrayList<Version>();
+		File[] manifests = this.getZoneFolder().listFiles();
+		if (manifests == null) {
+			return versions;
+		}
+		for (File manifest : manifests) {
+			if (manifest.getName().endsWith(MANIFEST_SUFFIX)) {
+				try {
+					versions.add(ZoneVersionStore.readManifest(manifest));
+				} catch (IOException e) {
+					War.war.log("Failed to read version " + manifest.getName() + " of warzone " + this.zoneName + ": " + e.getMessage(), Level.WARNING);
+				} catch (NumberFormatException e) {
+					War.war.log("Failed to read version " + manifest.getName() + " of warzone " + this.zoneName + ": " + e.getMessage(), Level.WARNING);
+				}
+			}
+		}
+		Collections.sort(versions, new Comparator<Version>() {
+			public int compare(Version a, Version b) {
+				return a.number - b.number;
+			}
+		});
+		return versions;
+	}
+
+	/**
+	 * @return the version with that number, or null
+	 */
+	public Version get(int number) {
+		for (Version version : this.list()) {
+			if (version.number == number) {
+				return version;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stores the zone's files as they are now as a new version
+	 *
+	 * @param String savedBy Who is saving the zone
+	 * @return the new version
+	 * @throws IOException
+	 */
+	public Version save(String savedBy) throws IOException {
+		List<Version> versions = this.list();
+		int number = versions.isEmpty() ? 1 : versions.get(versions.size() - 1).number + 1;
+		String id = new SimpleDateFormat(VERSION_DATE_FORMAT).format(new Date()) + "-" + number;
+		Version version = new Version(number, id, savedBy);
+		for (String file : this.getCurrentFiles()) {
+			File source = new File(War.war.getDataFolder(), file);
+			if (source.exists()) {
+				this.addFile(version, file, source, true);
+			}
+		}
+		this.getZoneFolder().mkdirs();
+		File manifest = new File(this.getZoneFolder(), id + MANIFEST_SUFFIX);
+		ZoneVersionStore.writeManifest(version, manifest);
+		this.storedBytes += manifest.length();
+		this.countStoredBytes();
+		return version;
+	}
+
+	/**
+	 * @return the zone's files as they are now, cut into blocks but not stored
+	 * @throws IOException
+	 */
+	public Version current() throws IOException {
+		Version version = new Version(0, "current", "");
+		for (String file : this.getCurrentFiles()) {
+			File source = new File(War.war.getDataFolder(), file);
+			if (source.exists()) {
+				this.addFile(version, file, source, false);
+			}
+		}
+		return version;
+	}
+
+	private void addFile(Version version, String file, File source, boolean store) throws IOException {
+		List<String> hashes = new ArrayList<String>();
+		InputStream in = new FileInputStream(source);
+		try {
+			byte[] buffer = new byte[READ_BUFFER_SIZE];
+			byte[] block = new byte[MAX_BLOCK_SIZE];
+			int length = 0;
+			int rolling = 0;
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				int start = 0;	// first byte of the buffer not copied into the block yet
+				for (int i = 0; i < read; i++) {
+					rolling = (rolling << 1) + GEAR[buffer[i] & 0xFF];
+					length++;
+					if (length == MAX_BLOCK_SIZE || (length >= MIN_BLOCK_SIZE && (rolling & BOUNDARY_MASK) == 0)) {
+						System.arraycopy(buffer, start, block, length - (i + 1 - start), i + 1 - start);
+						hashes.add(store ? this.storeBlock(block, length) : ZoneVersionStore.hash(block, length));
+						start = i + 1;
+						length = 0;
+						rolling = 0;
+					}
+				}
+				System.arraycopy(buffer, start, block, length - (read - start), read - start);
+			}
+			if (length > 0) {
+				hashes.add(store ? this.storeBlock(block, length) : ZoneVersionStore.hash(block, length));
+			}
+		} finally {
+			in.close();
+		}
+		version.sizes.put(file, source.length());
+		version.blocks.put(file, hashes);
+	}
+
+	private String storeBlock(byte[] block, int length) throws IOException {
+		String hash = ZoneVersionStore.hash(block, length);
+		File blockFile = ZoneVersionStore.getBlockFile(hash);
+		if (!blockFile.exists()) {
+			blockFile.getParentFile().mkdirs();
+			// write next to it first, so that a half written block is never taken for a stored one
+			File partFile = new File(blockFile.getPath() + ".part");
+			OutputStream out = new DeflaterOutputStream(new FileOutputStream(partFile));
+			try {
+				out.write(block, 0, length);
+			} finally {
+				out.close();
+			}
+			if (!partFile.renameTo(blockFile)) {
+				partFile.delete();
+				throw new IOException("Failed to store block " + hash);
+			}
+			this.storedBytes += blockFile.length();
+		}
+		return hash;
+	}
+
+	private static String hash(byte[] block, int length) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(block, 0, length);
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+				hex.append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java runtime has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Describes how the files changed from one version to the other
+	 *
+	 * @param Version from The older version
+	 * @param Version to The newer version
+	 * @return one line per file that changed
+	 */
+	public static List<String> diff(Version from, Version to) {
+		List<String> changes = new ArrayList<String>();
+		for (String file : from.getFiles()) {
+			if (!to.getFiles().contains(file)) {
+				changes.add(file + ": removed");
+			}
+		}
+		for (String file : to.getFiles()) {
+			List<String> toBlocks = to.getBlocks(file);
+			if (!from.getFiles().contains(file)) {
+				changes.add(file + ": added, " + to.getSize(file) / 1024 + "KB");
+			} else if (!toBlocks.equals(from.getBlocks(file))) {
+				Set<String> fromBlocks = new HashSet<String>(from.getBlocks(file));
+				int changedBlocks = 0;
+				for (String hash : toBlocks) {
+					if (!fromBlocks.contains(hash)) {
+						changedBlocks++;
+					}
+				}
+				changes.add(file + ": " + changedBlocks + " of " + toBlocks.size() + " blocks changed, " + from.getSize(file) / 1024 + "KB -> " + to.getSize(file) / 1024 + "KB");
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Puts the zone's files back the way they were in the version. Files of the zone the
+	 * version doesn't have are deleted. Every file is written next to the one it replaces
+	 * first, so if that fails the zone's files are left as they were.
+	 *
+	 * @param Version version The version to bring back
+	 * @throws IOException
+	 */
+	public void restore(Version version) throws IOException {
+		// check that every block is there before touching the zone's files
+		for (String file : version.getFiles()) {
+			for (String hash : version.getBlocks(file)) {
+				if (!ZoneVersionStore.getBlockFile(hash).exists()) {
+					throw new IOException("Block " + hash + " of " + file + " is missing");
+				}
+			}
+		}
+		Map<File, File> written = new LinkedHashMap<File, File>();
+		try {
+			byte[] buffer = new byte[MAX_BLOCK_SIZE];
+			for (String file : version.getFiles()) {
+				File destination = new File(War.war.getDataFolder(), file);
+				File tmp = new File(destination.getPath() + ".tmp");
+				destination.getParentFile().mkdirs();
+				written.put(tmp, destination);
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+				try {
+					for (String hash : version.getBlocks(file)) {
+						InputStream in = new InflaterInputStream(new FileInputStream(ZoneVersionStore.getBlockFile(hash)));
+						try {
+							int read;
+							while ((read = in.read(buffer)) != -1) {
+								out.write(buffer, 0, read);
+							}
+						} finally {
+							in.close();
+						}
+					}
+				} finally {
+					out.close();
+				}
+			}
+		} catch (IOException e) {
+			for (File tmp : written.keySet()) {
+				tmp.delete();
+			}
+			throw e;
+		}
+
+		for (String file : this.getCurrentFiles()) {
+			if (!version.getFiles().contains(file)) {
+				File deleted = new File(War.war.getDataFolder(), file);
+				long oldLength = deleted.length();
+				if (deleted.delete()) {
+					War.war.getDataSizeLedger().fileChanged(deleted, oldLength);
+				}
+			}
+		}
+		for (Map.Entry<File, File> entry : written.entrySet()) {
+			File tmp = entry.getKey();
+			File destination = entry.getValue();
+			long oldLength = destination.length();
+			// resets still going keep reading the blocks they started with
+			SectionFile.detachAll(destination);
+			// renaming over an existing file fails on some platforms
+			if (!tmp.renameTo(destination) && (!destination.delete() || !tmp.renameTo(destination))) {
+				throw new IOException("Failed to move " + tmp.getName() + " into place");
+			}
+			War.war.getDataSizeLedger().fileChanged(destination, oldLength);
+		}
+	}
+
+	/**
+	 * Deletes the oldest versions of the zone, and the blocks no version uses anymore
+	 *
+	 * @param int keep How many of the newest versions to keep
+	 * @return the number of versions deleted
+	 */
+	public int prune(int keep) {
+		List<Version> versions = this.list();
+		int deleted = 0;
+		long deletedBytes = 0;
+		for (int i = 0; i < versions.size() - keep; i++) {
+			File manifest = new File(this.getZoneFolder(), versions.get(i).id + MANIFEST_SUFFIX);
+			long length = manifest.length();
+			if (manifest.delete()) {
+				deletedBytes += length;
+				deleted++;
+			}
+		}
+		if (deleted > 0) {
+			deletedBytes += ZoneVersionStore.deleteUnusedBlocks();
+			War.war.getDataSizeLedger().add(DataSizeLedger.TEMP, -deletedBytes);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Deletes the blocks that aren't in any version of any zone
+	 *
+	 * @return the number of bytes deleted
+	 */
+	private static long deleteUnusedBlocks() {
+		long deletedBytes = 0;
+		Set<String> used = new HashSet<String>();
+		File[] zoneFolders = ZoneVersionStore.getRootFolder().listFiles();
+		if (zoneFolders == null) {
+			return deletedBytes;
+		}
+		for (File zoneFolder : zoneFolders) {
+			if (!zoneFolder.getName().startsWith("warzone-")) {
+				continue;
+			}
+			File[] manifests = zoneFolder.listFiles();
+			if (manifests == null) {
+				continue;
+			}
+			for (File manifest : manifests) {
+				if (!manifest.getName().endsWith(MANIFEST_SUFFIX)) {
+					continue;
+				}
+				try {
+					Version version = ZoneVersionStore.readManifest(manifest);
+					for (String file : version.getFiles()) {
+						used.addAll(version.getBlocks(file));
+					}
+				} catch (Exception e) {
+					// can't tell what the version needs, so keep every block
+					War.war.log("Failed to read version " + manifest.getPath() + ", keeping all stored blocks: " + e.getMessage(), Level.WARNING);
+					return deletedBytes;
+				}
+			}
+		}
+		File[] prefixFolders = ZoneVersionStore.getBlocksFolder().listFiles();
+		if (prefixFolders == null) {
+			return deletedBytes;
+		}
+		for (File prefixFolder : prefixFolders) {
+			File[] blockFiles = prefixFolder.listFiles();
+			if (blockFiles == null) {
+				continue;
+			}
+			for (File blockFile : blockFiles) {
+				long length = blockFile.length();
+				if (!used.contains(prefixFolder.getName() + blockFile.getName()) && blockFile.delete()) {
+					deletedBytes += length;
+				}
+			}
+		}
+		return deletedBytes;
+	}
+
+	private static Version readManifest(File manifest) throws IOException {
+		String id = manifest.getName().substring(0, manifest.getName().length() - MANIFEST_SUFFIX.length());
+		BufferedReader in = new BufferedReader(new FileReader(manifest));
+		try {
+			String savedBy = in.readLine();
+			if (savedBy == null) {
+				throw new IOException("Empty manifest");
+			}
+			Version version = new Version(Integer.parseInt(id.substring(id.lastIndexOf('-') + 1)), id, savedBy);
+			String line;
+			while ((line = in.readLine()) != null) {
+				// path, size and the hashes of the blocks, separated by tabs
+				String[] split = line.split("\t");
+				if (split.length < 2) {
+					throw new IOException("Bad line in manifest: " + line);
+				}
+				List<String> hashes = new ArrayList<String>();
+				for (int i = 2; i < split.length; i++) {
+					hashes.add(split[i]);
+				}
+				version.sizes.put(split[0], Long.parseLong(split[1]));
+				version.blocks.put(split[0], hashes);
+			}
+			return version;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeManifest(Version version, File manifest) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(manifest));
+		try {
+			out.write(version.savedBy);
+			out.newLine();
+			for (String file : version.getFiles()) {
+				out.write(file + "\t" + version.getSize(file));
+				for (String hash : version.getBlocks(file)) {
+					out.write("\t" + hash);
+				}
+				out.newLine();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Moves versions kept as folders of copied files into the store
+	 */
+	private void importCopiedVersions() {
+		File[] folders = this.getZoneFolder().listFiles();
+		if (folders == null) {
+			return;
+		}
+		for (File folder : folders) {
+			if (!folder.isDirectory()) {
+				continue;
+			}
+			String id = folder.getName();
+			try {
+				Version version = new Version(Integer.parseInt(id.substring(id.lastIndexOf('-') + 1)), id, "?");
+				File yml = new File(folder, "warzone-" + this.zoneName + ".yml");
+				if (yml.exists()) {
+					this.addFile(version, yml.getName(), yml, true);
+				}
+				File[] datFiles = new File(folder, "dat/warzone-" + this.zoneName).listFiles();
+				if (datFiles != null) {
+					for (File file : datFiles) {
+						this.addFile(version, "dat/warzone-" + this.zoneName + "/" + file.getName(), file, true);
+					}
+				}
+				File manifest = new File(this.getZoneFolder(), id + MANIFEST_SUFFIX);
+				ZoneVersionStore.writeManifest(version, manifest);
+				this.storedBytes += manifest.length() - ZoneVersionStore.delete(folder);
+			} catch (IOException e) {
+				War.war.log("Failed to move old version " + id + " of warzone " + this.zoneName + " into the version store: " + e.getMessage(), Level.WARNING);
+			} catch (NumberFormatException e) {
+				War.war.log("Skipping old version folder " + id + " of warzone " + this.zoneName + ", it isn't named like a version.", Level.WARNING);
+			}
+		}
+		this.countStoredBytes();
+	}
+
+	/**
+	 * @return the number of bytes deleted
+	 */
+	private static long delete(File file) {
+		long deletedBytes = 0;
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deletedBytes += ZoneVersionStore.delete(child);
+			}
+		}
+		long length = file.isFile() ? file.length() : 0;
+		if (file.delete()) {
+			deletedBytes += length;
+		}
+		return deletedBytes;
+	}
+
+	private void countStoredBytes() {
+		War.war.getDataSizeLedger().add(DataSizeLedger.TEMP, this.storedBytes);
+		this.storedBytes = 0;
+	}
+}
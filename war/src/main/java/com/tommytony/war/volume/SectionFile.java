@@ -0,0 +1,155 @@
+package com.tommytony.war.volume;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The encoded sections of a volume file or delta file. Sections are read from the file
+ * when they are first needed, so looking at a few blocks doesn't read the whole file,
+ * and nothing keeps the file open in between.
+ *
+ * A file that is about to be replaced or deleted must go through detachAll() first. The
+ * sections of it that are still in use are then copied onto the heap, so snapshots keep
+ * reading the blocks they were made from.
+ *
+ * @author tommytony
+ *
+ */
+public class SectionFile {
+
+	private static final Map<File, List<WeakReference<SectionFile>>> inUse = new HashMap<File, List<WeakReference<SectionFile>>>();
+
+	private final File file;
+	private final long length;
+	private final long lastModified;
+	private final int sectionsEnd;
+	private ByteBuffer bytes = null;
+
+	private SectionFile(File file, long length, long lastModified, int sectionsEnd) {
+		this.file = file;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.sectionsEnd = sectionsEnd;
+	}
+
+	/**
+	 * Sections already in memory
+	 *
+	 * @param ByteBuffer bytes Holds the encoded sections
+	 */
+	public SectionFile(ByteBuffer bytes) {
+		this(null, 0, 0, bytes.limit());
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Starts reading the sections of a file
+	 *
+	 * @param File file Volume or delta file, as it is now
+	 * @param long sectionsEnd Where the last section ends in the file
+	 * @return the sections of the file
+	 * @throws IOException if the sections take more than 2GB
+	 */
+	public static SectionFile open(File file, long sectionsEnd) throws IOException {
+		if (sectionsEnd > Integer.MAX_VALUE) {
+			throw new IOException("Sections of " + file.getName() + " take more than 2GB");
+		}
+		SectionFile sectionFile = new SectionFile(file, file.length(), file.lastModified(), (int) sectionsEnd);
+		File key = file.getAbsoluteFile();
+		synchronized (SectionFile.inUse) {
+			List<WeakReference<SectionFile>> readers = SectionFile.inUse.get(key);
+			if (readers == null) {
+				readers = new ArrayList<WeakReference<SectionFile>>();
+				SectionFile.inUse.put(key, readers);
+			}
+			for (Iterator<WeakReference<SectionFile>> it = readers.iterator(); it.hasNext();) {
+				if (it.next().get() == null) {
+					it.remove();
+				}
+			}
+			readers.add(new WeakReference<SectionFile>(sectionFile));
+		}
+		return sectionFile;
+	}
+
+	/**
+	 * Copies the sections of the file onto the heap for everything still reading them
+	 *
+	 * @param File file File about to be replaced or deleted
+	 * @throws IOException if a copy couldn't be made, the first of them if there are many
+	 */
+	public static void detachAll(File file) throws IOException {
+		List<WeakReference<SectionFile>> readers;
+		synchronized (SectionFile.inUse) {
+			readers = SectionFile.inUse.remove(file.getAbsoluteFile());
+		}
+		if (readers == null) {
+			return;
+		}
+		IOException failure = null;
+		for (WeakReference<SectionFile> reader : readers) {
+			SectionFile sectionFile = reader.get();
+			if (sectionFile != null) {
+				try {
+					sectionFile.detach();
+				} catch (IOException e) {
+					failure = failure == null ? e : failure;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private synchronized void detach() throws IOException {
+		if (this.bytes == null) {
+			this.bytes = ByteBuffer.wrap(this.readFromFile(0, this.sectionsEnd));
+		}
+	}
+
+	/**
+	 * @param int offset Where the first section starts
+	 * @param int length Bytes taken by the sections
+	 * @return the bytes of the sections, positioned at the first one
+	 * @throws IOException if the file can't be read or was changed without being detached
+	 */
+	public synchronized ByteBuffer read(int offset, int length) throws IOException {
+		if (this.bytes != null) {
+			ByteBuffer sections = this.bytes.duplicate();
+			sections.position(offset);
+			return sections;
+		}
+		return ByteBuffer.wrap(this.readFromFile(offset, length));
+	}
+
+	private byte[] readFromFile(int offset, int length) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(this.file, "r");
+		try {
+			if (in.length() != this.length || this.file.lastModified() != this.lastModified) {
+				throw new IOException(this.file.getName() + " changed since its sections were looked up");
+			}
+			byte[] sections = new byte[length];
+			in.seek(offset);
+			in.readFully(sections);
+			return sections;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return where the last section ends
+	 */
+	public int getSectionsEnd() {
+		return this.sectionsEnd;
+	}
+}
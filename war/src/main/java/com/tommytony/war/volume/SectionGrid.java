@@ -0,0 +1,124 @@
+package com.tommytony.war.volume;
+
+/**
+ * Splits a box of blocks along the 16x16x16 chunk sections of the world. Sections are
+ * numbered chunk by chunk (x, then z) and bottom to top within a chunk, and only the
+ * part of a section that's inside the box counts.
+ *
+ * @author tommytony
+ *
+ */
+public class SectionGrid {
+
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int maxX;
+	private final int maxY;
+	private final int maxZ;
+	private final int minChunkX;
+	private final int minChunkZ;
+	private final int chunksZ;
+	private final int minSectionY;
+	private final int sectionsY;
+	private final int noOfSections;
+
+	public SectionGrid(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = minX + sizeX - 1;
+		this.maxY = minY + sizeY - 1;
+		this.maxZ = minZ + sizeZ - 1;
+		if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+			this.minChunkX = 0;
+			this.minChunkZ = 0;
+			this.chunksZ = 0;
+			this.minSectionY = 0;
+			this.sectionsY = 0;
+			this.noOfSections = 0;
+		} else {
+			this.minChunkX = minX >> 4;
+			this.minChunkZ = minZ >> 4;
+			this.chunksZ = (this.maxZ >> 4) - this.minChunkZ + 1;
+			this.minSectionY = minY >> 4;
+			this.sectionsY = (this.maxY >> 4) - this.minSectionY + 1;
+			this.noOfSections = ((this.maxX >> 4) - this.minChunkX + 1) * this.chunksZ * this.sectionsY;
+		}
+	}
+
+	public int getNoOfSections() {
+		return this.noOfSections;
+	}
+
+	/**
+	 * @return the section the given block is in
+	 */
+	public int getSection(int x, int y, int z) {
+		return (((x >> 4) - this.minChunkX) * this.chunksZ + (z >> 4) - this.minChunkZ) * this.sectionsY + (y >> 4) - this.minSectionY;
+	}
+
+	/**
+	 * @return how many chunks the box spans
+	 */
+	public int getNoOfColumns() {
+		return this.sectionsY == 0 ? 0 : this.noOfSections / this.sectionsY;
+	}
+
+	/**
+	 * @return the bottom section of the chunk column
+	 */
+	public int getFirstSection(int column) {
+		return column * this.sectionsY;
+	}
+
+	/**
+	 * @return the chunk column of the section, the same for all sections of a chunk
+	 */
+	public int getColumn(int section) {
+		return section / this.sectionsY;
+	}
+
+	public int getChunkX(int section) {
+		return this.minChunkX + this.getColumn(section) / this.chunksZ;
+	}
+
+	public int getChunkZ(int section) {
+		return this.minChunkZ + this.getColumn(section) % this.chunksZ;
+	}
+
+	public int getSectionY(int section) {
+		return this.minSectionY + section % this.sectionsY;
+	}
+
+	public int getFromX(int section) {
+		return Math.max(this.minX, this.getChunkX(section) << 4);
+	}
+
+	public int getToX(int section) {
+		return Math.min(this.maxX, (this.getChunkX(section) << 4) + 15);
+	}
+
+	public int getFromY(int section) {
+		return Math.max(this.minY, this.getSectionY(section) << 4);
+	}
+
+	public int getToY(int section) {
+		return Math.min(this.maxY, (this.getSectionY(section) << 4) + 15);
+	}
+
+	public int getFromZ(int section) {
+		return Math.max(this.minZ, this.getChunkZ(section) << 4);
+	}
+
+	public int getToZ(int section) {
+		return Math.min(this.maxZ, (this.getChunkZ(section) << 4) + 15);
+	}
+
+	/**
+	 * @return how many blocks of the box are in the section
+	 */
+	public int getNoOfBlocks(int section) {
+		return (this.getToX(section) - this.getFromX(section) + 1) * (this.getToY(section) - this.getFromY(section) + 1) * (this.getToZ(section) - this.getFromZ(section) + 1);
+	}
+}
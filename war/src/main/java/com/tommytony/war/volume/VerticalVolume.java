@@ -73,16 +73,19 @@ public class VerticalVolume extends Volume {
 	public int resetWallBlocks(BlockFace wall) {
 		int noOfResetBlocks = 0;
 		try {
-			if (this.hasTwoCorners() && this.getBlockTypes() != null) {
+			if (this.hasTwoCorners() && this.isSaved()) {
+				// the corners may have moved since the blocks were saved
+				int sizeX = this.getSavedSizeX(), sizeY = this.getSavedSizeY(), sizeZ = this.getSavedSizeZ();
 				if (wall == Direction.EAST()) {
 					int z = this.getMinZ();
 					int k = 0;
 					int y = this.getMinY();
-					for (int j = 0; j < this.getSizeY(); j++) {
+					for (int j = 0; j < sizeY; j++) {
 						int x = this.getMinX();
-						for (int i = 0; i < this.getSizeX(); i++) {
-							int oldBlockType = this.getBlockTypes()[i][j][k];
-							byte oldBlockData = this.getBlockDatas()[i][j][k];
+						for (int i = 0; i < sizeX; i++) {
+							int index = this.getBlockIndex(i, j, k);
+							int oldBlockType = this.getBlockType(index);
+							byte oldBlockData = this.getBlockData(index);
 							Block currentBlock = this.getWorld().getBlockAt(x, y, z);
 							if (this.resetBlock(oldBlockType, oldBlockData, currentBlock)) {
 								noOfResetBlocks++;
@@ -92,14 +95,15 @@ public class VerticalVolume extends Volume {
 						y++;
 					}
 				} else if (wall == Direction.WEST()) {
-					int z = this.getMaxZ();
-					int k = this.getSizeZ() - 1;
+					int k = sizeZ - 1;
+					int z = this.getMinZ() + k;
 					int y = this.getMinY();
-					for (int j = 0; j < this.getSizeY(); j++) {
+					for (int j = 0; j < sizeY; j++) {
 						int x = this.getMinX();
-						for (int i = 0; i < this.getSizeX(); i++) {
-							int oldBlockType = this.getBlockTypes()[i][j][k];
-							byte oldBlockData = this.getBlockDatas()[i][j][k];
+						for (int i = 0; i < sizeX; i++) {
+							int index = this.getBlockIndex(i, j, k);
+							int oldBlockType = this.getBlockType(index);
+							byte oldBlockData = this.getBlockData(index);
 							Block currentBlock = this.getWorld().getBlockAt(x, y, z);
 							if (this.resetBlock(oldBlockType, oldBlockData, currentBlock)) {
 								noOfResetBlocks++;
@@ -112,11 +116,12 @@ public class VerticalVolume extends Volume {
 					int x = this.getMinX();
 					int i = 0;
 					int y = this.getMinY();
-					for (int j = 0; j < this.getSizeY(); j++) {
+					for (int j = 0; j < sizeY; j++) {
 						int z = this.getMinZ();
-						for (int k = 0; k < this.getSizeZ(); k++) {
-							int oldBlockType = this.getBlockTypes()[i][j][k];
-							byte oldBlockData = this.getBlockDatas()[i][j][k];
+						for (int k = 0; k < sizeZ; k++) {
+							int index = this.getBlockIndex(i, j, k);
+							int oldBlockType = this.getBlockType(index);
+							byte oldBlockData = this.getBlockData(index);
 							Block currentBlock = this.getWorld().getBlockAt(x, y, z);
 							if (this.resetBlock(oldBlockType, oldBlockData, currentBlock)) {
 								noOfResetBlocks++;
@@ -126,14 +131,15 @@ public class VerticalVolume extends Volume {
 						y++;
 					}
 				} else if (wall == Direction.SOUTH()) {
-					int x = this.getMaxX();
-					int i = this.getSizeX() - 1;
+					int i = sizeX - 1;
+					int x = this.getMinX() + i;
 					int y = this.getMinY();
-					for (int j = 0; j < this.getSizeY(); j++) {
+					for (int j = 0; j < sizeY; j++) {
 						int z = this.getMinZ();
-						for (int k = 0; k < this.getSizeZ(); k++) {
-							int oldBlockType = this.getBlockTypes()[i][j][k];
-							byte oldBlockData = this.getBlockDatas()[i][j][k];
+						for (int k = 0; k < sizeZ; k++) {
+							int index = this.getBlockIndex(i, j, k);
+							int oldBlockType = this.getBlockType(index);
+							byte oldBlockData = this.getBlockData(index);
 							Block currentBlock = this.getWorld().getBlockAt(x, y, z);
 							if (this.resetBlock(oldBlockType, oldBlockData, currentBlock)) {
 								noOfResetBlocks++;
@@ -1,7 +1,6 @@
 package com.tommytony.war.volume;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Level;
 
@@ -20,7 +19,9 @@ import org.bukkit.inventory.ItemStack;
 
 import com.tommytony.war.War;
 import com.tommytony.war.job.BlockResetJob;
+import com.tommytony.war.mapper.VolumeMapper;
 import com.tommytony.war.utility.Direction;
+import com.tommytony.war.utility.IntHashMap;
 
 /**
  *
@@ -32,10 +33,17 @@ public class Volume {
 	private World world;
 	private BlockInfo cornerOne;
 	private BlockInfo cornerTwo;
-	private int[][][] blockTypes = null;
-	private byte[][][] blockDatas = null;
-	private HashMap<String, String[]> signLines = new HashMap<String, String[]>();
-	private HashMap<String, List<ItemStack>> invBlockContents = new HashMap<String, List<ItemStack>>();
+	// saved blocks, x then y then z, see getBlockIndex()
+	private int[] blockTypes = null;
+	private byte[] blockDatas = null;
+	private int savedSizeX = 0;
+	private int savedSizeY = 0;
+	private int savedSizeZ = 0;
+	private IntHashMap<String[]> signLines = new IntHashMap<String[]>();	// by block index
+	private IntHashMap<List<ItemStack>> invBlockContents = new IntHashMap<List<ItemStack>>();	// chests and dispensers, by block index
+	private List<VolumeIndex<?>> indexes = null;
+	private String releasedFrom = null; // zone whose volume file has the released blocks
+	private boolean blocksOnDisk = false; // the saved blocks are the ones in the volume file
 
 	public Volume(String name, World world) {
 		this.name = name;
@@ -52,6 +60,7 @@ public class Volume {
 	
 	public void setWorld(World world) {
 		this.world = world;
+		this.cornersChanged();
 	}
 
 	public boolean hasTwoCorners() {
@@ -60,10 +69,36 @@ public class Volume {
 
 	public void setCornerOne(Block block) {
 		this.cornerOne = new BlockInfo(block);
+		this.cornersChanged();
 	}
 
 	public void setCornerOne(BlockInfo blockInfo) {
 		this.cornerOne = blockInfo;
+		this.cornersChanged();
+	}
+
+	void addIndex(VolumeIndex<?> index) {
+		if (this.indexes == null) {
+			this.indexes = new ArrayList<VolumeIndex<?>>(1);
+		}
+		this.indexes.add(index);
+	}
+
+	void removeIndex(VolumeIndex<?> index) {
+		if (this.indexes != null) {
+			this.indexes.remove(index);
+		}
+	}
+
+	/**
+	 * The volume moved, so the indexes it's filed in are out of date
+	 */
+	protected void cornersChanged() {
+		if (this.indexes != null) {
+			for (VolumeIndex<?> index : this.indexes) {
+				index.invalidate();
+			}
+		}
 	}
 
 	public int saveBlocks() {
@@ -73,10 +108,8 @@ public class Volume {
 		int z = 0;
 		try {
 			if (this.hasTwoCorners()) {
-				this.setBlockTypes(new int[this.getSizeX()][this.getSizeY()][this.getSizeZ()]);
-				this.setBlockDatas(new byte[this.getSizeX()][this.getSizeY()][this.getSizeZ()]);
-				this.getSignLines().clear();
-				this.getInvBlockContents().clear();
+				this.allocateBlocks();
+				int index = 0;
 				x = this.getMinX();
 				for (int i = 0; i < this.getSizeX(); i++) {
 					y = this.getMinY();
@@ -85,14 +118,14 @@ public class Volume {
 						for (int k = 0; k < this.getSizeZ(); k++) {
 							try {
 								Block block = this.getWorld().getBlockAt(x, y, z);
-								this.getBlockTypes()[i][j][k] = block.getTypeId();
-								this.getBlockDatas()[i][j][k] = block.getData();
+								this.blockTypes[index] = block.getTypeId();
+								this.blockDatas[index] = block.getData();
 								BlockState state = block.getState();
 								if (state instanceof Sign) {
 									// Signs
 									Sign sign = (Sign) state;
 									if (sign.getLines() != null) {
-										this.getSignLines().put("sign-" + i + "-" + j + "-" + k, sign.getLines());
+										this.signLines.put(index, sign.getLines());
 									}
 
 								} else if (state instanceof Chest) {
@@ -107,7 +140,7 @@ public class Volume {
 											items.add(item);
 										}
 									}
-									this.getInvBlockContents().put("chest-" + i + "-" + j + "-" + k, items);
+									this.invBlockContents.put(index, items);
 								} else if (state instanceof Dispenser) {
 									// Dispensers
 									Dispenser dispenser = (Dispenser) state;
@@ -120,7 +153,7 @@ public class Volume {
 											items.add(item);
 										}
 									}
-									this.getInvBlockContents().put("dispenser-" + i + "-" + j + "-" + k, items);
+									this.invBlockContents.put(index, items);
 								}
 
 								noOfSavedBlocks++;
@@ -129,6 +162,7 @@ public class Volume {
 								e.printStackTrace();
 							} finally {
 								z++;
+								index++;
 							}
 						}
 						y++;
@@ -152,30 +186,35 @@ public class Volume {
 		int visitedBlocks = 0, noOfResetBlocks = 0, x = 0, y = 0, z = 0;
 		int currentBlockId = 0;
 		int oldBlockType = 0;
+		this.checkNotReleased();
 		this.clearBlocksThatDontFloat();
 		try {
 			if (this.hasTwoCorners() && this.isSaved()) {
+				int[] types = this.blockTypes;
+				byte[] datas = this.blockDatas;
+				// the corners may have moved since the blocks were saved
+				int sizeX = this.savedSizeX, sizeY = this.savedSizeY, sizeZ = this.savedSizeZ;
+				int index = 0;
 				x = this.getMinX();
-				for (int i = 0; i < this.getSizeX(); i++) {
+				for (int i = 0; i < sizeX; i++) {
 					y = this.getMinY();
-					for (int j = 0; j < this.getSizeY(); j++) {
+					for (int j = 0; j < sizeY; j++) {
 						z = this.getMinZ();
-						for (int k = 0; k < this.getSizeZ(); k++) {
+						for (int k = 0; k < sizeZ; k++) {
 							try {
-								oldBlockType = this.getBlockTypes()[i][j][k];
-								byte oldBlockData = this.getBlockDatas()[i][j][k];
+								oldBlockType = types[index];
+								byte oldBlockData = datas[index];
 								Block currentBlock = this.getWorld().getBlockAt(x, y, z);
 								currentBlockId = currentBlock.getTypeId();
 								if (currentBlockId != oldBlockType || (currentBlockId == oldBlockType && currentBlock.getData() != oldBlockData) || (currentBlockId == oldBlockType && currentBlock.getData() == oldBlockData && (oldBlockType == Material.WALL_SIGN.getId() || oldBlockType == Material.SIGN_POST.getId() || oldBlockType == Material.CHEST.getId() || oldBlockType == Material.DISPENSER.getId()))) {
 									if (oldBlockType == Material.WALL_SIGN.getId() || oldBlockType == Material.SIGN_POST.getId()) {
 										// Signs
-										if (oldBlockType == Material.SIGN_POST.getId() && ((oldBlockData & 0x04) == 0x04) && i + 1 != this.getSizeX()) {
+										if (oldBlockType == Material.SIGN_POST.getId() && ((oldBlockData & 0x04) == 0x04) && i + 1 != sizeX) {
 											Block southBlock = currentBlock.getRelative(Direction.SOUTH());
-											int oldSouthBlockType = this.getBlockTypes()[i + 1][j][k];
-											byte oldSouthBlockData = this.getBlockDatas()[i + 1][j][k];
-											if (southBlock.getTypeId() != oldSouthBlockType) {
-												southBlock.setTypeId(oldSouthBlockType);
-												southBlock.setData(oldSouthBlockData);
+											int southIndex = this.getBlockIndex(i + 1, j, k);
+											if (southBlock.getTypeId() != types[southIndex]) {
+												southBlock.setTypeId(types[southIndex]);
+												southBlock.setData(datas[southIndex]);
 											}
 										}
 										currentBlock.setType(Material.getMaterial(oldBlockType));
@@ -183,7 +222,7 @@ public class Volume {
 										state.setData(new org.bukkit.material.Sign(oldBlockType, oldBlockData));
 										if (state instanceof Sign) {
 											Sign sign = (Sign) state;
-											String[] lines = this.getSignLines().get("sign-" + i + "-" + j + "-" + k);
+											String[] lines = this.signLines.get(index);
 											if (lines != null && sign.getLines() != null) {
 												if (lines.length > 0) {
 													sign.setLine(0, lines[0]);
@@ -207,7 +246,7 @@ public class Volume {
 										BlockState state = currentBlock.getState();
 										if (state instanceof Chest) {
 											Chest chest = (Chest) state;
-											List<ItemStack> contents = this.getInvBlockContents().get("chest-" + i + "-" + j + "-" + k);
+											List<ItemStack> contents = this.invBlockContents.get(index);
 											if (contents != null) {
 												int ii = 0;
 												chest.getInventory().clear();
@@ -227,7 +266,7 @@ public class Volume {
 										BlockState state = currentBlock.getState();
 										if (state instanceof Dispenser) {
 											Dispenser dispenser = (Dispenser) state;
-											List<ItemStack> contents = this.getInvBlockContents().get("dispenser-" + i + "-" + j + "-" + k);
+											List<ItemStack> contents = this.invBlockContents.get(index);
 											if (contents != null) {
 												int ii = 0;
 												dispenser.getInventory().clear();
@@ -244,24 +283,24 @@ public class Volume {
 										// Door blocks
 
 										// Check if is bottom door block
-										if (j + 1 < this.getSizeY() && this.getBlockTypes()[i][j + 1][k] == oldBlockType) {
+										int aboveIndex = j + 1 < sizeY ? this.getBlockIndex(i, j + 1, k) : -1;
+										if (aboveIndex != -1 && types[aboveIndex] == oldBlockType) {
 											// set both door blocks right away
 											
 											Block blockAbove = this.getWorld().getBlockAt(x, y + 1, z);
 											blockAbove.setType(Material.getMaterial(oldBlockType));
-											blockAbove.setData(this.getBlockDatas()[i][j + 1][k]);
+											blockAbove.setData(datas[aboveIndex]);
 											
 											currentBlock.setType(Material.getMaterial(oldBlockType));
 											currentBlock.setData(oldBlockData);
 										}
-									} else if (((oldBlockType == Material.TORCH.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.REDSTONE_TORCH_OFF.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.REDSTONE_TORCH_ON.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.LEVER.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.STONE_BUTTON.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.LADDER.getId() && ((oldBlockData & 0x04) == 0x04)) || (oldBlockType == Material.RAILS.getId() && ((oldBlockData & 0x02) == 0x02))) && i + 1 != this.getSizeX()) {
+									} else if (((oldBlockType == Material.TORCH.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.REDSTONE_TORCH_OFF.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.REDSTONE_TORCH_ON.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.LEVER.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.STONE_BUTTON.getId() && ((oldBlockData & 0x02) == 0x02)) || (oldBlockType == Material.LADDER.getId() && ((oldBlockData & 0x04) == 0x04)) || (oldBlockType == Material.RAILS.getId() && ((oldBlockData & 0x02) == 0x02))) && i + 1 != sizeX) {
 										// Blocks that hang on a block south of themselves need to make sure that block is there before placing themselves... lol
 										Block southBlock = currentBlock.getRelative(Direction.SOUTH());
-										int oldSouthBlockType = this.getBlockTypes()[i + 1][j][k];
-										byte oldSouthBlockData = this.getBlockDatas()[i + 1][j][k];
-										if (southBlock.getTypeId() != oldSouthBlockType) {
-											southBlock.setTypeId(oldSouthBlockType);
-											southBlock.setData(oldSouthBlockData);
+										int southIndex = this.getBlockIndex(i + 1, j, k);
+										if (southBlock.getTypeId() != types[southIndex]) {
+											southBlock.setTypeId(types[southIndex]);
+											southBlock.setData(datas[southIndex]);
 										}
 										// change the block itself, now that we have a block to set it on
 										currentBlock.setType(Material.getMaterial(oldBlockType));
@@ -279,6 +318,7 @@ public class Volume {
 								e.printStackTrace();
 							} finally {
 								z++;
+								index++;
 							}
 						}
 						y++;
@@ -293,21 +333,77 @@ public class Volume {
 		return noOfResetBlocks;
 	}
 
-	public byte[][][] getBlockDatas() {
-		// TODO Auto-generated method stub
-		return this.blockDatas;
+	/**
+	 * Makes room to save the blocks of the volume at its current size, forgetting
+	 * the blocks saved before
+	 */
+	public void allocateBlocks() {
+		this.releasedFrom = null;
+		this.blocksOnDisk = false;
+		this.savedSizeX = this.getSizeX();
+		this.savedSizeY = this.getSizeY();
+		this.savedSizeZ = this.getSizeZ();
+		int noOfBlocks = this.savedSizeX * this.savedSizeY * this.savedSizeZ;
+		this.blockTypes = new int[noOfBlocks];
+		this.blockDatas = new byte[noOfBlocks];
+		this.signLines.clear();
+		this.invBlockContents.clear();
+	}
+
+	/**
+	 * @return where the saved block at the given offsets from the min corner is kept
+	 */
+	public int getBlockIndex(int i, int j, int k) {
+		return (i * this.savedSizeY + j) * this.savedSizeZ + k;
+	}
+
+	/**
+	 * @return size along x of the saved blocks, which is the size of the volume when they were saved
+	 */
+	public int getSavedSizeX() {
+		this.checkNotReleased();
+		return this.savedSizeX;
+	}
+
+	/**
+	 * @return size along y of the saved blocks
+	 */
+	public int getSavedSizeY() {
+		this.checkNotReleased();
+		return this.savedSizeY;
 	}
 
-	public void setBlockDatas(byte[][][] data) {
-		this.blockDatas = data;
+	/**
+	 * @return size along z of the saved blocks
+	 */
+	public int getSavedSizeZ() {
+		this.checkNotReleased();
+		return this.savedSizeZ;
+	}
+
+	public int getBlockType(int index) {
+		this.checkNotReleased();
+		return this.blockTypes[index];
+	}
+
+	public byte getBlockData(int index) {
+		this.checkNotReleased();
+		return this.blockDatas[index];
+	}
+
+	public void setBlock(int index, int typeId, byte data) {
+		this.blockTypes[index] = typeId;
+		this.blockDatas[index] = data;
 	}
 
 	public void setCornerTwo(Block block) {
 		this.cornerTwo = new BlockInfo(block);
+		this.cornersChanged();
 	}
 
 	public void setCornerTwo(BlockInfo blockInfo) {
 		this.cornerTwo = blockInfo;
+		this.cornersChanged();
 	}
 
 	public BlockInfo getMinXBlock() {
@@ -388,12 +484,11 @@ public class Volume {
 		return this.getMaxZ() - this.getMinZ() + 1;
 	}
 
+	/**
+	 * @return whether the volume has saved blocks, in memory or released to its volume file
+	 */
 	public boolean isSaved() {
-		return this.getBlockTypes() != null;
-	}
-
-	public int[][][] getBlockTypes() {
-		return this.blockTypes;
+		return this.blockTypes != null || this.releasedFrom != null;
 	}
 
 	public BlockInfo getCornerOne() {
@@ -418,8 +513,11 @@ public class Volume {
 		return this.hasTwoCorners() && block.getWorld().getName().equals(this.world.getName()) && x <= this.getMaxX() && x >= this.getMinX() && y <= this.getMaxY() && y >= this.getMinY() && z <= this.getMaxZ() && z >= this.getMinZ();
 	}
 
-	public void setBlockTypes(int[][][] blockTypes) {
-		this.blockTypes = blockTypes;
+	/**
+	 * @return whether any block of the box is inside the volume
+	 */
+	public boolean overlaps(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		return this.hasTwoCorners() && world.getName().equals(this.world.getName()) && minX <= this.getMaxX() && maxX >= this.getMinX() && minY <= this.getMaxY() && maxY >= this.getMinY() && minZ <= this.getMaxZ() && maxZ >= this.getMinZ();
 	}
 
 	public String getName() {
@@ -533,6 +631,10 @@ public class Volume {
 	}
 
 	public void clearBlocksThatDontFloat() {
+		this.switchMaterials(Volume.getBlocksThatDontFloat(), Material.AIR);
+	}
+
+	public static Material[] getBlocksThatDontFloat() {
 		Material[] toAirMaterials = new Material[22];
 		toAirMaterials[0] = Material.SIGN_POST;
 		toAirMaterials[1] = Material.WALL_SIGN;
@@ -556,23 +658,101 @@ public class Volume {
 		toAirMaterials[19] = Material.CACTUS;
 		toAirMaterials[20] = Material.SNOW;
 		toAirMaterials[21] = Material.ICE;
-		this.switchMaterials(toAirMaterials, Material.AIR);
+		return toAirMaterials;
 	}
 
-	public void setSignLines(HashMap<String, String[]> signLines) {
-		this.signLines = signLines;
+	/**
+	 * @return sign lines by block index
+	 */
+	public IntHashMap<String[]> getSignLines() {
+		this.checkNotReleased();
+		return this.signLines;
 	}
 
-	public HashMap<String, String[]> getSignLines() {
-		return this.signLines;
+	/**
+	 * @return chest and dispenser contents by block index
+	 */
+	public IntHashMap<List<ItemStack>> getInvBlockContents() {
+		this.checkNotReleased();
+		return this.invBlockContents;
 	}
 
-	public void setInvBlockContents(HashMap<String, List<ItemStack>> invBlockContents) {
-		this.invBlockContents = invBlockContents;
+	/**
+	 * Lets go of the saved blocks, which are in the volume file of the zone. Nothing can
+	 * look at them until they are read back by waking the zone (see WakeZoneJob).
+	 *
+	 * @param String zoneName Zone the volume was saved with
+	 */
+	public void releaseBlocks(String zoneName) {
+		if (this.releasedFrom != null || this.blockTypes == null || !this.blocksOnDisk || !VolumeMapper.exists(this, zoneName)) {
+			return;
+		}
+		this.releasedFrom = zoneName;
+		this.blockTypes = null;
+		this.blockDatas = null;
+		this.signLines.clear();
+		this.invBlockContents.clear();
 	}
 
-	public HashMap<String, List<ItemStack>> getInvBlockContents() {
-		return this.invBlockContents;
+	/**
+	 * @return the zone whose volume file has the released blocks, or null if they aren't released
+	 */
+	public String getReleasedFrom() {
+		return this.releasedFrom;
+	}
+
+	/**
+	 * @return an empty volume with the same corners, to read the released blocks into off the main thread
+	 */
+	public Volume copyCorners() {
+		Volume copy = new Volume(this.name, this.world);
+		copy.setCornerOne(this.cornerOne);
+		copy.setCornerTwo(this.cornerTwo);
+		return copy;
+	}
+
+	/**
+	 * Takes the blocks read into a copy of this volume, unless they were needed and read
+	 * back in the meantime
+	 *
+	 * @param Volume loaded Copy made by copyCorners(), with its blocks read
+	 */
+	public void adoptReleasedBlocks(Volume loaded) {
+		if (this.releasedFrom == null || loaded.blockTypes == null || loaded.savedSizeX != this.getSizeX() || loaded.savedSizeY != this.getSizeY() || loaded.savedSizeZ != this.getSizeZ()) {
+			return;
+		}
+		this.releasedFrom = null;
+		this.blockTypes = loaded.blockTypes;
+		this.blockDatas = loaded.blockDatas;
+		this.savedSizeX = loaded.savedSizeX;
+		this.savedSizeY = loaded.savedSizeY;
+		this.savedSizeZ = loaded.savedSizeZ;
+		this.signLines = loaded.signLines;
+		this.invBlockContents = loaded.invBlockContents;
+		this.blocksOnDisk = loaded.blocksOnDisk;
+	}
+
+	/**
+	 * Forgets released blocks that couldn't be read back. The volume has no saved blocks afterwards.
+	 */
+	public void dropReleasedBlocks() {
+		this.releasedFrom = null;
+	}
+
+	public void setBlocksOnDisk(boolean blocksOnDisk) {
+		this.blocksOnDisk = blocksOnDisk;
+	}
+
+	/**
+	 * Saved blocks are only read back from disk by waking their zone, never as a side effect
+	 * of looking at them
+	 *
+	 * @throws IllegalStateException if the saved blocks are released
+	 */
+	private void checkNotReleased() {
+		if (this.releasedFrom != null) {
+			throw new IllegalStateException("The saved blocks of volume " + this.name + " are released until warzone " + this.releasedFrom + " wakes up");
+		}
 	}
 
 	@Override
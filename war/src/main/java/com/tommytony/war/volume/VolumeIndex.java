@@ -0,0 +1,135 @@
+package com.tommytony.war.volume;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+
+/**
+ * Finds which of many volumes a location is in without going over all of them.
+ * Volumes are filed under every chunk they span, per world, so a lookup only looks
+ * at the few volumes that share the location's chunk.
+ *
+ * The index doesn't follow the volumes by itself: changing the corners of an indexed
+ * volume marks the index stale, and whoever owns it must rebuild it before the next lookup.
+ *
+ * @author tommytony
+ *
+ */
+public class VolumeIndex<T> {
+
+	private final HashMap<String, HashMap<Long, List<Entry<T>>>> worlds = new HashMap<String, HashMap<Long, List<Entry<T>>>>();
+	private final List<Volume> volumes = new ArrayList<Volume>();
+	private boolean stale = true;
+
+	private static class Entry<T> {
+		private final Volume volume;
+		private final T value;
+
+		private Entry(Volume volume, T value) {
+			this.volume = volume;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Files the volume under each chunk it spans. Volumes without two corners are left out.
+	 *
+	 * @param Volume volume Volume to index
+	 * @param T value What lookups inside the volume return
+	 */
+	public void add(Volume volume, T value) {
+		if (volume == null || !volume.hasTwoCorners() || volume.getWorld() == null) {
+			return;
+		}
+		String worldName = volume.getWorld().getName();
+		HashMap<Long, List<Entry<T>>> chunks = this.worlds.get(worldName);
+		if (chunks == null) {
+			chunks = new HashMap<Long, List<Entry<T>>>();
+			this.worlds.put(worldName, chunks);
+		}
+		Entry<T> entry = new Entry<T>(volume, value);
+		for (int chunkX = volume.getMinX() >> 4; chunkX <= volume.getMaxX() >> 4; chunkX++) {
+			for (int chunkZ = volume.getMinZ() >> 4; chunkZ <= volume.getMaxZ() >> 4; chunkZ++) {
+				Long key = VolumeIndex.chunkKey(chunkX, chunkZ);
+				List<Entry<T>> entries = chunks.get(key);
+				if (entries == null) {
+					entries = new ArrayList<Entry<T>>(1);
+					chunks.put(key, entries);
+				}
+				entries.add(entry);
+			}
+		}
+		volume.addIndex(this);
+		this.volumes.add(volume);
+	}
+
+	/**
+	 * Forgets all volumes, and marks the index as fresh so that it can be filled up again
+	 */
+	public void clear() {
+		for (Volume volume : this.volumes) {
+			volume.removeIndex(this);
+		}
+		this.volumes.clear();
+		this.worlds.clear();
+		this.stale = false;
+	}
+
+	/**
+	 * Marks the index as out of date, like when an indexed volume moves
+	 */
+	public void invalidate() {
+		this.stale = true;
+	}
+
+	public boolean isStale() {
+		return this.stale;
+	}
+
+	/**
+	 * @return what was indexed with the first volume that contains the location, or null
+	 */
+	public T get(Location location) {
+		HashMap<Long, List<Entry<T>>> chunks = this.worlds.get(location.getWorld().getName());
+		if (chunks == null) {
+			return null;
+		}
+		List<Entry<T>> entries = chunks.get(VolumeIndex.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+		if (entries == null) {
+			return null;
+		}
+		for (Entry<T> entry : entries) {
+			if (entry.volume.contains(location)) {
+				return entry.value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return what was indexed with the first volume that contains the block, or null
+	 */
+	public T get(Block block) {
+		HashMap<Long, List<Entry<T>>> chunks = this.worlds.get(block.getWorld().getName());
+		if (chunks == null) {
+			return null;
+		}
+		List<Entry<T>> entries = chunks.get(VolumeIndex.chunkKey(block.getX() >> 4, block.getZ() >> 4));
+		if (entries == null) {
+			return null;
+		}
+		for (Entry<T> entry : entries) {
+			if (entry.volume.contains(block)) {
+				return entry.value;
+			}
+		}
+		return null;
+	}
+
+	private static long chunkKey(int chunkX, int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+}
@@ -7,8 +7,12 @@ import org.bukkit.block.Block;
 import com.tommytony.war.Team;
 import com.tommytony.war.War;
 import com.tommytony.war.Warzone;
+import com.tommytony.war.config.WarConfig;
+import com.tommytony.war.job.ZoneVolumeResetJob;
+import com.tommytony.war.job.ZoneVolumeSaveJob;
 import com.tommytony.war.mapper.ZoneVolumeMapper;
 import com.tommytony.war.structure.Monument;
+import com.tommytony.war.utility.LongHashSet;
 
 /**
  *
@@ -17,21 +21,77 @@ import com.tommytony.war.structure.Monument;
  */
 public class ZoneVolume extends Volume {
 
+	public static final int WALL_EAST = 1;
+	public static final int WALL_SOUTH = 2;
+	public static final int WALL_NORTH = 4;
+	public static final int WALL_WEST = 8;
+	public static final int WALL_UP = 16;
+	public static final int WALL_DOWN = 32;
+
 	private Warzone zone;
 	private boolean isSaved = false;
+	private ZoneVolumeResetJob resetJob = null;
+	private ZoneVolumeSaveJob saveJob = null;
+	private final LongHashSet dirtyBlocks = new LongHashSet();
+	private boolean dirtyBlocksComplete = false; // the journal holds every change since the world last matched the saved blocks
+	private boolean dirtyBlocksOverflowed = false;
+
+	// bounds, cached because wall checks run on every player move
+	private boolean boundsCached = false;
+	private int minX;
+	private int minY;
+	private int minZ;
+	private int maxX;
+	private int maxY;
+	private int maxZ;
 
 	public ZoneVolume(String name, World world, Warzone zone) {
 		super(name, world);
 		this.zone = zone;
 	}
 
+	/**
+	 * Captures the zone as it is now and writes it to disk on another thread
+	 */
 	@Override
 	public int saveBlocks() {
 		// Save blocks directly to disk (i.e. don't put everything in memory)
-		int saved = ZoneVolumeMapper.save(this, this.zone.getName());
-		War.war.log("Saved " + saved + " blocks in warzone " + this.zone.getName() + ".", java.util.logging.Level.INFO);
+		this.finishSave();
+		this.saveJob = new ZoneVolumeSaveJob(this, this.zone.getName());
+		this.saveJob.startWriting();
+		return this.saveStarted();
+	}
+
+	/**
+	 * Captures the zone's chunks over the next ticks and writes them to disk on another thread
+	 *
+	 * @param tickDelay Delay before the capture begins
+	 * @return number of blocks that will be saved
+	 */
+	public int saveBlocksAsJob(long tickDelay) {
+		this.finishSave();
+		this.saveJob = new ZoneVolumeSaveJob(this, this.zone.getName());
+		this.saveJob.start(tickDelay);
+		return this.saveStarted();
+	}
+
+	private int saveStarted() {
 		this.isSaved = true;
-		return saved;
+		// the saved blocks are what's in the world now, anything changed during the capture gets journaled
+		this.dirtyBlocks.clear();
+		this.dirtyBlocksOverflowed = false;
+		this.dirtyBlocksComplete = true;
+		return this.saveJob.getNoOfBlocks();
+	}
+
+	/**
+	 * Waits for the save in progress, if any, to be on disk
+	 */
+	public void finishSave() {
+		if (this.saveJob != null) {
+			this.saveJob.waitUntilWritten();
+			this.saveJob = null;
+		}
 	}
 
 	@Override
@@ -39,7 +99,17 @@ public class ZoneVolume extends Volume {
 		return this.isSaved;
 	}
 
+	/**
+	 * Lets go of the last save. The saved blocks of a zone are always read from its volume
+	 * file, so this only waits for the file to be written.
+	 */
+	@Override
+	public void releaseBlocks(String zoneName) {
+		this.finishSave();
+	}
+
 	public void loadCorners() {
+		this.finishSave();
 		ZoneVolumeMapper.load(this, this.zone.getName(), this.getWorld(), true);
 		this.isSaved = true;
 	}
@@ -47,19 +117,153 @@ public class ZoneVolume extends Volume {
 	@Override
 	public int resetBlocks() {
 		// Load blocks directly from disk and onto the map (i.e. no more in-memory warzone blocks)
-		int reset = ZoneVolumeMapper.load(this, this.zone.getName(), this.getWorld(), false);
+		this.cancelResetJob();
+		this.finishSave();
+		long[] dirty = this.takeDirtyBlocks();
+		int reset;
+		if (dirty != null) {
+			reset = ZoneVolumeMapper.loadDirtyBlocks(this, this.zone.getName(), this.getWorld(), dirty);
+		} else {
+			reset = ZoneVolumeMapper.load(this, this.zone.getName(), this.getWorld(), false);
+		}
 		War.war.log("Reset " + reset + " blocks in warzone " + this.zone.getName() + ".", java.util.logging.Level.INFO);
 		this.isSaved = true;
 		return reset;
 	}
 
 	@Override
-	public void setBlockTypes(int[][][] blockTypes) {
-		return;
+	public void resetBlocksAsJob() {
+		this.resetBlocksAsJob(null);
+	}
+
+	/**
+	 * Resets the zone a slice at a time over the next ticks
+	 *
+	 * @param onCompletion Runs once the whole zone is reset, may be null
+	 */
+	public void resetBlocksAsJob(Runnable onCompletion) {
+		this.cancelResetJob();
+		this.finishSave();
+		this.resetJob = ZoneVolumeMapper.loadAsJob(this, this.zone.getName(), this.getWorld(), this.takeDirtyBlocks(), onCompletion);
+		this.isSaved = true;
+	}
+
+	public boolean isResetting() {
+		return this.resetJob != null && !this.resetJob.isDone();
+	}
+
+	/**
+	 * @return how far along the current reset is, in percent
+	 */
+	public int getResetProgress() {
+		if (this.resetJob == null) {
+			return 100;
+		}
+		return this.resetJob.getProgress();
+	}
+
+	public void resetJobDone(ZoneVolumeResetJob job) {
+		if (this.resetJob == job) {
+			this.resetJob = null;
+		}
+		// whatever changed while the reset ran is still in the journal
+		this.dirtyBlocksComplete = !this.dirtyBlocksOverflowed;
+	}
+
+	private void cancelResetJob() {
+		if (this.resetJob != null) {
+			this.resetJob.cancel();
+			this.resetJob = null;
+		}
+	}
+
+	/**
+	 * Empties the dirty block journal for a reset that's about to start
+	 *
+	 * @return the journaled positions, or null if the whole zone must be diffed
+	 */
+	private long[] takeDirtyBlocks() {
+		long[] dirty = null;
+		if (this.dirtyBlocksComplete) {
+			dirty = this.dirtyBlocks.toArray();
+		}
+		this.dirtyBlocks.clear();
+		this.dirtyBlocksOverflowed = false;
+		this.dirtyBlocksComplete = false; // until the reset is done
+		return dirty;
+	}
+
+	/**
+	 * Notes a block that changed, so that the next reset only has to put back the changed blocks.
+	 * Positions outside of the volume are ignored.
+	 *
+	 * @param int x
+	 * @param int y
+	 * @param int z
+	 */
+	public void markDirty(int x, int y, int z) {
+		if (this.dirtyBlocksOverflowed || !this.hasTwoCorners() || x < this.getMinX() || x > this.getMaxX() || y < this.getMinY() || y > this.getMaxY() || z < this.getMinZ() || z > this.getMaxZ()) {
+			return;
+		}
+		Integer journalSize = War.war.getWarConfig().getInt(WarConfig.RESETJOURNALSIZE);
+		if (journalSize == null || journalSize <= 0 || this.dirtyBlocks.size() >= journalSize) {
+			// too much to keep track of, the next reset will go over the whole zone
+			this.dirtyBlocks.clear();
+			this.dirtyBlocksOverflowed = true;
+			this.dirtyBlocksComplete = false;
+			return;
+		}
+		this.dirtyBlocks.add(ZoneVolume.packBlock(x, y, z));
+	}
+
+	public void markDirty(Block block) {
+		this.markDirty(block.getX(), block.getY(), block.getZ());
+	}
+
+	/**
+	 * Notes a changed block along with its neighbours, which can drop or flow when it goes away
+	 *
+	 * @param Block block
+	 */
+	public void markDirtyAround(Block block) {
+		int x = block.getX();
+		int y = block.getY();
+		int z = block.getZ();
+		this.markDirty(x, y, z);
+		this.markDirty(x + 1, y, z);
+		this.markDirty(x - 1, y, z);
+		this.markDirty(x, y + 1, z);
+		this.markDirty(x, y - 1, z);
+		this.markDirty(x, y, z + 1);
+		this.markDirty(x, y, z - 1);
+	}
+
+	public boolean isDirtyBlocksComplete() {
+		return this.dirtyBlocksComplete;
+	}
+
+	public int getNoOfDirtyBlocks() {
+		return this.dirtyBlocks.size();
+	}
+
+	public static long packBlock(int x, int y, int z) {
+		return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+	}
+
+	public static int unpackX(long packed) {
+		return (int) (packed >> 38);
+	}
+
+	public static int unpackY(long packed) {
+		return (int) (packed << 52 >> 52);
+	}
+
+	public static int unpackZ(long packed) {
+		return (int) (packed << 26 >> 38);
 	}
 
 	@Override
-	public void setBlockDatas(byte[][][] blockData) {
+	public void allocateBlocks() {
 		return;
 	}
 
@@ -93,6 +297,7 @@ public class ZoneVolume extends Volume {
 			minXBlock.setX(block.getX()); // mutating, argh!
 			BlockInfo maxZBlock = this.getMaxZBlock(); // west means max Z
 			maxZBlock.setZ(block.getZ());
+			this.cornersChanged();
 		}
 		if (this.tooSmall() || this.zoneStructuresAreOutside()) {
 			super.setCornerOne(oldCornerOne);
@@ -151,6 +356,7 @@ public class ZoneVolume extends Volume {
 			maxXBlock.setX(block.getX()); // mutating, argh!
 			BlockInfo minZBlock = this.getMinZBlock(); // east means min Z
 			minZBlock.setZ(block.getZ());
+			this.cornersChanged();
 		}
 		if (this.tooSmall() || this.zoneStructuresAreOutside()) {
 			super.setCornerOne(oldCornerOne);
@@ -303,4 +509,116 @@ public class ZoneVolume extends Volume {
 		}
 		return false;
 	}
+
+	@Override
+	protected void cornersChanged() {
+		super.cornersChanged();
+		this.boundsCached = false;
+	}
+
+	private void cacheBounds() {
+		this.minX = super.getMinX();
+		this.minY = super.getMinY();
+		this.minZ = super.getMinZ();
+		this.maxX = super.getMaxX();
+		this.maxY = super.getMaxY();
+		this.maxZ = super.getMaxZ();
+		this.boundsCached = true;
+	}
+
+	@Override
+	public int getMinX() {
+		if (!this.boundsCached) {
+			this.cacheBounds();
+		}
+		return this.minX;
+	}
+
+	@Override
+	public int getMinY() {
+		if (!this.boundsCached) {
+			this.cacheBounds();
+		}
+		return this.minY;
+	}
+
+	@Override
+	public int getMinZ() {
+		if (!this.boundsCached) {
+			this.cacheBounds();
+		}
+		return this.minZ;
+	}
+
+	@Override
+	public int getMaxX() {
+		if (!this.boundsCached) {
+			this.cacheBounds();
+		}
+		return this.maxX;
+	}
+
+	@Override
+	public int getMaxY() {
+		if (!this.boundsCached) {
+			this.cacheBounds();
+		}
+		return this.maxY;
+	}
+
+	@Override
+	public int getMaxZ() {
+		if (!this.boundsCached) {
+			this.cacheBounds();
+		}
+		return this.maxZ;
+	}
+
+	/**
+	 * Finds the walls the block is closer to than the given distance, from inside or
+	 * outside the volume. Blocks well inside the volume or away from it are ruled out
+	 * with a couple of comparisons per axis before any wall is looked at.
+	 *
+	 * @param int distance Blocks closer than this to a wall are near it
+	 * @return the near walls, as WALL_* bits, 0 if none
+	 */
+	public int getNearWalls(int x, int y, int z, int distance) {
+		if (!this.hasTwoCorners()) {
+			return 0;
+		}
+		if (!this.boundsCached) {
+			this.cacheBounds();
+		}
+		if (x <= this.minX - distance || x >= this.maxX + distance || y <= this.minY - distance || y >= this.maxY + distance || z <= this.minZ - distance || z >= this.maxZ + distance) {
+			// too far outside
+			return 0;
+		}
+		if (x >= this.minX + distance && x <= this.maxX - distance && y >= this.minY + distance && y <= this.maxY - distance && z >= this.minZ + distance && z <= this.maxZ - distance) {
+			// deep enough inside
+			return 0;
+		}
+		boolean inX = x >= this.minX && x <= this.maxX;
+		boolean inY = y >= this.minY && y <= this.maxY;
+		boolean inZ = z >= this.minZ && z <= this.maxZ;
+		int walls = 0;
+		if (inX && inY && Math.abs(this.minZ - z) < distance) {
+			walls |= WALL_EAST;
+		}
+		if (inZ && inY && Math.abs(this.maxX - x) < distance) {
+			walls |= WALL_SOUTH;
+		}
+		if (inZ && inY && Math.abs(this.minX - x) < distance) {
+			walls |= WALL_NORTH;
+		}
+		if (inX && inY && Math.abs(this.maxZ - z) < distance) {
+			walls |= WALL_WEST;
+		}
+		if (inX && inZ && Math.abs(this.maxY - y) < distance) {
+			walls |= WALL_UP;
+		}
+		if (inX && inZ && Math.abs(this.minY - y) < distance) {
+			walls |= WALL_DOWN;
+		}
+		return walls;
+	}
 }
@@ -0,0 +1,163 @@
+package com.tommytony.war.volume;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Chest;
+import org.bukkit.block.Dispenser;
+import org.bukkit.block.Sign;
+import org.bukkit.inventory.ItemStack;
+
+import com.tommytony.war.mapper.VolumeMapper;
+
+/**
+ * The blocks of a zone volume as they were in the world, taken one chunk at a time on
+ * the main thread so that they can be encoded and written to disk on another thread.
+ * Only chunk snapshots and the text of signs and inventories are kept, the world itself
+ * is never touched after a chunk is captured.
+ *
+ * @author tommytony
+ *
+ */
+public class ZoneVolumeCapture {
+
+	private final int[] corners;
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+	private final SectionGrid grid;
+	private final int noOfColumns;
+	private final ChunkSnapshot[] columns;
+	private final Map<Integer, String> signLines = new HashMap<Integer, String>();
+	private final Map<Integer, String> invBlockContents = new HashMap<Integer, String>();
+
+	public ZoneVolumeCapture(Volume volume) {
+		this.corners = new int[] { volume.getCornerOne().getX(), volume.getCornerOne().getY(), volume.getCornerOne().getZ(), volume.getCornerTwo().getX(), volume.getCornerTwo().getY(), volume.getCornerTwo().getZ() };
+		this.minX = volume.getMinX();
+		this.minY = volume.getMinY();
+		this.minZ = volume.getMinZ();
+		this.sizeX = volume.getSizeX();
+		this.sizeY = volume.getSizeY();
+		this.sizeZ = volume.getSizeZ();
+		this.grid = new SectionGrid(this.minX, this.minY, this.minZ, this.sizeX, this.sizeY, this.sizeZ);
+		this.noOfColumns = this.grid.getNoOfColumns();
+		this.columns = new ChunkSnapshot[this.noOfColumns];
+	}
+
+	/**
+	 * Takes a snapshot of one chunk of the volume along with its signs, chests and dispensers.
+	 * Must run on the main thread.
+	 *
+	 * @param World world The world the volume is located
+	 * @param int column Chunk column, as laid out by the SectionGrid of the volume
+	 */
+	public void captureColumn(World world, int column) {
+		int section = this.grid.getFirstSection(column);
+		Chunk chunk = world.getChunkAt(this.grid.getChunkX(section), this.grid.getChunkZ(section));
+		this.columns[column] = chunk.getChunkSnapshot(false, false, false);
+		for (BlockState state : chunk.getTileEntities()) {
+			int x = state.getX();
+			int y = state.getY();
+			int z = state.getZ();
+			if (x < this.minX || x >= this.minX + this.sizeX || y < this.minY || y >= this.minY + this.sizeY || z < this.minZ || z >= this.minZ + this.sizeZ) {
+				continue;
+			}
+			int index = this.getIndex(x, y, z);
+			if (state instanceof Sign) {
+				Sign sign = (Sign) state;
+				if (sign.getLines() != null) {
+					String extra = "";
+					for (String line : sign.getLines()) {
+						extra += line + ";;";
+					}
+					this.signLines.put(index, extra);
+				}
+			} else if (state instanceof Chest) {
+				List<ItemStack> items = VolumeMapper.getItemListFromInv(((Chest) state).getInventory());
+				this.invBlockContents.put(index, VolumeMapper.buildInventoryStringFromItemList(items));
+			} else if (state instanceof Dispenser) {
+				List<ItemStack> items = VolumeMapper.getItemListFromInv(((Dispenser) state).getInventory());
+				this.invBlockContents.put(index, VolumeMapper.buildInventoryStringFromItemList(items));
+			}
+		}
+	}
+
+	public int getNoOfColumns() {
+		return this.noOfColumns;
+	}
+
+	public int getNoOfBlocks() {
+		return this.sizeX * this.sizeY * this.sizeZ;
+	}
+
+	/**
+	 * @return corner one x/y/z, then corner two x/y/z
+	 */
+	public int[] getCorners() {
+		return this.corners;
+	}
+
+	public int getSizeX() {
+		return this.sizeX;
+	}
+
+	public int getSizeY() {
+		return this.sizeY;
+	}
+
+	public int getSizeZ() {
+		return this.sizeZ;
+	}
+
+	public SectionGrid getGrid() {
+		return this.grid;
+	}
+
+	public int getIndex(int x, int y, int z) {
+		return ((x - this.minX) * this.sizeY + (y - this.minY)) * this.sizeZ + (z - this.minZ);
+	}
+
+	public int getTypeId(int x, int y, int z) {
+		return this.getColumn(x, z).getBlockTypeId(x & 15, y, z & 15);
+	}
+
+	public byte getData(int x, int y, int z) {
+		return (byte) this.getColumn(x, z).getBlockData(x & 15, y, z & 15);
+	}
+
+	private ChunkSnapshot getColumn(int x, int z) {
+		return this.columns[this.grid.getColumn(this.grid.getSection(x, this.minY, z))];
+	}
+
+	/**
+	 * @return the sign lines, joined by ;;, by block index
+	 */
+	public Map<Integer, String> getSignLines() {
+		return this.signLines;
+	}
+
+	/**
+	 * @return the chest and dispenser contents, as inventory strings, by block index
+	 */
+	public Map<Integer, String> getInvBlockContents() {
+		return this.invBlockContents;
+	}
+
+	/**
+	 * Lets go of the chunk snapshots and tile entities once they are written
+	 */
+	public void release() {
+		Arrays.fill(this.columns, null);
+		this.signLines.clear();
+		this.invBlockContents.clear();
+	}
+}
@@ -0,0 +1,449 @@
+package com.tommytony.war.volume;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * The saved blocks of a zone volume, as read from disk by the ZoneVolumeMapper.
+ * Blocks are indexed in x, y, z order, two bytes each (type, data).
+ *
+ * The bytes are either kept as they are, or encoded section by section (see SectionGrid)
+ * with a palette of the section's blocks and runs of palette entries. Encoded sections
+ * are only read from their file and decoded when one of their blocks is looked at, and
+ * only a few decoded ones are kept around, so resetting a few blocks doesn't read or
+ * decode the whole volume.
+ *
+ * @author tommytony
+ *
+ */
+public class ZoneVolumeSnapshot {
+
+	public static final long CHECKSUM_START = 0xCBF29CE484222325L;
+
+	public static final byte SECTION_BLOCKS = 1;
+	public static final byte SECTION_AIR = 2;
+	public static final byte SECTION_TILE_ENTITIES = 3;
+
+	private static final int DECODED_SECTIONS_KEPT = 64;
+	private static final int READ_AHEAD_BYTES = 64 * 1024;	// sections read along with the one needed, if nothing read them yet
+
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+	private final ByteBuffer blockBytes;
+	private final HashMap<Integer, String[]> signLines = new HashMap<Integer, String[]>();
+	private final HashMap<Integer, List<ItemStack>> invBlockContents = new HashMap<Integer, List<ItemStack>>();
+
+	// encoded sections
+	private final SectionGrid grid;
+	private final SectionFile sectionFile;
+	private final ByteBuffer[] encodedSections;	// read from the section file so far
+	private final int[] sectionOffsets;
+	private final int[] sectionEnds;
+	private final long[] sectionChecksums;
+	private final byte[] sectionKinds;
+	private final Map<Integer, byte[]> decodedSections;
+	private SectionFile deltaFile = null;
+	private boolean[] sectionInDelta = null;
+	private int lastSection = -1;
+	private byte[] lastSectionBlocks;
+	private int lastFromX;
+	private int lastFromY;
+	private int lastFromZ;
+	private int lastSizeY;
+	private int lastSizeZ;
+
+	public ZoneVolumeSnapshot(int sizeX, int sizeY, int sizeZ, byte[] blockBytes) {
+		this(sizeX, sizeY, sizeZ, ByteBuffer.wrap(blockBytes));
+	}
+
+	public ZoneVolumeSnapshot(int sizeX, int sizeY, int sizeZ, ByteBuffer blockBytes) {
+		this.minX = 0;
+		this.minY = 0;
+		this.minZ = 0;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.blockBytes = blockBytes;
+		this.grid = null;
+		this.sectionFile = null;
+		this.encodedSections = null;
+		this.sectionOffsets = null;
+		this.sectionEnds = null;
+		this.sectionChecksums = null;
+		this.sectionKinds = null;
+		this.decodedSections = null;
+	}
+
+	/**
+	 * Blocks encoded section by section, already in memory
+	 *
+	 * @param ByteBuffer sectionBytes Holds the encoded sections
+	 * @param int[] sectionOffsets Where each section starts in sectionBytes
+	 * @param long[] sectionChecksums The checksum of the blocks of each section
+	 * @param byte[] sectionKinds SECTION_BLOCKS, SECTION_AIR or SECTION_TILE_ENTITIES for each section
+	 */
+	public ZoneVolumeSnapshot(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ, ByteBuffer sectionBytes, int[] sectionOffsets, long[] sectionChecksums, byte[] sectionKinds) {
+		this(minX, minY, minZ, sizeX, sizeY, sizeZ, new SectionFile(sectionBytes), sectionOffsets, sectionChecksums, sectionKinds);
+	}
+
+	/**
+	 * Blocks encoded section by section, read from their file as they are needed
+	 *
+	 * @param SectionFile sectionFile Holds the encoded sections, one after the other
+	 * @param int[] sectionOffsets Where each section starts in the section file
+	 * @param long[] sectionChecksums The checksum of the blocks of each section
+	 * @param byte[] sectionKinds SECTION_BLOCKS, SECTION_AIR or SECTION_TILE_ENTITIES for each section
+	 */
+	public ZoneVolumeSnapshot(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ, SectionFile sectionFile, int[] sectionOffsets, long[] sectionChecksums, byte[] sectionKinds) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.blockBytes = null;
+		this.grid = new SectionGrid(minX, minY, minZ, sizeX, sizeY, sizeZ);
+		this.sectionFile = sectionFile;
+		this.encodedSections = new ByteBuffer[sectionOffsets.length];
+		this.sectionOffsets = sectionOffsets;
+		this.sectionEnds = new int[sectionOffsets.length];
+		for (int section = 0; section < sectionOffsets.length; section++) {
+			// sections are written in order
+			this.sectionEnds[section] = section + 1 < sectionOffsets.length ? sectionOffsets[section + 1] : sectionFile.getSectionsEnd();
+		}
+		this.sectionChecksums = sectionChecksums;
+		this.sectionKinds = sectionKinds;
+		this.decodedSections = new LinkedHashMap<Integer, byte[]>(DECODED_SECTIONS_KEPT * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+				return this.size() > DECODED_SECTIONS_KEPT;
+			}
+		};
+	}
+
+	public int getSizeX() {
+		return this.sizeX;
+	}
+
+	public int getSizeY() {
+		return this.sizeY;
+	}
+
+	public int getSizeZ() {
+		return this.sizeZ;
+	}
+
+	public int getNoOfBlocks() {
+		return this.sizeX * this.sizeY * this.sizeZ;
+	}
+
+	public int getIndex(int i, int j, int k) {
+		return (i * this.sizeY + j) * this.sizeZ + k;
+	}
+
+	public int getTypeId(int index) {
+		if (this.grid != null) {
+			int local = this.locate(index);
+			return this.lastSectionBlocks[local * 2] & 0xFF;
+		}
+		// type ids were written as single bytes, so anything above 127 comes back negative
+		return this.blockBytes.get(index * 2) & 0xFF;
+	}
+
+	public byte getData(int index) {
+		if (this.grid != null) {
+			int local = this.locate(index);
+			return this.lastSectionBlocks[local * 2 + 1];
+		}
+		return this.blockBytes.get(index * 2 + 1);
+	}
+
+	/**
+	 * Decodes the section of the block if needed
+	 *
+	 * @return where the block is in lastSectionBlocks
+	 */
+	private int locate(int index) {
+		int k = index % this.sizeZ;
+		int j = (index / this.sizeZ) % this.sizeY;
+		int i = index / (this.sizeZ * this.sizeY);
+		int x = this.minX + i;
+		int y = this.minY + j;
+		int z = this.minZ + k;
+		int section = this.grid.getSection(x, y, z);
+		if (section != this.lastSection) {
+			byte[] blocks = this.decodedSections.get(section);
+			if (blocks == null) {
+				blocks = new byte[this.grid.getNoOfBlocks(section) * 2];
+				ZoneVolumeSnapshot.decodeSection(this.getEncodedSection(section), blocks);
+				this.decodedSections.put(section, blocks);
+			}
+			this.lastSection = section;
+			this.lastSectionBlocks = blocks;
+			this.lastFromX = this.grid.getFromX(section);
+			this.lastFromY = this.grid.getFromY(section);
+			this.lastFromZ = this.grid.getFromZ(section);
+			this.lastSizeY = this.grid.getToY(section) - this.lastFromY + 1;
+			this.lastSizeZ = this.grid.getToZ(section) - this.lastFromZ + 1;
+		}
+		return ((x - this.lastFromX) * this.lastSizeY + (y - this.lastFromY)) * this.lastSizeZ + (z - this.lastFromZ);
+	}
+
+	/**
+	 * @return the encoded section, positioned at its start
+	 */
+	private ByteBuffer getEncodedSection(int section) {
+		if (this.encodedSections[section] == null) {
+			if (this.sectionInDelta != null && this.sectionInDelta[section]) {
+				this.readDeltaSection(section);
+			} else {
+				this.readSections(section);
+			}
+		}
+		return this.encodedSections[section].duplicate();
+	}
+
+	private void readDeltaSection(int section) {
+		try {
+			this.encodedSections[section] = this.deltaFile.read(this.sectionOffsets[section], this.sectionEnds[section] - this.sectionOffsets[section]);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read section " + section + " of the saved blocks from the delta: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads the section from the section file, along with the sections right after it
+	 * that weren't read yet, as long as they fit in READ_AHEAD_BYTES
+	 */
+	private void readSections(int first) {
+		int from = this.sectionOffsets[first];
+		int last = first;
+		while (last + 1 < this.sectionEnds.length && this.encodedSections[last + 1] == null && (this.sectionInDelta == null || !this.sectionInDelta[last + 1])
+				&& this.sectionEnds[last + 1] - from <= READ_AHEAD_BYTES) {
+			last++;
+		}
+		try {
+			ByteBuffer sections = this.sectionFile.read(from, this.sectionEnds[last] - from);
+			int start = sections.position();
+			for (int section = first; section <= last; section++) {
+				ByteBuffer encoded = sections.duplicate();
+				encoded.position(start + this.sectionOffsets[section] - from);
+				this.encodedSections[section] = encoded;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read section " + first + " of the saved blocks: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Lays a section saved since the volume file was written over the one in the file
+	 *
+	 * @param SectionFile deltaFile Holds the encoded sections of the delta file
+	 * @param int section Section number, as laid out by a SectionGrid over the volume
+	 * @param int offset Where the section starts in the delta file
+	 * @param int end Where the section ends in the delta file
+	 * @param long checksum The checksum of the blocks of the section
+	 * @param byte kind SECTION_BLOCKS, SECTION_AIR or SECTION_TILE_ENTITIES
+	 */
+	public void layerSection(SectionFile deltaFile, int section, int offset, int end, long checksum, byte kind) {
+		if (this.sectionInDelta == null) {
+			this.sectionInDelta = new boolean[this.sectionOffsets.length];
+		}
+		this.deltaFile = deltaFile;
+		this.sectionInDelta[section] = true;
+		this.encodedSections[section] = null;
+		this.sectionOffsets[section] = offset;
+		this.sectionEnds[section] = end;
+		this.sectionChecksums[section] = checksum;
+		this.sectionKinds[section] = kind;
+		this.decodedSections.remove(section);
+		if (this.lastSection == section) {
+			this.lastSection = -1;
+		}
+	}
+
+	/**
+	 * @return whether the checksums of the sections were saved along with the blocks
+	 */
+	public boolean hasSectionChecksums() {
+		return this.sectionChecksums != null;
+	}
+
+	/**
+	 * @param int section Section number, as laid out by a SectionGrid over the volume
+	 * @return the checksum of the saved blocks of the section
+	 */
+	public long getSectionChecksum(int section) {
+		return this.sectionChecksums[section];
+	}
+
+	/**
+	 * @param int section Section number, as laid out by a SectionGrid over the volume
+	 * @return SECTION_BLOCKS, SECTION_AIR or SECTION_TILE_ENTITIES
+	 */
+	public byte getSectionKind(int section) {
+		return this.sectionKinds[section];
+	}
+
+	/**
+	 * Folds one block into a running checksum. Saved and live blocks must go
+	 * through here in the same order for their checksums to be comparable.
+	 *
+	 * @param int checksum The checksum so far, CHECKSUM_START for the first block
+	 * @param int typeId Block type id
+	 * @param int data Block data
+	 * @return the new checksum
+	 */
+	public static long checksum(long checksum, int typeId, int data) {
+		// FNV-1a, one round per block
+		return (checksum ^ ((typeId << 8) | (data & 0xFF))) * 0x100000001B3L;
+	}
+
+	/**
+	 * @return whether the block has sign lines or an inventory that are saved along with it
+	 */
+	public static boolean isTileEntity(int typeId) {
+		return typeId == Material.WALL_SIGN.getId() || typeId == Material.SIGN_POST.getId() || typeId == Material.CHEST.getId() || typeId == Material.DISPENSER.getId();
+	}
+
+	/**
+	 * Writes the blocks of a section as a palette of its distinct blocks followed by
+	 * runs of palette entries. A section made of a single kind of block is just a palette.
+	 *
+	 * @param byte[] blocks Two bytes (type, data) per block of the section
+	 * @param int noOfBlocks Number of blocks in the section
+	 * @param DataOutput out Where to write the encoded section
+	 */
+	public static void encodeSection(byte[] blocks, int noOfBlocks, DataOutput out) throws IOException {
+		short[] palette = new short[Math.max(1, noOfBlocks)];
+		short[] entries = new short[noOfBlocks];
+		int paletteSize = 0;
+		int lastEntry = -1;
+		for (int i = 0; i < noOfBlocks; i++) {
+			short block = (short) (((blocks[i * 2] & 0xFF) << 8) | (blocks[i * 2 + 1] & 0xFF));
+			if (lastEntry != -1 && palette[lastEntry] == block) {
+				// same as the block before, most of the time
+				entries[i] = (short) lastEntry;
+				continue;
+			}
+			int entry = 0;
+			while (entry < paletteSize && palette[entry] != block) {
+				entry++;
+			}
+			if (entry == paletteSize) {
+				palette[paletteSize++] = block;
+			}
+			entries[i] = (short) entry;
+			lastEntry = entry;
+		}
+
+		ZoneVolumeSnapshot.writeVarInt(out, paletteSize);
+		for (int entry = 0; entry < paletteSize; entry++) {
+			out.writeShort(palette[entry]);
+		}
+		if (paletteSize > 1) {
+			int runStart = 0;
+			for (int i = 1; i <= noOfBlocks; i++) {
+				if (i == noOfBlocks || entries[i] != entries[runStart]) {
+					ZoneVolumeSnapshot.writeVarInt(out, i - runStart);
+					ZoneVolumeSnapshot.writeVarInt(out, entries[runStart]);
+					runStart = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads back a section written by encodeSection
+	 *
+	 * @param ByteBuffer in Positioned at the start of the section
+	 * @param byte[] blocks Filled with two bytes (type, data) per block of the section
+	 */
+	public static void decodeSection(ByteBuffer in, byte[] blocks) {
+		int paletteSize = ZoneVolumeSnapshot.readVarInt(in);
+		byte[] palette = new byte[paletteSize * 2];
+		in.get(palette);
+		if (paletteSize == 1) {
+			for (int i = 0; i < blocks.length; i += 2) {
+				blocks[i] = palette[0];
+				blocks[i + 1] = palette[1];
+			}
+		} else if (paletteSize > 1) {
+			int i = 0;
+			while (i < blocks.length) {
+				int runLength = ZoneVolumeSnapshot.readVarInt(in);
+				int entry = ZoneVolumeSnapshot.readVarInt(in);
+				int runEnd = Math.min(blocks.length, i + runLength * 2);
+				for (; i < runEnd; i += 2) {
+					blocks[i] = palette[entry * 2];
+					blocks[i + 1] = palette[entry * 2 + 1];
+				}
+			}
+		}
+	}
+
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	public void putSignLines(int index, String[] lines) {
+		this.signLines.put(index, lines);
+	}
+
+	public String[] getSignLines(int index) {
+		return this.signLines.get(index);
+	}
+
+	public void putInvBlockContents(int index, List<ItemStack> items) {
+		this.invBlockContents.put(index, items);
+	}
+
+	public List<ItemStack> getInvBlockContents(int index) {
+		return this.invBlockContents.get(index);
+	}
+
+	/**
+	 * @return the indexes of the saved signs, chests and dispensers, in no particular order
+	 */
+	public int[] getTileEntityIndexes() {
+		int[] indexes = new int[this.signLines.size() + this.invBlockContents.size()];
+		int i = 0;
+		for (Integer index : this.signLines.keySet()) {
+			indexes[i++] = index;
+		}
+		for (Integer index : this.invBlockContents.keySet()) {
+			indexes[i++] = index;
+		}
+		return indexes;
+	}
+}
@@ -0,0 +1,67 @@
+package com.tommytony.war.utility;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IntHashMapTest {
+
+	@Test
+	public void put_whenSameKeyTwice_shouldReplaceTheValue() {
+		IntHashMap<String> map = new IntHashMap<String>();
+
+		assertNull(map.put(42, "a"));
+		assertEquals("a", map.put(42, "b"));
+
+		assertEquals(1, map.size());
+		assertEquals("b", map.get(42));
+		assertNull(map.get(43));
+	}
+
+	@Test
+	public void put_whenManyKeys_shouldGrowAndKeepThemAll() {
+		IntHashMap<Integer> map = new IntHashMap<Integer>();
+
+		for (int i = -5000; i < 5000; i++) {
+			map.put(i * 31, i);
+		}
+
+		assertEquals(10000, map.size());
+		for (int i = -5000; i < 5000; i++) {
+			assertEquals(Integer.valueOf(i), map.get(i * 31));
+		}
+		int[] keys = map.keys();
+		Arrays.sort(keys);
+		assertEquals(-5000 * 31, keys[0]);
+		assertEquals(4999 * 31, keys[keys.length - 1]);
+	}
+
+	@Test
+	public void put_whenKeyIsIntegerMinValue_shouldStillBeKept() {
+		IntHashMap<String> map = new IntHashMap<String>();
+
+		map.put(Integer.MIN_VALUE, "min");
+		map.put(0, "zero");
+
+		assertEquals(2, map.size());
+		assertEquals("min", map.get(Integer.MIN_VALUE));
+		assertEquals("zero", map.get(0));
+		assertEquals(2, map.keys().length);
+	}
+
+	@Test
+	public void clear_shouldEmptyTheMap() {
+		IntHashMap<String> map = new IntHashMap<String>();
+		map.put(1, "a");
+		map.put(Integer.MIN_VALUE, "b");
+
+		map.clear();
+
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+		assertNull(map.get(Integer.MIN_VALUE));
+		assertEquals(0, map.keys().length);
+	}
+}
@@ -0,0 +1,65 @@
+package com.tommytony.war.utility;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongHashSetTest {
+
+	@Test
+	public void add_whenSameValueTwice_shouldOnlyCountItOnce() {
+		LongHashSet set = new LongHashSet();
+
+		assertTrue(set.add(42L));
+		assertFalse(set.add(42L));
+
+		assertEquals(1, set.size());
+		assertTrue(set.contains(42L));
+		assertFalse(set.contains(43L));
+	}
+
+	@Test
+	public void add_whenManyValues_shouldGrowAndKeepThemAll() {
+		LongHashSet set = new LongHashSet();
+
+		for (long i = -5000; i < 5000; i++) {
+			set.add(i * 31);
+		}
+
+		assertEquals(10000, set.size());
+		for (long i = -5000; i < 5000; i++) {
+			assertTrue(set.contains(i * 31));
+		}
+		long[] values = set.toArray();
+		Arrays.sort(values);
+		assertEquals(-5000L * 31, values[0]);
+		assertEquals(4999L * 31, values[values.length - 1]);
+	}
+
+	@Test
+	public void add_whenValueIsLongMinValue_shouldStillBeKept() {
+		LongHashSet set = new LongHashSet();
+
+		set.add(Long.MIN_VALUE);
+		set.add(0L);
+
+		assertEquals(2, set.size());
+		assertTrue(set.contains(Long.MIN_VALUE));
+		assertEquals(2, set.toArray().length);
+	}
+
+	@Test
+	public void clear_shouldEmptyTheSet() {
+		LongHashSet set = new LongHashSet();
+		set.add(1L);
+		set.add(2L);
+
+		set.clear();
+
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(1L));
+		assertEquals(0, set.toArray().length);
+	}
+}
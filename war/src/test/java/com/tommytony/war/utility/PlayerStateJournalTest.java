@@ -0,0 +1,141 @@
+package com.tommytony.war.utility;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlayerStateJournalTest {
+
+	@Test
+	public void read_whenPutsAndRemoves_shouldReplayThemInOrder() throws Exception {
+		File file = File.createTempFile("war-journal", ".dat");
+		try {
+			PlayerStateJournal journal = PlayerStateJournalTest.start(file);
+			journal.put("zone", "alice", new byte[] { 1, 2 });
+			journal.put("zone", "bob", new byte[] { 3 });
+			journal.put("zone", "alice", new byte[] { 4 });
+			journal.remove("zone", "bob");
+			journal.put("lobby", "carol", new byte[] { 5, 6, 7 });
+			journal.close();
+
+			Map<String, Map<String, byte[]>> stashes = PlayerStateJournal.read(file);
+
+			assertEquals(1, stashes.get("zone").size());
+			assertArrayEquals(new byte[] { 4 }, stashes.get("zone").get("alice"));
+			assertEquals(1, stashes.get("lobby").size());
+			assertArrayEquals(new byte[] { 5, 6, 7 }, stashes.get("lobby").get("carol"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void read_whenLastRecordCutShort_shouldKeepTheRecordsBeforeIt() throws Exception {
+		File file = File.createTempFile("war-journal", ".dat");
+		try {
+			PlayerStateJournal journal = PlayerStateJournalTest.start(file);
+			journal.put("zone", "alice", new byte[] { 1, 2, 3 });
+			journal.close();
+			int firstRecordEnd = (int) file.length();
+
+			journal = new PlayerStateJournal(file);
+			journal.start(PlayerStateJournal.read(file));
+			journal.put("zone", "bob", new byte[100]);
+			journal.close();
+			byte[] bytes = PlayerStateJournalTest.readAll(file);
+			assertTrue(bytes.length > firstRecordEnd);
+
+			for (int cut = firstRecordEnd; cut < bytes.length; cut++) {
+				PlayerStateJournalTest.write(file, bytes, cut);
+
+				Map<String, Map<String, byte[]>> stashes = PlayerStateJournal.read(file);
+
+				assertEquals(1, stashes.get("zone").size());
+				assertArrayEquals(new byte[] { 1, 2, 3 }, stashes.get("zone").get("alice"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void close_whenNothingLeftStashed_shouldEmptyTheFile() throws Exception {
+		File file = File.createTempFile("war-journal", ".dat");
+		try {
+			PlayerStateJournal journal = PlayerStateJournalTest.start(file);
+			journal.put("zone", "alice", new byte[] { 1, 2, 3 });
+			journal.put("zone", "bob", new byte[] { 4 });
+			journal.remove("zone", "alice");
+			journal.remove("zone", "bob");
+			journal.close();
+
+			assertEquals(0L, file.length());
+			assertTrue(PlayerStateJournal.read(file).isEmpty());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void write_whenMostOfTheFileIsReplacedStates_shouldCompactToTheLiveOnes() throws Exception {
+		File file = File.createTempFile("war-journal", ".dat");
+		try {
+			PlayerStateJournal journal = PlayerStateJournalTest.start(file);
+			long written = 0;
+			byte[] state = null;
+			for (int i = 0; i < 5; i++) {
+				state = new byte[300 * 1024];
+				Arrays.fill(state, (byte) i);
+				journal.put("zone", "alice", state);
+				written += state.length;
+			}
+			journal.put("zone", "bob", new byte[] { 9 });
+			journal.close();
+
+			assertTrue(file.length() < written);
+			assertFalse(new File(file.getPath() + ".tmp").exists());
+			Map<String, Map<String, byte[]>> stashes = PlayerStateJournal.read(file);
+			assertEquals(2, stashes.get("zone").size());
+			assertArrayEquals(state, stashes.get("zone").get("alice"));
+			assertArrayEquals(new byte[] { 9 }, stashes.get("zone").get("bob"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static PlayerStateJournal start(File file) {
+		PlayerStateJournal journal = new PlayerStateJournal(file);
+		journal.start(new HashMap<String, Map<String, byte[]>>());
+		return journal;
+	}
+
+	private static byte[] readAll(File file) throws Exception {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				read += in.read(bytes, read, bytes.length - read);
+			}
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+	private static void write(File file, byte[] bytes, int length) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes, 0, length);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.tommytony.war.utility;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.tommytony.war.War;
+import com.tommytony.war.utility.ZoneVersionStore.Version;
+
+public class ZoneVersionStoreTest {
+
+	private static final String DAT_FILE = "dat/warzone-test/volume-test.dat";
+	private static final String YML_FILE = "warzone-test.yml";
+
+	@Test
+	public void save_whenFileEditedInTheMiddle_shouldOnlyStoreTheBlocksAroundTheEdit() throws Exception {
+		File dataFolder = ZoneVersionStoreTest.mockWar();
+		try {
+			byte[] before = new byte[1024 * 1024];
+			new Random(42).nextBytes(before);
+			ZoneVersionStoreTest.write(new File(dataFolder, DAT_FILE), before, before.length);
+			ZoneVersionStoreTest.write(new File(dataFolder, YML_FILE), new byte[] { 'a', ':', ' ', '1' }, 4);
+			ZoneVersionStore store = new ZoneVersionStore("test");
+			Version first = store.save("alice");
+
+			// insert a few bytes, which shifts everything after them
+			byte[] after = new byte[before.length + 10];
+			System.arraycopy(before, 0, after, 0, before.length / 2);
+			System.arraycopy(before, before.length / 2, after, before.length / 2 + 10, before.length / 2);
+			ZoneVersionStoreTest.write(new File(dataFolder, DAT_FILE), after, after.length);
+			Version second = store.save("bob");
+
+			List<String> firstBlocks = first.getBlocks(DAT_FILE);
+			List<String> secondBlocks = second.getBlocks(DAT_FILE);
+			assertTrue(firstBlocks.size() > 10);
+			Set<String> stored = new HashSet<String>(firstBlocks);
+			int newBlocks = 0;
+			for (String hash : secondBlocks) {
+				if (!stored.contains(hash)) {
+					newBlocks++;
+				}
+			}
+			assertTrue(newBlocks > 0);
+			assertTrue(newBlocks <= 3);
+			assertEquals(firstBlocks.get(0), secondBlocks.get(0));
+			assertEquals(firstBlocks.get(firstBlocks.size() - 1), secondBlocks.get(secondBlocks.size() - 1));
+			assertEquals(first.getBlocks(YML_FILE), second.getBlocks(YML_FILE));
+			assertEquals(2, store.list().size());
+		} finally {
+			ZoneVersionStoreTest.unmockWar(dataFolder);
+		}
+	}
+
+	@Test
+	public void restore_shouldPutBackTheBytesOfTheVersion() throws Exception {
+		File dataFolder = ZoneVersionStoreTest.mockWar();
+		try {
+			byte[] before = new byte[300 * 1024];
+			new Random(7).nextBytes(before);
+			File datFile = new File(dataFolder, DAT_FILE);
+			ZoneVersionStoreTest.write(datFile, before, before.length);
+			ZoneVersionStore store = new ZoneVersionStore("test");
+			Version first = store.save("alice");
+
+			byte[] after = before.clone();
+			after[before.length / 2] ^= 1;
+			ZoneVersionStoreTest.write(datFile, after, after.length);
+			File addedFile = new File(dataFolder, "dat/warzone-test/volume-added.dat");
+			ZoneVersionStoreTest.write(addedFile, new byte[] { 1, 2, 3 }, 3);
+			Version second = store.save("bob");
+
+			store.restore(first);
+
+			assertArrayEquals(before, ZoneVersionStoreTest.readAll(datFile));
+			assertFalse(addedFile.exists());
+			assertFalse(new File(datFile.getPath() + ".tmp").exists());
+
+			store.restore(second);
+
+			assertArrayEquals(after, ZoneVersionStoreTest.readAll(datFile));
+			assertArrayEquals(new byte[] { 1, 2, 3 }, ZoneVersionStoreTest.readAll(addedFile));
+		} finally {
+			ZoneVersionStoreTest.unmockWar(dataFolder);
+		}
+	}
+
+	private static File mockWar() throws Exception {
+		File dataFolder = File.createTempFile("war-data", "");
+		dataFolder.delete();
+		dataFolder.mkdirs();
+		War warMock = mock(War.class);
+		when(warMock.getDataFolder()).thenReturn(dataFolder);
+		when(warMock.getDataSizeLedger()).thenReturn(mock(DataSizeLedger.class));
+		War.war = warMock;
+		return dataFolder;
+	}
+
+	private static void unmockWar(File dataFolder) {
+		War.war = null;
+		ZoneVersionStoreTest.delete(dataFolder);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				ZoneVersionStoreTest.delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static byte[] readAll(File file) throws Exception {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				read += in.read(bytes, read, bytes.length - read);
+			}
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+	private static void write(File file, byte[] bytes, int length) throws Exception {
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes, 0, length);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.tommytony.war.volume;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ZoneVolumeSnapshotTest {
+
+	private static final int MIN_X = -21, MIN_Y = 5, MIN_Z = 30;
+	private static final int SIZE_X = 40, SIZE_Y = 37, SIZE_Z = 19;
+
+	@Test
+	public void encodeSection_whenSingleBlockKind_shouldOnlyWriteThePalette() throws Exception {
+		byte[] blocks = new byte[16 * 16 * 16 * 2];
+		for (int i = 0; i < blocks.length; i += 2) {
+			blocks[i] = 1;
+			blocks[i + 1] = 2;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		ZoneVolumeSnapshot.encodeSection(blocks, blocks.length / 2, new DataOutputStream(bytes));
+
+		assertEquals(3, bytes.size());
+		byte[] decoded = new byte[blocks.length];
+		ZoneVolumeSnapshot.decodeSection(ByteBuffer.wrap(bytes.toByteArray()), decoded);
+		assertArrayEquals(blocks, decoded);
+	}
+
+	@Test
+	public void getTypeId_whenEncoded_shouldMatchTheRawBlocks() throws Exception {
+		ZoneVolumeSnapshot rawSnapshot = ZoneVolumeSnapshotTest.rawSnapshot();
+		int[] offsets = new int[new SectionGrid(MIN_X, MIN_Y, MIN_Z, SIZE_X, SIZE_Y, SIZE_Z).getNoOfSections()];
+		byte[] bytes = ZoneVolumeSnapshotTest.encode(rawSnapshot, offsets);
+
+		ZoneVolumeSnapshot encoded = new ZoneVolumeSnapshot(MIN_X, MIN_Y, MIN_Z, SIZE_X, SIZE_Y, SIZE_Z, ByteBuffer.wrap(bytes), offsets, new long[offsets.length], new byte[offsets.length]);
+		for (int index = 0; index < rawSnapshot.getNoOfBlocks(); index++) {
+			assertEquals(rawSnapshot.getTypeId(index), encoded.getTypeId(index));
+			assertEquals(rawSnapshot.getData(index), encoded.getData(index));
+		}
+	}
+
+	@Test
+	public void getTypeId_whenFileReplacedAfterDetach_shouldKeepReadingTheOldBlocks() throws Exception {
+		ZoneVolumeSnapshot rawSnapshot = ZoneVolumeSnapshotTest.rawSnapshot();
+		int[] offsets = new int[new SectionGrid(MIN_X, MIN_Y, MIN_Z, SIZE_X, SIZE_Y, SIZE_Z).getNoOfSections()];
+		byte[] bytes = ZoneVolumeSnapshotTest.encode(rawSnapshot, offsets);
+		File file = File.createTempFile("war-sections", ".vol");
+		try {
+			ZoneVolumeSnapshotTest.write(file, bytes);
+			ZoneVolumeSnapshot encoded = new ZoneVolumeSnapshot(MIN_X, MIN_Y, MIN_Z, SIZE_X, SIZE_Y, SIZE_Z, SectionFile.open(file, bytes.length), offsets, new long[offsets.length], new byte[offsets.length]);
+			assertEquals(rawSnapshot.getTypeId(0), encoded.getTypeId(0));
+
+			SectionFile.detachAll(file);
+			ZoneVolumeSnapshotTest.write(file, new byte[] { 1, 0, 1 });
+
+			for (int index = 0; index < rawSnapshot.getNoOfBlocks(); index++) {
+				assertEquals(rawSnapshot.getTypeId(index), encoded.getTypeId(index));
+				assertEquals(rawSnapshot.getData(index), encoded.getData(index));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void getTypeId_whenSectionLayered_shouldReadItFromTheDelta() throws Exception {
+		ZoneVolumeSnapshot rawSnapshot = ZoneVolumeSnapshotTest.rawSnapshot();
+		SectionGrid grid = new SectionGrid(MIN_X, MIN_Y, MIN_Z, SIZE_X, SIZE_Y, SIZE_Z);
+		int[] offsets = new int[grid.getNoOfSections()];
+		byte[] bytes = ZoneVolumeSnapshotTest.encode(rawSnapshot, offsets);
+		ZoneVolumeSnapshot encoded = new ZoneVolumeSnapshot(MIN_X, MIN_Y, MIN_Z, SIZE_X, SIZE_Y, SIZE_Z, ByteBuffer.wrap(bytes), offsets, new long[offsets.length], new byte[offsets.length]);
+		int index = rawSnapshot.getIndex(0, 0, 0);
+		assertEquals(rawSnapshot.getTypeId(index), encoded.getTypeId(index));
+
+		// a delta holding only the section of the min corner, all stone
+		byte[] stone = new byte[grid.getNoOfBlocks(0) * 2];
+		for (int i = 0; i < stone.length; i += 2) {
+			stone[i] = 1;
+		}
+		ByteArrayOutputStream delta = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(delta);
+		out.writeLong(0);	// something before the section, like the delta header
+		ZoneVolumeSnapshot.encodeSection(stone, stone.length / 2, out);
+		int section = grid.getSection(MIN_X, MIN_Y, MIN_Z);
+		encoded.layerSection(new SectionFile(ByteBuffer.wrap(delta.toByteArray())), section, 8, delta.size(), 42L, ZoneVolumeSnapshot.SECTION_BLOCKS);
+
+		assertEquals(1, encoded.getTypeId(index));
+		assertEquals(42L, encoded.getSectionChecksum(section));
+		int other = rawSnapshot.getIndex(SIZE_X - 1, SIZE_Y - 1, SIZE_Z - 1);
+		assertEquals(rawSnapshot.getTypeId(other), encoded.getTypeId(other));
+	}
+
+	private static ZoneVolumeSnapshot rawSnapshot() {
+		byte[] raw = new byte[SIZE_X * SIZE_Y * SIZE_Z * 2];
+		for (int i = 0; i < raw.length; i += 2) {
+			raw[i] = (byte) ((i / 2) % 7 == 0 ? 200 : (i / 64) % 3);
+			raw[i + 1] = (byte) ((i / 2) % 5);
+		}
+		return new ZoneVolumeSnapshot(SIZE_X, SIZE_Y, SIZE_Z, raw);
+	}
+
+	/**
+	 * Encodes the blocks section by section, like the volume file has them
+	 */
+	private static byte[] encode(ZoneVolumeSnapshot rawSnapshot, int[] offsets) throws Exception {
+		SectionGrid grid = new SectionGrid(MIN_X, MIN_Y, MIN_Z, SIZE_X, SIZE_Y, SIZE_Z);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		int noOfBlocks = 0;
+		for (int section = 0; section < grid.getNoOfSections(); section++) {
+			byte[] blocks = new byte[grid.getNoOfBlocks(section) * 2];
+			int i = 0;
+			for (int x = grid.getFromX(section); x <= grid.getToX(section); x++) {
+				for (int y = grid.getFromY(section); y <= grid.getToY(section); y++) {
+					for (int z = grid.getFromZ(section); z <= grid.getToZ(section); z++) {
+						assertEquals(section, grid.getSection(x, y, z));
+						int index = rawSnapshot.getIndex(x - MIN_X, y - MIN_Y, z - MIN_Z);
+						blocks[i * 2] = (byte) rawSnapshot.getTypeId(index);
+						blocks[i * 2 + 1] = rawSnapshot.getData(index);
+						i++;
+					}
+				}
+			}
+			noOfBlocks += i;
+			offsets[section] = out.size();
+			ZoneVolumeSnapshot.encodeSection(blocks, i, out);
+		}
+		assertEquals(SIZE_X * SIZE_Y * SIZE_Z, noOfBlocks);
+		return bytes.toByteArray();
+	}
+
+	private static void write(File file, byte[] bytes) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+}
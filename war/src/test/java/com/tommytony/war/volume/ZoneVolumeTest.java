@@ -0,0 +1,17 @@
+package com.tommytony.war.volume;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ZoneVolumeTest {
+
+	@Test
+	public void packBlock_shouldRoundTripNegativeCoordinates() {
+		long packed = ZoneVolume.packBlock(-1234567, 200, 7654321);
+
+		assertEquals(-1234567, ZoneVolume.unpackX(packed));
+		assertEquals(200, ZoneVolume.unpackY(packed));
+		assertEquals(7654321, ZoneVolume.unpackZ(packed));
+	}
+}